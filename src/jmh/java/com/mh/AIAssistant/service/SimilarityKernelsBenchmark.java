@@ -0,0 +1,134 @@
+package com.mh.AIAssistant.service;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of scoring one query against {@code rows} stored vectors, per kernel:
+ *
+ *   scalar          one running sum per row, as VectorMath.dot and ScalarQuantizer.dot used to do
+ *   autoVectorized  ScalarKernel, plain Java shaped for C2 (independent accumulators)
+ *   vectorApi       VectorApiKernel on jdk.incubator.vector
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = { "--add-modules", "jdk.incubator.vector" })
+public class SimilarityKernelsBenchmark {
+
+	@Param({ "256", "512", "1536" })
+	int dim;
+
+	@Param({ "10000" })
+	int rows;
+
+	private final SimilarityKernel autoVectorized = new ScalarKernel();
+	private final SimilarityKernel vectorApi = new VectorApiKernel();
+
+	private float[] query;
+	private float[][] vectors;
+	private byte[][] codes;
+
+	@Setup
+	public void setUp() {
+		Random random = new Random(42);
+		query = randomUnitVector(random);
+		vectors = new float[rows][];
+		codes = new byte[rows][];
+		for (int r = 0; r < rows; r++) {
+			vectors[r] = randomUnitVector(random);
+			codes[r] = ScalarQuantizer.quantize(vectors[r]).codes();
+		}
+	}
+
+	@Benchmark
+	public float dotScalar() {
+		float best = Float.NEGATIVE_INFINITY;
+		for (float[] vector : vectors) {
+			double sum = 0.0;
+			for (int i = 0; i < dim; i++) sum += query[i] * vector[i];
+			best = Math.max(best, (float) sum);
+		}
+		return best;
+	}
+
+	@Benchmark
+	public float dotAutoVectorized() {
+		float best = Float.NEGATIVE_INFINITY;
+		for (float[] vector : vectors) best = Math.max(best, autoVectorized.dot(query, vector, dim));
+		return best;
+	}
+
+	@Benchmark
+	public float dotVectorApi() {
+		float best = Float.NEGATIVE_INFINITY;
+		for (float[] vector : vectors) best = Math.max(best, vectorApi.dot(query, vector, dim));
+		return best;
+	}
+
+	@Benchmark
+	public float cosineScalar() {
+		float best = Float.NEGATIVE_INFINITY;
+		for (float[] vector : vectors) {
+			double dot = 0.0, aa = 0.0, bb = 0.0;
+			for (int i = 0; i < dim; i++) {
+				dot += query[i] * vector[i];
+				aa += query[i] * query[i];
+				bb += vector[i] * vector[i];
+			}
+			best = Math.max(best, (float) (dot / Math.sqrt(aa * bb)));
+		}
+		return best;
+	}
+
+	@Benchmark
+	public float cosineAutoVectorized() {
+		float best = Float.NEGATIVE_INFINITY;
+		for (float[] vector : vectors) best = Math.max(best, autoVectorized.cosine(query, vector, dim));
+		return best;
+	}
+
+	@Benchmark
+	public float cosineVectorApi() {
+		float best = Float.NEGATIVE_INFINITY;
+		for (float[] vector : vectors) best = Math.max(best, vectorApi.cosine(query, vector, dim));
+		return best;
+	}
+
+	@Benchmark
+	public float int8Scalar() {
+		float best = Float.NEGATIVE_INFINITY;
+		for (byte[] code : codes) {
+			float sum = 0f;
+			for (int i = 0; i < dim; i++) sum += query[i] * (code[i] & 0xFF);
+			best = Math.max(best, sum);
+		}
+		return best;
+	}
+
+	@Benchmark
+	public float int8AutoVectorized() {
+		float best = Float.NEGATIVE_INFINITY;
+		for (byte[] code : codes) best = Math.max(best, autoVectorized.dotU8(query, code, dim));
+		return best;
+	}
+
+	@Benchmark
+	public float int8VectorApi() {
+		float best = Float.NEGATIVE_INFINITY;
+		for (byte[] code : codes) best = Math.max(best, vectorApi.dotU8(query, code, dim));
+		return best;
+	}
+
+	private float[] randomUnitVector(Random random) {
+		float[] vector = new float[dim];
+		for (int i = 0; i < dim; i++) vector[i] = (float) random.nextGaussian();
+		return VectorMath.normalize(vector);
+	}
+}
@@ -0,0 +1,159 @@
+package com.mh.AIAssistant.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Installs the database objects Hibernate's ddl-auto can't manage (SQL functions,
+ * extra indexes). Every statement is idempotent and runs after the schema update.
+ */
+@Component
+public class KnowledgeSchemaInitializer implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(KnowledgeSchemaInitializer.class);
+
+    /**
+     * Similarity functions. A plpgsql loop over the (expanded) arrays avoids the
+     * per-row unnest/aggregate executor setup; PARALLEL SAFE lets large scans use workers.
+     * The bytea overloads score the packed float32 column (see EmbeddingCodec) by
+     * decoding it with kb_f32.
+     */
+    public static final List<String> SIMILARITY_FUNCTIONS = List.of(
+        """
+        CREATE OR REPLACE FUNCTION kb_dot(a double precision[], b double precision[])
+        RETURNS double precision
+        LANGUAGE plpgsql IMMUTABLE STRICT PARALLEL SAFE
+        AS $$
+        DECLARE
+            s double precision := 0;
+        BEGIN
+            FOR i IN 1 .. least(array_length(a, 1), array_length(b, 1)) LOOP
+                s := s + a[i] * b[i];
+            END LOOP;
+            RETURN s;
+        END
+        $$
+        """,
+        """
+        CREATE OR REPLACE FUNCTION kb_cosine(a double precision[], b double precision[])
+        RETURNS double precision
+        LANGUAGE plpgsql IMMUTABLE STRICT PARALLEL SAFE
+        AS $$
+        DECLARE
+            ab double precision := 0;
+            aa double precision := 0;
+            bb double precision := 0;
+        BEGIN
+            FOR i IN 1 .. least(array_length(a, 1), array_length(b, 1)) LOOP
+                ab := ab + a[i] * b[i];
+                aa := aa + a[i] * a[i];
+                bb := bb + b[i] * b[i];
+            END LOOP;
+            RETURN ab / NULLIF(sqrt(aa) * sqrt(bb), 0);
+        END
+        $$
+        """,
+        // Little-endian IEEE 754 float32 values to double precision[]
+        """
+        CREATE OR REPLACE FUNCTION kb_f32(a bytea)
+        RETURNS double precision[]
+        LANGUAGE plpgsql IMMUTABLE STRICT PARALLEL SAFE
+        AS $$
+        DECLARE
+            result double precision[] := '{}';
+            bits bigint;
+            exponent integer;
+            mantissa bigint;
+            v double precision;
+        BEGIN
+            FOR i IN 0 .. length(a) / 4 - 1 LOOP
+                bits := get_byte(a, 4 * i)::bigint
+                    | (get_byte(a, 4 * i + 1)::bigint << 8)
+                    | (get_byte(a, 4 * i + 2)::bigint << 16)
+                    | (get_byte(a, 4 * i + 3)::bigint << 24);
+                exponent := ((bits >> 23) & 255)::integer;
+                mantissa := bits & 8388607;
+                IF exponent = 255 THEN
+                    v := 'NaN';
+                ELSIF exponent = 0 THEN
+                    v := mantissa * power(2::double precision, -149);
+                ELSE
+                    v := (mantissa + 8388608) * power(2::double precision, exponent - 150);
+                END IF;
+                IF bits >= 2147483648 THEN
+                    v := -v;
+                END IF;
+                result := result || v;
+            END LOOP;
+            RETURN result;
+        END
+        $$
+        """,
+        """
+        CREATE OR REPLACE FUNCTION kb_dot(a bytea, b double precision[])
+        RETURNS double precision
+        LANGUAGE sql IMMUTABLE STRICT PARALLEL SAFE
+        AS $$ SELECT kb_dot(kb_f32(a), b) $$
+        """,
+        """
+        CREATE OR REPLACE FUNCTION kb_cosine(a bytea, b double precision[])
+        RETURNS double precision
+        LANGUAGE sql IMMUTABLE STRICT PARALLEL SAFE
+        AS $$ SELECT kb_cosine(kb_f32(a), b) $$
+        """
+    );
+
+    /**
+     * Full-text search over content for the lexical retrieval leg. The tsvector is a
+     * stored generated column, so inserts keep it current without application code;
+     * only the first 200k characters of (pre-chunking) whole-document rows are indexed
+     * to stay under the tsvector size limit.
+     */
+    public static final List<String> LEXICAL_SEARCH = List.of(
+        """
+        ALTER TABLE knowledge_entries ADD COLUMN IF NOT EXISTS content_tsv tsvector
+        GENERATED ALWAYS AS (to_tsvector('english', left(coalesce(content, ''), 200000))) STORED
+        """,
+        "CREATE INDEX IF NOT EXISTS idx_knowledge_entries_content_tsv ON knowledge_entries USING GIN (content_tsv)"
+    );
+
+    public static final List<String> INDEXES = List.of(
+        // IVF probes read a user's rows in a handful of clusters
+        "CREATE INDEX IF NOT EXISTS idx_knowledge_entries_user_cluster ON knowledge_entries (user_id, cluster_id)",
+        // Chunks of one document, in order
+        "CREATE INDEX IF NOT EXISTS idx_knowledge_entries_document ON knowledge_entries (document_id, chunk_index)"
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public KnowledgeSchemaInitializer(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        for (String statement : SIMILARITY_FUNCTIONS) {
+            execute(statement);
+        }
+        for (String statement : LEXICAL_SEARCH) {
+            execute(statement);
+        }
+        for (String statement : INDEXES) {
+            execute(statement);
+        }
+    }
+
+    private void execute(String statement) {
+        try {
+            jdbcTemplate.execute(statement);
+        } catch (Exception e) {
+            logger.error("Failed to apply schema statement: {}", statement.strip().lines().findFirst().orElse(""), e);
+        }
+    }
+}
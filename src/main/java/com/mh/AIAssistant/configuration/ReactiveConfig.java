@@ -0,0 +1,22 @@
+package com.mh.AIAssistant.configuration;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+@Configuration
+public class ReactiveConfig {
+
+    /**
+     * Threads for the blocking parts of the reactive request path (JDBC retrieval,
+     * ingestion, OCR), so they never run on the HTTP client's event loop. Bounded in
+     * threads and queued tasks: past that, requests fail fast instead of piling up.
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blockingScheduler(@Value("${chat.reactive.blocking-threads:32}") int threads,
+                                       @Value("${chat.reactive.blocking-queue:1000}") int queuedTasks) {
+        return Schedulers.newBoundedElastic(threads, queuedTasks, "reactive-blocking");
+    }
+}
@@ -0,0 +1,36 @@
+package com.mh.AIAssistant.configuration;
+
+import com.twilio.http.NetworkHttpClient;
+import com.twilio.http.Request;
+import com.twilio.http.Response;
+
+import java.net.URL;
+
+/**
+ * Twilio HTTP client that sends every REST call to another base URL, keeping the
+ * path, parameters and authentication (twilio.api.base-url)
+ */
+public class TwilioBaseUrlHttpClient extends NetworkHttpClient {
+
+    private final String baseUrl;
+
+    public TwilioBaseUrlHttpClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    @Override
+    public Response makeRequest(Request request) {
+        URL original = request.constructURL();
+        Request redirected = new Request(request.getMethod(), baseUrl + original.getPath());
+        if (request.requiresAuthentication()) {
+            redirected.setAuth(request.getUsername(), request.getPassword());
+        }
+        if (request.getContentType() != null) {
+            redirected.setContentType(request.getContentType());
+        }
+        request.getQueryParams().forEach((name, values) -> values.forEach(value -> redirected.addQueryParam(name, value)));
+        request.getPostParams().forEach((name, values) -> values.forEach(value -> redirected.addPostParam(name, value)));
+        request.getHeaderParams().forEach((name, values) -> values.forEach(value -> redirected.addHeaderParam(name, value)));
+        return super.makeRequest(redirected);
+    }
+}
@@ -15,6 +15,10 @@ public class TwilioConfig {
     @Value("${twilio.from-number}")
     private String fromNumber;
 
+    // Blank for api.twilio.com; set to send REST calls elsewhere (e.g. a local stand-in in tests)
+    @Value("${twilio.api.base-url:}")
+    private String apiBaseUrl;
+
     public String getAccountSid() {
         return accountSid;
     }
@@ -26,4 +30,8 @@ public class TwilioConfig {
     public String getFromNumber() {
         return fromNumber;
     }
+
+    public String getApiBaseUrl() {
+        return apiBaseUrl;
+    }
 }
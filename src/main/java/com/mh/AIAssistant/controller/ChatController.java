@@ -1,5 +1,6 @@
 package com.mh.AIAssistant.controller;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -7,23 +8,48 @@ import java.util.HashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
+import com.mh.AIAssistant.service.ConcurrencyLimits;
+import com.mh.AIAssistant.service.ContentEmbeddingStore;
 import com.mh.AIAssistant.service.DeepSeekAIService;
 import com.mh.AIAssistant.service.FileStorageService;
+import com.mh.AIAssistant.service.OcrExecutor;
+import com.mh.AIAssistant.service.PdfTextExtractor;
+import com.mh.AIAssistant.service.XlsxTextExtractor;
+import com.mh.AIAssistant.service.OcrRejectedException;
 import com.mh.AIAssistant.service.OcrService;
 import com.mh.AIAssistant.service.OpenAIEmbeddingService;
 import com.mh.AIAssistant.service.DocumentService;
+import com.mh.AIAssistant.service.EmbeddingCache;
+import com.mh.AIAssistant.service.EmbeddingStorageService;
+import com.mh.AIAssistant.service.HnswVectorIndexService;
+import com.mh.AIAssistant.service.HybridRetrievalService;
+import com.mh.AIAssistant.service.IngestionJobService;
+import com.mh.AIAssistant.service.IntentClassifier;
+import com.mh.AIAssistant.service.IvfClusteringService;
+import com.mh.AIAssistant.service.RetrievalPipeline;
+import com.mh.AIAssistant.service.SegmentVectorStore;
+import com.mh.AIAssistant.service.SimilarityKernels;
+import com.mh.AIAssistant.service.VectorRetrievalService;
 import com.mh.AIAssistant.repository.KnowledgeBaseRepository;
 import com.mh.AIAssistant.dto.DocumentInfo;
+import com.mh.AIAssistant.dto.ChatTurn;
+import com.mh.AIAssistant.model.IngestionJob;
 import com.mh.AIAssistant.model.KnowledgeEntry;
 import com.mh.AIAssistant.websocket.WebSocketService;
 import com.mh.AIAssistant.service.WhatsappService;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.Resource;
 import net.sourceforge.tess4j.TesseractException;
 import java.io.File;
@@ -50,6 +76,15 @@ public class ChatController {
     @Autowired
     private OcrService ocrService;
 
+    @Autowired
+    private OcrExecutor ocrExecutor;
+
+    @Autowired
+    private PdfTextExtractor pdfTextExtractor;
+
+    @Autowired
+    private XlsxTextExtractor xlsxTextExtractor;
+
     @Autowired
     private KnowledgeBaseRepository knowledgeBaseRepository;
 
@@ -62,50 +97,155 @@ public class ChatController {
     @Autowired
     private DocumentService documentService;
 
-    @PostMapping("/chat")
-    public ResponseEntity<Map<String, Object>> chat(@RequestBody Map<String, String> request) {
-        try {
-            String message = request.get("message");
-            String mode = request.get("mode");
-            String userId = request.get("userId");
+    @Autowired
+    private VectorRetrievalService vectorRetrievalService;
 
-            if (message == null || message.trim().isEmpty()) {
-                return ResponseEntity.badRequest()
-                    .body(Map.of("error", "Message cannot be empty"));
-            }
+    @Autowired
+    private HnswVectorIndexService hnswVectorIndexService;
 
-            Map<String, Object> result = new HashMap<>();
-            
-            if ("store".equals(mode)) {
-                whatsappService.storeTextAndEmbed(userId, message);
+    @Autowired
+    private EmbeddingStorageService embeddingStorageService;
+
+    @Autowired
+    private IvfClusteringService ivfClusteringService;
+
+    @Autowired
+    private SegmentVectorStore segmentVectorStore;
+
+    @Autowired
+    private HybridRetrievalService hybridRetrievalService;
+
+    @Autowired
+    private EmbeddingCache embeddingCache;
+
+    @Autowired
+    private RetrievalPipeline retrievalPipeline;
+
+    @Autowired
+    private ContentEmbeddingStore contentEmbeddingStore;
+
+    @Autowired
+    private IntentClassifier intentClassifier;
+
+    @Autowired
+    private ConcurrencyLimits concurrencyLimits;
+
+    @Autowired
+    private IngestionJobService ingestionJobService;
+
+    @Autowired
+    private Scheduler blockingScheduler;
+
+    @Value("${chat.reactive.enabled:false}")
+    private boolean reactive;
+
+    /**
+     * With chat.reactive.enabled the turn completes asynchronously and the request
+     * thread is released while DeepSeek answers; otherwise it runs on the request thread
+     */
+    @PostMapping("/chat")
+    public Mono<ResponseEntity<Map<String, Object>>> chat(@RequestBody Map<String, String> request) {
+        String message = request.get("message");
+        String mode = request.get("mode");
+        String userId = request.get("userId");
+
+        if (message == null || message.trim().isEmpty()) {
+            return Mono.just(ResponseEntity.badRequest()
+                .body(Map.of("error", "Message cannot be empty")));
+        }
+
+        Mono<Map<String, Object>> reply;
+        if ("store".equals(mode)) {
+            Mono<Void> stored = reactive
+                ? whatsappService.storeTextAndEmbedAsync(userId, message, null, null, null)
+                : Mono.fromRunnable(() -> whatsappService.storeTextAndEmbed(userId, message));
+            reply = stored.then(Mono.fromSupplier(() -> {
+                Map<String, Object> result = new HashMap<>();
                 result.put("response", "✅ Message stored successfully in knowledge base!");
                 result.put("mode", mode);
                 result.put("userId", userId);
-            } else {
-                // Chat mode - get response with document references
-                String response = whatsappService.chatReply(userId, message);
-                
-                // Find relevant documents
-                List<DocumentInfo> documents = 
-                    documentService.findRelevantDocuments(userId, message);
-                
+                return result;
+            }));
+        } else {
+            // Chat mode - the reply and its document references share one retrieval
+            Mono<ChatTurn> chatTurn = reactive
+                ? whatsappService.chatTurnAsync(userId, message)
+                : Mono.fromCallable(() -> whatsappService.chatTurn(userId, message));
+            reply = chatTurn.map(turn -> {
+                String response = turn.reply();
+                List<DocumentInfo> documents = turn.retrieval().documents();
+
+                Map<String, Object> result = new HashMap<>();
                 result.put("response", response);
                 result.put("mode", mode);
                 result.put("userId", userId);
                 result.put("documents", documents);
                 result.put("hasDocuments", !documents.isEmpty());
-            }
-
-            // Notify other frontend clients
-            webSocketService.notifyFrontendMessage(userId, message, (String) result.get("response"));
+                return result;
+            });
+        }
 
-            return ResponseEntity.ok(result);
+        return reply
+            .map(result -> {
+                // Notify other frontend clients
+                webSocketService.notifyFrontendMessage(userId, message, (String) result.get("response"));
+
+                return ResponseEntity.ok(result);
+            })
+            .onErrorResume(e -> {
+                logger.error("Error in /chat endpoint", e);
+                return Mono.just(ResponseEntity.internalServerError()
+                    .body(Map.of("error", "Failed to process request: " + e.getMessage())));
+            });
+    }
 
-        } catch (Exception e) {
-            logger.error("Error in /chat endpoint", e);
-            return ResponseEntity.internalServerError()
-                .body(Map.of("error", "Failed to process request: " + e.getMessage()));
+    /**
+     * Chat mode with the reply streamed as server-sent events: "token" events with
+     * the text as it is generated, then "documents" with the document references,
+     * then "done" with the full response
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Object>>> chatStream(@RequestBody Map<String, String> request) {
+        String message = request.get("message");
+        String userId = request.get("userId");
+
+        if (message == null || message.trim().isEmpty()) {
+            return Flux.just(event("error", Map.of("error", "Message cannot be empty")));
         }
+
+        // Retrieval and intent block, so resolve them off the request thread
+        return Mono.fromCallable(() -> whatsappService.streamChatTurn(userId, message))
+            .subscribeOn(blockingScheduler)
+            .flatMapMany(turn -> {
+                StringBuilder response = new StringBuilder();
+                List<DocumentInfo> documents = turn.retrieval().documents();
+
+                Flux<ServerSentEvent<Map<String, Object>>> tokens = turn.tokens()
+                    .doOnNext(response::append)
+                    .map(text -> event("token", Map.of("text", text)));
+
+                Flux<ServerSentEvent<Map<String, Object>>> trailer = Flux.defer(() -> {
+                    // Notify other frontend clients
+                    webSocketService.notifyFrontendMessage(userId, message, response.toString());
+
+                    Map<String, Object> done = new HashMap<>();
+                    done.put("response", response.toString());
+                    done.put("intent", turn.intent());
+                    done.put("userId", userId);
+                    return Flux.just(
+                        event("documents", Map.of("documents", documents, "hasDocuments", !documents.isEmpty())),
+                        event("done", done));
+                });
+                return tokens.concatWith(trailer);
+            })
+            .onErrorResume(e -> {
+                logger.error("Error in /chat/stream endpoint", e);
+                return Flux.just(event("error", Map.of("error", "Failed to process request: " + e.getMessage())));
+            });
+    }
+
+    private static ServerSentEvent<Map<String, Object>> event(String name, Map<String, Object> data) {
+        return ServerSentEvent.<Map<String, Object>>builder().event(name).data(data).build();
     }
 
     @GetMapping("/document/{id}/download")
@@ -170,11 +310,79 @@ public class ChatController {
         }
     }
 
+    /**
+     * With ingest.jobs.enabled the upload is saved and queued, and the response
+     * (202) carries the job id; progress comes as "ingestion_progress" WebSocket
+     * events and from /knowledge/jobs/{id}. Otherwise the content is stored before
+     * the response.
+     */
     @PostMapping("/knowledge/store")
-    public ResponseEntity<Map<String, String>> storeKnowledge(
+    public Mono<ResponseEntity<Map<String, Object>>> storeKnowledge(
             @RequestParam(value = "file", required = false) MultipartFile file,
             @RequestParam("userId") String userId,
             @RequestParam(value = "text", required = false) String text) {
+        // Extraction and ingestion block: in reactive mode they leave the request thread
+        Mono<ResponseEntity<Map<String, Object>>> stored = Mono.fromCallable(() ->
+            ingestionJobService.isEnabled() ? enqueue(file, userId, text) : store(file, userId, text));
+        return reactive ? stored.subscribeOn(blockingScheduler) : stored;
+    }
+
+    private ResponseEntity<Map<String, Object>> enqueue(MultipartFile file, String userId, String text) {
+        try {
+            boolean hasText = text != null && !text.trim().isEmpty();
+            boolean hasFile = file != null && !file.isEmpty();
+            if (!hasText && !hasFile) {
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Nothing to store: provide text and/or file"));
+            }
+            if (hasFile && !ocrService.isSupported(file.getOriginalFilename())) {
+                logger.warn("Unsupported file type: {}", file.getOriginalFilename());
+                return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Unsupported file type: " + file.getOriginalFilename()));
+            }
+
+            List<Long> jobIds = new ArrayList<>();
+            if (hasText) {
+                jobIds.add(ingestionJobService.submitText(userId, text.trim()).getId());
+            }
+            if (hasFile) {
+                String originalFilename = file.getOriginalFilename();
+                String fileName = userId + "_" + System.currentTimeMillis() + "_" + originalFilename;
+                String savedPath = fileStorageService.saveMultipartFile(file, fileName);
+                jobIds.add(ingestionJobService.submitFile(userId, savedPath, originalFilename, file.getContentType()).getId());
+            }
+            logger.info("Queued ingestion jobs {} for user {}", jobIds, userId);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("message", "📥 Received! Adding it to your knowledge base in the background.");
+            result.put("userId", userId);
+            result.put("jobId", jobIds.get(jobIds.size() - 1));
+            result.put("jobIds", jobIds);
+            return ResponseEntity.accepted().body(result);
+
+        } catch (Exception e) {
+            logger.error("Unexpected error queueing knowledge", e);
+            return ResponseEntity.internalServerError()
+                .body(Map.of("error", "Unexpected error: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/knowledge/jobs/{id}")
+    public ResponseEntity<Map<String, Object>> ingestionJob(
+            @PathVariable Long id,
+            @RequestParam("userId") String userId) {
+        IngestionJob job = ingestionJobService.find(id).orElse(null);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+        if (!job.getUserId().equals(userId)) {
+            logger.warn("Unauthorized access attempt to ingestion job: {} by user: {}", id, userId);
+            return ResponseEntity.status(403).build();
+        }
+        return ResponseEntity.ok(IngestionJobService.describe(job));
+    }
+
+    private ResponseEntity<Map<String, Object>> store(MultipartFile file, String userId, String text) {
         try {
             logger.info("Store knowledge request - userId: {}, hasFile: {}, hasText: {}", 
                 userId, file != null && !file.isEmpty(), text != null && !text.trim().isEmpty());
@@ -208,6 +416,11 @@ public class ChatController {
                         extractedText = ocrService.extractText(savedFile);
                         logger.info("Extracted {} characters from file", extractedText.length());
                         
+                    } catch (OcrRejectedException e) {
+                        logger.warn("OCR busy, rejecting {}: {}", originalFilename, e.getMessage());
+                        return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                            .header(HttpHeaders.RETRY_AFTER, "30")
+                            .body(Map.of("error", "Too many files are being read right now, please try again shortly"));
                     } catch (Exception e) {
                         logger.error("Text extraction failed for file: {}", originalFilename, e);
                         return ResponseEntity.internalServerError()
@@ -240,7 +453,7 @@ public class ChatController {
                     .body(Map.of("error", "Nothing to store: provide text and/or file"));
             }
 
-            Map<String, String> result = new HashMap<>();
+            Map<String, Object> result = new HashMap<>();
             result.put("message", "✅ Knowledge stored successfully!");
             result.put("userId", userId);
             result.put("charactersStored", String.valueOf(aggregated.length()));
@@ -257,13 +470,59 @@ public class ChatController {
     }
 
     @PostMapping("/upload")
-    public ResponseEntity<Map<String, String>> uploadFile(
+    public Mono<ResponseEntity<Map<String, Object>>> uploadFile(
             @RequestParam("file") MultipartFile file,
             @RequestParam("mode") String mode,
             @RequestParam("userId") String userId) {
         return storeKnowledge(file, userId, null);
     }
 
+    @GetMapping("/knowledge/index/stats")
+    public ResponseEntity<Map<String, Object>> indexStats() {
+        Map<String, Object> result = new HashMap<>();
+        result.put("activeBackend", vectorRetrievalService.getActiveBackend());
+        result.put("similarityKernels", SimilarityKernels.implementation());
+        result.put("hnsw", hnswVectorIndexService.getStats());
+        result.put("ivf", ivfClusteringService.getStats());
+        result.put("segments", segmentVectorStore.getStats());
+        result.put("hybrid", hybridRetrievalService.getStats());
+        result.put("pipeline", retrievalPipeline.getStats());
+        result.put("embeddingStorage", embeddingStorageService.getStats());
+        result.put("embeddingCache", embeddingCache.getStats());
+        result.put("embeddingBatcher", embeddingService.getBatchStats());
+        result.put("embeddingStore", contentEmbeddingStore.getStats());
+        result.put("intent", intentClassifier.getStats());
+        result.put("concurrency", concurrencyLimits.getStats());
+        result.put("ingestion", ingestionJobService.getStats());
+        result.put("ocr", ocrExecutor.getStats());
+        result.put("pdf", pdfTextExtractor.getStats());
+        result.put("xlsx", xlsxTextExtractor.getStats());
+        return ResponseEntity.ok(result);
+    }
+
+    // Compare the HNSW index against the exact query for one ad-hoc question
+    @GetMapping("/knowledge/index/recall")
+    public ResponseEntity<Map<String, Object>> indexRecall(
+            @RequestParam("userId") String userId,
+            @RequestParam("query") String query,
+            @RequestParam(value = "k", defaultValue = "10") int k) {
+        try {
+            float[] embedding = embeddingService.embed(query);
+            double recall = hnswVectorIndexService.measureRecall(userId, embedding, k);
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("userId", userId);
+            result.put("k", k);
+            result.put("recall", recall);
+            result.put("stats", hnswVectorIndexService.getStats());
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            logger.error("Error measuring index recall", e);
+            return ResponseEntity.internalServerError()
+                .body(Map.of("error", "Failed to measure recall: " + e.getMessage()));
+        }
+    }
+
     @GetMapping("/health")
     public ResponseEntity<Map<String, String>> health() {
         Map<String, String> result = new HashMap<>();
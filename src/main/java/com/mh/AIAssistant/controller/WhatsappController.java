@@ -2,9 +2,11 @@ package com.mh.AIAssistant.controller;
 
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.MediaType;
@@ -15,9 +17,12 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import com.mh.AIAssistant.service.FileStorageService;
+import com.mh.AIAssistant.service.WhatsappReplyQueue;
 import com.mh.AIAssistant.service.WhatsappService;
 
 import jakarta.annotation.Resource;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 @RestController
 @RequestMapping("/whatsapp")
@@ -31,6 +36,20 @@ public class WhatsappController {
     @Resource
     private WhatsappService whatsappService;
 
+    @Resource
+    private Scheduler blockingScheduler;
+
+    @Resource
+    private WhatsappReplyQueue replyQueue;
+
+    // Twilio webhooks complete asynchronously instead of holding a request thread
+    @Value("${chat.reactive.enabled:false}")
+    private boolean reactive;
+
+    // Acknowledge webhooks at once and reply out-of-band from WhatsappReplyQueue
+    @Value("${twilio.webhook.async.enabled:false}")
+    private boolean asyncWebhook;
+
     @GetMapping("/hello")
     public String hello() {
         return "Hello AI!";
@@ -61,57 +80,80 @@ public class WhatsappController {
 
     // ✅ Twilio webhook - Returns TwiML XML
     @PostMapping(value = "/incoming", produces = MediaType.APPLICATION_XML_VALUE)
-    public String receiveMessage(@RequestParam("From") String from,
-                                 @RequestParam("Body") String body) {
+    public Mono<String> receiveMessage(@RequestParam("From") String from,
+                                       @RequestParam("Body") String body,
+                                       @RequestParam(value = "MessageSid", required = false) String messageSid) {
         logger.info("Twilio message from {}: {}", from, body);
 
-        try {
-            // Process message through WhatsappService
-            Map<String, String> params = new HashMap<>();
-            params.put("From", from);
-            params.put("Body", body);
-            
-            // Don't send via Twilio here - we return TwiML instead
-            String response = whatsappService.handleIncoming(params, false);
-            
-            // Return TwiML response for Twilio
-            return twiml(response);
-            
-        } catch (Exception e) {
-            logger.error("Error processing Twilio message", e);
-            return twiml("Sorry, I encountered an error processing your message.");
+        // Process message through WhatsappService
+        Map<String, String> params = new HashMap<>();
+        params.put("From", from);
+        params.put("Body", body);
+
+        if (asyncWebhook) {
+            // Reply later via sendMessage; Twilio gets its answer right away
+            return Mono.just(acknowledge(replyQueue.submit(from, messageSid,
+                () -> whatsappService.handleIncoming(params, false))));
         }
+
+        // Don't send via Twilio here - we return TwiML instead
+        Mono<String> response = reactive
+            ? whatsappService.handleIncomingAsync(params)
+            : Mono.fromCallable(() -> whatsappService.handleIncoming(params, false));
+
+        // Return TwiML response for Twilio
+        return response
+            .map(this::twiml)
+            .onErrorResume(e -> {
+                logger.error("Error processing Twilio message", e);
+                return Mono.just(twiml("Sorry, I encountered an error processing your message."));
+            });
     }
 
     // ✅ Twilio webhook with media support - Returns TwiML XML
     @PostMapping(value = "/incoming_2", produces = MediaType.APPLICATION_XML_VALUE)
-    public String receiveMessage2(@RequestParam Map<String,String> params) {
+    public Mono<String> receiveMessage2(@RequestParam Map<String,String> params) {
         String from = params.get("From");                 // e.g. "whatsapp:+60123..."
         String body = params.getOrDefault("Body", "");
         int numMedia = Integer.parseInt(params.getOrDefault("NumMedia", "0"));
 
         logger.info("Twilio incoming From={} Body={} NumMedia={}", from, body, numMedia);
 
-        try {
-            if (numMedia > 0) {
-                // Handle media message
-                String mediaUrl = params.get("MediaUrl0");
-                String fileName = from.replace(":", "_") + "_" + System.currentTimeMillis();
-                String savedPath = fileStorageService.saveFile(mediaUrl, fileName);
-                logger.info("File saved: {}", savedPath);
-                
-                // You might want to process the file through WhatsappService too
-                return twiml("✅ I saved your file and it's now in the knowledge base!");
-                
-            } else {
-                // Handle text message
-                String response = whatsappService.handleIncoming(params);
-                return twiml(response);
-            }
-        } catch (Exception e) {
-            logger.error("Error processing Twilio message with media", e);
-            return twiml("Sorry, I couldn't process your message.");
+        // Handle media message
+        Callable<String> saveMedia = () -> {
+            String mediaUrl = params.get("MediaUrl0");
+            String fileName = from.replace(":", "_") + "_" + System.currentTimeMillis();
+            String savedPath = fileStorageService.saveFile(mediaUrl, fileName);
+            logger.info("File saved: {}", savedPath);
+
+            // You might want to process the file through WhatsappService too
+            return "✅ I saved your file and it's now in the knowledge base!";
+        };
+
+        if (asyncWebhook) {
+            // Reply later via sendMessage; Twilio gets its answer right away
+            return Mono.just(acknowledge(replyQueue.submit(from, params.get("MessageSid"),
+                numMedia > 0 ? saveMedia : () -> whatsappService.handleIncoming(params))));
+        }
+
+        Mono<String> response;
+        if (numMedia > 0) {
+            Mono<String> saved = Mono.fromCallable(saveMedia);
+            response = reactive ? saved.subscribeOn(blockingScheduler) : saved;
+
+        } else {
+            // Handle text message
+            response = reactive
+                ? whatsappService.handleIncomingAsync(params)
+                : Mono.fromCallable(() -> whatsappService.handleIncoming(params));
         }
+
+        return response
+            .map(this::twiml)
+            .onErrorResume(e -> {
+                logger.error("Error processing Twilio message with media", e);
+                return Mono.just(twiml("Sorry, I couldn't process your message."));
+            });
     }
     
     // ✅ Frontend manual trigger - Returns JSON
@@ -173,6 +215,20 @@ public class WhatsappController {
         return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
     }
 
+    // Queue depth, outcomes and end-to-end latency of the out-of-band replies
+    @GetMapping("/stats")
+    public ResponseEntity<Map<String, Object>> stats() {
+        return ResponseEntity.ok(replyQueue.getStats());
+    }
+
+    // Empty TwiML: the reply follows via the REST API (or ask to retry when the queue is full)
+    private String acknowledge(WhatsappReplyQueue.Outcome outcome) {
+        if (outcome == WhatsappReplyQueue.Outcome.REJECTED) {
+            return twiml("We're receiving a lot of messages right now. Please try again in a minute.");
+        }
+        return "<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response/>";
+    }
+
     // Helper method to generate TwiML XML response for Twilio
     private String twiml(String message) {
         // Escape XML special characters
@@ -0,0 +1,7 @@
+package com.mh.AIAssistant.dto;
+
+/**
+ * Outcome of one chat turn: the reply, the intent it was answered with and the
+ * retrieval the reply was based on (its documents go back to the client)
+ */
+public record ChatTurn(String reply, String intent, RetrievalResult retrieval) {}
@@ -8,6 +8,8 @@ public class DocumentInfo {
     private String fileName;
     private String fileType;
     private boolean hasFile;
+    // Parent document when the content was assembled from chunks
+    private Long documentId;
 
     // Getters and setters
     public Long getId() { return id; }
@@ -31,6 +33,9 @@ public class DocumentInfo {
     public boolean isHasFile() { return hasFile; }
     public void setHasFile(boolean hasFile) { this.hasFile = hasFile; }
 
+    public Long getDocumentId() { return documentId; }
+    public void setDocumentId(Long documentId) { this.documentId = documentId; }
+
     public String getContentPreview(int maxLength) {
         if (content == null) return "";
         if (content.length() <= maxLength) return content;
@@ -0,0 +1,35 @@
+package com.mh.AIAssistant.dto;
+
+import java.util.List;
+
+/**
+ * Everything retrieved for one chat turn: the query vector (null when the vector
+ * search was skipped or failed), the fused ranked hits and the hits grouped into
+ * documents with their matching content. Built once per turn by RetrievalPipeline
+ * and shared by the reply, the prompt and the documents list of the response.
+ */
+public record RetrievalResult(
+    String query,
+    float[] queryVector,
+    List<RetrievedEntry> hits,
+    List<DocumentInfo> documents,
+    boolean exactMatch
+) {
+
+    public static RetrievalResult empty(String query) {
+        return new RetrievalResult(query, null, List.of(), List.of(), false);
+    }
+
+    /**
+     * Knowledge base context for the prompt: content of the best documents whose
+     * top hit scores at least minSimilarity
+     */
+    public List<String> contextTexts(double minSimilarity, int maxDocuments) {
+        return documents.stream()
+            .filter(doc -> doc.getSimilarity() != null && doc.getSimilarity() >= minSimilarity)
+            .map(DocumentInfo::getContent)
+            .filter(content -> content != null && !content.isEmpty())
+            .limit(maxDocuments)
+            .toList();
+    }
+}
@@ -0,0 +1,51 @@
+package com.mh.AIAssistant.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * A similarity search hit: entry metadata plus its score, without the embedding.
+ * Content is only filled in for the hits that are actually used (see withContent).
+ */
+public record RetrievedEntry(
+    Long id,
+    String userId,
+    LocalDateTime createdAt,
+    String filePath,
+    String fileName,
+    String fileType,
+    Long documentId,
+    Integer chunkIndex,
+    double similarity,
+    String content
+) {
+
+    // Used by the JPQL constructor expression in KnowledgeBaseRepository
+    public RetrievedEntry(Long id, String userId, LocalDateTime createdAt, String filePath,
+                          String fileName, String fileType, Long documentId, Integer chunkIndex) {
+        this(id, userId, createdAt, filePath, fileName, fileType, documentId, chunkIndex, 0.0, null);
+    }
+
+    public RetrievedEntry withSimilarity(double similarity) {
+        return new RetrievedEntry(id, userId, createdAt, filePath, fileName, fileType,
+            documentId, chunkIndex, similarity, content);
+    }
+
+    public RetrievedEntry withContent(String content) {
+        return new RetrievedEntry(id, userId, createdAt, filePath, fileName, fileType,
+            documentId, chunkIndex, similarity, content);
+    }
+
+    /**
+     * Key of the document this hit belongs to: the parent document for chunks,
+     * otherwise the file (or the entry itself for plain text stored before chunking)
+     */
+    public String documentKey() {
+        if (documentId != null) return "doc:" + documentId;
+        if (hasFile()) return "file:" + filePath;
+        return fileName != null ? "name:" + fileName : "entry:" + id;
+    }
+
+    public boolean hasFile() {
+        return filePath != null && !filePath.isEmpty();
+    }
+}
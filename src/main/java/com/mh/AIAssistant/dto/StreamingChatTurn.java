@@ -0,0 +1,9 @@
+package com.mh.AIAssistant.dto;
+
+import reactor.core.publisher.Flux;
+
+/**
+ * A chat turn whose reply is still being generated: the intent and retrieval are
+ * known, the reply arrives as tokens (its document references go out after them)
+ */
+public record StreamingChatTurn(String intent, RetrievalResult retrieval, Flux<String> tokens) {}
@@ -0,0 +1,16 @@
+package com.mh.AIAssistant.enums;
+
+/**
+ * Last stage an ingestion job has completed; workers pick up jobs by the stage
+ * they still need to run
+ */
+public enum IngestionStage {
+    STORED,     // file saved (or text received), nothing extracted yet
+    EXTRACTED,  // text extracted and kept on the job
+    EMBEDDED,   // chunks embedded, vectors in the embedding store
+    INDEXED;    // document and chunks saved as knowledge entries
+
+    public IngestionStage next() {
+        return this == INDEXED ? INDEXED : values()[ordinal() + 1];
+    }
+}
@@ -0,0 +1,8 @@
+package com.mh.AIAssistant.enums;
+
+public enum IngestionStatus {
+    PENDING,   // waiting for a worker (possibly until its retry time)
+    RUNNING,   // claimed by a worker
+    DONE,      // indexed
+    FAILED     // gave up: permanent error or out of attempts
+}
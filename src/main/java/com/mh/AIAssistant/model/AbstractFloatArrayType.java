@@ -0,0 +1,47 @@
+package com.mh.AIAssistant.model;
+
+import org.hibernate.usertype.UserType;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Shared plumbing for Hibernate types that map a column to a primitive float[]
+ */
+abstract class AbstractFloatArrayType implements UserType<float[]> {
+
+    @Override
+    public Class<float[]> returnedClass() {
+        return float[].class;
+    }
+
+    @Override
+    public boolean equals(float[] x, float[] y) {
+        return Arrays.equals(x, y);
+    }
+
+    @Override
+    public int hashCode(float[] x) {
+        return Arrays.hashCode(x);
+    }
+
+    @Override
+    public float[] deepCopy(float[] value) {
+        return value == null ? null : value.clone();
+    }
+
+    @Override
+    public boolean isMutable() {
+        return true;
+    }
+
+    @Override
+    public Serializable disassemble(float[] value) {
+        return deepCopy(value);
+    }
+
+    @Override
+    public float[] assemble(Serializable cached, Object owner) {
+        return deepCopy((float[]) cached);
+    }
+}
@@ -0,0 +1,51 @@
+package com.mh.AIAssistant.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Type;
+import java.time.LocalDateTime;
+
+/**
+ * An embedding stored by content: the key is the model name plus the SHA-256 of
+ * the normalized text (see EmbeddingCache.contentKey), so identical text is embedded
+ * once per model. Rows are written and read by ContentEmbeddingStore.
+ */
+@Entity
+@Table(name = "embedding_store")
+public class ContentEmbedding {
+
+    // "<model>:<sha256 hex>"
+    @Id
+    @Column(name = "content_key", length = 128)
+    private String contentKey;
+
+    @Column(nullable = false, length = 64)
+    private String model;
+
+    // As returned by the API, packed float32
+    @Type(FloatVectorType.class)
+    @Column(columnDefinition = "bytea", nullable = false)
+    private float[] embedding;
+
+    // Estimated tokens of the text, for the saved-tokens counter
+    @Column(name = "token_estimate")
+    private int tokenEstimate;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    public ContentEmbedding() {}
+
+    public String getContentKey() { return contentKey; }
+    public void setContentKey(String contentKey) { this.contentKey = contentKey; }
+
+    public String getModel() { return model; }
+    public void setModel(String model) { this.model = model; }
+
+    public float[] getEmbedding() { return embedding; }
+    public void setEmbedding(float[] embedding) { this.embedding = embedding; }
+
+    public int getTokenEstimate() { return tokenEstimate; }
+    public void setTokenEstimate(int tokenEstimate) { this.tokenEstimate = tokenEstimate; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
@@ -0,0 +1,47 @@
+package com.mh.AIAssistant.model;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Packed little-endian float32 encoding used for the embedding_f32 bytea column
+ */
+public final class EmbeddingCodec {
+
+    private EmbeddingCodec() {}
+
+    public static byte[] encode(float[] vector) {
+        ByteBuffer buffer = ByteBuffer.allocate(vector.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.asFloatBuffer().put(vector);
+        return buffer.array();
+    }
+
+    public static float[] decode(byte[] bytes) {
+        float[] vector = new float[bytes.length / Float.BYTES];
+        ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(vector);
+        return vector;
+    }
+
+    /**
+     * Convert a legacy double precision[] value (as returned by the JDBC driver) to float[]
+     */
+    public static float[] fromLegacyArray(Object array) {
+        if (array instanceof double[] primitive) {
+            float[] vector = new float[primitive.length];
+            for (int i = 0; i < primitive.length; i++) vector[i] = (float) primitive[i];
+            return vector;
+        }
+        Object[] boxed = (Object[]) array;
+        float[] vector = new float[boxed.length];
+        for (int i = 0; i < boxed.length; i++) {
+            vector[i] = boxed[i] != null ? ((Number) boxed[i]).floatValue() : 0f;
+        }
+        return vector;
+    }
+
+    public static double[] toDoubleArray(float[] vector) {
+        double[] result = new double[vector.length];
+        for (int i = 0; i < vector.length; i++) result[i] = vector[i];
+        return result;
+    }
+}
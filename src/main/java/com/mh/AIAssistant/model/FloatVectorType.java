@@ -0,0 +1,36 @@
+package com.mh.AIAssistant.model;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Maps a primitive float[] to a bytea column holding packed little-endian float32 values
+ */
+public class FloatVectorType extends AbstractFloatArrayType {
+
+    @Override
+    public int getSqlType() {
+        return Types.VARBINARY;
+    }
+
+    @Override
+    public float[] nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session,
+                               Object owner) throws SQLException {
+        byte[] bytes = rs.getBytes(position);
+        return bytes == null ? null : EmbeddingCodec.decode(bytes);
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, float[] value, int index,
+                            SharedSessionContractImplementor session) throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.VARBINARY);
+        } else {
+            st.setBytes(index, EmbeddingCodec.encode(value));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.mh.AIAssistant.model;
+
+import com.mh.AIAssistant.enums.IngestionStage;
+import com.mh.AIAssistant.enums.IngestionStatus;
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A document being ingested in the background. Workers claim jobs with
+ * FOR UPDATE SKIP LOCKED (see IngestionJobQueue); the row records the stage
+ * reached, so a restarted or crashed instance resumes where it stopped.
+ */
+@Entity
+@Table(name = "ingestion_jobs", indexes = {
+    @Index(name = "idx_ingestion_jobs_claim", columnList = "status, stage, next_attempt_at"),
+    @Index(name = "idx_ingestion_jobs_user", columnList = "user_id")
+})
+public class IngestionJob {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private IngestionStage stage;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16)
+    private IngestionStatus status;
+
+    @Column(name = "file_path")
+    private String filePath;
+
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Column(name = "file_type")
+    private String fileType;
+
+    // Text to store: given with the request, or extracted from the file
+    @Column(columnDefinition = "TEXT")
+    private String text;
+
+    @Column(name = "chunk_count")
+    private Integer chunkCount;
+
+    @Column(name = "document_id")
+    private Long documentId;
+
+    // Attempts at the current stage; reset when the job moves on
+    private int attempts;
+
+    @Column(name = "last_error", columnDefinition = "TEXT")
+    private String lastError;
+
+    // Not claimed before this time (retry backoff); null means now
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    // Worker instance holding the job and its last heartbeat
+    @Column(name = "locked_by", length = 64)
+    private String lockedBy;
+
+    @Column(name = "locked_at")
+    private LocalDateTime lockedAt;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    private LocalDateTime updatedAt = LocalDateTime.now();
+
+    public IngestionJob() {}
+
+    public IngestionJob(String userId, IngestionStage stage, String text,
+                        String filePath, String fileName, String fileType) {
+        this.userId = userId;
+        this.stage = stage;
+        this.status = IngestionStatus.PENDING;
+        this.text = text;
+        this.filePath = filePath;
+        this.fileName = fileName;
+        this.fileType = fileType;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public IngestionStage getStage() { return stage; }
+    public void setStage(IngestionStage stage) { this.stage = stage; }
+
+    public IngestionStatus getStatus() { return status; }
+    public void setStatus(IngestionStatus status) { this.status = status; }
+
+    public String getFilePath() { return filePath; }
+    public void setFilePath(String filePath) { this.filePath = filePath; }
+
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+
+    public String getFileType() { return fileType; }
+    public void setFileType(String fileType) { this.fileType = fileType; }
+
+    public String getText() { return text; }
+    public void setText(String text) { this.text = text; }
+
+    public Integer getChunkCount() { return chunkCount; }
+    public void setChunkCount(Integer chunkCount) { this.chunkCount = chunkCount; }
+
+    public Long getDocumentId() { return documentId; }
+    public void setDocumentId(Long documentId) { this.documentId = documentId; }
+
+    public int getAttempts() { return attempts; }
+    public void setAttempts(int attempts) { this.attempts = attempts; }
+
+    public String getLastError() { return lastError; }
+    public void setLastError(String lastError) { this.lastError = lastError; }
+
+    public LocalDateTime getNextAttemptAt() { return nextAttemptAt; }
+    public void setNextAttemptAt(LocalDateTime nextAttemptAt) { this.nextAttemptAt = nextAttemptAt; }
+
+    public String getLockedBy() { return lockedBy; }
+    public void setLockedBy(String lockedBy) { this.lockedBy = lockedBy; }
+
+    public LocalDateTime getLockedAt() { return lockedAt; }
+    public void setLockedAt(LocalDateTime lockedAt) { this.lockedAt = lockedAt; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -0,0 +1,51 @@
+package com.mh.AIAssistant.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Type;
+
+/**
+ * A chunk embedding computed by an ingestion job's embed stage, kept until its
+ * index stage has stored the document. The content key (see
+ * EmbeddingCache.contentKey) tells whether the chunk still has the same text.
+ * Rows are written and read by IngestionJobEmbeddings.
+ */
+@Entity
+@Table(name = "ingestion_job_embeddings", uniqueConstraints =
+    @UniqueConstraint(name = "uk_ingestion_job_embeddings_chunk", columnNames = {"job_id", "chunk_index"}))
+public class IngestionJobEmbedding {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "job_id", nullable = false)
+    private Long jobId;
+
+    @Column(name = "chunk_index", nullable = false)
+    private int chunkIndex;
+
+    @Column(name = "content_key", nullable = false, length = 128)
+    private String contentKey;
+
+    // Packed float32
+    @Type(FloatVectorType.class)
+    @Column(columnDefinition = "bytea", nullable = false)
+    private float[] embedding;
+
+    public IngestionJobEmbedding() {}
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public Long getJobId() { return jobId; }
+    public void setJobId(Long jobId) { this.jobId = jobId; }
+
+    public int getChunkIndex() { return chunkIndex; }
+    public void setChunkIndex(int chunkIndex) { this.chunkIndex = chunkIndex; }
+
+    public String getContentKey() { return contentKey; }
+    public void setContentKey(String contentKey) { this.contentKey = contentKey; }
+
+    public float[] getEmbedding() { return embedding; }
+    public void setEmbedding(float[] embedding) { this.embedding = embedding; }
+}
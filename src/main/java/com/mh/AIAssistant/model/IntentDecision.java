@@ -0,0 +1,81 @@
+package com.mh.AIAssistant.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Type;
+import java.time.LocalDateTime;
+
+/**
+ * An intent decided by the LLM, logged with the query embedding and what the
+ * local classifier predicted. Used to retrain the local classifier and to
+ * measure how often it agrees with the LLM.
+ */
+@Entity
+@Table(name = "intent_decisions")
+public class IntentDecision {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(columnDefinition = "TEXT")
+    private String message;
+
+    // Query embedding, packed float32; null when the turn had none
+    @Type(FloatVectorType.class)
+    @Column(columnDefinition = "bytea")
+    private float[] embedding;
+
+    @Column(name = "llm_intent", length = 16)
+    private String llmIntent;
+
+    // Local prediction at decision time ("rules" or "model" source), if any
+    @Column(name = "local_intent", length = 16)
+    private String localIntent;
+
+    @Column(name = "local_source", length = 16)
+    private String localSource;
+
+    @Column(name = "local_confidence")
+    private Double localConfidence;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    public IntentDecision() {}
+
+    public IntentDecision(String userId, String message, float[] embedding, String llmIntent) {
+        this.userId = userId;
+        this.message = message;
+        this.embedding = embedding;
+        this.llmIntent = llmIntent;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getMessage() { return message; }
+    public void setMessage(String message) { this.message = message; }
+
+    public float[] getEmbedding() { return embedding; }
+    public void setEmbedding(float[] embedding) { this.embedding = embedding; }
+
+    public String getLlmIntent() { return llmIntent; }
+    public void setLlmIntent(String llmIntent) { this.llmIntent = llmIntent; }
+
+    public String getLocalIntent() { return localIntent; }
+    public void setLocalIntent(String localIntent) { this.localIntent = localIntent; }
+
+    public String getLocalSource() { return localSource; }
+    public void setLocalSource(String localSource) { this.localSource = localSource; }
+
+    public Double getLocalConfidence() { return localConfidence; }
+    public void setLocalConfidence(Double localConfidence) { this.localConfidence = localConfidence; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
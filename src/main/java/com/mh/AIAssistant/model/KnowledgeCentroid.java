@@ -0,0 +1,56 @@
+package com.mh.AIAssistant.model;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.Type;
+import java.time.LocalDateTime;
+
+/**
+ * A k-means centroid of the IVF layout. Knowledge entries point at their
+ * nearest centroid through knowledge_entries.cluster_id.
+ */
+@Entity
+@Table(name = "kb_centroids", indexes = @Index(name = "idx_kb_centroids_user", columnList = "user_id"))
+public class KnowledgeCentroid {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Owning user, or null for the global centroids shared by small users
+    @Column(name = "user_id")
+    private String userId;
+
+    // Unit-length centroid, packed float32
+    @Type(FloatVectorType.class)
+    @Column(columnDefinition = "bytea")
+    private float[] centroid;
+
+    // Number of entries in the scope when the centroids were trained
+    @Column(name = "trained_on")
+    private long trainedOn;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    public KnowledgeCentroid() {}
+
+    public KnowledgeCentroid(String userId, float[] centroid, long trainedOn) {
+        this.userId = userId;
+        this.centroid = centroid;
+        this.trainedOn = trainedOn;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public float[] getCentroid() { return centroid; }
+    public void setCentroid(float[] centroid) { this.centroid = centroid; }
+
+    public long getTrainedOn() { return trainedOn; }
+    public void setTrainedOn(long trainedOn) { this.trainedOn = trainedOn; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
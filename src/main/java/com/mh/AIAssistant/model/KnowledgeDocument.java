@@ -0,0 +1,72 @@
+package com.mh.AIAssistant.model;
+
+import jakarta.persistence.*;
+import java.time.LocalDateTime;
+
+/**
+ * A stored document (uploaded file or text). Its text lives in knowledge_entries
+ * as overlapping chunks that point back here through knowledge_entries.document_id.
+ */
+@Entity
+@Table(name = "knowledge_documents", indexes = @Index(name = "idx_knowledge_documents_user", columnList = "user_id"))
+public class KnowledgeDocument {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id")
+    private String userId;
+
+    @Column(name = "file_path")
+    private String filePath;
+
+    @Column(name = "file_name")
+    private String fileName;
+
+    @Column(name = "file_type")
+    private String fileType;
+
+    // Length of the extracted text and number of chunks it was split into
+    @Column(name = "char_count")
+    private long charCount;
+
+    @Column(name = "chunk_count")
+    private int chunkCount;
+
+    private LocalDateTime createdAt = LocalDateTime.now();
+
+    public KnowledgeDocument() {}
+
+    public KnowledgeDocument(String userId, String filePath, String fileName, String fileType, long charCount) {
+        this.userId = userId;
+        this.filePath = filePath;
+        this.fileName = fileName;
+        this.fileType = fileType;
+        this.charCount = charCount;
+    }
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+
+    public String getUserId() { return userId; }
+    public void setUserId(String userId) { this.userId = userId; }
+
+    public String getFilePath() { return filePath; }
+    public void setFilePath(String filePath) { this.filePath = filePath; }
+
+    public String getFileName() { return fileName; }
+    public void setFileName(String fileName) { this.fileName = fileName; }
+
+    public String getFileType() { return fileType; }
+    public void setFileType(String fileType) { this.fileType = fileType; }
+
+    public long getCharCount() { return charCount; }
+    public void setCharCount(long charCount) { this.charCount = charCount; }
+
+    public int getChunkCount() { return chunkCount; }
+    public void setChunkCount(int chunkCount) { this.chunkCount = chunkCount; }
+
+    public LocalDateTime getCreatedAt() { return createdAt; }
+    public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
+}
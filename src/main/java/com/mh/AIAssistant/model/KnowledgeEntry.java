@@ -1,12 +1,17 @@
 package com.mh.AIAssistant.model;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.Type;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "knowledge_entries")
 public class KnowledgeEntry {
 
+    // Values for embeddingVersion
+    public static final int EMBEDDING_RAW = 1;         // vector as returned by the embedding API
+    public static final int EMBEDDING_NORMALIZED = 2;  // unit length, similarity is a plain dot product
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -16,11 +21,50 @@ public class KnowledgeEntry {
     @Column(columnDefinition = "TEXT")
     private String content;
 
+    // Packed little-endian float32 (4 bytes per dimension)
+    @Type(FloatVectorType.class)
+    @Column(
+        name = "embedding_f32",
+        columnDefinition = "bytea"
+    )
+    private float[] embedding;
+
+    // Legacy double precision[] column, read as a fallback until rows are migrated
+    @Type(LegacyDoubleArrayType.class)
     @Column(
         name = "embedding",
         columnDefinition = "double precision[]"
     )
-    private Double[] embedding;
+    private float[] legacyEmbedding;
+
+    // L2 norm of the embedding before it was normalized
+    @Column(name = "embedding_norm")
+    private Double embeddingNorm;
+
+    @Column(name = "embedding_version")
+    private Integer embeddingVersion;
+
+    // Int8 scalar-quantized copy of the (normalized) embedding, see ScalarQuantizer
+    @Column(name = "embedding_q8", columnDefinition = "bytea")
+    private byte[] quantizedEmbedding;
+
+    @Column(name = "embedding_q8_scale")
+    private Float quantizedScale;
+
+    @Column(name = "embedding_q8_offset")
+    private Float quantizedOffset;
+
+    // Nearest IVF centroid (kb_centroids.id); null until assigned
+    @Column(name = "cluster_id")
+    private Long clusterId;
+
+    // Parent document (knowledge_documents.id) and position of this chunk in it;
+    // null for entries stored before chunking, which hold a whole document
+    @Column(name = "document_id")
+    private Long documentId;
+
+    @Column(name = "chunk_index")
+    private Integer chunkIndex;
 
     private LocalDateTime createdAt = LocalDateTime.now();
 
@@ -34,19 +78,16 @@ public class KnowledgeEntry {
     @Column(name = "file_type")
     private String fileType;  // mime type or extension
 
-    @Transient
-    private Double similarityScore;
-
     public KnowledgeEntry() {}
 
-    public KnowledgeEntry(String userId, String content, Double[] embedding) {
+    public KnowledgeEntry(String userId, String content, float[] embedding) {
         this.userId = userId;
         this.content = content;
         this.embedding = embedding;
     }
 
     // Add constructor with file metadata
-    public KnowledgeEntry(String userId, String content, Double[] embedding, 
+    public KnowledgeEntry(String userId, String content, float[] embedding, 
                          String filePath, String fileName, String fileType) {
         this.userId = userId;
         this.content = content;
@@ -66,15 +107,44 @@ public class KnowledgeEntry {
     public String getContent() { return content; }
     public void setContent(String content) { this.content = content; }
 
-    public Double[] getEmbedding() { return embedding; }
-    public void setEmbedding(Double[] embedding) { this.embedding = embedding; }
+    // Dual read: prefer the float32 column, fall back to the legacy array
+    public float[] getEmbedding() { return embedding != null ? embedding : legacyEmbedding; }
+    public void setEmbedding(float[] embedding) { this.embedding = embedding; }
+
+    public float[] getLegacyEmbedding() { return legacyEmbedding; }
+    public void setLegacyEmbedding(float[] legacyEmbedding) { this.legacyEmbedding = legacyEmbedding; }
+
+    public Double getEmbeddingNorm() { return embeddingNorm; }
+    public void setEmbeddingNorm(Double embeddingNorm) { this.embeddingNorm = embeddingNorm; }
+
+    public Integer getEmbeddingVersion() { return embeddingVersion; }
+    public void setEmbeddingVersion(Integer embeddingVersion) { this.embeddingVersion = embeddingVersion; }
+
+    public byte[] getQuantizedEmbedding() { return quantizedEmbedding; }
+    public void setQuantizedEmbedding(byte[] quantizedEmbedding) { this.quantizedEmbedding = quantizedEmbedding; }
+
+    public Float getQuantizedScale() { return quantizedScale; }
+    public void setQuantizedScale(Float quantizedScale) { this.quantizedScale = quantizedScale; }
+
+    public Float getQuantizedOffset() { return quantizedOffset; }
+    public void setQuantizedOffset(Float quantizedOffset) { this.quantizedOffset = quantizedOffset; }
+
+    public Long getClusterId() { return clusterId; }
+    public void setClusterId(Long clusterId) { this.clusterId = clusterId; }
+
+    public boolean isEmbeddingNormalized() {
+        return embeddingVersion != null && embeddingVersion >= EMBEDDING_NORMALIZED;
+    }
+
+    public Long getDocumentId() { return documentId; }
+    public void setDocumentId(Long documentId) { this.documentId = documentId; }
+
+    public Integer getChunkIndex() { return chunkIndex; }
+    public void setChunkIndex(Integer chunkIndex) { this.chunkIndex = chunkIndex; }
 
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
 
-    public Double getSimilarityScore() { return similarityScore; }
-    public void setSimilarityScore(Double similarityScore) { this.similarityScore = similarityScore; }
-
     // New getters/setters for file metadata
     public String getFilePath() { return filePath; }
     public void setFilePath(String filePath) { this.filePath = filePath; }
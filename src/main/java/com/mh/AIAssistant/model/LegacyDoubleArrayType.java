@@ -0,0 +1,47 @@
+package com.mh.AIAssistant.model;
+
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.postgresql.PGConnection;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+
+/**
+ * Maps a primitive float[] to the legacy double precision[] embedding column.
+ * Only needed while rows are being migrated to the bytea format.
+ */
+public class LegacyDoubleArrayType extends AbstractFloatArrayType {
+
+    // Reported as OTHER: Hibernate assumes an ARRAY-coded type on a Java array is a plural type
+    @Override
+    public int getSqlType() {
+        return Types.OTHER;
+    }
+
+    @Override
+    public float[] nullSafeGet(ResultSet rs, int position, SharedSessionContractImplementor session,
+                               Object owner) throws SQLException {
+        Array array = rs.getArray(position);
+        if (array == null) return null;
+        try {
+            return EmbeddingCodec.fromLegacyArray(array.getArray());
+        } finally {
+            array.free();
+        }
+    }
+
+    @Override
+    public void nullSafeSet(PreparedStatement st, float[] value, int index,
+                            SharedSessionContractImplementor session) throws SQLException {
+        if (value == null) {
+            st.setNull(index, Types.ARRAY);
+        } else {
+            // PGConnection accepts primitive arrays, so no boxing on the way out either
+            PGConnection connection = st.getConnection().unwrap(PGConnection.class);
+            st.setArray(index, connection.createArrayOf("float8", EmbeddingCodec.toDoubleArray(value)));
+        }
+    }
+}
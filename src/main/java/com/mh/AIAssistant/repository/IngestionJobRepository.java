@@ -0,0 +1,9 @@
+package com.mh.AIAssistant.repository;
+
+import com.mh.AIAssistant.model.IngestionJob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface IngestionJobRepository extends JpaRepository<IngestionJob, Long> {
+}
@@ -0,0 +1,17 @@
+package com.mh.AIAssistant.repository;
+
+import com.mh.AIAssistant.model.IntentDecision;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface IntentDecisionRepository extends JpaRepository<IntentDecision, Long> {
+
+    // Newest labelled examples for training
+    @Query("SELECT d FROM IntentDecision d WHERE d.embedding IS NOT NULL ORDER BY d.id DESC")
+    List<IntentDecision> findRecentWithEmbedding(Pageable pageable);
+}
@@ -1,55 +1,88 @@
 package com.mh.AIAssistant.repository;
 
+import com.mh.AIAssistant.dto.RetrievedEntry;
 import com.mh.AIAssistant.model.KnowledgeEntry;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface KnowledgeBaseRepository extends JpaRepository<KnowledgeEntry, Long> {
-    
+
+    /**
+     * Id and similarity of a scored row
+     */
+    interface ScoredRow {
+        Long getId();
+        Double getScore();
+    }
+
+    /**
+     * Id and content of an entry
+     */
+    interface ContentRow {
+        Long getId();
+        String getContent();
+    }
+
     List<KnowledgeEntry> findByUserId(String userId);
-    
+
     /**
-     * Find similar entries using cosine similarity with PostgreSQL arrays
-     * Returns entries sorted by similarity (highest first)
+     * Score entries in the database and return only ids and scores. The packed float32
+     * column is scored where present, the legacy double precision[] column otherwise.
+     * Rows stored unit-normalized are scored with kb_dot (the query must be normalized too),
+     * older rows fall back to kb_cosine. The query vector is materialized so its text
+     * is parsed once, not per row. Sorted by similarity (highest first)
      */
     @Query(value = """
-        WITH query_vec AS (
-            SELECT CAST(:embedding AS double precision[]) as vec
-        ),
-        similarities AS (
-            SELECT 
-                k.*,
-                (
-                    SELECT SUM(a * b) / (
-                        SQRT(SUM(a * a)) * SQRT(SUM(b * b))
-                    )
-                    FROM (
-                        SELECT 
-                            unnest(k.embedding) as a,
-                            unnest(q.vec) as b
-                        FROM query_vec q
-                    ) dot_product
-                ) as similarity_score
-            FROM knowledge_entries k
-            CROSS JOIN query_vec q
-            WHERE k.user_id = :userId
+        WITH q AS MATERIALIZED (
+            SELECT CAST(:embedding AS double precision[]) AS vec
         )
-        SELECT id, user_id, content, embedding, created_at, similarity_score,
-            file_path, file_name, file_type
-        FROM similarities
-        WHERE similarity_score IS NOT NULL
-        ORDER BY similarity_score DESC
+        SELECT k.id AS id,
+            CASE WHEN k.embedding_f32 IS NOT NULL THEN
+                CASE WHEN k.embedding_version >= 2 THEN kb_dot(k.embedding_f32, q.vec)
+                     ELSE kb_cosine(k.embedding_f32, q.vec)
+                END
+            WHEN k.embedding_version >= 2 THEN kb_dot(k.embedding, q.vec)
+            ELSE kb_cosine(k.embedding, q.vec)
+            END AS score
+        FROM knowledge_entries k
+        CROSS JOIN q
+        WHERE k.user_id = :userId
+          AND (k.embedding_f32 IS NOT NULL OR k.embedding IS NOT NULL)
+        ORDER BY score DESC NULLS LAST
         LIMIT :limit
         """, nativeQuery = true)
-    List<Object[]> findSimilarEntriesRaw(
-        @Param("embedding") String embedding, 
-        @Param("userId") String userId, 
+    List<ScoredRow> findSimilarIds(
+        @Param("embedding") String embedding,
+        @Param("userId") String userId,
         @Param("limit") int limit
     );
 
-}
\ No newline at end of file
+    /**
+     * Metadata of the given entries, without embedding or content
+     */
+    @Query("""
+        SELECT new com.mh.AIAssistant.dto.RetrievedEntry(
+            k.id, k.userId, k.createdAt, k.filePath, k.fileName, k.fileType, k.documentId, k.chunkIndex)
+        FROM KnowledgeEntry k
+        WHERE k.id IN :ids
+        """)
+    List<RetrievedEntry> findRetrievedEntries(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT k.id AS id, k.content AS content FROM KnowledgeEntry k WHERE k.id IN :ids")
+    List<ContentRow> findContentByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT k.id FROM KnowledgeEntry k WHERE k.documentId = :documentId")
+    List<Long> findIdsByDocument(@Param("documentId") Long documentId);
+
+    @Modifying
+    @Query("DELETE FROM KnowledgeEntry k WHERE k.documentId = :documentId")
+    int deleteByDocument(@Param("documentId") Long documentId);
+
+}
@@ -0,0 +1,29 @@
+package com.mh.AIAssistant.repository;
+
+import com.mh.AIAssistant.model.KnowledgeCentroid;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface KnowledgeCentroidRepository extends JpaRepository<KnowledgeCentroid, Long> {
+
+    List<KnowledgeCentroid> findByUserId(String userId);
+
+    List<KnowledgeCentroid> findByUserIdIsNull();
+
+    @Query("SELECT DISTINCT c.userId FROM KnowledgeCentroid c WHERE c.userId IS NOT NULL")
+    List<String> findUsersWithOwnCentroids();
+
+    @Modifying
+    @Query("DELETE FROM KnowledgeCentroid c WHERE c.userId = :userId")
+    int deleteByUser(@Param("userId") String userId);
+
+    @Modifying
+    @Query("DELETE FROM KnowledgeCentroid c WHERE c.userId IS NULL")
+    int deleteGlobal();
+}
@@ -0,0 +1,13 @@
+package com.mh.AIAssistant.repository;
+
+import com.mh.AIAssistant.model.KnowledgeDocument;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface KnowledgeDocumentRepository extends JpaRepository<KnowledgeDocument, Long> {
+
+    List<KnowledgeDocument> findByUserId(String userId);
+}
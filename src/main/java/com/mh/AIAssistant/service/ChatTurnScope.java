@@ -0,0 +1,46 @@
+package com.mh.AIAssistant.service;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * The concurrent stages of one chat turn: tasks forked onto virtual threads that
+ * share one deadline. Closing the scope interrupts whatever is still running, so
+ * work the turn no longer needs (a speculative LLM call, a late search) stops
+ * with it.
+ *
+ * Plays the role of StructuredTaskScope, which is still a preview API on Java 21.
+ */
+final class ChatTurnScope implements AutoCloseable {
+
+    private static final ThreadFactory THREADS = Thread.ofVirtual().name("chat-turn-", 0).factory();
+
+    private final long deadlineNanos;
+    private final List<Future<?>> forks = new CopyOnWriteArrayList<>();
+
+    ChatTurnScope(Duration timeout) {
+        this.deadlineNanos = System.nanoTime() + timeout.toNanos();
+    }
+
+    <T> Future<T> fork(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        forks.add(future);
+        THREADS.newThread(future).start();
+        return future;
+    }
+
+    /**
+     * Result of a fork, waiting no longer than the turn's deadline
+     *
+     * @throws TimeoutException when the deadline passes first
+     */
+    <T> T join(Future<T> future) throws InterruptedException, ExecutionException, TimeoutException {
+        return future.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        forks.forEach(future -> future.cancel(true));
+    }
+}
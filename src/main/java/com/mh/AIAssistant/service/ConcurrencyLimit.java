@@ -0,0 +1,105 @@
+package com.mh.AIAssistant.service;
+
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps concurrent calls toward one backend (Postgres, Tesseract, the LLM API).
+ * With virtual threads the number of callers is no longer bounded by a thread
+ * pool, so the backend is protected here instead: callers wait in FIFO order for
+ * up to {@code timeoutMillis}, then give up.
+ */
+public class ConcurrencyLimit {
+
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(25);
+
+    private final String name;
+    private final int maxConcurrent;
+    private final long timeoutMillis;
+    private final Semaphore permits;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger peakActive = new AtomicInteger();
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+
+    public ConcurrencyLimit(String name, int maxConcurrent, long timeoutMillis) {
+        this.name = name;
+        this.maxConcurrent = Math.max(1, maxConcurrent);
+        this.timeoutMillis = Math.max(0, timeoutMillis);
+        this.permits = new Semaphore(this.maxConcurrent, true);
+    }
+
+    /**
+     * Wait up to the timeout for a permit; false if none became free.
+     * Every successful acquire must be followed by release().
+     */
+    public boolean tryAcquire() throws InterruptedException {
+        waiting.incrementAndGet();
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                timeouts.incrementAndGet();
+                return false;
+            }
+        } finally {
+            waiting.decrementAndGet();
+        }
+        acquired.incrementAndGet();
+        peakActive.accumulateAndGet(maxConcurrent - permits.availablePermits(), Math::max);
+        return true;
+    }
+
+    /**
+     * tryAcquire for reactive callers: polls for a free permit every 25 ms on a
+     * timer instead of parking a thread, emitting true once one is taken and false
+     * when none became free within the timeout. A true must be followed by release().
+     */
+    public Mono<Boolean> acquireWithoutBlocking() {
+        long polls = timeoutMillis / POLL_INTERVAL.toMillis();
+        return Mono.defer(() -> {
+            waiting.incrementAndGet();
+            return Mono.fromCallable(permits::tryAcquire)
+                    .filter(Boolean::booleanValue)
+                    .repeatWhenEmpty(empty -> empty.take(polls).delayElements(POLL_INTERVAL))
+                    .defaultIfEmpty(false)
+                    .doFinally(signal -> waiting.decrementAndGet());
+        }).doOnNext(taken -> {
+            if (taken) {
+                acquired.incrementAndGet();
+                peakActive.accumulateAndGet(maxConcurrent - permits.availablePermits(), Math::max);
+            } else {
+                timeouts.incrementAndGet();
+            }
+        });
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public long timeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxConcurrent", maxConcurrent);
+        stats.put("active", maxConcurrent - permits.availablePermits());
+        stats.put("peakActive", peakActive.get());
+        stats.put("waiting", waiting.get());
+        stats.put("acquired", acquired.get());
+        stats.put("timeouts", timeouts.get());
+        return stats;
+    }
+}
@@ -0,0 +1,60 @@
+package com.mh.AIAssistant.service;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The backends whose concurrency is capped, so thousands of virtual threads
+ * (spring.threads.virtual.enabled) can wait on slow LLM calls without flooding
+ * the LLM API. OCR is bounded by its own pool (OcrExecutor), and Postgres by the
+ * Hikari pool: spring.datasource.hikari.maximum-pool-size connections, callers
+ * waiting up to its connection-timeout. Its pool stats are reported here too.
+ */
+@Component
+public class ConcurrencyLimits {
+
+    private final ConcurrencyLimit llm;
+    private final ObjectProvider<DataSource> dataSource;
+
+    public ConcurrencyLimits(@Value("${concurrency.llm.max-concurrent:64}") int llmMax,
+                             @Value("${concurrency.acquire-timeout-ms:30000}") long timeoutMillis,
+                             ObjectProvider<DataSource> dataSource) {
+        this.llm = new ConcurrencyLimit("llm", llmMax, timeoutMillis);
+        this.dataSource = dataSource;
+    }
+
+    public ConcurrencyLimit llm() {
+        return llm;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        // Whether the caller (e.g. the stats request) runs on a virtual thread
+        stats.put("virtualThreads", Thread.currentThread().isVirtual());
+        stats.put(llm.name(), llm.getStats());
+        if (dataSource.getIfAvailable() instanceof HikariDataSource hikari) {
+            stats.put("postgres", poolStats(hikari));
+        }
+        return stats;
+    }
+
+    private static Map<String, Object> poolStats(HikariDataSource hikari) {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("maxPoolSize", hikari.getMaximumPoolSize());
+        stats.put("connectionTimeoutMs", hikari.getConnectionTimeout());
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        if (pool != null) {
+            stats.put("active", pool.getActiveConnections());
+            stats.put("idle", pool.getIdleConnections());
+            stats.put("waiting", pool.getThreadsAwaitingConnection());
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,146 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.EmbeddingCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed embeddings for ingestion, so text that was stored before
+ * (forwarded PDFs, repeated messages, shared boilerplate chunks) is not sent to
+ * the embeddings API again.
+ *
+ * Texts are looked up by EmbeddingCache.contentKey(model, text) in the
+ * embedding_store table; only the misses are embedded, and their vectors are
+ * written back. The model is part of the key, so switching models never returns
+ * a vector from the old one. Chunks deliberately skip the in-memory
+ * EmbeddingCache: a large upload would otherwise evict the cached query
+ * embeddings, and a chunk is rarely looked up twice within minutes.
+ */
+@Service
+public class ContentEmbeddingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ContentEmbeddingStore.class);
+
+    private static final String SELECT_SQL =
+        "SELECT content_key, embedding FROM embedding_store WHERE content_key = ANY(?)";
+    private static final String INSERT_SQL =
+        "INSERT INTO embedding_store (content_key, model, embedding, token_estimate, created_at) " +
+        "VALUES (?, ?, ?, ?, now()) ON CONFLICT (content_key) DO NOTHING";
+
+    private final OpenAIEmbeddingService embeddingService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${embedding.store.enabled:true}")
+    private boolean enabled;
+
+    private final AtomicLong texts = new AtomicLong();
+    private final AtomicLong storeHits = new AtomicLong();
+    private final AtomicLong embedded = new AtomicLong();
+    private final AtomicLong savedTokens = new AtomicLong();
+    private final AtomicLong skippedRequests = new AtomicLong();
+    private final AtomicLong storeErrors = new AtomicLong();
+
+    public ContentEmbeddingStore(OpenAIEmbeddingService embeddingService,
+                                 JdbcTemplate jdbcTemplate) {
+        this.embeddingService = embeddingService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Embeddings for the texts in input order, reusing stored vectors where the
+     * same normalized text was embedded before with the current model
+     */
+    public List<float[]> embedAll(List<String> batch) {
+        if (!enabled) return embeddingService.embedAll(batch);
+        if (batch.isEmpty()) return List.of();
+        texts.addAndGet(batch.size());
+
+        String model = embeddingService.model();
+        List<String> keys = batch.stream().map(text -> EmbeddingCache.contentKey(model, text)).toList();
+        Map<String, float[]> found = load(keys.stream().distinct().toList());
+        storeHits.addAndGet(found.size());
+
+        // Embed each missing text once, even if it repeats within the batch
+        Map<String, String> missing = new LinkedHashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (!found.containsKey(keys.get(i))) missing.putIfAbsent(keys.get(i), batch.get(i));
+        }
+        if (missing.isEmpty()) {
+            skippedRequests.incrementAndGet();
+        } else {
+            List<String> missingKeys = new ArrayList<>(missing.keySet());
+            List<String> missingTexts = new ArrayList<>(missing.values());
+            List<float[]> vectors = embeddingService.embedAll(missingTexts);
+            embedded.addAndGet(missingTexts.size());
+            for (int i = 0; i < missingKeys.size(); i++) {
+                found.put(missingKeys.get(i), vectors.get(i));
+            }
+            save(model, missingKeys, missingTexts, vectors);
+        }
+
+        // Every text except the first occurrence of each embedded one was saved
+        Set<String> sent = new HashSet<>(missing.keySet());
+        List<float[]> result = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            if (!sent.remove(keys.get(i))) {
+                savedTokens.addAndGet(EmbeddingBatcher.estimateTokens(batch.get(i)));
+            }
+            // Callers own (and may normalize) the arrays they get
+            result.add(found.get(keys.get(i)).clone());
+        }
+        return result;
+    }
+
+    private Map<String, float[]> load(List<String> keys) {
+        Map<String, float[]> stored = new HashMap<>();
+        try {
+            jdbcTemplate.query(SELECT_SQL,
+                ps -> {
+                    Array array = ps.getConnection().createArrayOf("varchar", keys.toArray());
+                    ps.setArray(1, array);
+                },
+                rs -> {
+                    stored.put(rs.getString(1), EmbeddingCodec.decode(rs.getBytes(2)));
+                });
+        } catch (Exception e) {
+            // Embedding again is always possible, so a store failure only costs API calls
+            storeErrors.incrementAndGet();
+            logger.warn("Embedding store lookup failed, embedding {} texts: {}", keys.size(), e.toString());
+        }
+        return stored;
+    }
+
+    private void save(String model, List<String> keys, List<String> batch, List<float[]> vectors) {
+        List<Object[]> rows = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            rows.add(new Object[] { keys.get(i), model, EmbeddingCodec.encode(vectors.get(i)),
+                EmbeddingBatcher.estimateTokens(batch.get(i)) });
+        }
+        try {
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+        } catch (Exception e) {
+            storeErrors.incrementAndGet();
+            logger.warn("Failed to store {} embeddings: {}", keys.size(), e.toString());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("texts", texts.get());
+        stats.put("storeHits", storeHits.get());
+        stats.put("embedded", embedded.get());
+        stats.put("savedEmbeddings", texts.get() - embedded.get());
+        stats.put("savedTokens", savedTokens.get());
+        stats.put("skippedRequests", skippedRequests.get());
+        stats.put("storeErrors", storeErrors.get());
+        return stats;
+    }
+}
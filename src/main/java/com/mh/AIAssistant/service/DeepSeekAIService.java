@@ -2,10 +2,17 @@ package com.mh.AIAssistant.service;
 
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
 import reactor.util.retry.Retry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,12 +20,17 @@ import org.slf4j.LoggerFactory;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 @Service
 public class DeepSeekAIService {
 
     private static final Logger logger = LoggerFactory.getLogger(DeepSeekAIService.class);
 
+    private static final ObjectMapper JSON = new ObjectMapper();
+    private static final ParameterizedTypeReference<ServerSentEvent<String>> SSE_STRING =
+            new ParameterizedTypeReference<>() {};
+
     private final WebClient webClient;
     private final String deepSeekApiKey;
     private final String deepSeekApiUrl;
@@ -28,14 +40,17 @@ public class DeepSeekAIService {
 
     // In-memory conversation history per user
     private final Map<String, List<Map<String, String>>> conversationHistory = new ConcurrentHashMap<>();
+    private final ConcurrencyLimit llmLimit;
     
     // Maximum messages to keep in history (to avoid token limits)
     private static final int MAX_HISTORY_SIZE = 10;
 
     public DeepSeekAIService(
             @Value("${deepseek.api.url}") String apiUrl,
-            @Value("${deepseek.api.key}") String apiKey
+            @Value("${deepseek.api.key}") String apiKey,
+            ConcurrencyLimits limits
     ) {
+        this.llmLimit = limits.llm();
         this.deepSeekApiKey = apiKey;
         this.deepSeekApiUrl = apiUrl;
         this.webClient = WebClient.builder()
@@ -45,8 +60,24 @@ public class DeepSeekAIService {
                 .build();
     }
 
-    public String classifyIntent(String userId, String userMessage) {
-        String systemPrompt = """
+    // Few-shot examples of the intent prompt; IntentClassifier also trains on them
+    public static final List<String> RETRIEVE_EXAMPLES = List.of(
+            "Show me the document about project deadlines",
+            "Find my notes on machine learning",
+            "Get me the file I uploaded yesterday",
+            "What documents do I have about budget?",
+            "Retrieve the meeting notes from last week"
+    );
+
+    public static final List<String> CHAT_EXAMPLES = List.of(
+            "What is machine learning?",
+            "Explain the project deadline",
+            "How does this work?",
+            "Can you summarize this?",
+            "Tell me about the budget"
+    );
+
+    private static final String INTENT_PROMPT = """
             You are an intent classifier. Analyze the user's message and determine if they want to:
             1. RETRIEVE - They want to see/find/retrieve specific documents from their knowledge base
             2. CHAT - They want to have a conversation or ask questions about the content
@@ -54,101 +85,217 @@ public class DeepSeekAIService {
             Respond with ONLY one word: either "RETRIEVE" or "CHAT"
             
             RETRIEVE examples:
-            - "Show me the document about project deadlines"
-            - "Find my notes on machine learning"
-            - "Get me the file I uploaded yesterday"
-            - "What documents do I have about budget?"
-            - "Retrieve the meeting notes from last week"
-            
+            %s
             CHAT examples:
-            - "What is machine learning?"
-            - "Explain the project deadline"
-            - "How does this work?"
-            - "Can you summarize this?"
-            - "Tell me about the budget"
-            """;
-        
-
-        try {
-            Map<String, Object> request = Map.of(
-                    "model", chatModel,
-                    "messages", List.of(
-                            Map.of("role", "system", "content", systemPrompt),
-                            Map.of("role", "user", "content", userMessage)
-                    ),
-                    "temperature", 0.0
-            );
-
-            Map<String, Object> response = webClient.post()
-                    .uri("/chat/completions")   // ✅ uses correct DeepSeek base URL
-                    .bodyValue(request)
-                    .retrieve()
-                    .bodyToMono(Map.class)
-                    .timeout(Duration.ofSeconds(15))
-                    .block();
+            %s""".formatted(promptExamples(RETRIEVE_EXAMPLES), promptExamples(CHAT_EXAMPLES));
 
-            if (response == null) {
-                logger.warn("Intent classifier: null response, defaulting to CHAT");
-                return "CHAT";
-            }
+    private static String promptExamples(List<String> examples) {
+        return String.join("\n", examples.stream().map(example -> "- \"" + example + "\"").toList());
+    }
 
-            String reply = extractReply(response).trim().toUpperCase();
-            return reply.contains("RETRIEVE") ? "RETRIEVE" : "CHAT";
+    public String classifyIntent(String userId, String userMessage) {
+        return tryClassifyIntent(userMessage).orElse("CHAT");
+    }
 
+    /**
+     * RETRIEVE or CHAT as decided by the model, or empty if the call failed
+     */
+    public Optional<String> tryClassifyIntent(String userMessage) {
+        try {
+            return withLlmPermit(() -> requestIntent(userMessage).block(), Optional.empty());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return Optional.empty();
         } catch (Exception e) {
+            if (e.getCause() instanceof InterruptedException || Thread.currentThread().isInterrupted()) {
+                // Cancelled: the caller no longer needs the answer
+                return Optional.empty();
+            }
             logger.error("Error classifying intent, defaulting to CHAT", e);
-            return "CHAT";
+            return Optional.empty();
         }
     }
 
+    /**
+     * Non-blocking tryClassifyIntent; cancelling the subscription cancels the request
+     */
+    public Mono<Optional<String>> tryClassifyIntentAsync(String userMessage) {
+        return withLlmPermit(requestIntent(userMessage), Optional.empty());
+    }
+
+    private Mono<Optional<String>> requestIntent(String userMessage) {
+        Map<String, Object> request = Map.of(
+                "model", chatModel,
+                "messages", List.of(
+                        Map.of("role", "system", "content", INTENT_PROMPT),
+                        Map.of("role", "user", "content", userMessage)
+                ),
+                "temperature", 0.0
+        );
+
+        return webClient.post()
+                .uri("/chat/completions")   // ✅ uses correct DeepSeek base URL
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(Map.class)
+                .timeout(Duration.ofSeconds(15))
+                .map(response -> {
+                    String reply = extractReply(response).trim().toUpperCase();
+                    return Optional.of(reply.contains("RETRIEVE") ? "RETRIEVE" : "CHAT");
+                })
+                .defaultIfEmpty(Optional.empty())
+                .onErrorResume(e -> {
+                    logger.error("Error classifying intent, defaulting to CHAT", e);
+                    return Mono.just(Optional.empty());
+                });
+    }
+
     /**
      * Chat with knowledge base context and conversation memory
      */
     public String chatWithKnowledge(String userId, String userQuestion, List<String> contextTexts) {
-        // Build system prompt with knowledge base context
-        String systemPrompt = buildSystemPrompt(contextTexts);
-        
-        // Get or create conversation history for this user
-        List<Map<String, String>> history = conversationHistory.computeIfAbsent(userId, k -> new ArrayList<>());
-        
-        // Build messages list: system + history + new user message
-        List<Map<String, String>> messages = new ArrayList<>();
-        messages.add(Map.of("role", "system", "content", systemPrompt));
-        messages.addAll(history);
-        messages.add(Map.of("role", "user", "content", userQuestion));
+        try {
+            return withLlmPermit(() -> requestChatWithKnowledge(userId, userQuestion, contextTexts).block(), fallbackMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return fallbackMessage();
+        } catch (Exception ex) {
+            System.err.println("DeepSeek API error: " + ex.getMessage());
+            return fallbackMessage();
+        }
+    }
+
+    /**
+     * Non-blocking chatWithKnowledge: completes with the reply (or the fallback
+     * message) without holding a thread while DeepSeek generates it
+     */
+    public Mono<String> chatWithKnowledgeAsync(String userId, String userQuestion, List<String> contextTexts) {
+        return withLlmPermit(requestChatWithKnowledge(userId, userQuestion, contextTexts), fallbackMessage());
+    }
 
+    private Mono<String> requestChatWithKnowledge(String userId, String userQuestion, List<String> contextTexts) {
         Map<String, Object> request = Map.of(
             "model", chatModel,
-            "messages", messages,
+            "messages", buildMessages(userId, userQuestion, contextTexts),
             "stream", false,
             "temperature", 0.7,
             "max_tokens", 2000
         );
 
+        return webClient.post()
+                .uri("/chat/completions")
+                .bodyValue(request)
+                .retrieve()
+                .bodyToMono(Map.class)
+                .timeout(Duration.ofSeconds(30))
+                .retryWhen(Retry.backoff(2, Duration.ofSeconds(2))
+                        .filter(ex -> !(ex instanceof java.util.concurrent.TimeoutException)))
+                .map(response -> {
+                    String assistantReply = extractReply(response);
+
+                    // Save to conversation history
+                    addToHistory(userId, userQuestion, assistantReply);
+
+                    return assistantReply;
+                })
+                .defaultIfEmpty(fallbackMessage())
+                .onErrorResume(ex -> {
+                    System.err.println("DeepSeek API error: " + ex.getMessage());
+                    return Mono.just(fallbackMessage());
+                });
+    }
+
+    // Blocking calls take an LLM permit (concurrency.llm.max-concurrent) for the request's duration
+    private <T> T withLlmPermit(Supplier<T> call, T busy) throws InterruptedException {
+        if (!llmLimit.tryAcquire()) {
+            logger.warn("No LLM permit within {} ms", llmLimit.timeoutMillis());
+            return busy;
+        }
         try {
-            Map<String, Object> response = webClient.post()
+            return call.get();
+        } finally {
+            llmLimit.release();
+        }
+    }
+
+    // Reactive calls take the same permit without parking a thread and give it back on complete, error or cancel
+    private <T> Mono<T> withLlmPermit(Mono<T> call, T busy) {
+        return Mono.usingWhen(llmLimit.acquireWithoutBlocking(),
+                taken -> taken ? call : Mono.fromSupplier(() -> noLlmPermit(busy)),
+                this::releaseLlmPermit,
+                (taken, error) -> releaseLlmPermit(taken),
+                this::releaseLlmPermit);
+    }
+
+    private <T> Flux<T> withLlmPermit(Flux<T> call, T busy) {
+        return Flux.usingWhen(llmLimit.acquireWithoutBlocking(),
+                taken -> taken ? call : Mono.fromSupplier(() -> noLlmPermit(busy)),
+                this::releaseLlmPermit,
+                (taken, error) -> releaseLlmPermit(taken),
+                this::releaseLlmPermit);
+    }
+
+    private <T> T noLlmPermit(T busy) {
+        logger.warn("No LLM permit within {} ms", llmLimit.timeoutMillis());
+        return busy;
+    }
+
+    private Mono<Void> releaseLlmPermit(boolean taken) {
+        return Mono.fromRunnable(() -> {
+            if (taken) {
+                llmLimit.release();
+            }
+        });
+    }
+
+    /**
+     * Streaming variant of chatWithKnowledge: requests stream=true and emits the
+     * content deltas of the SSE chunks as they arrive. The assembled reply is added
+     * to the conversation history when the stream ends; if it fails or is cancelled
+     * part way, the part the user already received is kept.
+     */
+    public Flux<String> streamChatWithKnowledge(String userId, String userQuestion, List<String> contextTexts) {
+        return withLlmPermit(requestStreamChatWithKnowledge(userId, userQuestion, contextTexts), fallbackMessage());
+    }
+
+    private Flux<String> requestStreamChatWithKnowledge(String userId, String userQuestion, List<String> contextTexts) {
+        // Deferred so every subscription builds its request from the current history and gets its own buffer
+        return Flux.defer(() -> {
+            Map<String, Object> request = Map.of(
+                "model", chatModel,
+                "messages", buildMessages(userId, userQuestion, contextTexts),
+                "stream", true,
+                "temperature", 0.7,
+                "max_tokens", 2000
+            );
+
+            StringBuilder reply = new StringBuilder();
+            return webClient.post()
                     .uri("/chat/completions")
+                    .accept(MediaType.TEXT_EVENT_STREAM)
                     .bodyValue(request)
                     .retrieve()
-                    .bodyToMono(Map.class)
+                    .bodyToFlux(SSE_STRING)
+                    // Between chunks, like the 30s limit of the blocking call
                     .timeout(Duration.ofSeconds(30))
-                    .retryWhen(Retry.backoff(2, Duration.ofSeconds(2))
-                            .filter(ex -> !(ex instanceof java.util.concurrent.TimeoutException)))
-                    .block();
-
-            if (response == null) return fallbackMessage();
-
-            String assistantReply = extractReply(response);
-            
-            // Save to conversation history
-            addToHistory(userId, userQuestion, assistantReply);
-            
-            return assistantReply;
-            
-        } catch (Exception ex) {
-            System.err.println("DeepSeek API error: " + ex.getMessage());
-            return fallbackMessage();
-        }
+                    .map(ServerSentEvent::data)
+                    .filter(Objects::nonNull)
+                    .takeWhile(data -> !"[DONE]".equals(data.trim()))
+                    .mapNotNull(this::extractDelta)
+                    .filter(delta -> !delta.isEmpty())
+                    .doOnNext(reply::append)
+                    // Before onErrorResume, so errors and cancels still save the partial reply
+                    .doFinally(signal -> {
+                        if (signal == SignalType.ON_COMPLETE || reply.length() > 0) {
+                            addToHistory(userId, userQuestion, cleanResponse(reply.toString()));
+                        }
+                    })
+                    .onErrorResume(ex -> {
+                        logger.error("DeepSeek streaming error: {}", ex.toString());
+                        // Keep what the user already saw; only say something if nothing arrived
+                        return reply.length() == 0 ? Flux.just(fallbackMessage()) : Flux.empty();
+                    });
+        });
     }
 
     /**
@@ -165,6 +312,20 @@ public class DeepSeekAIService {
         conversationHistory.remove(userId);
     }
 
+    // System prompt with knowledge base context, the user's conversation history, then the new message
+    private List<Map<String, String>> buildMessages(String userId, String userQuestion, List<String> contextTexts) {
+        String systemPrompt = buildSystemPrompt(contextTexts);
+
+        // Get or create conversation history for this user
+        List<Map<String, String>> history = conversationHistory.computeIfAbsent(userId, k -> new ArrayList<>());
+
+        List<Map<String, String>> messages = new ArrayList<>();
+        messages.add(Map.of("role", "system", "content", systemPrompt));
+        messages.addAll(history);
+        messages.add(Map.of("role", "user", "content", userQuestion));
+        return messages;
+    }
+
     /**
      * Build an improved system prompt
      */
@@ -234,6 +395,20 @@ public class DeepSeekAIService {
         return fallbackMessage();
     }
 
+    /**
+     * Content delta of one streamed chunk: choices[0].delta.content (null for
+     * role-only or finish chunks)
+     */
+    private String extractDelta(String data) {
+        try {
+            JsonNode content = JSON.readTree(data).path("choices").path(0).path("delta").path("content");
+            return content.isTextual() ? content.asText() : null;
+        } catch (Exception e) {
+            logger.warn("Skipping unparseable stream chunk: {}", data);
+            return null;
+        }
+    }
+
     /**
      * Clean up the response - remove excessive markdown symbols
      */
@@ -0,0 +1,65 @@
+package com.mh.AIAssistant.service;
+
+import org.apache.poi.hwpf.HWPFDocument;
+import org.apache.poi.hwpf.extractor.WordExtractor;
+import org.apache.poi.hwpf.usermodel.HeaderStories;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * DOC (Word 97-2003) text, one paragraph at a time: headers, the body with its
+ * tables (cells separated by tabs), text boxes, footnotes, endnotes and footers.
+ *
+ * The binary format has no streaming reader, so HWPF still parses the document,
+ * but the file is read in place (read-only POIFS) rather than copied into the
+ * heap, and the text is never joined into one String.
+ */
+@Service
+public class DocTextExtractor implements StreamingTextExtractor {
+
+    @Override
+    public List<String> extensions() {
+        return List.of("doc");
+    }
+
+    @Override
+    public void extract(File file, Consumer<CharSequence> out) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file, true);
+             WordExtractor extractor = new WordExtractor(new HWPFDocument(fs))) {
+            HeaderStories stories = new HeaderStories((HWPFDocument) extractor.getDocument());
+            emitDistinct(out, stories.getFirstHeader(), stories.getEvenHeader(), stories.getOddHeader());
+            emitAll(extractor.getParagraphText(), out);
+            emitAll(extractor.getMainTextboxText(), out);
+            emitAll(extractor.getFootnoteText(), out);
+            emitAll(extractor.getEndnoteText(), out);
+            emitDistinct(out, stories.getFirstFooter(), stories.getEvenFooter(), stories.getOddFooter());
+        }
+    }
+
+    // First, even and odd page headers (or footers) are often the same text
+    private static void emitDistinct(Consumer<CharSequence> out, String... texts) {
+        for (String text : new LinkedHashSet<>(Arrays.asList(texts))) emit(text, out);
+    }
+
+    private static void emitAll(String[] paragraphs, Consumer<CharSequence> out) {
+        for (String paragraph : paragraphs) emit(paragraph, out);
+    }
+
+    // Drops field codes, turns cell marks into tabs and \r into \n
+    private static void emit(String text, Consumer<CharSequence> out) {
+        if (text == null || text.isBlank()) return;
+        String clean = WordExtractor.stripFields(text)
+            .replace('\u0007', '\t')
+            .replace("\r\n", "\n")
+            .replace('\r', '\n');
+        if (!clean.endsWith("\n")) clean += "\n";
+        out.accept(clean);
+    }
+}
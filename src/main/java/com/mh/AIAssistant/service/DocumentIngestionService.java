@@ -0,0 +1,282 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.KnowledgeDocument;
+import com.mh.AIAssistant.model.KnowledgeEntry;
+import com.mh.AIAssistant.repository.KnowledgeBaseRepository;
+import com.mh.AIAssistant.repository.KnowledgeDocumentRepository;
+import net.sourceforge.tess4j.TesseractException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Stores extracted text as a knowledge document: the text is split into
+ * overlapping chunks as it is read (see TextChunker.Stream), the chunks are embedded in batches
+ * (reusing stored embeddings of identical text, see ContentEmbeddingStore) and
+ * saved as knowledge entries that point back to the document.
+ */
+@Service
+public class DocumentIngestionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DocumentIngestionService.class);
+
+    private final ContentEmbeddingStore embeddingStore;
+    private final EmbeddingStorageService embeddingStorageService;
+    private final KnowledgeDocumentRepository documentRepository;
+    private final KnowledgeBaseRepository knowledgeBaseRepository;
+    private final VectorRetrievalService vectorRetrievalService;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${ingest.chunk.max-chars:1500}")
+    private int chunkMaxChars;
+
+    @Value("${ingest.chunk.overlap-chars:200}")
+    private int chunkOverlapChars;
+
+    @Value("${ingest.embedding.batch-size:64}")
+    private int embeddingBatchSize;
+
+    /**
+     * Embeddings for a batch of chunks, in order; firstChunk is the position of the
+     * batch's first chunk in the text
+     */
+    public interface ChunkEmbedder {
+        List<float[]> embed(int firstChunk, List<String> chunks);
+    }
+
+    public DocumentIngestionService(ContentEmbeddingStore embeddingStore,
+                                    EmbeddingStorageService embeddingStorageService,
+                                    KnowledgeDocumentRepository documentRepository,
+                                    KnowledgeBaseRepository knowledgeBaseRepository,
+                                    VectorRetrievalService vectorRetrievalService,
+                                    PlatformTransactionManager transactionManager) {
+        this.embeddingStore = embeddingStore;
+        this.embeddingStorageService = embeddingStorageService;
+        this.documentRepository = documentRepository;
+        this.knowledgeBaseRepository = knowledgeBaseRepository;
+        this.vectorRetrievalService = vectorRetrievalService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Chunk, embed and store the text. If any batch fails, the chunks stored so far
+     * and the document row are removed again and the error is rethrown.
+     */
+    public KnowledgeDocument ingest(String userId, String text, String filePath, String fileName, String fileType) {
+        return ingest(userId, text, filePath, fileName, fileType, documentId -> {});
+    }
+
+    /**
+     * Same, reporting the document id as soon as its row exists, so a caller that
+     * dies midway can clean up with {@link #discard(long)}. If the callback throws,
+     * the document is removed and nothing is stored.
+     */
+    public KnowledgeDocument ingest(String userId, String text, String filePath, String fileName, String fileType,
+                                    LongConsumer documentCreated) {
+        try {
+            return ingest(userId, TextSource.of(text), filePath, fileName, fileType, documentCreated);
+        } catch (IOException | TesseractException e) {
+            // Unreachable: a String needs no reading
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Same, for text read piece by piece: chunks are embedded and stored a batch at
+     * a time as the source produces them, so neither the whole text nor all of its
+     * chunks are held at once.
+     */
+    public KnowledgeDocument ingest(String userId, TextSource source, String filePath, String fileName,
+                                    String fileType, LongConsumer documentCreated)
+            throws IOException, TesseractException {
+        return ingest(userId, source, filePath, fileName, fileType, documentCreated, contentEmbedder());
+    }
+
+    /**
+     * Same, with the chunk embeddings supplied by the caller (e.g. computed by an
+     * earlier ingestion stage)
+     */
+    public KnowledgeDocument ingest(String userId, TextSource source, String filePath, String fileName,
+                                    String fileType, LongConsumer documentCreated, ChunkEmbedder embedder)
+            throws IOException, TesseractException {
+        DocumentWriter writer = new DocumentWriter(userId, filePath, fileName, fileType, documentCreated, embedder);
+        try {
+            long chars = feed(source, writer);
+            return writer.finish(chars);
+        } catch (RuntimeException | IOException | TesseractException e) {
+            writer.discard();
+            throw e;
+        }
+    }
+
+    /**
+     * Embed the chunks of the text without storing a document: the vectors land in
+     * the embedding store, so a later ingest of the same text doesn't call the API.
+     * Returns the number of chunks.
+     */
+    public int embed(String text) {
+        try {
+            return embed(TextSource.of(text));
+        } catch (IOException | TesseractException e) {
+            // Unreachable: a String needs no reading
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public int embed(TextSource source) throws IOException, TesseractException {
+        return embed(source, contentEmbedder());
+    }
+
+    /**
+     * Same, handing each batch of chunks to the given embedder
+     */
+    public int embed(TextSource source, ChunkEmbedder embedder) throws IOException, TesseractException {
+        List<String> batch = new ArrayList<>(embeddingBatchSize);
+        int[] count = {0};
+        feed(source, new ChunkSink() {
+            @Override
+            public void accept(String chunk) {
+                batch.add(chunk);
+                count[0]++;
+                if (batch.size() >= embeddingBatchSize) flush();
+            }
+
+            @Override
+            public void flush() {
+                if (batch.isEmpty()) return;
+                embedder.embed(count[0] - batch.size(), batch);
+                batch.clear();
+            }
+        });
+        if (count[0] == 0) {
+            throw new IllegalArgumentException("Nothing to store: text is empty");
+        }
+        return count[0];
+    }
+
+    /**
+     * Embeds through the content-addressed store (see ContentEmbeddingStore)
+     */
+    public ChunkEmbedder contentEmbedder() {
+        return (firstChunk, chunks) -> embeddingStore.embedAll(chunks);
+    }
+
+    // Takes chunks as they are cut; flush() after the last one
+    private interface ChunkSink extends Consumer<String> {
+        void flush();
+    }
+
+    /**
+     * Chunk the source into the sink, returns the length of the text
+     */
+    private long feed(TextSource source, ChunkSink sink) throws IOException, TesseractException {
+        TextChunker.Stream chunker = new TextChunker(chunkMaxChars, chunkOverlapChars).stream(sink);
+        long[] chars = {0};
+        source.writeTo(piece -> {
+            chars[0] += piece.length();
+            chunker.accept(piece);
+        });
+        chunker.finish();
+        sink.flush();
+        return chars[0];
+    }
+
+    /**
+     * Stores chunks a batch at a time; the document row is created with the first batch
+     */
+    private final class DocumentWriter implements ChunkSink {
+        private final String userId;
+        private final String filePath;
+        private final String fileName;
+        private final String fileType;
+        private final LongConsumer documentCreated;
+        private final ChunkEmbedder embedder;
+        private final List<String> batch = new ArrayList<>(embeddingBatchSize);
+        private KnowledgeDocument document;
+        private int chunks;
+
+        DocumentWriter(String userId, String filePath, String fileName, String fileType, LongConsumer documentCreated,
+                       ChunkEmbedder embedder) {
+            this.userId = userId;
+            this.filePath = filePath;
+            this.fileName = fileName;
+            this.fileType = fileType;
+            this.documentCreated = documentCreated;
+            this.embedder = embedder;
+        }
+
+        @Override
+        public void accept(String chunk) {
+            batch.add(chunk);
+            if (batch.size() >= embeddingBatchSize) flush();
+        }
+
+        @Override
+        public void flush() {
+            if (batch.isEmpty()) return;
+            if (document == null) {
+                document = documentRepository.save(new KnowledgeDocument(userId, filePath, fileName, fileType, 0));
+                documentCreated.accept(document.getId());
+            }
+            List<float[]> embeddings = embedder.embed(chunks, batch);
+
+            List<KnowledgeEntry> entries = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                KnowledgeEntry entry = new KnowledgeEntry(userId, batch.get(i),
+                    embeddings.get(i), filePath, fileName, fileType);
+                entry.setDocumentId(document.getId());
+                entry.setChunkIndex(chunks + i);
+                entries.add(entry);
+            }
+            embeddingStorageService.saveAll(entries);
+            chunks += batch.size();
+            batch.clear();
+        }
+
+        KnowledgeDocument finish(long chars) {
+            if (document == null) {
+                throw new IllegalArgumentException("Nothing to store: text is empty");
+            }
+            document.setCharCount(chars);
+            document.setChunkCount(chunks);
+            document = documentRepository.save(document);
+            logger.info("Stored document {} for user {} ({} chars, {} chunks)",
+                document.getId(), userId, chars, chunks);
+            return document;
+        }
+
+        void discard() {
+            if (document != null) DocumentIngestionService.this.discard(document.getId());
+        }
+    }
+
+    /**
+     * Remove a (partially) stored document and its chunks, and tell the vector
+     * backends so their in-memory and on-disk indexes stop returning the chunks.
+     */
+    public void discard(long documentId) {
+        try {
+            KnowledgeDocument document = documentRepository.findById(documentId).orElse(null);
+            List<Long> entryIds = transactionTemplate.execute(status -> {
+                List<Long> ids = knowledgeBaseRepository.findIdsByDocument(documentId);
+                knowledgeBaseRepository.deleteByDocument(documentId);
+                documentRepository.deleteById(documentId);
+                return ids;
+            });
+            if (document != null && entryIds != null) {
+                vectorRetrievalService.onEntriesRemoved(document.getUserId(), entryIds);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to remove partially stored document {}", documentId, e);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.mh.AIAssistant.service;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.xwpf.usermodel.XWPFRelation;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * DOCX text read part by part with StAX (see OoxmlTextReader) instead of
+ * loading an XWPFDocument: headers, the body with its tables, footnotes,
+ * endnotes and footers, one paragraph or table row at a time.
+ */
+@Service
+public class DocxTextExtractor implements StreamingTextExtractor {
+
+    @Override
+    public List<String> extensions() {
+        return List.of("docx");
+    }
+
+    @Override
+    public void extract(File file, Consumer<CharSequence> out) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            PackagePart document = OoxmlTextReader.mainPart(pkg);
+            readAll(document, XWPFRelation.HEADER.getRelation(), out);
+            OoxmlTextReader.read(document, OoxmlTextReader.WORDPROCESSING_ML, out);
+            readAll(document, XWPFRelation.FOOTNOTE.getRelation(), out);
+            readAll(document, XWPFRelation.ENDNOTE.getRelation(), out);
+            readAll(document, XWPFRelation.FOOTER.getRelation(), out);
+        } catch (InvalidFormatException e) {
+            throw new IOException("Cannot read document " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void readAll(PackagePart document, String relationshipType, Consumer<CharSequence> out)
+            throws IOException {
+        for (PackagePart part : OoxmlTextReader.related(document, relationshipType)) {
+            OoxmlTextReader.read(part, OoxmlTextReader.WORDPROCESSING_ML, out);
+        }
+    }
+}
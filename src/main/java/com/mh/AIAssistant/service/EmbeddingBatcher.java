@@ -0,0 +1,204 @@
+package com.mh.AIAssistant.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Coalesces concurrent embedding requests into batched /embeddings calls.
+ *
+ * Callers get a future per text. A dispatcher thread collects queued texts until
+ * the batch holds {@code maxBatchSize} texts, would exceed {@code maxBatchTokens}
+ * (estimated at 4 characters per token), or the first text has waited
+ * {@code lingerMillis}. Identical texts in one batch are sent once. At most
+ * {@code maxInFlight} requests run at a time; while they are busy the queue keeps
+ * filling, so bursts turn into fewer, fuller requests.
+ */
+class EmbeddingBatcher implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingBatcher.class);
+
+    private record Pending(String text, int tokens, CompletableFuture<float[]> result) {}
+
+    private final Function<List<String>, List<float[]>> sender;
+    private final int maxBatchSize;
+    private final int maxBatchTokens;
+    private final long lingerNanos;
+
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Semaphore inFlight;
+    private final ExecutorService requestExecutor;
+    private final Thread dispatcher;
+    private volatile boolean closed;
+
+    private final AtomicLong texts = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong batchedTexts = new AtomicLong();
+    private final AtomicLong deduplicated = new AtomicLong();
+    private final AtomicLong failedRequests = new AtomicLong();
+    private final AtomicInteger largestBatch = new AtomicInteger();
+
+    /**
+     * @param sender embeds a list of distinct texts in one request, results in input order
+     */
+    EmbeddingBatcher(Function<List<String>, List<float[]>> sender,
+                     int maxBatchSize, int maxBatchTokens, long lingerMillis, int maxInFlight) {
+        this.sender = sender;
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+        this.maxBatchTokens = Math.max(1, maxBatchTokens);
+        this.lingerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, lingerMillis));
+        this.inFlight = new Semaphore(Math.max(1, maxInFlight));
+
+        AtomicInteger counter = new AtomicInteger();
+        this.requestExecutor = Executors.newFixedThreadPool(Math.max(1, maxInFlight), runnable -> {
+            Thread thread = new Thread(runnable, "embedding-request-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.dispatcher = new Thread(this::dispatch, "embedding-batcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    CompletableFuture<float[]> submit(String text) {
+        CompletableFuture<float[]> result = new CompletableFuture<>();
+        if (closed) {
+            result.completeExceptionally(new IllegalStateException("Embedding batcher is closed"));
+            return result;
+        }
+        texts.incrementAndGet();
+        queue.add(new Pending(text, estimateTokens(text), result));
+        return result;
+    }
+
+    /**
+     * Queue all texts; they may share requests with other callers' texts.
+     * The future completes with the embeddings in input order, or fails if any text failed.
+     */
+    CompletableFuture<List<float[]>> submitAll(List<String> batch) {
+        List<CompletableFuture<float[]>> futures = batch.stream().map(this::submit).toList();
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+            .thenApply(done -> futures.stream().map(CompletableFuture::join).toList());
+    }
+
+    static int estimateTokens(String text) {
+        return text.length() / 4 + 1;
+    }
+
+    private void dispatch() {
+        Pending carry = null;
+        List<Pending> batch = new ArrayList<>();
+        while (!closed) {
+            try {
+                Pending first = carry != null ? carry : queue.take();
+                carry = null;
+
+                batch = new ArrayList<>();
+                batch.add(first);
+                int tokens = first.tokens();
+                long deadline = System.nanoTime() + lingerNanos;
+
+                while (batch.size() < maxBatchSize) {
+                    Pending next = queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    if (tokens + next.tokens() > maxBatchTokens) {
+                        carry = next;
+                        break;
+                    }
+                    batch.add(next);
+                    tokens += next.tokens();
+                }
+
+                inFlight.acquire();
+                List<Pending> ready = batch;
+                batch = new ArrayList<>();
+                try {
+                    requestExecutor.execute(() -> {
+                        try {
+                            send(ready);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    inFlight.release();
+                    fail(ready, e);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        // Closed: fail whatever was collected but not sent
+        if (carry != null) batch.add(carry);
+        fail(batch, new IllegalStateException("Embedding batcher is closed"));
+    }
+
+    private void send(List<Pending> batch) {
+        Map<String, List<Pending>> byText = new LinkedHashMap<>();
+        for (Pending pending : batch) {
+            byText.computeIfAbsent(pending.text(), text -> new ArrayList<>(1)).add(pending);
+        }
+        List<String> distinct = new ArrayList<>(byText.keySet());
+
+        requests.incrementAndGet();
+        batchedTexts.addAndGet(batch.size());
+        deduplicated.addAndGet(batch.size() - distinct.size());
+        largestBatch.accumulateAndGet(distinct.size(), Math::max);
+
+        try {
+            List<float[]> embeddings = sender.apply(distinct);
+            if (embeddings.size() != distinct.size()) {
+                throw new IllegalStateException("Expected " + distinct.size() + " embeddings, got " + embeddings.size());
+            }
+            for (int i = 0; i < distinct.size(); i++) {
+                List<Pending> waiting = byText.get(distinct.get(i));
+                // Each caller gets its own array
+                for (int w = 0; w < waiting.size(); w++) {
+                    float[] embedding = embeddings.get(i);
+                    waiting.get(w).result().complete(w == 0 ? embedding : embedding.clone());
+                }
+            }
+        } catch (RuntimeException e) {
+            failedRequests.incrementAndGet();
+            logger.warn("Embedding request for {} texts failed: {}", distinct.size(), e.toString());
+            fail(batch, e);
+        }
+    }
+
+    private static void fail(List<Pending> batch, Throwable error) {
+        batch.forEach(pending -> pending.result().completeExceptionally(error));
+    }
+
+    Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        long requestCount = requests.get();
+        stats.put("texts", texts.get());
+        stats.put("requests", requestCount);
+        stats.put("deduplicated", deduplicated.get());
+        stats.put("failedRequests", failedRequests.get());
+        stats.put("largestBatch", largestBatch.get());
+        stats.put("averageBatch", requestCount == 0 ? 0.0 : (double) batchedTexts.get() / requestCount);
+        stats.put("queued", queue.size());
+        stats.put("maxBatchSize", maxBatchSize);
+        stats.put("maxBatchTokens", maxBatchTokens);
+        stats.put("lingerMs", TimeUnit.NANOSECONDS.toMillis(lingerNanos));
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        dispatcher.interrupt();
+        requestExecutor.shutdown();
+        List<Pending> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        fail(remaining, new IllegalStateException("Embedding batcher is closed"));
+    }
+}
@@ -0,0 +1,257 @@
+package com.mh.AIAssistant.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Memory-bounded LRU cache of query embeddings.
+ *
+ * Keys are the model name plus the SHA-256 of the normalized text (Unicode NFKC,
+ * lower case, whitespace collapsed), so "Hi " and "hi" share an entry and a model
+ * change never returns stale vectors. Values are float[]; the cache evicts least
+ * recently used entries once their estimated size exceeds {@code embedding.cache.max-bytes}.
+ *
+ * With {@code embedding.cache.persist=true} the entries are written to
+ * {@code ${file.storage.path}/cache/query-embeddings.bin} periodically and on
+ * shutdown, and loaded again at startup.
+ */
+@Component
+public class EmbeddingCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingCache.class);
+
+    private static final int FILE_MAGIC = 0x4B424543; // "KBEC"
+    // Rough per-entry overhead: map node, key string, array header
+    private static final long ENTRY_OVERHEAD_BYTES = 200;
+
+    @Value("${embedding.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${embedding.cache.max-bytes:67108864}")
+    private long maxBytes;
+
+    @Value("${embedding.cache.persist:false}")
+    private boolean persist;
+
+    @Value("${file.storage.path:docs}")
+    private String storagePath;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, float[]> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long bytes;
+    private volatile boolean dirty;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Cached embedding for the text, computing (and caching) it on a miss.
+     * Returns a copy, so callers may modify the array.
+     */
+    public float[] get(String model, String text, Function<String, float[]> compute) {
+        if (!enabled) return compute.apply(text);
+
+        String key = key(model, text);
+        float[] cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached.clone();
+        }
+
+        misses.incrementAndGet();
+        float[] computed = compute.apply(text);
+        if (computed != null && computed.length > 0) {
+            put(key, computed.clone());
+        }
+        return computed;
+    }
+
+    /**
+     * Same as get, for a computation that completes later (without blocking the caller)
+     */
+    public CompletableFuture<float[]> getAsync(String model, String text, Function<String, CompletableFuture<float[]>> compute) {
+        if (!enabled) return compute.apply(text);
+
+        String key = key(model, text);
+        float[] cached = lookup(key);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return CompletableFuture.completedFuture(cached.clone());
+        }
+
+        misses.incrementAndGet();
+        return compute.apply(text).thenApply(computed -> {
+            if (computed != null && computed.length > 0) {
+                put(key, computed.clone());
+            }
+            return computed;
+        });
+    }
+
+    public static String key(String model, String text) {
+        return hash(model, normalize(text).toLowerCase(Locale.ROOT));
+    }
+
+    /**
+     * Same whitespace and Unicode normalization as {@link #key}, but case is kept:
+     * for document content, where "US" and "us" are different text
+     */
+    public static String contentKey(String model, String text) {
+        return hash(model, normalize(text));
+    }
+
+    private static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFKC)
+            .strip()
+            .replaceAll("\\s+", " ");
+    }
+
+    private static String hash(String model, String normalized) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(normalized.getBytes(StandardCharsets.UTF_8));
+            return model + ":" + HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Uncounted access; no copies
+    private float[] lookup(String key) {
+        lock.lock();
+        try {
+            return entries.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(String key, float[] vector) {
+        if (!enabled) return;
+        lock.lock();
+        try {
+            float[] previous = entries.put(key, vector);
+            if (previous != null) bytes -= sizeOf(previous);
+            bytes += sizeOf(vector);
+
+            Iterator<float[]> eldest = entries.values().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                bytes -= sizeOf(eldest.next());
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+            dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static long sizeOf(float[] vector) {
+        return ENTRY_OVERHEAD_BYTES + (long) vector.length * Float.BYTES;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.lock();
+        try {
+            stats.put("entries", entries.size());
+            stats.put("bytes", bytes);
+        } finally {
+            lock.unlock();
+        }
+        long hitCount = hits.get();
+        long total = hitCount + misses.get();
+        stats.put("enabled", enabled);
+        stats.put("maxBytes", maxBytes);
+        stats.put("hits", hitCount);
+        stats.put("misses", misses.get());
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", total == 0 ? 0.0 : (double) hitCount / total);
+        stats.put("persist", persist);
+        return stats;
+    }
+
+    @PostConstruct
+    void load() {
+        if (!enabled || !persist) return;
+        Path file = file();
+        if (!Files.exists(file)) return;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC) {
+                logger.warn("Ignoring embedding cache file with unknown format: {}", file);
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String key = in.readUTF();
+                float[] vector = new float[in.readInt()];
+                for (int d = 0; d < vector.length; d++) vector[d] = in.readFloat();
+                put(key, vector);
+            }
+            dirty = false;
+            logger.info("Loaded {} cached query embeddings from {}", count, file);
+        } catch (IOException e) {
+            logger.warn("Failed to load embedding cache from {}", file, e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${embedding.cache.persist-interval-ms:300000}", initialDelay = 300000)
+    @PreDestroy
+    public void save() {
+        if (!enabled || !persist || !dirty) return;
+
+        // Least recently used first, so reloading restores the LRU order
+        List<Map.Entry<String, float[]>> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<>(entries.entrySet());
+            dirty = false;
+        } finally {
+            lock.unlock();
+        }
+
+        Path file = file();
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            Files.createDirectories(file.getParent());
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(FILE_MAGIC);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, float[]> entry : snapshot) {
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(entry.getValue().length);
+                    for (float x : entry.getValue()) out.writeFloat(x);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            logger.warn("Failed to persist embedding cache to {}", file, e);
+        }
+    }
+
+    private Path file() {
+        return Paths.get(storagePath, "cache", "query-embeddings.bin");
+    }
+}
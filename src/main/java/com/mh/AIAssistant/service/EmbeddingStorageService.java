@@ -0,0 +1,296 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.EmbeddingCodec;
+import com.mh.AIAssistant.model.KnowledgeEntry;
+import com.mh.AIAssistant.repository.KnowledgeBaseRepository;
+import org.postgresql.PGConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persists knowledge entries and owns the stored embedding format.
+ *
+ * Embeddings are normalized to unit length at write time (the original norm is
+ * kept in embedding_norm) so every similarity computation is a plain dot product.
+ * An int8 quantized copy (embedding_q8 + scale/offset) is written alongside for
+ * the quantized search tier.
+ *
+ * The move from the legacy double precision[] column to the packed float32 bytea
+ * column runs in three phases controlled by configuration:
+ * 1. dual write (write-legacy=true) while the background job backfills embedding_f32
+ * 2. stop writing the legacy column (write-legacy=false); reads still fall back to it
+ * 3. clear the legacy column once every row has embedding_f32 (clear-legacy=true)
+ */
+@Service
+public class EmbeddingStorageService {
+
+    private static final Logger logger = LoggerFactory.getLogger(EmbeddingStorageService.class);
+
+    private final KnowledgeBaseRepository knowledgeBaseRepository;
+    private final VectorRetrievalService vectorRetrievalService;
+    private final IvfClusteringService ivfClusteringService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${embedding.storage.write-legacy:true}")
+    private boolean writeLegacy;
+
+    @Value("${embedding.migration.enabled:true}")
+    private boolean migrationEnabled;
+
+    @Value("${embedding.migration.batch-size:200}")
+    private int migrationBatchSize;
+
+    @Value("${embedding.migration.clear-legacy:false}")
+    private boolean clearLegacy;
+
+    private final AtomicLong migratedRows = new AtomicLong();
+    private final AtomicLong normalizedRows = new AtomicLong();
+    private final AtomicLong quantizedRows = new AtomicLong();
+    private final AtomicLong clearedRows = new AtomicLong();
+
+    public EmbeddingStorageService(KnowledgeBaseRepository knowledgeBaseRepository,
+                                   VectorRetrievalService vectorRetrievalService,
+                                   IvfClusteringService ivfClusteringService,
+                                   JdbcTemplate jdbcTemplate) {
+        this.knowledgeBaseRepository = knowledgeBaseRepository;
+        this.vectorRetrievalService = vectorRetrievalService;
+        this.ivfClusteringService = ivfClusteringService;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Normalize and quantize an entry, assign its IVF cluster, save it
+     * (dual-writing the legacy column if enabled), then add it to the vector backends
+     */
+    public KnowledgeEntry save(KnowledgeEntry entry) {
+        prepare(entry);
+        KnowledgeEntry saved = knowledgeBaseRepository.save(entry);
+        vectorRetrievalService.onEntryStored(saved.getUserId(), saved.getId(), saved.getEmbedding());
+        return saved;
+    }
+
+    /**
+     * Same as save for a batch of entries (e.g. the chunks of one document)
+     */
+    public List<KnowledgeEntry> saveAll(List<KnowledgeEntry> entries) {
+        entries.forEach(this::prepare);
+        List<KnowledgeEntry> saved = knowledgeBaseRepository.saveAll(entries);
+        for (KnowledgeEntry entry : saved) {
+            vectorRetrievalService.onEntryStored(entry.getUserId(), entry.getId(), entry.getEmbedding());
+        }
+        return saved;
+    }
+
+    private void prepare(KnowledgeEntry entry) {
+        normalize(entry);
+        quantize(entry);
+        entry.setClusterId(ivfClusteringService.assign(entry.getUserId(), entry.getEmbedding()));
+        if (writeLegacy && entry.getLegacyEmbedding() == null) {
+            entry.setLegacyEmbedding(entry.getEmbedding());
+        }
+    }
+
+    /**
+     * Replace a raw embedding with its unit-length version and remember the original norm
+     */
+    public static void normalize(KnowledgeEntry entry) {
+        float[] raw = entry.getEmbedding();
+        if (raw == null || entry.isEmbeddingNormalized()) return;
+
+        entry.setEmbeddingNorm(VectorMath.norm(raw));
+        entry.setEmbedding(VectorMath.normalize(raw));
+        if (entry.getLegacyEmbedding() != null) {
+            entry.setLegacyEmbedding(entry.getEmbedding());
+        }
+        entry.setEmbeddingVersion(KnowledgeEntry.EMBEDDING_NORMALIZED);
+    }
+
+    /**
+     * Attach the int8 quantized copy of the (already normalized) embedding
+     */
+    public static void quantize(KnowledgeEntry entry) {
+        float[] vector = entry.getEmbedding();
+        if (vector == null) return;
+
+        ScalarQuantizer.Quantized quantized = ScalarQuantizer.quantize(vector);
+        entry.setQuantizedEmbedding(quantized.codes());
+        entry.setQuantizedScale(quantized.scale());
+        entry.setQuantizedOffset(quantized.offset());
+    }
+
+    /**
+     * Background backfill, one batch per run: first embedding_f32 from the legacy
+     * column, then normalization of older rows, then the int8 quantized copy,
+     * then (optionally) legacy cleanup
+     */
+    @Scheduled(fixedDelayString = "${embedding.migration.interval-ms:60000}", initialDelay = 30000)
+    public void migrateStoredEmbeddings() {
+        if (!migrationEnabled) return;
+
+        try {
+            int migrated = migrateBatch();
+            if (migrated > 0) {
+                logger.info("Migrated {} embeddings to float32 storage ({} total)", migrated, migratedRows.get());
+                return;
+            }
+
+            int normalized = normalizeBatch();
+            if (normalized > 0) {
+                logger.info("Normalized {} stored embeddings ({} total)", normalized, normalizedRows.get());
+                return;
+            }
+
+            int quantized = quantizeBatch();
+            if (quantized > 0) {
+                logger.info("Quantized {} stored embeddings ({} total)", quantized, quantizedRows.get());
+            } else if (clearLegacy) {
+                int cleared = clearLegacyBatch();
+                if (cleared > 0) {
+                    logger.info("Cleared legacy embedding column on {} rows ({} total)", cleared, clearedRows.get());
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Embedding storage migration failed", e);
+        }
+    }
+
+    int migrateBatch() {
+        List<Object[]> updates = new ArrayList<>();
+        jdbcTemplate.query("""
+            SELECT id, embedding FROM knowledge_entries
+            WHERE embedding_f32 IS NULL AND embedding IS NOT NULL
+            ORDER BY id
+            LIMIT ?
+            """, rs -> {
+            Array legacy = rs.getArray(2);
+            float[] vector = EmbeddingCodec.fromLegacyArray(legacy.getArray());
+            updates.add(new Object[] { EmbeddingCodec.encode(vector), rs.getLong(1) });
+        }, migrationBatchSize);
+
+        if (updates.isEmpty()) return 0;
+
+        jdbcTemplate.batchUpdate(
+            "UPDATE knowledge_entries SET embedding_f32 = ? WHERE id = ? AND embedding_f32 IS NULL",
+            updates);
+        migratedRows.addAndGet(updates.size());
+        return updates.size();
+    }
+
+    int normalizeBatch() {
+        record Row(long id, float[] vector, boolean hasLegacy, double norm) {}
+
+        List<Row> rows = new ArrayList<>();
+        jdbcTemplate.query("""
+            SELECT id, embedding_f32, embedding FROM knowledge_entries
+            WHERE COALESCE(embedding_version, 1) < 2
+              AND (embedding_f32 IS NOT NULL OR embedding IS NOT NULL)
+            ORDER BY id
+            LIMIT ?
+            """, rs -> {
+            byte[] packed = rs.getBytes(2);
+            Array legacy = rs.getArray(3);
+            float[] vector = packed != null
+                ? EmbeddingCodec.decode(packed)
+                : EmbeddingCodec.fromLegacyArray(legacy.getArray());
+            rows.add(new Row(rs.getLong(1), VectorMath.normalize(vector), legacy != null, VectorMath.norm(vector)));
+        }, migrationBatchSize);
+
+        if (rows.isEmpty()) return 0;
+
+        jdbcTemplate.batchUpdate("""
+            UPDATE knowledge_entries
+            SET embedding_f32 = ?, embedding = ?, embedding_norm = ?, embedding_version = 2
+            WHERE id = ?
+            """, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Row row = rows.get(i);
+                ps.setBytes(1, EmbeddingCodec.encode(row.vector()));
+                if (row.hasLegacy()) {
+                    PGConnection connection = ps.getConnection().unwrap(PGConnection.class);
+                    ps.setArray(2, connection.createArrayOf("float8", EmbeddingCodec.toDoubleArray(row.vector())));
+                } else {
+                    ps.setNull(2, Types.ARRAY);
+                }
+                ps.setDouble(3, row.norm());
+                ps.setLong(4, row.id());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        });
+        normalizedRows.addAndGet(rows.size());
+        return rows.size();
+    }
+
+    int quantizeBatch() {
+        List<Object[]> updates = new ArrayList<>();
+        jdbcTemplate.query("""
+            SELECT id, embedding_f32 FROM knowledge_entries
+            WHERE embedding_q8 IS NULL AND embedding_f32 IS NOT NULL AND embedding_version >= 2
+            ORDER BY id
+            LIMIT ?
+            """, rs -> {
+            ScalarQuantizer.Quantized quantized = ScalarQuantizer.quantize(EmbeddingCodec.decode(rs.getBytes(2)));
+            updates.add(new Object[] { quantized.codes(), quantized.scale(), quantized.offset(), rs.getLong(1) });
+        }, migrationBatchSize);
+
+        if (updates.isEmpty()) return 0;
+
+        jdbcTemplate.batchUpdate(
+            "UPDATE knowledge_entries SET embedding_q8 = ?, embedding_q8_scale = ?, embedding_q8_offset = ? WHERE id = ?",
+            updates);
+        quantizedRows.addAndGet(updates.size());
+        return updates.size();
+    }
+
+    int clearLegacyBatch() {
+        int cleared = jdbcTemplate.update("""
+            UPDATE knowledge_entries SET embedding = NULL
+            WHERE id IN (
+                SELECT id FROM knowledge_entries
+                WHERE embedding_f32 IS NOT NULL AND embedding IS NOT NULL
+                LIMIT ?
+            )
+            """, migrationBatchSize);
+        clearedRows.addAndGet(cleared);
+        return cleared;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("writeLegacy", writeLegacy);
+        stats.put("clearLegacy", clearLegacy);
+        stats.put("migratedRows", migratedRows.get());
+        stats.put("normalizedRows", normalizedRows.get());
+        stats.put("quantizedRows", quantizedRows.get());
+        stats.put("clearedRows", clearedRows.get());
+        stats.put("pendingRows", jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM knowledge_entries WHERE embedding_f32 IS NULL AND embedding IS NOT NULL",
+            Long.class));
+        stats.put("pendingNormalization", jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM knowledge_entries WHERE COALESCE(embedding_version, 1) < 2",
+            Long.class));
+        stats.put("pendingQuantization", jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM knowledge_entries WHERE embedding_q8 IS NULL AND embedding_f32 IS NOT NULL",
+            Long.class));
+        return stats;
+    }
+}
@@ -0,0 +1,116 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.EmbeddingCodec;
+import com.mh.AIAssistant.model.KnowledgeEntry;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Exact cosine search as a flat scan in the JVM over a user's packed float32
+ * embeddings. Rows that have not been migrated yet are read from the legacy
+ * array column. Normalized rows are scored with a plain dot product; only
+ * rows awaiting the normalization backfill pay for a norm computation.
+ * Used as the fallback backend and as ground truth for recall.
+ */
+@Component
+public class ExactVectorRetriever implements VectorRetriever {
+
+    public static final String NAME = "exact";
+
+    private static final int FETCH_SIZE = 256;
+
+    // Only ship the legacy array for rows that don't have the compact column yet
+    private static final String SCAN_SQL = """
+        SELECT id, embedding_f32,
+               CASE WHEN embedding_f32 IS NULL THEN embedding END AS legacy_embedding,
+               embedding_version
+        FROM knowledge_entries
+        WHERE user_id = ?
+        """;
+
+    private static final String RESCORE_SQL = """
+        SELECT id, embedding_f32,
+               CASE WHEN embedding_f32 IS NULL THEN embedding END AS legacy_embedding,
+               embedding_version
+        FROM knowledge_entries
+        WHERE id = ANY(?)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public ExactVectorRetriever(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    /**
+     * Score every embedding the user owns and keep the top results
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ScoredId> score(String userId, float[] queryEmbedding, int limit) {
+        float[] query = VectorMath.normalize(queryEmbedding);
+        TopKCollector topK = new TopKCollector(limit);
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(SCAN_SQL);
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setString(1, userId);
+            return statement;
+        }, (RowCallbackHandler) rs -> offer(rs, query, topK));
+
+        return topK.toSortedList();
+    }
+
+    /**
+     * Exact scores for a candidate set (e.g. from the quantized tier), top results only
+     */
+    @Transactional(readOnly = true)
+    public List<ScoredId> rescore(float[] queryEmbedding, Collection<Long> ids, int limit) {
+        if (ids.isEmpty()) return List.of();
+
+        float[] query = VectorMath.normalize(queryEmbedding);
+        TopKCollector topK = new TopKCollector(limit);
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(RESCORE_SQL);
+            statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            return statement;
+        }, (RowCallbackHandler) rs -> offer(rs, query, topK));
+
+        return topK.toSortedList();
+    }
+
+    private static void offer(ResultSet rs, float[] query, TopKCollector topK) throws SQLException {
+        float[] vector;
+        byte[] packed = rs.getBytes(2);
+        if (packed != null) {
+            vector = EmbeddingCodec.decode(packed);
+        } else {
+            Array legacy = rs.getArray(3);
+            if (legacy == null) return;
+            vector = EmbeddingCodec.fromLegacyArray(legacy.getArray());
+        }
+
+        if (rs.getInt(4) >= KnowledgeEntry.EMBEDDING_NORMALIZED) {
+            topK.offer(rs.getLong(1), VectorMath.dot(query, vector));
+            return;
+        }
+        double norm = VectorMath.norm(vector);
+        if (norm == 0.0) return;
+        topK.offer(rs.getLong(1), VectorMath.dot(query, vector) / norm);
+    }
+}
@@ -28,6 +28,9 @@ public class FileStorageService {
     @Value("${file.storage.path}")
     private String folderPath;
 
+    @Value("${file.storage.download-timeout-ms:60000}")
+    private int downloadTimeoutMs;
+
     public FileStorageService(TwilioConfig twilioConfig) {
         this.twilioConfig = twilioConfig;
     }
@@ -67,6 +70,9 @@ public class FileStorageService {
         String userPass = accountSid + ":" + authToken;
         String basicAuth = "Basic " + Base64.getEncoder().encodeToString(userPass.getBytes());
         conn.setRequestProperty("Authorization", basicAuth);
+        // Don't let a stalled media download hold its (virtual) thread forever
+        conn.setConnectTimeout(downloadTimeoutMs);
+        conn.setReadTimeout(downloadTimeoutMs);
 
         // Download the file
         try (InputStream in = conn.getInputStream()) {
@@ -0,0 +1,296 @@
+package com.mh.AIAssistant.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory Hierarchical Navigable Small World graph for approximate
+ * nearest-neighbour search. Vectors are normalized on insert so the
+ * similarity used throughout is cosine (a plain dot product).
+ *
+ * Removed ids are tombstoned: their nodes stay in the graph so it remains
+ * navigable, but searches skip them. They disappear when the index is rebuilt.
+ */
+public class HnswIndex {
+
+    private static final class Node {
+        final long id;
+        final float[] vector;
+        final List<List<Node>> neighbors;
+
+        Node(long id, float[] vector, int level) {
+            this.id = id;
+            this.vector = vector;
+            this.neighbors = new ArrayList<>(level + 1);
+            for (int i = 0; i <= level; i++) {
+                neighbors.add(new ArrayList<>());
+            }
+        }
+
+        int level() {
+            return neighbors.size() - 1;
+        }
+    }
+
+    private record Candidate(Node node, double score) {}
+
+    private static final Comparator<Candidate> BY_SCORE = Comparator.comparingDouble(Candidate::score);
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random;
+
+    private final Map<Long, Node> nodes = new HashMap<>();
+    private final Set<Long> removed = new HashSet<>();
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private Node entryPoint;
+
+    public HnswIndex(int m, int efConstruction) {
+        this(m, efConstruction, new Random());
+    }
+
+    public HnswIndex(int m, int efConstruction, Random random) {
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(efConstruction, this.m);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        this.random = random;
+    }
+
+    /**
+     * Number of searchable (not removed) entries
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return nodes.size() - removed.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Number of removed entries still held in the graph
+     */
+    public int removedCount() {
+        lock.readLock().lock();
+        try {
+            return removed.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public boolean contains(long id) {
+        lock.readLock().lock();
+        try {
+            return nodes.containsKey(id) && !removed.contains(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Hide an entry from searches; returns false if the id isn't indexed
+     */
+    public boolean remove(long id) {
+        lock.writeLock().lock();
+        try {
+            return nodes.containsKey(id) && removed.add(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Insert a vector; re-adding an existing id is a no-op since stored embeddings never change
+     */
+    public void add(long id, float[] vector) {
+        float[] normalized = VectorMath.normalize(vector);
+
+        lock.writeLock().lock();
+        try {
+            if (nodes.containsKey(id)) return;
+
+            Node node = new Node(id, normalized, randomLevel());
+            nodes.put(id, node);
+
+            if (entryPoint == null) {
+                entryPoint = node;
+                return;
+            }
+
+            Node current = entryPoint;
+            int topLevel = entryPoint.level();
+
+            // Greedy descent through the layers above the new node's level
+            for (int level = topLevel; level > node.level(); level--) {
+                current = greedyClosest(normalized, current, level);
+            }
+
+            List<Candidate> entryPoints = List.of(new Candidate(current, VectorMath.dot(normalized, current.vector)));
+            for (int level = Math.min(node.level(), topLevel); level >= 0; level--) {
+                List<Candidate> candidates = searchLayer(normalized, entryPoints, efConstruction, level);
+                int maxConnections = level == 0 ? maxM0 : m;
+
+                for (Candidate candidate : selectNeighbors(candidates, m)) {
+                    node.neighbors.get(level).add(candidate.node());
+                    List<Node> back = candidate.node().neighbors.get(level);
+                    back.add(node);
+                    if (back.size() > maxConnections) {
+                        prune(candidate.node(), level, maxConnections);
+                    }
+                }
+                entryPoints = candidates;
+            }
+
+            if (node.level() > topLevel) {
+                entryPoint = node;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Return up to k nearest entries, highest similarity first
+     */
+    public List<ScoredId> search(float[] query, int k, int ef) {
+        float[] normalized = VectorMath.normalize(query);
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint == null || k <= 0) return List.of();
+
+            Node current = entryPoint;
+            for (int level = entryPoint.level(); level > 0; level--) {
+                current = greedyClosest(normalized, current, level);
+            }
+
+            // Widen the beam by the removed entries it may have to step over
+            List<Candidate> candidates = searchLayer(normalized,
+                List.of(new Candidate(current, VectorMath.dot(normalized, current.vector))),
+                Math.max(ef, k + Math.min(removed.size(), ef)), 0);
+
+            List<ScoredId> hits = new ArrayList<>(Math.min(k, candidates.size()));
+            for (int i = 0; i < candidates.size() && hits.size() < k; i++) {
+                Candidate c = candidates.get(i);
+                if (removed.contains(c.node().id)) continue;
+                hits.add(new ScoredId(c.node().id, c.score()));
+            }
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - random.nextDouble();
+        return (int) Math.floor(-Math.log(u) * levelMultiplier);
+    }
+
+    private Node greedyClosest(float[] query, Node start, int level) {
+        Node current = start;
+        double best = VectorMath.dot(query, current.vector);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            for (Node neighbor : current.neighbors.get(level)) {
+                double score = VectorMath.dot(query, neighbor.vector);
+                if (score > best) {
+                    best = score;
+                    current = neighbor;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Beam search on one layer; returns up to ef candidates sorted by descending similarity
+     */
+    private List<Candidate> searchLayer(float[] query, List<Candidate> entryPoints, int ef, int level) {
+        Set<Long> visited = new HashSet<>();
+        PriorityQueue<Candidate> toVisit = new PriorityQueue<>(BY_SCORE.reversed());
+        PriorityQueue<Candidate> found = new PriorityQueue<>(BY_SCORE);
+
+        for (Candidate ep : entryPoints) {
+            if (visited.add(ep.node().id)) {
+                toVisit.add(ep);
+                found.add(ep);
+            }
+        }
+        while (found.size() > ef) found.poll();
+
+        while (!toVisit.isEmpty()) {
+            Candidate closest = toVisit.poll();
+            if (found.size() >= ef && closest.score() < found.peek().score()) break;
+
+            for (Node neighbor : closest.node().neighbors.get(level)) {
+                if (!visited.add(neighbor.id)) continue;
+
+                double score = VectorMath.dot(query, neighbor.vector);
+                if (found.size() < ef || score > found.peek().score()) {
+                    Candidate candidate = new Candidate(neighbor, score);
+                    toVisit.add(candidate);
+                    found.add(candidate);
+                    if (found.size() > ef) found.poll();
+                }
+            }
+        }
+
+        List<Candidate> result = new ArrayList<>(found);
+        result.sort(BY_SCORE.reversed());
+        return result;
+    }
+
+    /**
+     * Neighbour selection heuristic: keep a candidate only if it is closer to the
+     * query than to any neighbour already selected, which keeps the graph navigable
+     */
+    private List<Candidate> selectNeighbors(List<Candidate> sortedCandidates, int max) {
+        List<Candidate> selected = new ArrayList<>(max);
+        for (Candidate candidate : sortedCandidates) {
+            if (selected.size() >= max) break;
+            boolean keep = true;
+            for (Candidate chosen : selected) {
+                if (VectorMath.dot(candidate.node().vector, chosen.node().vector) > candidate.score()) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) selected.add(candidate);
+        }
+        // Top up with the closest remaining candidates if the heuristic was too strict
+        for (Candidate candidate : sortedCandidates) {
+            if (selected.size() >= max) break;
+            if (!selected.contains(candidate)) selected.add(candidate);
+        }
+        return selected;
+    }
+
+    private void prune(Node node, int level, int maxConnections) {
+        List<Candidate> candidates = new ArrayList<>();
+        for (Node neighbor : node.neighbors.get(level)) {
+            candidates.add(new Candidate(neighbor, VectorMath.dot(node.vector, neighbor.vector)));
+        }
+        candidates.sort(BY_SCORE.reversed());
+
+        List<Node> kept = new ArrayList<>(maxConnections);
+        for (Candidate candidate : selectNeighbors(candidates, maxConnections)) {
+            kept.add(candidate.node());
+        }
+        node.neighbors.set(level, kept);
+    }
+}
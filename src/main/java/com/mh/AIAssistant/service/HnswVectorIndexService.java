@@ -0,0 +1,239 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.EmbeddingCodec;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Per-user HNSW indexes held in memory. Only built when hnsw is the configured
+ * vector.search.backend: rebuilt from knowledge_entries at startup, updated
+ * incrementally as entries are stored or removed, and a sample of queries is
+ * checked against the exact search in the background to report recall. Removed entries stay in the graph as
+ * tombstones until the next rebuild.
+ */
+@Service
+public class HnswVectorIndexService implements VectorRetriever {
+
+    private static final Logger logger = LoggerFactory.getLogger(HnswVectorIndexService.class);
+
+    public static final String NAME = "hnsw";
+
+    private static final int REBUILD_PAGE_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExactVectorRetriever exactRetriever;
+
+    @Value("${vector.search.backend:hnsw}")
+    private String backend;
+
+    @Value("${vector.hnsw.m:16}")
+    private int m;
+
+    @Value("${vector.hnsw.ef-construction:200}")
+    private int efConstruction;
+
+    @Value("${vector.hnsw.ef-search:64}")
+    private int efSearch;
+
+    @Value("${vector.hnsw.recall-sample-rate:0.05}")
+    private double recallSampleRate;
+
+    private final Map<String, HnswIndex> indexes = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    // Recall of sampled queries against the exact query
+    private final AtomicLong recallSamples = new AtomicLong();
+    private final DoubleAdder recallSum = new DoubleAdder();
+    private volatile double lastRecall = Double.NaN;
+
+    // Exact scans for sampled queries, off the query path; dropped when it falls behind
+    private final ThreadPoolExecutor recallSampler;
+
+    public HnswVectorIndexService(JdbcTemplate jdbcTemplate,
+                                  ExactVectorRetriever exactRetriever) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exactRetriever = exactRetriever;
+        this.recallSampler = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(16), runnable -> {
+            Thread thread = new Thread(runnable, "hnsw-recall");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Build indexes in the background so startup isn't blocked; queries use
+     * the fallback backend until the rebuild finishes
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildOnStartup() {
+        if (!selected()) return;
+        Thread thread = new Thread(this::rebuild, "hnsw-rebuild");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Rebuild every user's index from knowledge_entries, which also drops removed
+     * entries. Only ids, owners and vectors are read; the legacy column only for
+     * rows the embedding migration hasn't reached yet.
+     */
+    public void rebuild() {
+        long start = System.currentTimeMillis();
+        ready = false;
+        indexes.clear();
+
+        try {
+            long count = 0;
+            long lastId = 0;
+            while (true) {
+                long[] last = { lastId };
+                int[] rows = { 0 };
+                jdbcTemplate.query("""
+                    SELECT id, user_id, embedding_f32,
+                           CASE WHEN embedding_f32 IS NULL THEN embedding END AS legacy
+                    FROM knowledge_entries
+                    WHERE id > ? AND (embedding_f32 IS NOT NULL OR embedding IS NOT NULL)
+                    ORDER BY id
+                    LIMIT ?
+                    """, rs -> {
+                    byte[] packed = rs.getBytes(3);
+                    float[] embedding = packed != null
+                        ? EmbeddingCodec.decode(packed)
+                        : EmbeddingCodec.fromLegacyArray(rs.getArray(4).getArray());
+                    indexFor(rs.getString(2)).add(rs.getLong(1), embedding);
+                    last[0] = rs.getLong(1);
+                    rows[0]++;
+                }, lastId, REBUILD_PAGE_SIZE);
+                count += rows[0];
+                lastId = last[0];
+                if (rows[0] < REBUILD_PAGE_SIZE) break;
+            }
+
+            ready = true;
+            logger.info("HNSW index rebuilt: {} entries for {} users in {} ms",
+                count, indexes.size(), System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("Failed to rebuild HNSW index, falling back to flat scan", e);
+        }
+    }
+
+    @Override
+    public void onEntryStored(String userId, Long entryId, float[] embedding) {
+        if (!selected() || entryId == null || embedding == null) return;
+        indexFor(userId).add(entryId, embedding);
+    }
+
+    @Override
+    public void onEntriesRemoved(String userId, Collection<Long> entryIds) {
+        HnswIndex index = indexes.get(userId);
+        if (index == null) return;
+        for (Long id : entryIds) {
+            index.remove(id);
+        }
+    }
+
+    @Override
+    public List<ScoredId> score(String userId, float[] queryEmbedding, int limit) {
+        HnswIndex index = indexes.get(userId);
+        if (index == null) return Collections.emptyList();
+
+        List<ScoredId> results = index.search(queryEmbedding, limit, efSearch);
+
+        if (recallSampleRate > 0 && ThreadLocalRandom.current().nextDouble() < recallSampleRate) {
+            List<ScoredId> approximate = List.copyOf(results);
+            float[] query = queryEmbedding.clone();
+            recallSampler.execute(() -> {
+                try {
+                    recordRecall(approximate, exactRetriever.score(userId, query, limit));
+                } catch (Exception e) {
+                    logger.warn("HNSW recall sample failed for {}", userId, e);
+                }
+            });
+        }
+
+        return results;
+    }
+
+    /**
+     * Run one query against both the index and the exact query and return recall@limit
+     */
+    public double measureRecall(String userId, float[] queryEmbedding, int limit) {
+        HnswIndex index = indexes.get(userId);
+        List<ScoredId> approximate = index == null
+            ? Collections.emptyList()
+            : index.search(queryEmbedding, limit, efSearch);
+        return recordRecall(approximate, exactRetriever.score(userId, queryEmbedding, limit));
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("ready", ready);
+        stats.put("users", indexes.size());
+        stats.put("entries", indexes.values().stream().mapToInt(HnswIndex::size).sum());
+        stats.put("removed", indexes.values().stream().mapToInt(HnswIndex::removedCount).sum());
+        stats.put("efSearch", efSearch);
+        stats.put("recallSamples", recallSamples.get());
+        long samples = recallSamples.get();
+        stats.put("meanRecall", samples == 0 ? null : recallSum.sum() / samples);
+        stats.put("lastRecall", Double.isNaN(lastRecall) ? null : lastRecall);
+        return stats;
+    }
+
+    private boolean selected() {
+        return NAME.equals(backend);
+    }
+
+    private HnswIndex indexFor(String userId) {
+        return indexes.computeIfAbsent(userId, k -> new HnswIndex(m, efConstruction));
+    }
+
+    private double recordRecall(List<ScoredId> approximate, List<ScoredId> exact) {
+        if (exact.isEmpty()) return 1.0;
+
+        Set<Long> approximateIds = approximate.stream()
+            .map(ScoredId::id)
+            .collect(Collectors.toSet());
+        long matched = exact.stream().filter(e -> approximateIds.contains(e.id())).count();
+        double recall = (double) matched / exact.size();
+
+        recallSamples.incrementAndGet();
+        recallSum.add(recall);
+        lastRecall = recall;
+
+        if (recall < 0.9) {
+            logger.warn("HNSW recall below 0.9 on sampled query: {}", recall);
+        }
+        return recall;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        recallSampler.shutdownNow();
+    }
+}
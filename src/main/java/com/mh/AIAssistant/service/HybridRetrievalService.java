@@ -0,0 +1,183 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.dto.RetrievedEntry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hybrid retrieval: full-text search and vector search run concurrently and their
+ * rankings are merged with reciprocal rank fusion.
+ *
+ * If the query contains identifier-like terms (invoice numbers, error codes, quoted
+ * phrases) and entries contain them literally, those entries are returned right
+ * away; this check runs first, so such queries never pay for the embedding
+ * round-trip. Otherwise the vector leg (query embedding + similarity search) runs
+ * on a small pool while the calling thread runs the lexical leg.
+ *
+ * Returned entries carry their cosine similarity; entries found only by the lexical
+ * leg are rescored against the query embedding (0 when there is none, the full-text
+ * rank is on another scale), exact matches score 1.0.
+ */
+@Service
+public class HybridRetrievalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(HybridRetrievalService.class);
+
+    private final OpenAIEmbeddingService embeddingService;
+    private final VectorRetrievalService vectorRetrievalService;
+    private final LexicalRetriever lexicalRetriever;
+    private final ExactVectorRetriever exactRetriever;
+    private final KnowledgeEntryHydrator hydrator;
+    private final ExecutorService executor;
+
+    @Value("${retrieval.hybrid.enabled:true}")
+    private boolean enabled;
+
+    @Value("${retrieval.hybrid.rrf-k:60}")
+    private int rrfK;
+
+    @Value("${retrieval.hybrid.vector-timeout-ms:20000}")
+    private long vectorTimeoutMs;
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong exactShortCircuits = new AtomicLong();
+    private final AtomicLong vectorFailures = new AtomicLong();
+
+    /**
+     * Ranked entries (metadata only), the query embedding if the vector leg ran,
+     * and whether the exact-match short-circuit answered the query
+     */
+    public record Hits(List<RetrievedEntry> entries, float[] queryVector, boolean exactMatch) {}
+
+    private record VectorLeg(float[] query, List<ScoredId> hits) {
+        static final VectorLeg EMPTY = new VectorLeg(null, List.of());
+    }
+
+    public HybridRetrievalService(OpenAIEmbeddingService embeddingService,
+                                  VectorRetrievalService vectorRetrievalService,
+                                  LexicalRetriever lexicalRetriever,
+                                  ExactVectorRetriever exactRetriever,
+                                  KnowledgeEntryHydrator hydrator,
+                                  @Value("${retrieval.hybrid.threads:8}") int threads,
+                                  @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.embeddingService = embeddingService;
+        this.vectorRetrievalService = vectorRetrievalService;
+        this.lexicalRetriever = lexicalRetriever;
+        this.exactRetriever = exactRetriever;
+        this.hydrator = hydrator;
+
+        if (virtualThreads) {
+            // One virtual thread per search; Postgres concurrency is capped by the Hikari pool
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("hybrid-vector-", 1).factory());
+        } else {
+            AtomicInteger counter = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "hybrid-vector-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Top entries for the query, metadata only (load content for the ones you keep).
+     * Vector hits below minSimilarity are dropped before fusion; lexical hits are kept
+     * because they matched the query's words.
+     */
+    public Hits search(String userId, String query, int limit, double minSimilarity) {
+        return search(userId, query, limit, minSimilarity, () -> embeddingService.embed(query));
+    }
+
+    /**
+     * Same, with the query embedding supplied by the caller (e.g. already being computed)
+     */
+    public Hits search(String userId, String query, int limit, double minSimilarity, Callable<float[]> queryEmbedding) {
+        searches.incrementAndGet();
+        if (!enabled) {
+            VectorLeg vector = await(executor.submit(() -> vectorLeg(userId, queryEmbedding, limit, minSimilarity)));
+            return new Hits(hydrator.hydrate(vector.hits()), vector.query(), false);
+        }
+
+        List<String> exactTerms = LexicalRetriever.exactTerms(query);
+        if (!exactTerms.isEmpty()) {
+            List<ScoredId> exact = lexicalRetriever.exactMatches(userId, exactTerms, limit);
+            if (!exact.isEmpty()) {
+                exactShortCircuits.incrementAndGet();
+                logger.info("Exact match for {} in {} entries, skipping vector search", exactTerms, exact.size());
+                return new Hits(hydrator.hydrate(exact), null, true);
+            }
+        }
+
+        Future<VectorLeg> vectorLeg = executor.submit(() -> vectorLeg(userId, queryEmbedding, limit, minSimilarity));
+        List<ScoredId> lexical = lexicalRetriever.search(userId, query, limit);
+
+        VectorLeg vector = await(vectorLeg);
+        List<ScoredId> fused = ReciprocalRankFusion.fuse(List.of(vector.hits(), lexical), rrfK, limit);
+        return new Hits(hydrator.hydrate(withSimilarities(fused, vector)), vector.query(), false);
+    }
+
+    private VectorLeg vectorLeg(String userId, Callable<float[]> embedding, int limit, double minSimilarity) throws Exception {
+        float[] queryEmbedding = embedding.call();
+        if (queryEmbedding == null || queryEmbedding.length == 0) return VectorLeg.EMPTY;
+
+        List<ScoredId> hits = vectorRetrievalService.score(userId, queryEmbedding, limit).stream()
+            .filter(hit -> hit.score() >= minSimilarity)
+            .toList();
+        return new VectorLeg(queryEmbedding, hits);
+    }
+
+    private VectorLeg await(Future<VectorLeg> vectorLeg) {
+        try {
+            return vectorLeg.get(vectorTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            vectorLeg.cancel(true);
+        } catch (ExecutionException | TimeoutException e) {
+            vectorLeg.cancel(true);
+            vectorFailures.incrementAndGet();
+            logger.warn("Vector leg failed, using lexical results only: {}", e.toString());
+        }
+        return VectorLeg.EMPTY;
+    }
+
+    /**
+     * Keep the fused order but report cosine similarity: from the vector leg, or by
+     * rescoring lexical-only hits; 0 for those when there is no query embedding
+     */
+    private List<ScoredId> withSimilarities(List<ScoredId> fused, VectorLeg vector) {
+        Map<Long, Double> similarity = new HashMap<>();
+        vector.hits().forEach(hit -> similarity.put(hit.id(), hit.score()));
+
+        List<Long> lexicalOnly = fused.stream().map(ScoredId::id).filter(id -> !similarity.containsKey(id)).toList();
+        if (!lexicalOnly.isEmpty() && vector.query() != null) {
+            exactRetriever.rescore(vector.query(), lexicalOnly, lexicalOnly.size())
+                .forEach(hit -> similarity.put(hit.id(), hit.score()));
+        }
+
+        return fused.stream()
+            .map(hit -> new ScoredId(hit.id(), similarity.getOrDefault(hit.id(), 0.0)))
+            .toList();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("searches", searches.get());
+        stats.put("exactShortCircuits", exactShortCircuits.get());
+        stats.put("vectorFailures", vectorFailures.get());
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,110 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.EmbeddingCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Carries chunk embeddings from an ingestion job's embed stage to its index stage
+ * through the ingestion_job_embeddings table, so a document is embedded (and
+ * billed) once even when the content-addressed store (embedding.store.enabled)
+ * is off. A batch whose stored rows are missing or no longer match its chunks
+ * (e.g. the chunk size changed in between) is embedded again.
+ */
+@Service
+public class IngestionJobEmbeddings {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobEmbeddings.class);
+
+    private static final String INSERT_SQL = """
+        INSERT INTO ingestion_job_embeddings (job_id, chunk_index, content_key, embedding)
+        VALUES (?, ?, ?, ?)
+        ON CONFLICT (job_id, chunk_index) DO UPDATE
+        SET content_key = EXCLUDED.content_key, embedding = EXCLUDED.embedding
+        """;
+
+    private static final String SELECT_SQL = """
+        SELECT chunk_index, content_key, embedding FROM ingestion_job_embeddings
+        WHERE job_id = ? AND chunk_index >= ? AND chunk_index < ?
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OpenAIEmbeddingService embeddingService;
+
+    private final AtomicLong saved = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong embeddedAgain = new AtomicLong();
+
+    public IngestionJobEmbeddings(JdbcTemplate jdbcTemplate, OpenAIEmbeddingService embeddingService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.embeddingService = embeddingService;
+    }
+
+    /**
+     * Embed with the given embedder and keep the vectors for the job's index stage
+     */
+    public DocumentIngestionService.ChunkEmbedder recording(long jobId, DocumentIngestionService.ChunkEmbedder embedder) {
+        return (firstChunk, chunks) -> {
+            List<float[]> vectors = embedder.embed(firstChunk, chunks);
+            String model = embeddingService.model();
+            List<Object[]> rows = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                rows.add(new Object[] { jobId, firstChunk + i, EmbeddingCache.contentKey(model, chunks.get(i)),
+                    EmbeddingCodec.encode(vectors.get(i)) });
+            }
+            jdbcTemplate.batchUpdate(INSERT_SQL, rows);
+            saved.addAndGet(rows.size());
+            return vectors;
+        };
+    }
+
+    /**
+     * The vectors the job's embed stage kept; the embedder only for batches that have none
+     */
+    public DocumentIngestionService.ChunkEmbedder replaying(long jobId, DocumentIngestionService.ChunkEmbedder embedder) {
+        return (firstChunk, chunks) -> {
+            Map<Integer, String> keys = new HashMap<>();
+            Map<Integer, float[]> vectors = new HashMap<>();
+            jdbcTemplate.query(SELECT_SQL, rs -> {
+                keys.put(rs.getInt(1), rs.getString(2));
+                vectors.put(rs.getInt(1), EmbeddingCodec.decode(rs.getBytes(3)));
+            }, jobId, firstChunk, firstChunk + chunks.size());
+
+            String model = embeddingService.model();
+            List<float[]> result = new ArrayList<>(chunks.size());
+            for (int i = 0; i < chunks.size(); i++) {
+                if (!EmbeddingCache.contentKey(model, chunks.get(i)).equals(keys.get(firstChunk + i))) {
+                    embeddedAgain.addAndGet(chunks.size());
+                    return embedder.embed(firstChunk, chunks);
+                }
+                result.add(vectors.get(firstChunk + i));
+            }
+            reused.addAndGet(chunks.size());
+            return result;
+        };
+    }
+
+    /**
+     * Drop the job's vectors once it is indexed or has failed
+     */
+    public void clear(long jobId) {
+        try {
+            jdbcTemplate.update("DELETE FROM ingestion_job_embeddings WHERE job_id = ?", jobId);
+        } catch (Exception e) {
+            logger.warn("Failed to remove stored embeddings of ingestion job {}: {}", jobId, e.toString());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("saved", saved.get());
+        stats.put("reused", reused.get());
+        stats.put("embeddedAgain", embeddedAgain.get());
+        return stats;
+    }
+}
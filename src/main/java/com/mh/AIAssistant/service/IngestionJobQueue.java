@@ -0,0 +1,168 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.enums.IngestionStage;
+import com.mh.AIAssistant.enums.IngestionStatus;
+import com.mh.AIAssistant.model.IngestionJob;
+import com.mh.AIAssistant.repository.IngestionJobRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * The ingestion_jobs table as a work queue shared by every instance.
+ *
+ * Workers claim PENDING jobs of a stage with FOR UPDATE SKIP LOCKED, so
+ * concurrent claimers never wait on or take the same row. A claim marks the job
+ * RUNNING under the claimer's id and commits at once; the claimer renews
+ * locked_at while it works, and jobs whose lease runs out (crashed or stopped
+ * instance) go back to PENDING. Every later update is fenced on locked_by, so a
+ * worker that lost its lease can't overwrite the new owner's progress.
+ */
+@Service
+public class IngestionJobQueue {
+
+    private static final String CLAIM_SQL = """
+        UPDATE ingestion_jobs
+        SET status = 'RUNNING', locked_by = ?, locked_at = now(), attempts = attempts + 1, updated_at = now()
+        WHERE id IN (
+            SELECT id FROM ingestion_jobs
+            WHERE status = 'PENDING' AND stage = ? AND (next_attempt_at IS NULL OR next_attempt_at <= now())
+            ORDER BY id
+            LIMIT ?
+            FOR UPDATE SKIP LOCKED)
+        RETURNING id
+        """;
+
+    private static final String RELEASE_EXPIRED_SQL = """
+        UPDATE ingestion_jobs
+        SET status = 'PENDING', locked_by = NULL, next_attempt_at = NULL, updated_at = now()
+        WHERE status = 'RUNNING' AND locked_at < now() - ? * interval '1 millisecond'
+        RETURNING id
+        """;
+
+    // Moves the job to the next stage (setting the stage's output); the stage's attempts start over
+    private static final String ADVANCE_SQL = """
+        UPDATE ingestion_jobs
+        SET %s stage = ?, status = ?, attempts = 0, last_error = NULL, next_attempt_at = NULL,
+            locked_by = NULL, locked_at = NULL, updated_at = now()
+        WHERE id = ? AND locked_by = ?
+        """;
+
+    private final IngestionJobRepository repository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public IngestionJobQueue(IngestionJobRepository repository, JdbcTemplate jdbcTemplate) {
+        this.repository = repository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public IngestionJob enqueue(IngestionJob job) {
+        return repository.save(job);
+    }
+
+    public Optional<IngestionJob> find(long id) {
+        return repository.findById(id);
+    }
+
+    /**
+     * Claim up to {@code limit} due jobs waiting for the stage after {@code reached}
+     */
+    public List<Long> claim(IngestionStage reached, String worker, int limit) {
+        return jdbcTemplate.queryForList(CLAIM_SQL, Long.class, worker, reached.name(), limit);
+    }
+
+    /**
+     * Renew the lease on every job the worker holds
+     */
+    public int heartbeat(String worker) {
+        return jdbcTemplate.update(
+            "UPDATE ingestion_jobs SET locked_at = now() WHERE status = 'RUNNING' AND locked_by = ?", worker);
+    }
+
+    /**
+     * Put jobs whose lease is older than leaseMillis back in the queue; returns their ids
+     */
+    public List<Long> releaseExpired(long leaseMillis) {
+        return jdbcTemplate.queryForList(RELEASE_EXPIRED_SQL, Long.class, leaseMillis);
+    }
+
+    /**
+     * Put the worker's running jobs back in the queue (on shutdown); the
+     * interrupted attempt doesn't count
+     */
+    public int releaseHeld(String worker) {
+        return jdbcTemplate.update("""
+            UPDATE ingestion_jobs
+            SET status = 'PENDING', attempts = greatest(attempts - 1, 0), locked_by = NULL, locked_at = NULL, updated_at = now()
+            WHERE status = 'RUNNING' AND locked_by = ?
+            """, worker);
+    }
+
+    public boolean extracted(long id, String worker, String text) {
+        return jdbcTemplate.update(ADVANCE_SQL.formatted("text = ?,"),
+            text, IngestionStage.EXTRACTED.name(), IngestionStatus.PENDING.name(), id, worker) == 1;
+    }
+
+    public boolean embedded(long id, String worker, int chunkCount) {
+        return jdbcTemplate.update(ADVANCE_SQL.formatted("chunk_count = ?,"),
+            chunkCount, IngestionStage.EMBEDDED.name(), IngestionStatus.PENDING.name(), id, worker) == 1;
+    }
+
+    /**
+     * Record the document an index attempt created, before its chunks are stored
+     */
+    public boolean documentCreated(long id, String worker, long documentId) {
+        return jdbcTemplate.update("UPDATE ingestion_jobs SET document_id = ? WHERE id = ? AND locked_by = ?",
+            documentId, id, worker) == 1;
+    }
+
+    public boolean indexed(long id, String worker) {
+        return jdbcTemplate.update(ADVANCE_SQL.formatted(""),
+            IngestionStage.INDEXED.name(), IngestionStatus.DONE.name(), id, worker) == 1;
+    }
+
+    /**
+     * Back to PENDING, not claimable for delayMillis
+     */
+    public boolean retry(long id, String worker, String error, long delayMillis) {
+        return jdbcTemplate.update("""
+            UPDATE ingestion_jobs
+            SET status = 'PENDING', last_error = ?, next_attempt_at = now() + ? * interval '1 millisecond',
+                locked_by = NULL, locked_at = NULL, updated_at = now()
+            WHERE id = ? AND locked_by = ?
+            """, error, delayMillis, id, worker) == 1;
+    }
+
+    /**
+     * Back to PENDING for delayMillis without counting the attempt (the stage
+     * couldn't start, e.g. the OCR pool was full)
+     */
+    public boolean postpone(long id, String worker, long delayMillis) {
+        return jdbcTemplate.update("""
+            UPDATE ingestion_jobs
+            SET status = 'PENDING', attempts = greatest(attempts - 1, 0),
+                next_attempt_at = now() + ? * interval '1 millisecond',
+                locked_by = NULL, locked_at = NULL, updated_at = now()
+            WHERE id = ? AND locked_by = ?
+            """, delayMillis, id, worker) == 1;
+    }
+
+    public boolean fail(long id, String worker, String error) {
+        return jdbcTemplate.update("""
+            UPDATE ingestion_jobs
+            SET status = 'FAILED', last_error = ?, locked_by = NULL, locked_at = NULL, updated_at = now()
+            WHERE id = ? AND locked_by = ?
+            """, error, id, worker) == 1;
+    }
+
+    /**
+     * Unfinished (and failed) jobs per status and stage
+     */
+    public List<Map<String, Object>> counts() {
+        return jdbcTemplate.queryForList(
+            "SELECT status, stage, count(*) AS jobs FROM ingestion_jobs WHERE status <> 'DONE' GROUP BY status, stage");
+    }
+}
@@ -0,0 +1,405 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.enums.IngestionStage;
+import com.mh.AIAssistant.enums.IngestionStatus;
+import com.mh.AIAssistant.model.IngestionJob;
+import com.mh.AIAssistant.websocket.WebSocketService;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background ingestion (ingest.jobs.enabled): uploads are saved, recorded as
+ * jobs and processed here, so the request returns a job id right away and a
+ * crash or restart loses no work.
+ *
+ * Each stage (extract, embed, index) has its own worker pool and retry budget;
+ * a dispatcher claims due jobs from IngestionJobQueue whenever a stage has idle
+ * workers, every poll interval and as soon as a job is submitted or moves on.
+ * Failed stages are retried with exponential backoff; bad input (unsupported
+ * or empty file) fails at once. Progress goes to the user's WebSocket sessions.
+ *
+ * The embed stage's vectors are kept for the index stage (IngestionJobEmbeddings),
+ * so each chunk is embedded once.
+ */
+@Service
+public class IngestionJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IngestionJobService.class);
+
+    private final IngestionJobQueue queue;
+    private final OcrService ocrService;
+    private final DocumentIngestionService documentIngestionService;
+    private final IngestionJobEmbeddings jobEmbeddings;
+    private final WebSocketService webSocketService;
+
+    // Fences every update on the jobs this instance claimed
+    private final String workerId = "ingest-" + UUID.randomUUID();
+    private final List<StageWorkers> stages;
+    private final ScheduledExecutorService dispatcher;
+    private final AtomicBoolean wakeQueued = new AtomicBoolean();
+
+    @Value("${ingest.jobs.enabled:true}")
+    private boolean enabled;
+
+    @Value("${ingest.jobs.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${ingest.jobs.lease-ms:60000}")
+    private long leaseMs;
+
+    @Value("${ingest.jobs.backoff-ms:2000}")
+    private long backoffMs;
+
+    @Value("${ingest.jobs.max-backoff-ms:300000}")
+    private long maxBackoffMs;
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong released = new AtomicLong();
+
+    /**
+     * Workers for the stage that follows {@code reached}
+     */
+    private static final class StageWorkers {
+        final IngestionStage reached;
+        final String name;
+        final int workers;
+        final int maxAttempts;
+        final ExecutorService pool;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong retries = new AtomicLong();
+        final AtomicLong failures = new AtomicLong();
+        final AtomicLong postponed = new AtomicLong();
+
+        StageWorkers(IngestionStage reached, String name, int workers, int maxAttempts) {
+            this.reached = reached;
+            this.name = name;
+            this.workers = workers;
+            this.maxAttempts = maxAttempts;
+            AtomicInteger counter = new AtomicInteger();
+            this.pool = Executors.newFixedThreadPool(workers, runnable -> {
+                Thread thread = new Thread(runnable, "ingest-" + name + "-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public IngestionJobService(IngestionJobQueue queue,
+                               OcrService ocrService,
+                               DocumentIngestionService documentIngestionService,
+                               IngestionJobEmbeddings jobEmbeddings,
+                               WebSocketService webSocketService,
+                               @Value("${ingest.jobs.extract.workers:2}") int extractWorkers,
+                               @Value("${ingest.jobs.extract.max-attempts:3}") int extractAttempts,
+                               @Value("${ingest.jobs.embed.workers:2}") int embedWorkers,
+                               @Value("${ingest.jobs.embed.max-attempts:6}") int embedAttempts,
+                               @Value("${ingest.jobs.index.workers:2}") int indexWorkers,
+                               @Value("${ingest.jobs.index.max-attempts:5}") int indexAttempts) {
+        this.queue = queue;
+        this.ocrService = ocrService;
+        this.documentIngestionService = documentIngestionService;
+        this.jobEmbeddings = jobEmbeddings;
+        this.webSocketService = webSocketService;
+        this.stages = List.of(
+            new StageWorkers(IngestionStage.STORED, "extract", extractWorkers, extractAttempts),
+            new StageWorkers(IngestionStage.EXTRACTED, "embed", embedWorkers, embedAttempts),
+            new StageWorkers(IngestionStage.EMBEDDED, "index", indexWorkers, indexAttempts));
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ingest-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        dispatcher.scheduleWithFixedDelay(this::dispatch, 0, pollIntervalMs, TimeUnit.MILLISECONDS);
+        logger.info("Ingestion workers started ({})", workerId);
+    }
+
+    /**
+     * Queue an uploaded file, already saved at filePath, for extraction
+     */
+    public IngestionJob submitFile(String userId, String filePath, String fileName, String fileType) {
+        return submit(new IngestionJob(userId, IngestionStage.STORED, null, filePath, fileName, fileType));
+    }
+
+    /**
+     * Queue text for embedding and indexing
+     */
+    public IngestionJob submitText(String userId, String text) {
+        return submit(new IngestionJob(userId, IngestionStage.EXTRACTED, text, null, null, null));
+    }
+
+    private IngestionJob submit(IngestionJob job) {
+        job = queue.enqueue(job);
+        submitted.incrementAndGet();
+        notify(job, job.getStage(), IngestionStatus.PENDING, null);
+        wake();
+        return job;
+    }
+
+    public Optional<IngestionJob> find(long id) {
+        return queue.find(id);
+    }
+
+    // Run a dispatch soon, without piling up runs
+    private void wake() {
+        if (!enabled || !wakeQueued.compareAndSet(false, true)) return;
+        try {
+            dispatcher.execute(() -> {
+                wakeQueued.set(false);
+                dispatch();
+            });
+        } catch (RejectedExecutionException e) {
+            wakeQueued.set(false);
+        }
+    }
+
+    private void dispatch() {
+        try {
+            if (stages.stream().anyMatch(stage -> stage.inFlight.get() > 0)) {
+                queue.heartbeat(workerId);
+            }
+            List<Long> expired = queue.releaseExpired(leaseMs);
+            if (!expired.isEmpty()) {
+                released.addAndGet(expired.size());
+                logger.warn("Requeued ingestion jobs {}: their worker stopped renewing its lease", expired);
+            }
+
+            for (StageWorkers stage : stages) {
+                int idle = stage.workers - stage.inFlight.get();
+                if (idle <= 0) continue;
+                for (long id : queue.claim(stage.reached, workerId, idle)) {
+                    stage.inFlight.incrementAndGet();
+                    stage.pool.execute(() -> run(stage, id));
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Ingestion dispatch failed: {}", e.toString());
+        }
+    }
+
+    private void run(StageWorkers stage, long id) {
+        IngestionJob job = null;
+        try {
+            job = queue.find(id).orElse(null);
+            if (job == null) return;
+
+            // Attempts count claims, so a job that keeps killing its worker also runs out
+            if (job.getAttempts() > stage.maxAttempts) {
+                giveUp(stage, job, "Gave up on " + stage.name + " after " + stage.maxAttempts + " attempts");
+                return;
+            }
+            notify(job, stage.reached, IngestionStatus.RUNNING, null);
+
+            boolean advanced = switch (stage.reached) {
+                case STORED -> queue.extracted(id, workerId, extract(job));
+                case EXTRACTED -> {
+                    job.setChunkCount(documentIngestionService.embed(source(job),
+                        jobEmbeddings.recording(id, documentIngestionService.contentEmbedder())));
+                    yield queue.embedded(id, workerId, job.getChunkCount());
+                }
+                case EMBEDDED -> index(job);
+                case INDEXED -> true;
+            };
+            if (!advanced) {
+                logger.warn("Ingestion job {} was requeued while {} ran, dropping the result", id, stage.name);
+                return;
+            }
+
+            stage.completed.incrementAndGet();
+            // The next stage may already hold the job, so report what this one left
+            IngestionStage reached = stage.reached.next();
+            job.setAttempts(0);
+            if (reached == IngestionStage.INDEXED) {
+                notify(job, reached, IngestionStatus.DONE, null);
+                logger.info("Ingestion job {} done: document {} for user {}", id, job.getDocumentId(), job.getUserId());
+            } else {
+                notify(job, reached, IngestionStatus.PENDING, null);
+            }
+
+        } catch (OcrRejectedException e) {
+            // Not a failure of the job: wait for the OCR pool to drain
+            stage.postponed.incrementAndGet();
+            logger.info("Ingestion job {}: {}, trying again in {} ms", id, e.getMessage(), backoffMs);
+            queue.postpone(id, workerId, backoffMs);
+        } catch (IllegalArgumentException e) {
+            // Bad input: retrying won't help
+            if (job != null) giveUp(stage, job, e.getMessage());
+        } catch (Exception e) {
+            if (job == null) {
+                logger.warn("Ingestion job {} could not be loaded: {}", id, e.toString());
+            } else if (job.getAttempts() >= stage.maxAttempts) {
+                giveUp(stage, job, stage.name + " failed: " + e.getMessage());
+            } else {
+                long delay = backoff(job.getAttempts());
+                stage.retries.incrementAndGet();
+                logger.warn("Ingestion job {} {} attempt {} failed, retrying in {} ms: {}",
+                    id, stage.name, job.getAttempts(), delay, e.toString());
+                if (queue.retry(id, workerId, e.getMessage(), delay)) {
+                    notify(job, stage.reached, IngestionStatus.PENDING, e.getMessage());
+                }
+            }
+        } finally {
+            stage.inFlight.decrementAndGet();
+            wake();
+        }
+    }
+
+    private String extract(IngestionJob job) throws Exception {
+        if (job.getFilePath() == null || !ocrService.isSupported(job.getFileName())) {
+            throw new IllegalArgumentException("Unsupported file type: " + job.getFileName());
+        }
+        File file = new File(job.getFilePath());
+        if (!file.isFile()) {
+            throw new IllegalArgumentException("Uploaded file is missing: " + job.getFileName());
+        }
+        if (ocrService.isStreamed(job.getFileName())) {
+            // Spreadsheets can be huge: check there is text, then stream the file
+            // again in the later stages instead of copying it into the job row
+            long[] chars = {0};
+            boolean[] blank = {true};
+            ocrService.textSource(file).writeTo(piece -> {
+                chars[0] += piece.length();
+                if (blank[0] && !piece.toString().isBlank()) blank[0] = false;
+            });
+            if (blank[0]) {
+                throw new IllegalArgumentException("No text could be extracted from " + job.getFileName());
+            }
+            logger.info("Ingestion job {}: {} characters in {}, streamed from the file",
+                job.getId(), chars[0], job.getFileName());
+            return null;
+        }
+        String text = ocrService.extractText(file);
+        if (text == null || text.isBlank()) {
+            throw new IllegalArgumentException("No text could be extracted from " + job.getFileName());
+        }
+        logger.info("Ingestion job {}: extracted {} characters from {}", job.getId(), text.length(), job.getFileName());
+        return text;
+    }
+
+    // Text in the job row, or the stored file for streamed formats
+    private TextSource source(IngestionJob job) {
+        if (job.getText() != null) return TextSource.of(job.getText());
+        return ocrService.textSource(new File(job.getFilePath()));
+    }
+
+    private boolean index(IngestionJob job) throws Exception {
+        // A previous attempt may have stopped halfway
+        if (job.getDocumentId() != null) {
+            documentIngestionService.discard(job.getDocumentId());
+        }
+        documentIngestionService.ingest(job.getUserId(), source(job), job.getFilePath(), job.getFileName(),
+            job.getFileType(), documentId -> {
+                if (!queue.documentCreated(job.getId(), workerId, documentId)) {
+                    throw new IllegalStateException("Ingestion job " + job.getId() + " was requeued");
+                }
+                job.setDocumentId(documentId);
+            }, jobEmbeddings.replaying(job.getId(), documentIngestionService.contentEmbedder()));
+        if (!queue.indexed(job.getId(), workerId)) return false;
+        jobEmbeddings.clear(job.getId());
+        return true;
+    }
+
+    private void giveUp(StageWorkers stage, IngestionJob job, String error) {
+        stage.failures.incrementAndGet();
+        logger.error("Ingestion job {} failed at {}: {}", job.getId(), stage.name, error);
+        if (queue.fail(job.getId(), workerId, error)) {
+            jobEmbeddings.clear(job.getId());
+            notify(job, stage.reached, IngestionStatus.FAILED, error);
+        }
+    }
+
+    // Exponential in the attempts so far, with +-20% jitter so failed jobs don't retry in lockstep
+    private long backoff(int attempts) {
+        double delay = Math.min((double) maxBackoffMs, backoffMs * Math.pow(2, Math.max(0, attempts - 1)));
+        return (long) (delay * ThreadLocalRandom.current().nextDouble(0.8, 1.2));
+    }
+
+    private void notify(IngestionJob job, IngestionStage stage, IngestionStatus status, String error) {
+        Map<String, Object> progress = describe(job);
+        progress.put("stage", stage);
+        progress.put("status", status);
+        progress.put("error", error);
+        webSocketService.notifyIngestionProgress(job.getUserId(), progress);
+    }
+
+    /**
+     * The job as shown to its user (without the text)
+     */
+    public static Map<String, Object> describe(IngestionJob job) {
+        Map<String, Object> view = new HashMap<>();
+        view.put("jobId", job.getId());
+        view.put("userId", job.getUserId());
+        view.put("stage", job.getStage());
+        view.put("status", job.getStatus());
+        view.put("fileName", job.getFileName());
+        view.put("attempts", job.getAttempts());
+        view.put("error", job.getLastError());
+        view.put("chunkCount", job.getChunkCount());
+        view.put("documentId", job.getDocumentId());
+        view.put("createdAt", String.valueOf(job.getCreatedAt()));
+        view.put("updatedAt", String.valueOf(job.getUpdatedAt()));
+        return view;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("submitted", submitted.get());
+        stats.put("leasesExpired", released.get());
+        stats.put("embeddings", jobEmbeddings.getStats());
+        for (StageWorkers stage : stages) {
+            Map<String, Object> stageStats = new HashMap<>();
+            stageStats.put("workers", stage.workers);
+            stageStats.put("inFlight", stage.inFlight.get());
+            stageStats.put("completed", stage.completed.get());
+            stageStats.put("retries", stage.retries.get());
+            stageStats.put("failures", stage.failures.get());
+            stageStats.put("postponed", stage.postponed.get());
+            stats.put(stage.name, stageStats);
+        }
+        try {
+            stats.put("jobs", queue.counts());
+        } catch (Exception e) {
+            stats.put("jobs", "unavailable: " + e.getMessage());
+        }
+        return stats;
+    }
+
+    /**
+     * Stop claiming and hand the jobs still running back to the queue
+     */
+    @PreDestroy
+    void shutdown() {
+        dispatcher.shutdownNow();
+        for (StageWorkers stage : stages) {
+            stage.pool.shutdownNow();
+        }
+        try {
+            int requeued = queue.releaseHeld(workerId);
+            if (requeued > 0) logger.info("Requeued {} running ingestion jobs on shutdown", requeued);
+        } catch (Exception e) {
+            logger.warn("Could not requeue running ingestion jobs, their leases will expire: {}", e.toString());
+        }
+    }
+}
@@ -0,0 +1,427 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.IntentDecision;
+import com.mh.AIAssistant.repository.IntentDecisionRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+/**
+ * Decides RETRIEVE vs CHAT locally so most chat turns skip the LLM round-trip.
+ *
+ * 1. rules: phrasings that clearly ask for documents ("show me the file...") or
+ *    clearly don't ("what is...", "explain...") without mentioning documents
+ * 2. model: logistic regression (IntentModel) over the turn's query embedding,
+ *    trained on the prompt's examples and the logged LLM decisions. Skipped until
+ *    {@code intent.local.min-logged-decisions} decisions have been logged: a
+ *    1536-dimension model fitted to a handful of examples is confidently wrong.
+ * 3. LLM: DeepSeekAIService, when neither is confident enough
+ *
+ * Every LLM decision is logged to intent_decisions together with the local
+ * prediction. A sample of local decisions is also checked against the LLM in the
+ * background, so agreement rates per confidence bucket show where
+ * {@code intent.local.min-confidence} can safely go.
+ */
+@Service
+public class IntentClassifier {
+
+    private static final Logger logger = LoggerFactory.getLogger(IntentClassifier.class);
+
+    public static final String RETRIEVE = "RETRIEVE";
+    public static final String CHAT = "CHAT";
+
+    private static final double RULE_CONFIDENCE = 0.95;
+
+    private static final String DOCUMENT_NOUNS =
+        "(documents?|docs?|files?|notes?|pdfs?|attachments?|uploads?|receipts?|invoices?|images?|photos?|" +
+        "pictures?|screenshots?|spreadsheets?|slides?|reports?|records?)";
+
+    private static final List<Pattern> RETRIEVE_RULES = List.of(
+        Pattern.compile("^(please\\s+)?(show|find|get|fetch|retrieve|send|open|download|pull\\s+up)\\s+(me\\s+)?" +
+            "((the|my|a|an|all|that|those|these|any)\\s+)?(\\w+\\s+){0,3}" + DOCUMENT_NOUNS + "\\b"),
+        Pattern.compile("\\b(what|which)\\s+" + DOCUMENT_NOUNS + "\\s+do\\s+i\\s+have\\b"),
+        Pattern.compile("\\bdo\\s+i\\s+have\\s+(any\\s+)?" + DOCUMENT_NOUNS + "\\b"),
+        Pattern.compile("\\b(list|show)\\s+(me\\s+)?(all\\s+)?(of\\s+)?(my\\s+)?" + DOCUMENT_NOUNS + "\\b"),
+        Pattern.compile("^retrieve\\b")
+    );
+
+    private static final List<Pattern> CHAT_RULES = List.of(
+        Pattern.compile("^(what\\s+is|what\\s+are|what's|whats|who\\s+is|explain|why|how\\s+(do|does|did|can|could|should|would|is|are|to|much|many)|" +
+            "can\\s+you\\s+(explain|summari[sz]e|tell|help)|summari[sz]e|tell\\s+me\\s+(about|more)|" +
+            "hi|hello|hey|thanks|thank\\s+you|good\\s+(morning|afternoon|evening))\\b")
+    );
+
+    private static final Pattern MENTIONS_DOCUMENTS = Pattern.compile("\\b" + DOCUMENT_NOUNS + "\\b");
+
+    public record Decision(String intent, String source, double confidence) {}
+
+    private final DeepSeekAIService deepSeekAIService;
+    private final OpenAIEmbeddingService embeddingService;
+    private final IntentDecisionRepository decisionRepository;
+    private final ThreadPoolExecutor background;
+
+    @Value("${intent.local.enabled:true}")
+    private boolean enabled;
+
+    @Value("${intent.local.min-confidence:0.85}")
+    private double minConfidence;
+
+    @Value("${intent.local.shadow-rate:0.05}")
+    private double shadowRate;
+
+    @Value("${intent.local.speculative-llm:false}")
+    private boolean speculativeLlm;
+
+    @Value("${intent.local.speculative-llm-delay-ms:150}")
+    private long speculativeLlmDelayMs;
+
+    @Value("${intent.local.max-training-examples:2000}")
+    private int maxTrainingExamples;
+
+    @Value("${intent.local.min-logged-decisions:200}")
+    private int minLoggedDecisions;
+
+    // Every this-many logged decision is held out to measure the model's accuracy
+    private static final int HOLD_OUT_EVERY = 5;
+
+    private volatile IntentModel model;
+    private volatile double heldOutAccuracy = Double.NaN;
+    private volatile int loggedDecisions;
+    private volatile LocalDateTime trainedAt;
+    private volatile List<float[]> seedVectors;
+
+    private final Map<String, LongAdder> decisions = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> compared = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> agreed = new ConcurrentHashMap<>();
+    private final AtomicLong llmFailures = new AtomicLong();
+    private final AtomicLong shadowChecks = new AtomicLong();
+    private final AtomicLong speculativeLlmCalls = new AtomicLong();
+    private final AtomicLong cancelledLlmCalls = new AtomicLong();
+
+    public IntentClassifier(DeepSeekAIService deepSeekAIService,
+                            OpenAIEmbeddingService embeddingService,
+                            IntentDecisionRepository decisionRepository) {
+        this.deepSeekAIService = deepSeekAIService;
+        this.embeddingService = embeddingService;
+        this.decisionRepository = decisionRepository;
+
+        // Shadow checks and decision logging; dropped rather than queued without bound
+        this.background = new ThreadPoolExecutor(1, 2, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(200), runnable -> {
+            Thread thread = new Thread(runnable, "intent-background");
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    /**
+     * @param queryVector the turn's query embedding, or null if it has none
+     */
+    public Decision classify(String userId, String message, float[] queryVector) {
+        return classify(userId, message, () -> queryVector, null);
+    }
+
+    /**
+     * Classify while the query embedding is still being computed. Rules need no
+     * embedding; otherwise, within a turn scope and with speculative-llm on, the LLM
+     * call is hedged: it starts once the model turns out not to be confident, or
+     * after speculative-llm-delay-ms if the embedding hasn't arrived by then, and is
+     * cancelled if the model is confident after all. Every started call is billed,
+     * so the delay keeps the common case (a fast embedding) free of wasted calls.
+     */
+    Decision classify(String userId, String message, Callable<float[]> queryVector, ChatTurnScope scope) {
+        String rule = enabled ? applyRules(message) : null;
+        if (rule != null) {
+            return accept(userId, message, queryVector, new Decision(rule, "rules", RULE_CONFIDENCE));
+        }
+
+        CountDownLatch startLlm = new CountDownLatch(1);
+        AtomicBoolean llmStarted = new AtomicBoolean();
+        Future<Optional<String>> llmCall = scope != null && speculativeLlm
+            ? scope.fork(() -> {
+                startLlm.await(speculativeLlmDelayMs, TimeUnit.MILLISECONDS);
+                llmStarted.set(true);
+                speculativeLlmCalls.incrementAndGet();
+                return deepSeekAIService.tryClassifyIntent(message);
+            })
+            : null;
+
+        float[] vector = enabled ? await(queryVector) : null;
+        Decision local = vector != null ? decideWithModel(vector) : null;
+        if (local != null && local.confidence() >= minConfidence) {
+            if (llmCall != null && llmCall.cancel(true) && llmStarted.get()) {
+                cancelledLlmCalls.incrementAndGet();
+            }
+            return accept(userId, message, () -> vector, local);
+        }
+        startLlm.countDown();
+
+        Optional<String> llm = llmCall != null ? await(llmCall, scope) : deepSeekAIService.tryClassifyIntent(message);
+        return decided(userId, message, vector, local, llm);
+    }
+
+    /**
+     * Non-blocking classify: the same rules, model and (hedged) LLM call, composed
+     * on the query embedding instead of waiting for it
+     */
+    public Mono<Decision> classifyAsync(String userId, String message, Mono<float[]> queryVector) {
+        String rule = enabled ? applyRules(message) : null;
+        if (rule != null) {
+            return Mono.just(accept(userId, message, () -> queryVector.block(), new Decision(rule, "rules", RULE_CONFIDENCE)));
+        }
+
+        // Subscribed right away, the request starts after the delay or once the model
+        // isn't confident; cancelling the future cancels either
+        Sinks.Empty<Void> startLlm = Sinks.empty();
+        AtomicBoolean llmStarted = new AtomicBoolean();
+        CompletableFuture<Optional<String>> llmCall = speculativeLlm
+            ? Mono.firstWithSignal(Mono.delay(Duration.ofMillis(speculativeLlmDelayMs)).then(), startLlm.asMono())
+                .then(Mono.defer(() -> {
+                    llmStarted.set(true);
+                    speculativeLlmCalls.incrementAndGet();
+                    return deepSeekAIService.tryClassifyIntentAsync(message);
+                }))
+                .toFuture()
+            : null;
+
+        Mono<Optional<float[]>> vector = enabled
+            ? queryVector.map(Optional::of).onErrorReturn(Optional.empty()).defaultIfEmpty(Optional.empty())
+            : Mono.just(Optional.empty());
+
+        return vector.flatMap(embedding -> {
+            Decision local = embedding.map(this::decideWithModel).orElse(null);
+            if (local != null && local.confidence() >= minConfidence) {
+                if (llmCall != null && llmCall.cancel(true) && llmStarted.get()) {
+                    cancelledLlmCalls.incrementAndGet();
+                }
+                return Mono.just(accept(userId, message, embedding::get, local));
+            }
+            startLlm.tryEmitEmpty();
+            Mono<Optional<String>> llm = llmCall != null
+                ? Mono.fromFuture(llmCall)
+                : deepSeekAIService.tryClassifyIntentAsync(message);
+            return llm.map(answer -> decided(userId, message, embedding.orElse(null), local, answer));
+        }).doOnCancel(() -> {
+            if (llmCall != null) llmCall.cancel(true);
+        });
+    }
+
+    // The LLM's answer, or the local decision (or CHAT) when the LLM call failed
+    private Decision decided(String userId, String message, float[] vector, Decision local, Optional<String> llm) {
+        if (llm.isEmpty()) {
+            llmFailures.incrementAndGet();
+            Decision fallback = local != null ? local : new Decision(CHAT, "default", 0.0);
+            count(fallback.source());
+            return fallback;
+        }
+
+        count("llm");
+        background.execute(() -> record(userId, message, vector, llm.get(), local));
+        return new Decision(llm.get(), "llm", 1.0);
+    }
+
+    // A confident local decision; a sample of them is checked against the LLM in the background
+    private Decision accept(String userId, String message, Callable<float[]> queryVector, Decision local) {
+        count(local.source());
+        if (ThreadLocalRandom.current().nextDouble() < shadowRate) {
+            background.execute(() -> shadowCheck(userId, message, await(queryVector), local));
+        }
+        return local;
+    }
+
+    private static float[] await(Callable<float[]> queryVector) {
+        try {
+            return queryVector.call();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            logger.debug("No query embedding for intent classification: {}", e.toString());
+            return null;
+        }
+    }
+
+    private static Optional<String> await(Future<Optional<String>> llm, ChatTurnScope scope) {
+        try {
+            return scope.join(llm);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            llm.cancel(true);
+        }
+        return Optional.empty();
+    }
+
+    // Null when untrained
+    private Decision decideWithModel(float[] queryVector) {
+        IntentModel current = model;
+        if (current == null) return null;
+        double retrieve = current.probability(queryVector);
+        return retrieve >= 0.5
+            ? new Decision(RETRIEVE, "model", retrieve)
+            : new Decision(CHAT, "model", 1.0 - retrieve);
+    }
+
+    static String applyRules(String message) {
+        String text = message.strip().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        for (Pattern rule : RETRIEVE_RULES) {
+            if (rule.matcher(text).find()) return RETRIEVE;
+        }
+        if (!MENTIONS_DOCUMENTS.matcher(text).find()) {
+            for (Pattern rule : CHAT_RULES) {
+                if (rule.matcher(text).find()) return CHAT;
+            }
+        }
+        return null;
+    }
+
+    private void shadowCheck(String userId, String message, float[] queryVector, Decision local) {
+        shadowChecks.incrementAndGet();
+        deepSeekAIService.tryClassifyIntent(message)
+            .ifPresent(intent -> record(userId, message, queryVector, intent, local));
+    }
+
+    private void record(String userId, String message, float[] queryVector, String llmIntent, Decision local) {
+        if (local != null) {
+            String bucket = bucket(local);
+            compared.computeIfAbsent(bucket, key -> new LongAdder()).increment();
+            if (local.intent().equals(llmIntent)) {
+                agreed.computeIfAbsent(bucket, key -> new LongAdder()).increment();
+            }
+        }
+
+        try {
+            IntentDecision decision = new IntentDecision(userId, message, queryVector, llmIntent);
+            if (local != null) {
+                decision.setLocalIntent(local.intent());
+                decision.setLocalSource(local.source());
+                decision.setLocalConfidence(local.confidence());
+            }
+            decisionRepository.save(decision);
+        } catch (Exception e) {
+            logger.warn("Failed to log intent decision: {}", e.toString());
+        }
+    }
+
+    // "rules", or the model's confidence in tenths: "model 0.7-0.8"
+    static String bucket(Decision local) {
+        if (!"model".equals(local.source())) return local.source();
+        int tenth = Math.min(9, (int) Math.floor(local.confidence() * 10));
+        return String.format(Locale.ROOT, "model %.1f-%.1f", tenth / 10.0, (tenth + 1) / 10.0);
+    }
+
+    private void count(String source) {
+        decisions.computeIfAbsent(source, key -> new LongAdder()).increment();
+    }
+
+    /**
+     * Retrain on the prompt's examples plus the newest logged LLM decisions, once
+     * enough have been logged. A fifth of the logged decisions is held out and the
+     * model's accuracy on them is what gets reported.
+     */
+    @Scheduled(fixedDelayString = "${intent.local.retrain-interval-ms:3600000}",
+               initialDelayString = "${intent.local.initial-train-delay-ms:10000}")
+    public void retrain() {
+        if (!enabled) return;
+        try {
+            List<IntentDecision> logged = decisionRepository.findRecentWithEmbedding(PageRequest.of(0, maxTrainingExamples));
+            loggedDecisions = logged.size();
+            if (logged.size() < minLoggedDecisions) {
+                logger.info("Intent model not trained: {} logged LLM decisions, {} needed",
+                    logged.size(), minLoggedDecisions);
+                return;
+            }
+
+            List<float[]> vectors = new ArrayList<>(seedVectors());
+            List<Boolean> labels = new ArrayList<>();
+            DeepSeekAIService.RETRIEVE_EXAMPLES.forEach(example -> labels.add(true));
+            DeepSeekAIService.CHAT_EXAMPLES.forEach(example -> labels.add(false));
+            List<float[]> heldOutVectors = new ArrayList<>();
+            List<Boolean> heldOutLabels = new ArrayList<>();
+
+            int index = 0;
+            for (IntentDecision decision : logged) {
+                if (decision.getEmbedding().length != vectors.get(0).length) continue;
+                boolean retrieve = RETRIEVE.equals(decision.getLlmIntent());
+                if (index++ % HOLD_OUT_EVERY == 0) {
+                    heldOutVectors.add(decision.getEmbedding());
+                    heldOutLabels.add(retrieve);
+                } else {
+                    vectors.add(decision.getEmbedding());
+                    labels.add(retrieve);
+                }
+            }
+
+            IntentModel trained = IntentModel.train(vectors, labels, 30, 0.5, 1e-4);
+            double accuracy = trained.accuracy(heldOutVectors, heldOutLabels);
+            model = trained;
+            heldOutAccuracy = accuracy;
+            trainedAt = LocalDateTime.now();
+            logger.info("Trained intent model on {} examples, held-out accuracy {} on {}",
+                trained.examples(), String.format("%.3f", accuracy), heldOutVectors.size());
+        } catch (Exception e) {
+            logger.warn("Intent model training failed, keeping the previous model: {}", e.toString());
+        }
+    }
+
+    private List<float[]> seedVectors() {
+        if (seedVectors == null) {
+            List<String> examples = new ArrayList<>(DeepSeekAIService.RETRIEVE_EXAMPLES);
+            examples.addAll(DeepSeekAIService.CHAT_EXAMPLES);
+            seedVectors = embeddingService.embedAll(examples);
+        }
+        return seedVectors;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("minConfidence", minConfidence);
+        stats.put("shadowRate", shadowRate);
+        stats.put("minLoggedDecisions", minLoggedDecisions);
+        stats.put("loggedDecisions", loggedDecisions);
+
+        Map<String, Long> bySource = new TreeMap<>();
+        decisions.forEach((source, count) -> bySource.put(source, count.sum()));
+        stats.put("decisions", bySource);
+        stats.put("llmFailures", llmFailures.get());
+        stats.put("shadowChecks", shadowChecks.get());
+        stats.put("speculativeLlmCalls", speculativeLlmCalls.get());
+        stats.put("cancelledLlmCalls", cancelledLlmCalls.get());
+
+        Map<String, Object> agreement = new TreeMap<>();
+        compared.forEach((bucket, count) -> {
+            long total = count.sum();
+            long same = agreed.getOrDefault(bucket, new LongAdder()).sum();
+            agreement.put(bucket, Map.of("compared", total, "agreed", same, "rate", total == 0 ? 0.0 : (double) same / total));
+        });
+        stats.put("agreement", agreement);
+
+        IntentModel current = model;
+        if (current != null) {
+            stats.put("modelExamples", current.examples());
+            stats.put("modelHeldOutAccuracy", Double.isNaN(heldOutAccuracy) ? null : heldOutAccuracy);
+            stats.put("modelTrainedAt", String.valueOf(trainedAt));
+        }
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        background.shutdownNow();
+    }
+}
@@ -0,0 +1,105 @@
+package com.mh.AIAssistant.service;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Logistic regression over query embeddings: P(RETRIEVE | embedding).
+ * Trained with SGD and L2 regularization; classes are weighted by their inverse
+ * frequency because logged decisions are mostly CHAT.
+ */
+final class IntentModel {
+
+    private final float[] weights;
+    private final float bias;
+    private final int examples;
+    private final double trainingAccuracy;
+
+    private IntentModel(float[] weights, float bias, int examples, double trainingAccuracy) {
+        this.weights = weights;
+        this.bias = bias;
+        this.examples = examples;
+        this.trainingAccuracy = trainingAccuracy;
+    }
+
+    /**
+     * @param retrieve label per vector, true for RETRIEVE
+     */
+    static IntentModel train(List<float[]> vectors, List<Boolean> retrieve, int epochs, double learningRate, double l2) {
+        int n = vectors.size();
+        int dim = vectors.get(0).length;
+        long positives = retrieve.stream().filter(Boolean::booleanValue).count();
+        double positiveWeight = n / (2.0 * Math.max(1, positives));
+        double negativeWeight = n / (2.0 * Math.max(1, n - positives));
+
+        double[] w = new double[dim];
+        double b = 0.0;
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        Random random = new Random(17);
+
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            double rate = learningRate / (1.0 + 0.05 * epoch);
+            shuffle(order, random);
+            for (int i : order) {
+                float[] x = vectors.get(i);
+                if (x.length != dim) continue;
+                double z = b;
+                for (int d = 0; d < dim; d++) z += w[d] * x[d];
+                double label = retrieve.get(i) ? 1.0 : 0.0;
+                double gradient = (sigmoid(z) - label) * (label == 1.0 ? positiveWeight : negativeWeight);
+                for (int d = 0; d < dim; d++) w[d] -= rate * (gradient * x[d] + l2 * w[d]);
+                b -= rate * gradient;
+            }
+        }
+
+        float[] weights = new float[dim];
+        for (int d = 0; d < dim; d++) weights[d] = (float) w[d];
+        IntentModel model = new IntentModel(weights, (float) b, n, 0.0);
+
+        int correct = 0;
+        for (int i = 0; i < n; i++) {
+            if ((model.probability(vectors.get(i)) >= 0.5) == retrieve.get(i)) correct++;
+        }
+        return new IntentModel(weights, (float) b, n, (double) correct / n);
+    }
+
+    /**
+     * Share of the examples the model labels correctly
+     */
+    double accuracy(List<float[]> vectors, List<Boolean> retrieve) {
+        if (vectors.isEmpty()) return Double.NaN;
+        int correct = 0;
+        for (int i = 0; i < vectors.size(); i++) {
+            if ((probability(vectors.get(i)) >= 0.5) == retrieve.get(i)) correct++;
+        }
+        return (double) correct / vectors.size();
+    }
+
+    /**
+     * Probability of RETRIEVE; 0.5 (no opinion) for vectors of another dimension
+     */
+    double probability(float[] embedding) {
+        if (embedding.length != weights.length) return 0.5;
+        return sigmoid(SimilarityKernels.dot(weights, embedding) + bias);
+    }
+
+    int dimensions() { return weights.length; }
+
+    int examples() { return examples; }
+
+    double trainingAccuracy() { return trainingAccuracy; }
+
+    private static double sigmoid(double z) {
+        return 1.0 / (1.0 + Math.exp(-z));
+    }
+
+    private static void shuffle(int[] values, Random random) {
+        for (int i = values.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+}
@@ -0,0 +1,337 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.EmbeddingCodec;
+import com.mh.AIAssistant.model.KnowledgeCentroid;
+import com.mh.AIAssistant.repository.KnowledgeCentroidRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Owns the IVF (inverted file) layout of knowledge_entries: k-means centroids in
+ * kb_centroids and each entry's nearest centroid in knowledge_entries.cluster_id.
+ *
+ * Users with at least {@code vector.ivf.user-min-entries} entries get their own
+ * centroids; everyone else shares the global ones. A scope is re-clustered when
+ * its entry count crosses the next value in {@code vector.ivf.recluster-thresholds}.
+ * Rows with a null cluster_id are always searched, so new or not-yet-assigned
+ * entries are never missed.
+ */
+@Service
+public class IvfClusteringService {
+
+    private static final Logger logger = LoggerFactory.getLogger(IvfClusteringService.class);
+
+    // Cache key of the global scope
+    private static final String GLOBAL = "";
+
+    private static final String OWN_SCOPE = "k.user_id = ?";
+    private static final String GLOBAL_SCOPE =
+        "NOT EXISTS (SELECT 1 FROM kb_centroids c WHERE c.user_id = k.user_id)";
+
+    /**
+     * Centroids of one scope; ids[i] is the kb_centroids id of vectors[i]
+     */
+    public record Centroids(long[] ids, float[][] vectors, long trainedOn) {
+        static final Centroids EMPTY = new Centroids(new long[0], new float[0][], 0);
+
+        public boolean isEmpty() {
+            return ids.length == 0;
+        }
+    }
+
+    private final KnowledgeCentroidRepository centroidRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${vector.ivf.enabled:true}")
+    private boolean enabled;
+
+    // Clusters are only trained and assigned when ivf is the search backend
+    @Value("${vector.search.backend:hnsw}")
+    private String backend;
+
+    @Value("${vector.ivf.user-min-entries:2000}")
+    private long userMinEntries;
+
+    @Value("${vector.ivf.recluster-thresholds:256,1000,5000,20000,50000,100000,200000,500000}")
+    private long[] reclusterThresholds;
+
+    @Value("${vector.ivf.max-clusters:1024}")
+    private int maxClusters;
+
+    @Value("${vector.ivf.iterations:10}")
+    private int iterations;
+
+    @Value("${vector.ivf.sample-size:20000}")
+    private int sampleSize;
+
+    @Value("${vector.ivf.assign-batch-size:500}")
+    private int assignBatchSize;
+
+    private final Map<String, Centroids> cache = new ConcurrentHashMap<>();
+    private final AtomicLong reclusterRuns = new AtomicLong();
+    private final AtomicLong assignedRows = new AtomicLong();
+
+    public IvfClusteringService(KnowledgeCentroidRepository centroidRepository,
+                                JdbcTemplate jdbcTemplate,
+                                PlatformTransactionManager transactionManager) {
+        this.centroidRepository = centroidRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * The user's own centroids, or the global ones if the user has none
+     */
+    public Centroids centroidsFor(String userId) {
+        Centroids own = userId == null ? Centroids.EMPTY : cached(userId);
+        return own.isEmpty() ? cached(GLOBAL) : own;
+    }
+
+    /**
+     * Cluster id for a new entry, or null when there is no layout yet
+     */
+    public Long assign(String userId, float[] embedding) {
+        if (!active() || embedding == null) return null;
+        Centroids centroids = centroidsFor(userId);
+        if (centroids.isEmpty()) return null;
+        return centroids.ids()[KMeans.nearest(centroids.vectors(), embedding)];
+    }
+
+    /**
+     * Ids of the nprobe clusters nearest to the query; empty if the user has no layout
+     */
+    public List<Long> probe(String userId, float[] query, int nprobe) {
+        Centroids centroids = centroidsFor(userId);
+        if (centroids.isEmpty()) return List.of();
+
+        TopKCollector nearest = new TopKCollector(Math.max(nprobe, 1));
+        for (int c = 0; c < centroids.ids().length; c++) {
+            nearest.offer(centroids.ids()[c], VectorMath.dot(query, centroids.vectors()[c]));
+        }
+        return nearest.toSortedList().stream().map(ScoredId::id).toList();
+    }
+
+    /**
+     * Re-cluster scopes whose entry count crossed a threshold, then assign
+     * cluster ids to rows that don't have one yet
+     */
+    @Scheduled(fixedDelayString = "${vector.ivf.check-interval-ms:300000}", initialDelay = 60000)
+    public void maintain() {
+        if (!active()) return;
+
+        try {
+            reclusterWhereNeeded();
+            int assigned = assignUnclustered();
+            if (assigned > 0) {
+                logger.info("Assigned {} entries to IVF clusters", assigned);
+            }
+        } catch (Exception e) {
+            logger.error("IVF maintenance failed", e);
+        }
+    }
+
+    void reclusterWhereNeeded() {
+        Map<String, Long> counts = new HashMap<>();
+        jdbcTemplate.query(
+            "SELECT user_id, COUNT(*) FROM knowledge_entries WHERE embedding_f32 IS NOT NULL GROUP BY user_id",
+            rs -> { counts.put(rs.getString(1), rs.getLong(2)); });
+
+        long sharedEntries = 0;
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            String userId = entry.getKey();
+            long count = entry.getValue();
+            Centroids own = userId == null ? Centroids.EMPTY : cached(userId);
+
+            if (own.isEmpty() && (userId == null || count < userMinEntries)) {
+                sharedEntries += count;
+            } else if (own.isEmpty() || level(count) > level(own.trainedOn())) {
+                recluster(userId, count);
+            }
+        }
+
+        Centroids global = cached(GLOBAL);
+        if (level(sharedEntries) > level(global.trainedOn())) {
+            recluster(null, sharedEntries);
+        }
+    }
+
+    /**
+     * Train new centroids for a user (or the global scope when userId is null)
+     * and reassign every row in that scope. Rows are written in batches of
+     * assign-batch-size, each committed on its own: the scope's rows are first
+     * unassigned (so they stay searchable), then the centroids are swapped and
+     * the rows assigned to the new ones.
+     */
+    public void recluster(String userId, long entryCount) {
+        long start = System.currentTimeMillis();
+        String scope = userId == null ? GLOBAL_SCOPE : OWN_SCOPE;
+        Object[] scopeArgs = userId == null ? new Object[0] : new Object[] { userId };
+
+        List<float[]> sample = new ArrayList<>();
+        jdbcTemplate.query(
+            "SELECT k.embedding_f32 FROM knowledge_entries k WHERE k.embedding_f32 IS NOT NULL AND " + scope
+                + " ORDER BY random() LIMIT " + sampleSize,
+            rs -> { sample.add(VectorMath.normalize(EmbeddingCodec.decode(rs.getBytes(1)))); },
+            scopeArgs);
+        if (sample.isEmpty()) return;
+
+        int k = (int) Math.max(1, Math.min(maxClusters, Math.round(Math.sqrt(entryCount))));
+        float[][] vectors = KMeans.train(sample, k, iterations, new Random());
+
+        // Unassigned rows are always searched, so nothing goes missing while the scope is rewritten
+        int cleared;
+        do {
+            cleared = jdbcTemplate.update(
+                "UPDATE knowledge_entries SET cluster_id = NULL WHERE id IN (SELECT k.id FROM knowledge_entries k"
+                    + " WHERE k.cluster_id IS NOT NULL AND " + scope + " LIMIT " + assignBatchSize + ")",
+                scopeArgs);
+        } while (cleared > 0);
+
+        Centroids centroids = transactionTemplate.execute(status -> {
+            if (userId == null) {
+                centroidRepository.deleteGlobal();
+            } else {
+                centroidRepository.deleteByUser(userId);
+            }
+
+            List<KnowledgeCentroid> saved = new ArrayList<>();
+            for (float[] vector : vectors) {
+                saved.add(new KnowledgeCentroid(userId, vector, entryCount));
+            }
+            saved = centroidRepository.saveAll(saved);
+            return new Centroids(saved.stream().mapToLong(KnowledgeCentroid::getId).toArray(), vectors, entryCount);
+        });
+
+        cache.put(userId == null ? GLOBAL : userId, centroids);
+
+        // Entries stored while we were training may point at deleted centroids;
+        // null them so they stay searchable until the next assignment pass
+        jdbcTemplate.update("""
+            UPDATE knowledge_entries k SET cluster_id = NULL
+            WHERE k.cluster_id IS NOT NULL
+              AND NOT EXISTS (SELECT 1 FROM kb_centroids c WHERE c.id = k.cluster_id)
+            """);
+        assignScope(scope, scopeArgs, centroids);
+
+        reclusterRuns.incrementAndGet();
+        logger.info("IVF re-clustered {} ({} entries, {} clusters) in {} ms",
+            userId == null ? "global scope" : "user " + userId, entryCount, k, System.currentTimeMillis() - start);
+    }
+
+    // Assign the scope's unassigned rows to the new centroids, one transaction per batch
+    private void assignScope(String scope, Object[] scopeArgs, Centroids centroids) {
+        long lastId = 0;
+        while (true) {
+            List<Object[]> updates = new ArrayList<>();
+            long[] maxId = { lastId };
+            Object[] args = new Object[scopeArgs.length + 1];
+            args[0] = lastId;
+            System.arraycopy(scopeArgs, 0, args, 1, scopeArgs.length);
+            jdbcTemplate.query(
+                "SELECT k.id, k.embedding_f32 FROM knowledge_entries k"
+                    + " WHERE k.cluster_id IS NULL AND k.embedding_f32 IS NOT NULL AND k.id > ? AND " + scope
+                    + " ORDER BY k.id LIMIT " + assignBatchSize,
+                rs -> {
+                    maxId[0] = rs.getLong(1);
+                    int nearest = KMeans.nearest(centroids.vectors(), EmbeddingCodec.decode(rs.getBytes(2)));
+                    updates.add(new Object[] { centroids.ids()[nearest], rs.getLong(1) });
+                },
+                args);
+
+            if (!updates.isEmpty()) {
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(
+                    "UPDATE knowledge_entries SET cluster_id = ? WHERE id = ? AND cluster_id IS NULL", updates));
+            }
+            if (updates.size() < assignBatchSize) break;
+            lastId = maxId[0];
+        }
+    }
+
+    int assignUnclustered() {
+        int assigned = 0;
+        long lastId = 0;
+        while (true) {
+            List<Object[]> updates = new ArrayList<>();
+            long[] maxId = { lastId };
+            int[] seen = { 0 };
+            jdbcTemplate.query("""
+                SELECT id, user_id, embedding_f32 FROM knowledge_entries
+                WHERE cluster_id IS NULL AND embedding_f32 IS NOT NULL AND id > ?
+                ORDER BY id
+                LIMIT ?
+                """, rs -> {
+                seen[0]++;
+                maxId[0] = rs.getLong(1);
+                Long clusterId = assign(rs.getString(2), EmbeddingCodec.decode(rs.getBytes(3)));
+                if (clusterId != null) {
+                    updates.add(new Object[] { clusterId, rs.getLong(1) });
+                }
+            }, lastId, assignBatchSize);
+
+            if (!updates.isEmpty()) {
+                jdbcTemplate.batchUpdate(
+                    "UPDATE knowledge_entries SET cluster_id = ? WHERE id = ? AND cluster_id IS NULL", updates);
+                assigned += updates.size();
+            }
+            if (seen[0] < assignBatchSize) break;
+            lastId = maxId[0];
+        }
+        assignedRows.addAndGet(assigned);
+        return assigned;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("enabled", active());
+        stats.put("userScopes", centroidRepository.findUsersWithOwnCentroids().size());
+        stats.put("globalClusters", cached(GLOBAL).ids().length);
+        stats.put("reclusterRuns", reclusterRuns.get());
+        stats.put("assignedRows", assignedRows.get());
+        stats.put("unclusteredRows", jdbcTemplate.queryForObject(
+            "SELECT COUNT(*) FROM knowledge_entries WHERE cluster_id IS NULL", Long.class));
+        return stats;
+    }
+
+    private boolean active() {
+        return enabled && IvfVectorRetriever.NAME.equals(backend);
+    }
+
+    private Centroids cached(String key) {
+        return cache.computeIfAbsent(key, this::load);
+    }
+
+    private Centroids load(String key) {
+        List<KnowledgeCentroid> rows = key.equals(GLOBAL)
+            ? centroidRepository.findByUserIdIsNull()
+            : centroidRepository.findByUserId(key);
+        if (rows.isEmpty()) return Centroids.EMPTY;
+
+        long[] ids = new long[rows.size()];
+        float[][] vectors = new float[rows.size()][];
+        for (int i = 0; i < rows.size(); i++) {
+            ids[i] = rows.get(i).getId();
+            vectors[i] = rows.get(i).getCentroid();
+        }
+        return new Centroids(ids, vectors, rows.get(0).getTrainedOn());
+    }
+
+    // Number of thresholds at or below the count
+    private int level(long count) {
+        int level = 0;
+        for (long threshold : reclusterThresholds) {
+            if (count >= threshold) level++;
+        }
+        return level;
+    }
+}
@@ -0,0 +1,48 @@
+package com.mh.AIAssistant.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * IVF search: probe the nprobe clusters whose centroids are nearest to the query
+ * and run the quantized scan (with exact rescoring) over those clusters only.
+ * PostgreSQL narrows the rows through the (user_id, cluster_id) index.
+ * Users without a cluster layout yet get a full quantized scan.
+ */
+@Component
+public class IvfVectorRetriever implements VectorRetriever {
+
+    public static final String NAME = "ivf";
+
+    private final IvfClusteringService clusteringService;
+    private final QuantizedVectorRetriever quantizedRetriever;
+
+    @Value("${vector.ivf.nprobe:8}")
+    private int defaultNprobe;
+
+    public IvfVectorRetriever(IvfClusteringService clusteringService, QuantizedVectorRetriever quantizedRetriever) {
+        this.clusteringService = clusteringService;
+        this.quantizedRetriever = quantizedRetriever;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<ScoredId> score(String userId, float[] queryEmbedding, int limit) {
+        return score(userId, queryEmbedding, limit, defaultNprobe);
+    }
+
+    /**
+     * Search with an explicit nprobe: more clusters means higher recall and more rows read
+     */
+    public List<ScoredId> score(String userId, float[] queryEmbedding, int limit, int nprobe) {
+        float[] query = VectorMath.normalize(queryEmbedding);
+        List<Long> clusters = clusteringService.probe(userId, query, nprobe);
+        return quantizedRetriever.score(userId, query, limit, clusters.isEmpty() ? null : clusters);
+    }
+}
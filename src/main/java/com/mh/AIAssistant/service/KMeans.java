@@ -0,0 +1,88 @@
+package com.mh.AIAssistant.service;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Spherical k-means over unit vectors: points are assigned to the centroid with
+ * the highest dot product and centroids are re-normalized after each update.
+ */
+public final class KMeans {
+
+    private KMeans() {}
+
+    /**
+     * Train k centroids on the given (normalized) vectors
+     */
+    public static float[][] train(List<float[]> vectors, int k, int iterations, Random random) {
+        int n = vectors.size();
+        k = Math.min(k, n);
+        if (k == 0) return new float[0][];
+        int dim = vectors.get(0).length;
+
+        // Start from k distinct sample points
+        float[][] centroids = new float[k][];
+        int[] order = shuffledIndexes(n, random);
+        for (int c = 0; c < k; c++) {
+            centroids[c] = vectors.get(order[c]).clone();
+        }
+
+        int[] assignment = new int[n];
+        for (int iteration = 0; iteration < iterations; iteration++) {
+            boolean changed = false;
+            for (int i = 0; i < n; i++) {
+                int nearest = nearest(centroids, vectors.get(i));
+                if (nearest != assignment[i]) {
+                    assignment[i] = nearest;
+                    changed = true;
+                }
+            }
+            if (!changed && iteration > 0) break;
+
+            float[][] sums = new float[k][dim];
+            int[] counts = new int[k];
+            for (int i = 0; i < n; i++) {
+                float[] vector = vectors.get(i);
+                float[] sum = sums[assignment[i]];
+                for (int d = 0; d < dim; d++) sum[d] += vector[d];
+                counts[assignment[i]]++;
+            }
+
+            for (int c = 0; c < k; c++) {
+                // Reseed empty clusters with a random point
+                centroids[c] = counts[c] == 0
+                    ? vectors.get(random.nextInt(n)).clone()
+                    : VectorMath.normalize(sums[c]);
+            }
+        }
+        return centroids;
+    }
+
+    /**
+     * Index of the centroid with the highest dot product
+     */
+    public static int nearest(float[][] centroids, float[] vector) {
+        int best = 0;
+        double bestScore = Double.NEGATIVE_INFINITY;
+        for (int c = 0; c < centroids.length; c++) {
+            double score = VectorMath.dot(centroids[c], vector);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private static int[] shuffledIndexes(int n, Random random) {
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) order[i] = i;
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return order;
+    }
+}
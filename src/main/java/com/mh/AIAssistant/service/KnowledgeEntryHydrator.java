@@ -0,0 +1,62 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.dto.RetrievedEntry;
+import com.mh.AIAssistant.repository.KnowledgeBaseRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Second phase of retrieval: turns scored ids into entries, preserving the ranking order.
+ * Metadata is loaded for every hit; content only for the hits a caller keeps.
+ */
+@Component
+public class KnowledgeEntryHydrator {
+
+    private final KnowledgeBaseRepository knowledgeBaseRepository;
+
+    public KnowledgeEntryHydrator(KnowledgeBaseRepository knowledgeBaseRepository) {
+        this.knowledgeBaseRepository = knowledgeBaseRepository;
+    }
+
+    /**
+     * Load id, owner and file metadata for the hits (no embedding, no content)
+     */
+    public List<RetrievedEntry> hydrate(List<ScoredId> hits) {
+        if (hits.isEmpty()) return Collections.emptyList();
+
+        Map<Long, RetrievedEntry> byId = knowledgeBaseRepository
+            .findRetrievedEntries(hits.stream().map(ScoredId::id).toList())
+            .stream()
+            .collect(Collectors.toMap(RetrievedEntry::id, Function.identity()));
+
+        List<RetrievedEntry> results = new ArrayList<>(hits.size());
+        for (ScoredId hit : hits) {
+            RetrievedEntry entry = byId.get(hit.id());
+            if (entry == null) continue;
+            results.add(entry.withSimilarity(hit.score()));
+        }
+        return results;
+    }
+
+    /**
+     * Fill in content for the given entries, keeping their order
+     */
+    public List<RetrievedEntry> loadContent(List<RetrievedEntry> entries) {
+        if (entries.isEmpty()) return Collections.emptyList();
+
+        Map<Long, String> contentById = new HashMap<>();
+        knowledgeBaseRepository.findContentByIds(entries.stream().map(RetrievedEntry::id).toList())
+            .forEach(row -> contentById.put(row.getId(), row.getContent()));
+
+        return entries.stream()
+            .map(entry -> entry.withContent(contentById.get(entry.id())))
+            .toList();
+    }
+}
@@ -0,0 +1,64 @@
+package com.mh.AIAssistant.service;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The latest N durations (ms) for percentile stats, plus the all-time count and max
+ */
+class LatencyWindow {
+
+    private final long[] samples;
+    private int recorded;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong max = new AtomicLong();
+
+    LatencyWindow(int size) {
+        this.samples = new long[size];
+    }
+
+    void record(long millis) {
+        max.accumulateAndGet(millis, Math::max);
+        lock.lock();
+        try {
+            samples[recorded % samples.length] = millis;
+            recorded++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long count() {
+        lock.lock();
+        try {
+            return recorded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * p50, p95, p99 and max under "{prefix}P50Ms" etc.
+     */
+    void putStats(Map<String, Object> stats, String prefix) {
+        long[] sorted;
+        lock.lock();
+        try {
+            sorted = Arrays.copyOf(samples, Math.min(recorded, samples.length));
+        } finally {
+            lock.unlock();
+        }
+        Arrays.sort(sorted);
+        stats.put(prefix + "P50Ms", percentile(sorted, 0.50));
+        stats.put(prefix + "P95Ms", percentile(sorted, 0.95));
+        stats.put(prefix + "P99Ms", percentile(sorted, 0.99));
+        stats.put(prefix + "MaxMs", max.get());
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(p * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,115 @@
+package com.mh.AIAssistant.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text leg of hybrid retrieval, over the content_tsv column and its GIN index
+ * (see KnowledgeSchemaInitializer.LEXICAL_SEARCH).
+ */
+@Component
+public class LexicalRetriever {
+
+    private static final Logger logger = LoggerFactory.getLogger(LexicalRetriever.class);
+
+    // Any query word may match; ts_rank_cd rewards entries matching more of them, closer together.
+    // Normalization 32 maps the rank into [0, 1)
+    private static final String SEARCH_SQL = """
+        SELECT k.id, ts_rank_cd(k.content_tsv, q.query, 32) AS score
+        FROM knowledge_entries k,
+             (SELECT replace(plainto_tsquery('english', ?)::text, '&', '|')::tsquery AS query) q
+        WHERE k.user_id = ? AND k.content_tsv @@ q.query
+        ORDER BY score DESC, k.id DESC
+        LIMIT ?
+        """;
+
+    // The index narrows to rows containing the terms' lexemes, strpos confirms the literal text
+    private static final String EXACT_SQL = """
+        SELECT k.id FROM knowledge_entries k
+        WHERE k.user_id = ? AND k.content_tsv @@ plainto_tsquery('english', ?) %s
+        ORDER BY k.id DESC
+        LIMIT ?
+        """;
+
+    // "quoted phrases", and identifier-like tokens: codes containing a digit (INV-2024-017, E404,
+    // 0x80070005, 10423), snake_case names (ERR_CONNECTION_REFUSED) and upper-case dashed codes (ORA-ABC)
+    private static final Pattern QUOTED = Pattern.compile("\"([^\"]{2,})\"");
+    private static final Pattern IDENTIFIER = Pattern.compile(
+        "(?<![\\w.-])(?:(?=[\\w.-]*\\d)\\w[\\w.-]*\\w|\\w+(?:_\\w+)+|[A-Z]{2,}(?:-[A-Z0-9]+)+)(?![\\w-])");
+    // Plain numbers shorter than this (years, quantities) are not treated as identifiers
+    private static final Pattern SHORT_NUMBER = Pattern.compile("[\\d.,]{1,4}");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public LexicalRetriever(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * Entries sharing words with the query, best full-text rank first
+     */
+    public List<ScoredId> search(String userId, String query, int limit) {
+        try {
+            return jdbcTemplate.query(SEARCH_SQL,
+                (rs, row) -> new ScoredId(rs.getLong(1), rs.getDouble(2)), query, userId, limit);
+        } catch (Exception e) {
+            logger.warn("Lexical search failed: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Entries containing every term literally (case-insensitive), newest first
+     */
+    public List<ScoredId> exactMatches(String userId, List<String> terms, int limit) {
+        if (terms.isEmpty()) return List.of();
+
+        StringBuilder literal = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        args.add(userId);
+        args.add(String.join(" ", terms));
+        for (String term : terms) {
+            literal.append(" AND strpos(lower(k.content), lower(?)) > 0");
+            args.add(term);
+        }
+        args.add(limit);
+
+        try {
+            return jdbcTemplate.query(EXACT_SQL.formatted(literal),
+                (rs, row) -> new ScoredId(rs.getLong(1), 1.0), args.toArray());
+        } catch (Exception e) {
+            logger.warn("Exact-match lookup failed: {}", e.getMessage());
+            return List.of();
+        }
+    }
+
+    /**
+     * Parts of the query that should match literally: quoted phrases and identifier-like tokens
+     */
+    public static List<String> exactTerms(String query) {
+        if (query == null) return List.of();
+
+        Set<String> terms = new LinkedHashSet<>();
+        Matcher quoted = QUOTED.matcher(query);
+        while (quoted.find()) {
+            terms.add(quoted.group(1).strip());
+        }
+        Matcher identifier = IDENTIFIER.matcher(QUOTED.matcher(query).replaceAll(" "));
+        while (identifier.find()) {
+            String token = identifier.group();
+            if (token.length() >= 3 && !SHORT_NUMBER.matcher(token).matches()) {
+                terms.add(token);
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+}
@@ -0,0 +1,228 @@
+package com.mh.AIAssistant.service;
+
+import jakarta.annotation.PreDestroy;
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.Tesseract;
+import net.sourceforge.tess4j.TesseractException;
+import net.sourceforge.tess4j.util.ImageIOHelper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Runs OCR on a fixed pool of workers, each with its own Tesseract engine
+ * (a Tesseract instance is not safe to share between threads).
+ *
+ * Images wait in a bounded queue; when every engine is busy and the queue is
+ * full, {@link #ocr(File)} fails at once with OcrRejectedException instead of
+ * parking another caller thread, so the caller can answer "busy, try again".
+ * Callers already part-way through a document can instead wait a bounded time
+ * for room, see {@link #ocr(BufferedImage, String, long)}.
+ */
+@Service
+public class OcrExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(OcrExecutor.class);
+
+    private static final int LATENCY_SAMPLES = 1024;
+
+    private final int poolSize;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+    private final ThreadPoolExecutor workers;
+    // Room for images being recognised or waiting: poolSize + queueCapacity
+    private final Semaphore slots;
+    // One engine per worker thread, created on its first image
+    private final ThreadLocal<ITesseract> engine;
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicInteger engines = new AtomicInteger();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final LatencyWindow queueWait = new LatencyWindow(LATENCY_SAMPLES);
+    private final LatencyWindow pageTime = new LatencyWindow(LATENCY_SAMPLES);
+
+    @Autowired
+    public OcrExecutor(@Value("${ocr.pool.size:0}") int poolSize,
+                       @Value("${ocr.queue-capacity:16}") int queueCapacity,
+                       @Value("${ocr.timeout-ms:300000}") long timeoutMillis,
+                       @Value("${ocr.tessdata-path:C:/Program Files/Tesseract-OCR/tessdata}") String tessdataPath,
+                       @Value("${ocr.language:eng}") String language) {
+        this(poolSize, queueCapacity, timeoutMillis, () -> {
+            Tesseract tesseract = new Tesseract();
+            tesseract.setDatapath(tessdataPath);
+            tesseract.setLanguage(language);
+            tesseract.setPageSegMode(1);
+            tesseract.setOcrEngineMode(1);
+            return tesseract;
+        });
+    }
+
+    /**
+     * @param poolSize workers (and engines); 0 means one per available core
+     */
+    OcrExecutor(int poolSize, int queueCapacity, long timeoutMillis, Supplier<ITesseract> engineFactory) {
+        this.poolSize = poolSize > 0 ? poolSize : Runtime.getRuntime().availableProcessors();
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeoutMillis;
+        this.engine = ThreadLocal.withInitial(() -> {
+            engines.incrementAndGet();
+            return engineFactory.get();
+        });
+
+        // The queue itself is unbounded: a cancelled image may still sit in it after
+        // giving its slot back, so the slots are what bounds it
+        this.slots = new Semaphore(this.poolSize + queueCapacity);
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(this.poolSize, this.poolSize, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "ocr-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        logger.info("OCR pool: {} engines, {} queued images max", this.poolSize, queueCapacity);
+    }
+
+    /**
+     * Text of every page of the image file, waiting up to ocr.timeout-ms in total
+     *
+     * @throws OcrRejectedException if the pool and its queue are full
+     */
+    public String ocr(File image) throws TesseractException {
+        // One image per page (multi-page TIFFs), so page times are comparable
+        return ocr(image.getName(), () -> ImageIOHelper.getIIOImageList(image), 0);
+    }
+
+    /**
+     * Text of one rendered page (e.g. a scanned PDF page)
+     *
+     * @throws OcrRejectedException if the pool and its queue are full
+     */
+    public String ocr(BufferedImage page, String name) throws TesseractException {
+        return ocr(page, name, 0);
+    }
+
+    /**
+     * Same, waiting up to maxWaitMillis for room in the queue when it is full
+     *
+     * @throws OcrRejectedException if there is still no room after that
+     */
+    public String ocr(BufferedImage page, String name, long maxWaitMillis) throws TesseractException {
+        return ocr(name, () -> List.of(new IIOImage(page, null, null)), maxWaitMillis);
+    }
+
+    private String ocr(String name, Callable<List<IIOImage>> images, long maxWaitMillis) throws TesseractException {
+        long queuedNanos = System.nanoTime();
+        boolean admitted;
+        try {
+            admitted = maxWaitMillis > 0 ? slots.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS) : slots.tryAcquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TesseractException("Interrupted waiting for room in the OCR queue for " + name, e);
+        }
+        if (!admitted) {
+            rejected.incrementAndGet();
+            throw new OcrRejectedException("OCR busy: " + poolSize + " engines working and "
+                + workers.getQueue().size() + " images waiting");
+        }
+
+        // The slot is given back once the image is done, failed or cancelled
+        FutureTask<String> result = new FutureTask<>(() -> run(images, queuedNanos)) {
+            @Override
+            protected void done() {
+                slots.release();
+            }
+        };
+        try {
+            workers.execute(result);
+        } catch (RejectedExecutionException e) {
+            // Only after shutdown
+            slots.release();
+            throw new OcrRejectedException("OCR pool is shut down");
+        }
+        submitted.incrementAndGet();
+
+        try {
+            return result.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new TesseractException("Interrupted waiting for OCR of " + name, e);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            timeouts.incrementAndGet();
+            throw new TesseractException("OCR of " + name + " took longer than " + timeoutMillis + " ms");
+        } catch (ExecutionException e) {
+            failed.incrementAndGet();
+            Throwable cause = e.getCause();
+            if (cause instanceof TesseractException tesseractException) throw tesseractException;
+            // Native library failures surface as Errors; callers handle them separately
+            if (cause instanceof Error error) throw error;
+            throw new TesseractException("OCR of " + name + " failed: " + cause.getMessage(), cause);
+        }
+    }
+
+    private String run(Callable<List<IIOImage>> images, long queuedNanos) throws Exception {
+        long runNanos = System.nanoTime();
+        queueWait.record(TimeUnit.NANOSECONDS.toMillis(runNanos - queuedNanos));
+        try {
+            StringBuilder text = new StringBuilder();
+            for (IIOImage page : images.call()) {
+                long pageStart = System.nanoTime();
+                String pageText = engine.get().doOCR(List.of(page), null);
+                pageTime.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pageStart));
+                pages.incrementAndGet();
+                if (pageText != null) text.append(pageText);
+            }
+            completed.incrementAndGet();
+            return text.toString().trim();
+        } finally {
+            busyNanos.addAndGet(System.nanoTime() - runNanos);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int busy = workers.getActiveCount();
+        double elapsed = (double) (System.nanoTime() - startNanos) * poolSize;
+        stats.put("poolSize", poolSize);
+        stats.put("engines", engines.get());
+        stats.put("busy", busy);
+        stats.put("utilisation", (double) busy / poolSize);
+        stats.put("averageUtilisation", elapsed > 0 ? busyNanos.get() / elapsed : 0.0);
+        stats.put("queueDepth", workers.getQueue().size());
+        stats.put("queueCapacity", queueCapacity);
+        stats.put("submitted", submitted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("timeouts", timeouts.get());
+        stats.put("pages", pages.get());
+        queueWait.putStats(stats, "queueWait");
+        pageTime.putStats(stats, "pageOcr");
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,14 @@
+package com.mh.AIAssistant.service;
+
+import net.sourceforge.tess4j.TesseractException;
+
+/**
+ * OCR was refused because every engine is busy and the wait queue is full.
+ * Nothing is wrong with the file: try again later.
+ */
+public class OcrRejectedException extends TesseractException {
+
+    public OcrRejectedException(String message) {
+        super(message);
+    }
+}
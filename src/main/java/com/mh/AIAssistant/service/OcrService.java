@@ -1,22 +1,6 @@
 package com.mh.AIAssistant.service;
 
-import net.sourceforge.tess4j.Tesseract;
 import net.sourceforge.tess4j.TesseractException;
-import org.apache.pdfbox.pdmodel.PDDocument;
-import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.poi.xwpf.usermodel.XWPFDocument;
-import org.apache.poi.xwpf.usermodel.XWPFParagraph;
-import org.apache.poi.hwpf.HWPFDocument;
-import org.apache.poi.hwpf.extractor.WordExtractor;
-import org.apache.poi.xslf.usermodel.XMLSlideShow;
-import org.apache.poi.xslf.usermodel.XSLFSlide;
-import org.apache.poi.xslf.usermodel.XSLFShape;
-import org.apache.poi.xslf.usermodel.XSLFTextShape;
-import org.apache.poi.hslf.usermodel.HSLFSlideShow;
-import org.apache.poi.hslf.usermodel.HSLFSlide;
-import org.apache.poi.hslf.usermodel.HSLFShape;
-import org.apache.poi.hslf.usermodel.HSLFTextShape;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
 import org.springframework.stereotype.Service;
@@ -28,13 +12,18 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class OcrService {
     
     private static final Logger logger = LoggerFactory.getLogger(OcrService.class);
-    private final Tesseract tesseract;
+    private final OcrExecutor ocrExecutor;
+    private final PdfTextExtractor pdfTextExtractor;
+    // Formats read piece by piece (see textSource), by extension
+    private final Map<String, StreamingTextExtractor> streamingExtractors = new HashMap<>();
     
     // Image formats that need OCR
     private static final List<String> IMAGE_FORMATS = Arrays.asList(
@@ -52,12 +41,13 @@ public class OcrService {
         "pdf", "doc", "docx", "xls", "xlsx", "ppt", "pptx"
     );
     
-    public OcrService() {
-        this.tesseract = new Tesseract();
-        tesseract.setDatapath("C:/Program Files/Tesseract-OCR/tessdata");
-        tesseract.setLanguage("eng");
-        tesseract.setPageSegMode(1);
-        tesseract.setOcrEngineMode(1);
+    public OcrService(OcrExecutor ocrExecutor, PdfTextExtractor pdfTextExtractor,
+                      List<StreamingTextExtractor> streamingExtractors) {
+        this.ocrExecutor = ocrExecutor;
+        this.pdfTextExtractor = pdfTextExtractor;
+        for (StreamingTextExtractor extractor : streamingExtractors) {
+            extractor.extensions().forEach(extension -> this.streamingExtractors.put(extension, extractor));
+        }
     }
     
     /**
@@ -103,6 +93,29 @@ public class OcrService {
         }
     }
     
+    /**
+     * Whether the file's text can be read piece by piece, so it never has to be held whole
+     */
+    public boolean isStreamed(String filename) {
+        return streamingExtractors.containsKey(getFileExtension(filename).toLowerCase());
+    }
+    
+    /**
+     * The file's text as a source: streamed formats are read again on every use,
+     * the rest are extracted whole
+     */
+    public TextSource textSource(File file) {
+        String extension = getFileExtension(file.getName()).toLowerCase();
+        StreamingTextExtractor extractor = streamingExtractors.get(extension);
+        if (extractor != null) {
+            return out -> {
+                logger.info("Streaming text from {}: {}", extension.toUpperCase(), file.getName());
+                extractor.extract(file, out);
+            };
+        }
+        return out -> out.accept(extractText(file));
+    }
+    
     /**
      * Read plain text files
      */
@@ -117,105 +130,41 @@ public class OcrService {
     }
     
     /**
-     * Extract text from images using OCR
+     * Extract text from images using OCR (on the OCR pool; throws
+     * OcrRejectedException when it is saturated)
      */
     private String extractFromImage(File file) throws TesseractException {
         logger.info("Performing OCR on image: {}", file.getName());
-        String result = tesseract.doOCR(file);
-        return result != null ? result.trim() : "";
+        return ocrExecutor.ocr(file);
     }
     
     /**
      * Route to appropriate document processor
      */
     private String extractFromDocument(File file, String extension) throws IOException, TesseractException {
+        StreamingTextExtractor extractor = streamingExtractors.get(extension);
+        if (extractor != null) {
+            logger.info("Extracting text from {}: {}", extension.toUpperCase(), file.getName());
+            StringBuilder sb = new StringBuilder();
+            extractor.extract(file, sb::append);
+            return sb.toString().trim();
+        }
         switch (extension) {
             case "pdf":
                 return extractFromPDF(file);
-            case "docx":
-                return extractFromDOCX(file);
-            case "doc":
-                return extractFromDOC(file);
-            case "xlsx":
-                return extractFromXLSX(file);
             case "xls":
                 return extractFromXLS(file);
-            case "pptx":
-                return extractFromPPTX(file);
-            case "ppt":
-                return extractFromPPT(file);
             default:
                 throw new IllegalArgumentException("Document format not implemented: " + extension);
         }
     }
     
     /**
-     * Extract text from PDF
+     * Extract text from PDF, page-parallel, with OCR for scanned pages
      */
-    private String extractFromPDF(File file) throws IOException {
+    private String extractFromPDF(File file) throws IOException, TesseractException {
         logger.info("Extracting text from PDF: {}", file.getName());
-        try (PDDocument document = PDDocument.load(file)) {
-            PDFTextStripper stripper = new PDFTextStripper();
-            String text = stripper.getText(document);
-            return text != null ? text.trim() : "";
-        }
-    }
-    
-    /**
-     * Extract text from DOCX (Word 2007+)
-     */
-    private String extractFromDOCX(File file) throws IOException {
-        logger.info("Extracting text from DOCX: {}", file.getName());
-        StringBuilder sb = new StringBuilder();
-        
-        try (FileInputStream fis = new FileInputStream(file);
-             XWPFDocument document = new XWPFDocument(fis)) {
-            
-            for (XWPFParagraph paragraph : document.getParagraphs()) {
-                sb.append(paragraph.getText()).append("\n");
-            }
-        }
-        
-        return sb.toString().trim();
-    }
-    
-    /**
-     * Extract text from DOC (Word 97-2003)
-     */
-    private String extractFromDOC(File file) throws IOException {
-        logger.info("Extracting text from DOC: {}", file.getName());
-        try (FileInputStream fis = new FileInputStream(file);
-             HWPFDocument document = new HWPFDocument(fis);
-             WordExtractor extractor = new WordExtractor(document)) {
-            return extractor.getText().trim();
-        }
-    }
-    
-    /**
-     * Extract text from XLSX (Excel 2007+)
-     */
-    private String extractFromXLSX(File file) throws IOException {
-        logger.info("Extracting text from XLSX: {}", file.getName());
-        StringBuilder sb = new StringBuilder();
-        
-        try (FileInputStream fis = new FileInputStream(file);
-             XSSFWorkbook workbook = new XSSFWorkbook(fis)) {
-            
-            for (int i = 0; i < workbook.getNumberOfSheets(); i++) {
-                Sheet sheet = workbook.getSheetAt(i);
-                sb.append("Sheet: ").append(sheet.getSheetName()).append("\n");
-                
-                for (Row row : sheet) {
-                    for (Cell cell : row) {
-                        sb.append(getCellValue(cell)).append("\t");
-                    }
-                    sb.append("\n");
-                }
-                sb.append("\n");
-            }
-        }
-        
-        return sb.toString().trim();
+        return pdfTextExtractor.extract(file);
     }
     
     /**
@@ -245,61 +194,16 @@ public class OcrService {
         return sb.toString().trim();
     }
     
-    /**
-     * Extract text from PPTX (PowerPoint 2007+)
-     */
-    private String extractFromPPTX(File file) throws IOException {
-        logger.info("Extracting text from PPTX: {}", file.getName());
-        StringBuilder sb = new StringBuilder();
-        
-        try (FileInputStream fis = new FileInputStream(file);
-             XMLSlideShow ppt = new XMLSlideShow(fis)) {
-            
-            for (XSLFSlide slide : ppt.getSlides()) {
-                for (XSLFShape shape : slide.getShapes()) {
-                    if (shape instanceof XSLFTextShape) {
-                        XSLFTextShape textShape = (XSLFTextShape) shape;
-                        sb.append(textShape.getText()).append("\n");
-                    }
-                }
-                sb.append("\n");
-            }
-        }
-        
-        return sb.toString().trim();
-    }
-    
-    /**
-     * Extract text from PPT (PowerPoint 97-2003)
-     */
-    private String extractFromPPT(File file) throws IOException {
-        logger.info("Extracting text from PPT: {}", file.getName());
-        StringBuilder sb = new StringBuilder();
-        
-        try (FileInputStream fis = new FileInputStream(file);
-             HSLFSlideShow ppt = new HSLFSlideShow(fis)) {
-            
-            for (HSLFSlide slide : ppt.getSlides()) {
-                for (HSLFShape shape : slide.getShapes()) {
-                    if (shape instanceof HSLFTextShape) {
-                        HSLFTextShape textShape = (HSLFTextShape) shape;
-                        sb.append(textShape.getText()).append("\n");
-                    }
-                }
-                sb.append("\n");
-            }
-        }
-        
-        return sb.toString().trim();
-    }
-    
     /**
      * Helper: Get cell value as string
      */
     private String getCellValue(Cell cell) {
         if (cell == null) return "";
         
-        switch (cell.getCellType()) {
+        // Formulas give the value Excel last computed, not the formula text
+        CellType type = cell.getCellType() == CellType.FORMULA
+            ? cell.getCachedFormulaResultType() : cell.getCellType();
+        switch (type) {
             case STRING:
                 return cell.getStringCellValue();
             case NUMERIC:
@@ -309,8 +213,6 @@ public class OcrService {
                 return String.valueOf(cell.getNumericCellValue());
             case BOOLEAN:
                 return String.valueOf(cell.getBooleanCellValue());
-            case FORMULA:
-                return cell.getCellFormula();
             default:
                 return "";
         }
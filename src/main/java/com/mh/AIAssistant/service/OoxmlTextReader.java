@@ -0,0 +1,167 @@
+package com.mh.AIAssistant.service;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.openxml4j.opc.PackageRelationshipCollection;
+import org.apache.poi.openxml4j.opc.PackageRelationshipTypes;
+import org.apache.poi.util.XMLHelper;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Text of an OOXML part (a Word body, header or footnotes, a slide, its notes)
+ * read with StAX: only text runs, tabs, line breaks, paragraphs and table cells
+ * are looked at, and each paragraph or table row goes to the consumer as soon as
+ * it ends. Works for WordprocessingML (w:) and DrawingML (a:), which use the same
+ * local names for these elements.
+ */
+final class OoxmlTextReader {
+
+    static final String WORDPROCESSING_ML = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    static final String DRAWING_ML = "http://schemas.openxmlformats.org/drawingml/2006/main";
+    static final String PRESENTATION_ML = "http://schemas.openxmlformats.org/presentationml/2006/main";
+    static final String RELATIONSHIPS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+    // Fallback content repeats the Choice (e.g. a text box as VML)
+    private static final String MARKUP_COMPATIBILITY = "http://schemas.openxmlformats.org/markup-compatibility/2006";
+
+    private static final XMLInputFactory FACTORY = XMLHelper.newXMLInputFactory();
+
+    private OoxmlTextReader() {}
+
+    static void read(PackagePart part, String namespace, Consumer<CharSequence> out) throws IOException {
+        read(part, namespace, false, out);
+    }
+
+    /**
+     * Text of the body placeholder of a notes slide: what the speaker wrote, not
+     * the slide image, date or slide number copied from the notes master
+     */
+    static void readNotes(PackagePart part, Consumer<CharSequence> out) throws IOException {
+        read(part, DRAWING_ML, true, out);
+    }
+
+    private static void read(PackagePart part, String namespace, boolean bodyOnly, Consumer<CharSequence> out)
+            throws IOException {
+        try (InputStream xml = part.getInputStream()) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(xml);
+            try {
+                read(reader, namespace, bodyOnly, out);
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read " + part.getPartName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void read(XMLStreamReader reader, String namespace, boolean bodyOnly, Consumer<CharSequence> out)
+            throws XMLStreamException {
+        StringBuilder piece = new StringBuilder();
+        boolean inText = false;
+        // Whether the current shape is a body placeholder (only tracked with bodyOnly)
+        boolean inBody = false;
+        int tableCells = 0;
+        int skipped = 0;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                if (bodyOnly && PRESENTATION_ML.equals(reader.getNamespaceURI())) {
+                    if (reader.getLocalName().equals("sp")) inBody = false;
+                    if (reader.getLocalName().equals("ph")) inBody = "body".equals(reader.getAttributeValue(null, "type"));
+                }
+                if (skipped > 0 || skip(reader)) {
+                    skipped++;
+                } else if ((!bodyOnly || inBody) && namespace.equals(reader.getNamespaceURI())) {
+                    switch (reader.getLocalName()) {
+                        case "t" -> inText = true;
+                        case "tab" -> piece.append('\t');
+                        case "br", "cr" -> piece.append('\n');
+                        case "tc" -> tableCells++;
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                if (skipped > 0) {
+                    skipped--;
+                } else if ((!bodyOnly || inBody) && namespace.equals(reader.getNamespaceURI())) {
+                    switch (reader.getLocalName()) {
+                        case "t" -> inText = false;
+                        case "p" -> {
+                            if (tableCells > 0) {
+                                piece.append(' ');
+                            } else {
+                                flush(piece.append('\n'), out);
+                            }
+                        }
+                        case "tc" -> {
+                            tableCells--;
+                            while (!piece.isEmpty() && piece.charAt(piece.length() - 1) == ' ') {
+                                piece.setLength(piece.length() - 1);
+                            }
+                            piece.append('\t');
+                        }
+                        case "tr" -> {
+                            if (tableCells == 0) flush(piece.append('\n'), out);
+                        }
+                    }
+                }
+            } else if (inText && skipped == 0
+                    && (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA)) {
+                piece.append(reader.getText());
+            }
+        }
+        flush(piece, out);
+    }
+
+    // Fields (slide numbers, dates) and fallback copies of alternate content
+    private static boolean skip(XMLStreamReader reader) {
+        String namespace = reader.getNamespaceURI();
+        return (MARKUP_COMPATIBILITY.equals(namespace) && reader.getLocalName().equals("Fallback"))
+            || (DRAWING_ML.equals(namespace) && reader.getLocalName().equals("fld"));
+    }
+
+    private static void flush(StringBuilder piece, Consumer<CharSequence> out) {
+        if (piece.isEmpty()) return;
+        out.accept(piece.toString());
+        piece.setLength(0);
+    }
+
+    /**
+     * The main part (document.xml, presentation.xml) of the package
+     */
+    static PackagePart mainPart(OPCPackage pkg) throws IOException {
+        PackageRelationshipCollection relationships = pkg.getRelationshipsByType(PackageRelationshipTypes.CORE_DOCUMENT);
+        if (relationships.isEmpty()) {
+            relationships = pkg.getRelationshipsByType(PackageRelationshipTypes.STRICT_CORE_DOCUMENT);
+        }
+        PackagePart main = relationships.isEmpty() ? null : pkg.getPart(relationships.getRelationship(0));
+        if (main == null) throw new IOException("No main document part");
+        return main;
+    }
+
+    /**
+     * Parts the given part points to with the relationship type, in the order listed
+     */
+    static List<PackagePart> related(PackagePart part, String relationshipType) throws IOException {
+        List<PackagePart> parts = new ArrayList<>();
+        try {
+            for (PackageRelationship relationship : part.getRelationshipsByType(relationshipType)) {
+                PackagePart related = part.getRelatedPart(relationship);
+                if (related != null) parts.add(related);
+            }
+        } catch (InvalidFormatException e) {
+            throw new IOException("Cannot follow " + relationshipType + " from " + part.getPartName(), e);
+        }
+        return parts;
+    }
+}
@@ -1,29 +1,106 @@
 package com.mh.AIAssistant.service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import jakarta.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
+/**
+ * OpenAI embeddings. Every request goes through an EmbeddingBatcher, so concurrent
+ * callers (chat queries, ingestion chunks) share /embeddings requests; query
+ * embeddings are cached in EmbeddingCache.
+ */
 @Service
 public class OpenAIEmbeddingService {
 
+    private static final String MODEL = "text-embedding-3-small";
+
     private final WebClient webClient;
+    private final EmbeddingCache cache;
+    private final EmbeddingBatcher batcher;
+    private final Duration requestTimeout;
 
     public OpenAIEmbeddingService(@Value("${chatgpt.api.url}") String baseUrl,
-                                  @Value("${chatgpt.api.key}") String apiKey) {
+                                  @Value("${chatgpt.api.key}") String apiKey,
+                                  EmbeddingCache cache,
+                                  @Value("${embedding.batch.max-size:128}") int maxBatchSize,
+                                  @Value("${embedding.batch.max-tokens:100000}") int maxBatchTokens,
+                                  @Value("${embedding.batch.linger-ms:5}") long lingerMillis,
+                                  @Value("${embedding.batch.max-in-flight:4}") int maxInFlight,
+                                  @Value("${embedding.request.timeout-ms:30000}") long requestTimeoutMillis) {
+        this.cache = cache;
+        this.requestTimeout = Duration.ofMillis(Math.max(1, requestTimeoutMillis));
         this.webClient = WebClient.builder()
                 .baseUrl(baseUrl)
                 .defaultHeader("Authorization", "Bearer " + apiKey)
                 .build();
+        this.batcher = new EmbeddingBatcher(this::request, maxBatchSize, maxBatchTokens, lingerMillis, maxInFlight);
+    }
+
+    /**
+     * Embedding of a query, served from the cache when the same text was embedded before
+     */
+    public float[] embed(String text) {
+        return cache.get(MODEL, text, t -> await(batcher.submit(t)));
+    }
+
+    /**
+     * Non-blocking embed. The batched request itself runs on the batcher's own
+     * threads, which also complete the Mono: move blocking work elsewhere.
+     */
+    public Mono<float[]> embedAsync(String text) {
+        return Mono.fromFuture(() -> cache.getAsync(MODEL, text, batcher::submit));
+    }
+
+    /**
+     * Embed several texts, results in input order. Not cached: used for document
+     * chunks, which are rarely seen twice. The texts may be split over several
+     * requests or share them with other callers.
+     */
+    public List<float[]> embedAll(List<String> texts) {
+        if (texts.isEmpty()) return List.of();
+        return await(batcher.submitAll(texts));
     }
 
     public List<Double> generateEmbedding(String text) {
+        return boxed(embed(text));
+    }
+
+    public List<List<Double>> generateEmbeddings(List<String> texts) {
+        return embedAll(texts).stream().map(OpenAIEmbeddingService::boxed).toList();
+    }
+
+    private static List<Double> boxed(float[] embedding) {
+        List<Double> values = new ArrayList<>(embedding.length);
+        for (float x : embedding) values.add((double) x);
+        return values;
+    }
+
+    private static <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw e;
+        }
+    }
+
+    // One /embeddings request for the batch; results are in input order. Runs on one of the
+    // batcher's max-in-flight threads, so a stalled request is cut off and fails its waiting callers
+    private List<float[]> request(List<String> texts) {
         Map<String, Object> request = Map.of(
-                "model", "text-embedding-3-small",
-                "input", text
+                "model", MODEL,
+                "input", texts
         );
 
         Map<String, Object> response = webClient.post()
@@ -31,14 +108,31 @@ public class OpenAIEmbeddingService {
                 .bodyValue(request)
                 .retrieve()
                 .bodyToMono(Map.class)
+                .timeout(requestTimeout)
                 .block();
 
-        Map<String, Object> data = ((List<Map<String, Object>>) response.get("data")).get(0);
-        return (List<Double>) data.get("embedding");
+        List<Map<String, Object>> data = new ArrayList<>((List<Map<String, Object>>) response.get("data"));
+        if (data.size() != texts.size()) {
+            throw new IllegalStateException("Expected " + texts.size() + " embeddings, got " + data.size());
+        }
+        data.sort(Comparator.comparingInt(item -> ((Number) item.get("index")).intValue()));
+        return data.stream().map(item -> VectorMath.toFloatArray((List<Double>) item.get("embedding"))).toList();
+    }
+
+    public String model() {
+        return MODEL;
     }
 
     public List<Double> getEmbedding(String text) {
         return generateEmbedding(text);
     }
-}
 
+    public Map<String, Object> getBatchStats() {
+        return batcher.getStats();
+    }
+
+    @PreDestroy
+    void shutdown() {
+        batcher.close();
+    }
+}
@@ -0,0 +1,220 @@
+package com.mh.AIAssistant.service;
+
+import jakarta.annotation.PreDestroy;
+import net.sourceforge.tess4j.TesseractException;
+import org.apache.pdfbox.io.MemoryUsageSetting;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDResources;
+import org.apache.pdfbox.rendering.ImageType;
+import org.apache.pdfbox.rendering.PDFRenderer;
+import org.apache.pdfbox.text.PDFTextStripper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * PDF text, page by page: the page range is split across a fork-join pool, each
+ * task opening its own PDDocument (they are not thread-safe) and stripping its
+ * pages one at a time. Pages without a text layer (scans) are rendered and sent
+ * to the OCR pool. Pages come back in order, each after a page marker
+ * (see {@link #pageMarker(int)}) that TextChunker carries into every chunk.
+ *
+ * A busy OCR pool rejects the document only at its first scanned page, before
+ * any of its pages has been recognised; after that, pages wait up to
+ * pdf.ocr.queue-wait-ms for room so a half-recognised document isn't thrown away.
+ *
+ * Documents are opened with a bounded main-memory buffer backed by temp files,
+ * so a large upload doesn't have to fit in the heap.
+ */
+@Service
+public class PdfTextExtractor {
+
+    private static final Logger logger = LoggerFactory.getLogger(PdfTextExtractor.class);
+
+    private final OcrExecutor ocrExecutor;
+    private final ForkJoinPool pool;
+    private final int pagesPerTask;
+    private final float ocrDpi;
+    private final int minTextChars;
+    private final long maxMainMemoryBytes;
+    private final long ocrQueueWaitMillis;
+
+    private final AtomicLong documents = new AtomicLong();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong ocrPages = new AtomicLong();
+    private final LatencyWindow documentTime = new LatencyWindow(256);
+
+    public PdfTextExtractor(OcrExecutor ocrExecutor,
+                            @Value("${pdf.extract.parallelism:0}") int parallelism,
+                            @Value("${pdf.extract.pages-per-task:8}") int pagesPerTask,
+                            @Value("${pdf.ocr.dpi:300}") float ocrDpi,
+                            @Value("${pdf.ocr.min-text-chars:1}") int minTextChars,
+                            @Value("${pdf.max-main-memory-mb:32}") long maxMainMemoryMb,
+                            @Value("${pdf.ocr.queue-wait-ms:60000}") long ocrQueueWaitMillis) {
+        this.ocrExecutor = ocrExecutor;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.pagesPerTask = Math.max(1, pagesPerTask);
+        this.ocrDpi = ocrDpi;
+        this.minTextChars = minTextChars;
+        this.maxMainMemoryBytes = maxMainMemoryMb * 1024 * 1024;
+        this.ocrQueueWaitMillis = ocrQueueWaitMillis;
+    }
+
+    /**
+     * Marker put before the text of each page (1-based)
+     */
+    public static String pageMarker(int page) {
+        return "[Page " + page + "]";
+    }
+
+    public String extract(File file) throws IOException, TesseractException {
+        long start = System.nanoTime();
+        int pageCount;
+        try (PDDocument document = open(file)) {
+            pageCount = document.getNumberOfPages();
+        }
+
+        String[] texts = new String[pageCount];
+        boolean[] ocr = new boolean[pageCount];
+        try {
+            PageRange all = new PageRange(file, 0, pageCount, texts, ocr, new AtomicBoolean(), new AtomicBoolean());
+            if (pageCount <= pagesPerTask) {
+                all.compute();
+            } else {
+                pool.invoke(all);
+            }
+        } catch (PageException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof PageException) cause = cause.getCause();
+            if (cause instanceof TesseractException tesseractException) throw tesseractException;
+            throw (IOException) cause;
+        }
+
+        StringBuilder text = new StringBuilder();
+        int scanned = 0;
+        for (int i = 0; i < pageCount; i++) {
+            if (ocr[i]) scanned++;
+            if (texts[i] == null || texts[i].isBlank()) continue;
+            text.append(pageMarker(i + 1)).append('\n').append(texts[i].strip()).append("\n\n");
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        documents.incrementAndGet();
+        pages.addAndGet(pageCount);
+        ocrPages.addAndGet(scanned);
+        documentTime.record(millis);
+        logger.info("Extracted {} pages ({} by OCR) from {} in {} ms", pageCount, scanned, file.getName(), millis);
+        return text.toString().trim();
+    }
+
+    private PDDocument open(File file) throws IOException {
+        return PDDocument.load(file, MemoryUsageSetting.setupMixed(maxMainMemoryBytes));
+    }
+
+    // Carries a page's checked exception out of the fork-join pool
+    private static final class PageException extends RuntimeException {
+        PageException(Exception cause) {
+            super(cause);
+        }
+    }
+
+    /**
+     * Pages [from, to): split in halves down to pagesPerTask, then extracted in order
+     */
+    private final class PageRange extends RecursiveAction {
+        private final File file;
+        private final int from;
+        private final int to;
+        private final String[] texts;
+        private final boolean[] ocr;
+        // Set once the first scanned page of the document has been sent to the OCR pool
+        private final AtomicBoolean ocrStarted;
+        // Set once any range has failed (e.g. its OCR was rejected); the others stop at their next page
+        private final AtomicBoolean aborted;
+
+        PageRange(File file, int from, int to, String[] texts, boolean[] ocr, AtomicBoolean ocrStarted,
+                  AtomicBoolean aborted) {
+            this.file = file;
+            this.from = from;
+            this.to = to;
+            this.texts = texts;
+            this.ocr = ocr;
+            this.ocrStarted = ocrStarted;
+            this.aborted = aborted;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > pagesPerTask) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new PageRange(file, from, middle, texts, ocr, ocrStarted, aborted),
+                    new PageRange(file, middle, to, texts, ocr, ocrStarted, aborted));
+                return;
+            }
+            try (PDDocument document = open(file)) {
+                PDFTextStripper stripper = new PDFTextStripper();
+                PDFRenderer renderer = null;
+                for (int page = from; page < to; page++) {
+                    if (aborted.get()) return;
+                    stripper.setStartPage(page + 1);
+                    stripper.setEndPage(page + 1);
+                    String text = stripper.getText(document);
+                    if (text.strip().length() < minTextChars && hasImages(document, page)) {
+                        // No text layer: a scanned page
+                        if (aborted.get()) return;
+                        if (renderer == null) renderer = new PDFRenderer(document);
+                        BufferedImage image = renderer.renderImageWithDPI(page, ocrDpi, ImageType.GRAY);
+                        text = ocr(image, file.getName() + " page " + (page + 1));
+                        ocr[page] = true;
+                    }
+                    texts[page] = text;
+                }
+            } catch (IOException | TesseractException e) {
+                aborted.set(true);
+                throw new PageException(e);
+            }
+        }
+
+        // The document's first scanned page is rejected at once if the pool is full; later ones wait for room
+        private String ocr(BufferedImage image, String name) throws TesseractException {
+            if (ocrStarted.compareAndSet(false, true)) {
+                return ocrExecutor.ocr(image, name);
+            }
+            return ocrExecutor.ocr(image, name, ocrQueueWaitMillis);
+        }
+    }
+
+    // Pages without XObjects (images or forms) are blank, not scanned
+    private static boolean hasImages(PDDocument document, int page) {
+        PDResources resources = document.getPage(page).getResources();
+        return resources != null && resources.getXObjectNames().iterator().hasNext();
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("parallelism", pool.getParallelism());
+        stats.put("pagesPerTask", pagesPerTask);
+        stats.put("documents", documents.get());
+        stats.put("pages", pages.get());
+        stats.put("ocrPages", ocrPages.get());
+        documentTime.putStats(stats, "document");
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        pool.shutdownNow();
+    }
+}
@@ -0,0 +1,47 @@
+package com.mh.AIAssistant.service;
+
+import org.apache.poi.hslf.usermodel.HSLFShape;
+import org.apache.poi.hslf.usermodel.HSLFSlide;
+import org.apache.poi.hslf.usermodel.HSLFSlideShow;
+import org.apache.poi.hslf.usermodel.HSLFTextParagraph;
+import org.apache.poi.poifs.filesystem.POIFSFileSystem;
+import org.apache.poi.sl.extractor.SlideShowExtractor;
+import org.springframework.stereotype.Service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * PPT (PowerPoint 97-2003) text, one slide at a time: every shape, group and
+ * table on the slide, then its speaker notes.
+ *
+ * The binary format has no streaming reader, so HSLF still parses the deck,
+ * but the file is read in place (read-only POIFS) and the text is never joined
+ * into one String.
+ */
+@Service
+public class PptTextExtractor implements StreamingTextExtractor {
+
+    @Override
+    public List<String> extensions() {
+        return List.of("ppt");
+    }
+
+    @Override
+    public void extract(File file, Consumer<CharSequence> out) throws IOException {
+        try (POIFSFileSystem fs = new POIFSFileSystem(file, true);
+             HSLFSlideShow ppt = new HSLFSlideShow(fs);
+             SlideShowExtractor<HSLFShape, HSLFTextParagraph> extractor = new SlideShowExtractor<>(ppt)) {
+            extractor.setSlidesByDefault(true);
+            extractor.setNotesByDefault(true);
+            extractor.setMasterByDefault(false);
+            extractor.setCommentsByDefault(false);
+            for (HSLFSlide slide : ppt.getSlides()) {
+                String text = extractor.getText(slide);
+                if (!text.isBlank()) out.accept(text.strip() + "\n\n");
+            }
+        }
+    }
+}
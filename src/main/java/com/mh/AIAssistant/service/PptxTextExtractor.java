@@ -0,0 +1,83 @@
+package com.mh.AIAssistant.service;
+
+import org.apache.poi.openxml4j.exceptions.InvalidFormatException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.openxml4j.opc.PackagePart;
+import org.apache.poi.openxml4j.opc.PackageRelationship;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xslf.usermodel.XSLFRelation;
+import org.springframework.stereotype.Service;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * PPTX text read slide by slide with StAX (see OoxmlTextReader) instead of
+ * loading an XMLSlideShow: every shape and table on the slide, then its speaker
+ * notes, in presentation order.
+ */
+@Service
+public class PptxTextExtractor implements StreamingTextExtractor {
+
+    private static final XMLInputFactory FACTORY = XMLHelper.newXMLInputFactory();
+
+    @Override
+    public List<String> extensions() {
+        return List.of("pptx");
+    }
+
+    @Override
+    public void extract(File file, Consumer<CharSequence> out) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            PackagePart presentation = OoxmlTextReader.mainPart(pkg);
+            for (String id : slideIds(presentation)) {
+                PackageRelationship relationship = presentation.getRelationship(id);
+                PackagePart slide = relationship == null ? null : presentation.getRelatedPart(relationship);
+                if (slide == null) continue;
+
+                OoxmlTextReader.read(slide, OoxmlTextReader.DRAWING_ML, out);
+                for (PackagePart notes : OoxmlTextReader.related(slide, XSLFRelation.NOTES.getRelation())) {
+                    out.accept("Notes:\n");
+                    OoxmlTextReader.readNotes(notes, out);
+                }
+                out.accept("\n");
+            }
+        } catch (InvalidFormatException e) {
+            throw new IOException("Cannot read presentation " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Relationship ids of the slides, in the order of p:sldIdLst
+     */
+    private static List<String> slideIds(PackagePart presentation) throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (InputStream xml = presentation.getInputStream()) {
+            XMLStreamReader reader = FACTORY.createXMLStreamReader(xml);
+            try {
+                while (reader.hasNext()) {
+                    if (reader.next() == XMLStreamConstants.START_ELEMENT
+                            && OoxmlTextReader.PRESENTATION_ML.equals(reader.getNamespaceURI())
+                            && reader.getLocalName().equals("sldId")) {
+                        String id = reader.getAttributeValue(OoxmlTextReader.RELATIONSHIPS, "id");
+                        if (id != null) ids.add(id);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException("Cannot read " + presentation.getPartName() + ": " + e.getMessage(), e);
+        }
+        return ids;
+    }
+}
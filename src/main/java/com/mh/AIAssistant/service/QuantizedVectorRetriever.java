@@ -0,0 +1,115 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.EmbeddingCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Array;
+import java.sql.PreparedStatement;
+import java.util.List;
+
+/**
+ * Two-tier search: a flat scan over the int8 quantized embeddings (a quarter of
+ * the bytes of the float32 column) picks limit * candidate-multiplier candidates,
+ * which are then rescored exactly by {@link ExactVectorRetriever}.
+ * Rows not quantized yet are scored from their float32 column during the scan,
+ * and rows not migrated yet from the legacy array column.
+ */
+@Component
+public class QuantizedVectorRetriever implements VectorRetriever {
+
+    public static final String NAME = "quantized";
+
+    private static final int FETCH_SIZE = 1024;
+
+    private static final String SCAN_SQL = """
+        SELECT id, embedding_q8, embedding_q8_scale, embedding_q8_offset,
+               CASE WHEN embedding_q8 IS NULL THEN embedding_f32 END AS embedding_f32,
+               CASE WHEN embedding_q8 IS NULL AND embedding_f32 IS NULL THEN embedding END AS legacy_embedding
+        FROM knowledge_entries
+        WHERE user_id = ?
+        """;
+
+    // Restricts the scan to some IVF clusters; unassigned rows are always included
+    private static final String CLUSTER_FILTER = """
+          AND (cluster_id = ANY(?) OR cluster_id IS NULL)
+        """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ExactVectorRetriever exactRetriever;
+
+    @Value("${vector.quantized.candidate-multiplier:4}")
+    private int candidateMultiplier;
+
+    public QuantizedVectorRetriever(JdbcTemplate jdbcTemplate, ExactVectorRetriever exactRetriever) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.exactRetriever = exactRetriever;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<ScoredId> score(String userId, float[] queryEmbedding, int limit) {
+        return score(userId, queryEmbedding, limit, null);
+    }
+
+    /**
+     * Quantized scan plus exact rescoring, optionally limited to some IVF clusters (null = all rows)
+     */
+    @Transactional(readOnly = true)
+    public List<ScoredId> score(String userId, float[] queryEmbedding, int limit, List<Long> clusterIds) {
+        List<ScoredId> candidates = candidates(userId, queryEmbedding, limit * Math.max(candidateMultiplier, 1), clusterIds);
+        return exactRetriever.rescore(queryEmbedding, candidates.stream().map(ScoredId::id).toList(), limit);
+    }
+
+    /**
+     * Approximate scores from the quantized tier only
+     */
+    @Transactional(readOnly = true)
+    public List<ScoredId> candidates(String userId, float[] queryEmbedding, int count, List<Long> clusterIds) {
+        float[] query = VectorMath.normalize(queryEmbedding);
+        double querySum = ScalarQuantizer.sum(query);
+        TopKCollector topK = new TopKCollector(count);
+
+        jdbcTemplate.query(connection -> {
+            PreparedStatement statement = connection.prepareStatement(
+                clusterIds == null ? SCAN_SQL : SCAN_SQL + CLUSTER_FILTER);
+            statement.setFetchSize(FETCH_SIZE);
+            statement.setString(1, userId);
+            if (clusterIds != null) {
+                statement.setArray(2, connection.createArrayOf("bigint", clusterIds.toArray()));
+            }
+            return statement;
+        }, rs -> {
+            byte[] codes = rs.getBytes(2);
+            if (codes != null) {
+                topK.offer(rs.getLong(1), ScalarQuantizer.dot(query, querySum, codes, rs.getFloat(3), rs.getFloat(4)));
+                return;
+            }
+            byte[] packed = rs.getBytes(5);
+            float[] vector;
+            if (packed != null) {
+                vector = EmbeddingCodec.decode(packed);
+            } else {
+                Array legacy = rs.getArray(6);
+                if (legacy == null) return;
+                vector = EmbeddingCodec.fromLegacyArray(legacy.getArray());
+            }
+            double norm = VectorMath.norm(vector);
+            if (norm == 0.0) return;
+            topK.offer(rs.getLong(1), VectorMath.dot(query, vector) / norm);
+        });
+
+        return topK.toSortedList();
+    }
+
+    void setCandidateMultiplier(int candidateMultiplier) {
+        this.candidateMultiplier = candidateMultiplier;
+    }
+}
@@ -0,0 +1,30 @@
+package com.mh.AIAssistant.service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reciprocal rank fusion: an id scores sum(1 / (k + rank)) over the rankings it
+ * appears in (rank starting at 1). Only ranks matter, so legs with incomparable
+ * scores (cosine similarity, full-text rank) can be merged.
+ */
+public final class ReciprocalRankFusion {
+
+    public static final int DEFAULT_K = 60;
+
+    private ReciprocalRankFusion() {}
+
+    public static List<ScoredId> fuse(List<List<ScoredId>> rankings, int k, int limit) {
+        Map<Long, Double> scores = new LinkedHashMap<>();
+        for (List<ScoredId> ranking : rankings) {
+            for (int rank = 0; rank < ranking.size(); rank++) {
+                scores.merge(ranking.get(rank).id(), 1.0 / (k + rank + 1), Double::sum);
+            }
+        }
+
+        TopKCollector topK = new TopKCollector(limit);
+        scores.forEach(topK::offer);
+        return topK.toSortedList();
+    }
+}
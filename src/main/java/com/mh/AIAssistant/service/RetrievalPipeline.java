@@ -0,0 +1,133 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.dto.DocumentInfo;
+import com.mh.AIAssistant.dto.RetrievalResult;
+import com.mh.AIAssistant.dto.RetrievedEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * The knowledge base lookup for one chat turn: a single hybrid search (one query
+ * embedding, one vector search), the hits grouped into documents and their
+ * content loaded once. The reply, its prompt and the documents list returned to
+ * the client all read from the same RetrievalResult.
+ */
+@Service
+public class RetrievalPipeline {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetrievalPipeline.class);
+    // Matched chunks of one document that are put together as its content
+    private static final int MAX_CHUNKS_PER_DOCUMENT = 3;
+
+    private final HybridRetrievalService hybridRetrievalService;
+    private final VectorRetrievalService vectorRetrievalService;
+
+    @Value("${retrieval.pipeline.max-hits:50}")
+    private int maxHits;
+
+    @Value("${retrieval.pipeline.min-similarity:0.3}")
+    private double minSimilarity;
+
+    @Value("${retrieval.pipeline.max-documents:10}")
+    private int maxDocuments;
+
+    private final AtomicLong retrievals = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    public RetrievalPipeline(HybridRetrievalService hybridRetrievalService,
+                             VectorRetrievalService vectorRetrievalService) {
+        this.hybridRetrievalService = hybridRetrievalService;
+        this.vectorRetrievalService = vectorRetrievalService;
+    }
+
+    /**
+     * Retrieve once for the turn. Failures are logged and give an empty result,
+     * so the caller can still answer without knowledge base context.
+     */
+    public RetrievalResult retrieve(String userId, String query) {
+        return retrieve(userId, query, null);
+    }
+
+    /**
+     * Same, using a query embedding the caller is already computing (null to embed here)
+     */
+    public RetrievalResult retrieve(String userId, String query, Callable<float[]> queryEmbedding) {
+        retrievals.incrementAndGet();
+        try {
+            HybridRetrievalService.Hits hits = queryEmbedding == null
+                    ? hybridRetrievalService.search(userId, query, maxHits, minSimilarity)
+                    : hybridRetrievalService.search(userId, query, maxHits, minSimilarity, queryEmbedding);
+            List<DocumentInfo> documents = groupByDocument(hits.entries(), maxDocuments);
+
+            logger.info("Found {} relevant documents above threshold {} ({} chunk hits)",
+                    documents.size(), minSimilarity, hits.entries().size());
+
+            return new RetrievalResult(query, hits.queryVector(), hits.entries(), documents, hits.exactMatch());
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            logger.error("Error retrieving documents for user {}", userId, e);
+            return RetrievalResult.empty(query);
+        }
+    }
+
+    /**
+     * Group ranked hits into documents (chunks share their parent document, older
+     * whole-document entries group by file). Documents keep the rank of their best
+     * hit; content is loaded only for the kept documents' best chunks and joined
+     * in document order.
+     */
+    List<DocumentInfo> groupByDocument(List<RetrievedEntry> hits, int maxDocuments) {
+        Map<String, List<RetrievedEntry>> byDocument = new LinkedHashMap<>();
+        for (RetrievedEntry hit : hits) {
+            byDocument.computeIfAbsent(hit.documentKey(), key -> new ArrayList<>()).add(hit);
+        }
+
+        List<List<RetrievedEntry>> kept = byDocument.values().stream()
+                .limit(maxDocuments)
+                .map(documentHits -> documentHits.stream().limit(MAX_CHUNKS_PER_DOCUMENT).toList())
+                .toList();
+
+        Map<Long, String> contentById = new HashMap<>();
+        vectorRetrievalService.loadContent(kept.stream().flatMap(List::stream).toList())
+                .forEach(entry -> contentById.put(entry.id(), entry.content()));
+
+        List<DocumentInfo> documents = new ArrayList<>(kept.size());
+        for (List<RetrievedEntry> documentHits : kept) {
+            RetrievedEntry best = documentHits.get(0);
+            String content = documentHits.stream()
+                    .sorted(Comparator.comparing(hit -> hit.chunkIndex() == null ? 0 : hit.chunkIndex()))
+                    .map(hit -> contentById.get(hit.id()))
+                    .filter(Objects::nonNull)
+                    .collect(Collectors.joining("\n...\n"));
+
+            DocumentInfo doc = new DocumentInfo();
+            doc.setId(best.id());
+            doc.setDocumentId(best.documentId());
+            doc.setContent(content);
+            doc.setSimilarity(best.similarity());
+            doc.setFilePath(best.filePath());
+            doc.setFileName(best.fileName());
+            doc.setFileType(best.fileType());
+            doc.setHasFile(best.hasFile());
+            documents.add(doc);
+        }
+        return documents;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("retrievals", retrievals.get());
+        stats.put("failures", failures.get());
+        stats.put("maxHits", maxHits);
+        stats.put("minSimilarity", minSimilarity);
+        stats.put("maxDocuments", maxDocuments);
+        return stats;
+    }
+}
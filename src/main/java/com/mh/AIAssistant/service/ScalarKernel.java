@@ -0,0 +1,60 @@
+package com.mh.AIAssistant.service;
+
+/**
+ * Plain Java kernels, used when the Vector API isn't available. The float loops
+ * keep independent accumulators so C2 can pipeline (and where it is able to,
+ * vectorize) them instead of waiting on a single running sum.
+ */
+final class ScalarKernel implements SimilarityKernel {
+
+    @Override
+    public float dot(float[] a, float[] b, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (int bound = length & ~3; i < bound; i += 4) {
+            s0 += a[i] * b[i];
+            s1 += a[i + 1] * b[i + 1];
+            s2 += a[i + 2] * b[i + 2];
+            s3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[i] * b[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b, int length) {
+        float dot0 = 0f, dot1 = 0f, aa0 = 0f, aa1 = 0f, bb0 = 0f, bb1 = 0f;
+        int i = 0;
+        for (int bound = length & ~1; i < bound; i += 2) {
+            dot0 += a[i] * b[i];
+            aa0 += a[i] * a[i];
+            bb0 += b[i] * b[i];
+            dot1 += a[i + 1] * b[i + 1];
+            aa1 += a[i + 1] * a[i + 1];
+            bb1 += b[i + 1] * b[i + 1];
+        }
+        for (; i < length; i++) {
+            dot0 += a[i] * b[i];
+            aa0 += a[i] * a[i];
+            bb0 += b[i] * b[i];
+        }
+        return SimilarityKernels.cosine(dot0 + dot1, aa0 + aa1, bb0 + bb1);
+    }
+
+    @Override
+    public float dotU8(float[] query, byte[] codes, int length) {
+        // Unrolling measured slower here than the plain loop (byte widening dominates)
+        float sum = 0f;
+        for (int i = 0; i < length; i++) {
+            sum += query[i] * (codes[i] & 0xFF);
+        }
+        return sum;
+    }
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+}
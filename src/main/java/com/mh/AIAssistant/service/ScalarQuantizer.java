@@ -0,0 +1,61 @@
+package com.mh.AIAssistant.service;
+
+/**
+ * Int8 scalar quantization used for the embedding_q8 bytea column.
+ *
+ * Each component is stored as an unsigned byte code c in [0, 255] with a
+ * per-vector offset and scale: x ≈ offset + c * scale. One byte per
+ * dimension instead of four, at the cost of a small, bounded error.
+ */
+public final class ScalarQuantizer {
+
+    private static final int LEVELS = 255;
+
+    private ScalarQuantizer() {}
+
+    public record Quantized(byte[] codes, float scale, float offset) {}
+
+    public static Quantized quantize(float[] vector) {
+        float min = Float.POSITIVE_INFINITY;
+        float max = Float.NEGATIVE_INFINITY;
+        for (float x : vector) {
+            if (x < min) min = x;
+            if (x > max) max = x;
+        }
+        if (vector.length == 0) {
+            return new Quantized(new byte[0], 0f, 0f);
+        }
+
+        float scale = (max - min) / LEVELS;
+        byte[] codes = new byte[vector.length];
+        if (scale > 0f) {
+            for (int i = 0; i < vector.length; i++) {
+                codes[i] = (byte) Math.round((vector[i] - min) / scale);
+            }
+        }
+        return new Quantized(codes, scale, min);
+    }
+
+    public static float[] dequantize(byte[] codes, float scale, float offset) {
+        float[] vector = new float[codes.length];
+        for (int i = 0; i < codes.length; i++) {
+            vector[i] = offset + (codes[i] & 0xFF) * scale;
+        }
+        return vector;
+    }
+
+    /**
+     * Approximate dot product of a float query with a quantized vector.
+     * querySum is the sum of the query components, computed once per query:
+     * q·x ≈ offset * sum(q) + scale * sum(q[i] * c[i])
+     */
+    public static double dot(float[] query, double querySum, byte[] codes, float scale, float offset) {
+        return offset * querySum + scale * (double) SimilarityKernels.dotU8(query, codes);
+    }
+
+    public static double sum(float[] vector) {
+        double sum = 0.0;
+        for (float x : vector) sum += x;
+        return sum;
+    }
+}
@@ -0,0 +1,6 @@
+package com.mh.AIAssistant.service;
+
+/**
+ * A knowledge entry id with its similarity to the query
+ */
+public record ScoredId(long id, double score) {}
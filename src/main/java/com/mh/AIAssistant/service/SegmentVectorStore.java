@@ -0,0 +1,471 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.EmbeddingCodec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * Flat vector search over per-user, memory-mapped segment files kept under
+ * {@code file.storage.path}/vectors/&lt;user&gt;/. Vectors live off the Java heap
+ * and searches don't touch PostgreSQL. The segments are only opened and kept
+ * current when segment is the configured vector.search.backend.
+ *
+ * New entries are appended to the user's active segment. Segment capacity grows
+ * from min-capacity to max-capacity as a user's collection grows, and the
+ * compactor merges small segments and drops ids that no longer exist in
+ * knowledge_entries. On restart the existing segments are just re-mapped; only
+ * normalized rows that no segment holds yet are read from the database. The same
+ * catch-up runs before every compaction, which picks up legacy rows once the
+ * embedding migration has normalized them and appends lost in a crash.
+ * Removed entries are skipped by searches until compaction rewrites their segments.
+ */
+@Service
+public class SegmentVectorStore implements VectorRetriever {
+
+    private static final Logger logger = LoggerFactory.getLogger(SegmentVectorStore.class);
+
+    public static final String NAME = "segment";
+
+    private static final String SEGMENT_PREFIX = "seg-";
+    private static final String SEGMENT_SUFFIX = ".vec";
+    private static final int CATCH_UP_PAGE_SIZE = 500;
+    private static final int CATCH_UP_ID_PAGE_SIZE = 10000;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Value("${file.storage.path}")
+    private String storagePath;
+
+    @Value("${vector.segment.enabled:true}")
+    private boolean enabled;
+
+    @Value("${vector.search.backend:hnsw}")
+    private String backend;
+
+    @Value("${vector.segment.min-capacity:256}")
+    private int minCapacity;
+
+    @Value("${vector.segment.max-capacity:8192}")
+    private int maxCapacity;
+
+    @Value("${vector.segment.merge-min-segments:4}")
+    private int mergeMinSegments;
+
+    private final Map<String, UserSegments> users = new ConcurrentHashMap<>();
+    // Ids held by some segment, so an entry is never appended twice
+    private final Set<Long> stored = ConcurrentHashMap.newKeySet();
+    // Deleted entries still held by a segment, skipped until compaction drops them
+    private final Set<Long> removed = ConcurrentHashMap.newKeySet();
+    private volatile boolean ready = false;
+
+    // Entries stored while the segments are being opened; appended once catch-up is done
+    private record PendingAppend(String userId, long id, float[] vector) {}
+    private final Queue<PendingAppend> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock openLock = new ReentrantLock();
+
+    /**
+     * Segments of one user. The list is replaced, never mutated, so searches can
+     * iterate a snapshot while appends and compaction hold the lock.
+     */
+    private static final class UserSegments {
+        final Path directory;
+        final ReentrantLock lock = new ReentrantLock();
+        volatile List<VectorSegment> segments = List.of();
+        int nextSequence = 1;
+
+        UserSegments(Path directory) {
+            this.directory = directory;
+        }
+    }
+
+    public SegmentVectorStore(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean isReady() {
+        return enabled && ready;
+    }
+
+    /**
+     * Map existing segments, then append rows stored since the last run (or every
+     * row on the first run) in the background
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void openOnStartup() {
+        if (!active()) return;
+        Thread thread = new Thread(this::open, "segment-open");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    void open() {
+        long start = System.currentTimeMillis();
+        try {
+            Path root = root();
+            Files.createDirectories(root);
+            try (Stream<Path> directories = Files.list(root)) {
+                for (Path directory : directories.filter(Files::isDirectory).toList()) {
+                    UserSegments user = load(directory);
+                    users.put(decodeUser(directory.getFileName().toString()), user);
+                    for (VectorSegment segment : user.segments) {
+                        for (int row = 0; row < segment.count(); row++) {
+                            stored.add(segment.id(row));
+                        }
+                    }
+                }
+            }
+
+            long appended = catchUp();
+
+            openLock.lock();
+            try {
+                // Entries the catch-up already appended are skipped by append
+                for (PendingAppend append; (append = pending.poll()) != null; ) {
+                    append(append.userId(), append.id(), append.vector());
+                }
+                ready = true;
+            } finally {
+                openLock.unlock();
+            }
+            logger.info("Vector segments opened for {} users, {} rows appended from the database in {} ms",
+                users.size(), appended, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.error("Failed to open vector segments, disabling the segment store", e);
+            openLock.lock();
+            try {
+                enabled = false;
+                pending.clear();
+            } finally {
+                openLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Append every normalized row that no segment holds. Ids are compared against
+     * the stored set rather than a high-water mark, because rows become eligible
+     * out of id order (the migration normalizes old rows, appends can be lost in a
+     * crash); vectors are only read for the missing ones.
+     */
+    long catchUp() {
+        long appended = 0;
+        long lastId = 0;
+        List<Long> missing = new ArrayList<>();
+        while (true) {
+            List<Long> ids = jdbcTemplate.queryForList("""
+                SELECT id FROM knowledge_entries
+                WHERE id > ? AND embedding_f32 IS NOT NULL AND embedding_version >= 2
+                ORDER BY id
+                LIMIT ?
+                """, Long.class, lastId, CATCH_UP_ID_PAGE_SIZE);
+            for (Long id : ids) {
+                if (stored.contains(id)) continue;
+                missing.add(id);
+                if (missing.size() >= CATCH_UP_PAGE_SIZE) {
+                    appended += appendRows(missing);
+                    missing.clear();
+                }
+            }
+            if (ids.size() < CATCH_UP_ID_PAGE_SIZE) break;
+            lastId = ids.get(ids.size() - 1);
+        }
+        if (!missing.isEmpty()) appended += appendRows(missing);
+        return appended;
+    }
+
+    private long appendRows(List<Long> ids) {
+        long[] appended = { 0 };
+        jdbcTemplate.query(connection -> {
+            var statement = connection.prepareStatement(
+                "SELECT id, user_id, embedding_f32 FROM knowledge_entries WHERE id = ANY(?) ORDER BY id");
+            statement.setArray(1, connection.createArrayOf("bigint", ids.toArray()));
+            return statement;
+        }, rs -> {
+            if (append(rs.getString(2), rs.getLong(1), EmbeddingCodec.decode(rs.getBytes(3)))) appended[0]++;
+        });
+        return appended[0];
+    }
+
+    @Override
+    public void onEntryStored(String userId, Long entryId, float[] embedding) {
+        if (!active() || entryId == null || embedding == null) return;
+        if (!ready) {
+            openLock.lock();
+            try {
+                if (!enabled) return;
+                if (!ready) {
+                    pending.add(new PendingAppend(userId, entryId, embedding));
+                    return;
+                }
+            } finally {
+                openLock.unlock();
+            }
+        }
+        append(userId, entryId, embedding);
+    }
+
+    private boolean active() {
+        return enabled && NAME.equals(backend);
+    }
+
+    @Override
+    public void onEntriesRemoved(String userId, Collection<Long> entryIds) {
+        for (Long id : entryIds) {
+            if (stored.contains(id)) removed.add(id);
+        }
+    }
+
+    @Override
+    public List<ScoredId> score(String userId, float[] queryEmbedding, int limit) {
+        UserSegments user = users.get(userId);
+        if (user == null) return List.of();
+
+        float[] query = VectorMath.normalize(queryEmbedding);
+        TopKCollector topK = new TopKCollector(limit);
+        for (VectorSegment segment : user.segments) {
+            if (segment.dim() == query.length) {
+                segment.scan(query, topK, removed);
+            }
+        }
+        return topK.toSortedList();
+    }
+
+    /**
+     * Append a (normalized) vector to the user's active segment, opening a new one if
+     * needed. Returns false if a segment already holds the id or the write failed.
+     */
+    boolean append(String userId, long id, float[] vector) {
+        if (userId == null || !stored.add(id)) return false;
+        UserSegments user = users.computeIfAbsent(userId, u -> new UserSegments(root().resolve(encodeUser(u))));
+        user.lock.lock();
+        try {
+            List<VectorSegment> segments = user.segments;
+            VectorSegment active = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+            if (active != null && active.append(id, vector)) return true;
+
+            int rows = segments.stream().mapToInt(VectorSegment::count).sum();
+            int capacity = Math.min(maxCapacity, Math.max(minCapacity, Integer.highestOneBit(Math.max(rows, 1)) * 2));
+            VectorSegment segment = newSegment(user, vector.length, capacity);
+            segment.append(id, vector);
+
+            List<VectorSegment> updated = new ArrayList<>(segments);
+            updated.add(segment);
+            user.segments = List.copyOf(updated);
+            return true;
+        } catch (IOException e) {
+            stored.remove(id);
+            logger.error("Failed to append entry {} to vector segments of {}", id, userId, e);
+            return false;
+        } finally {
+            user.lock.unlock();
+        }
+    }
+
+    /**
+     * Append rows the segments are missing, then merge small segments and drop ids
+     * whose knowledge entry is gone
+     */
+    @Scheduled(fixedDelayString = "${vector.segment.compact-interval-ms:600000}", initialDelay = 120000)
+    public void compact() {
+        if (!isReady()) return;
+        try {
+            long appended = catchUp();
+            if (appended > 0) logger.info("Appended {} rows missing from the vector segments", appended);
+        } catch (Exception e) {
+            logger.error("Vector segment catch-up failed", e);
+        }
+        for (Map.Entry<String, UserSegments> entry : users.entrySet()) {
+            try {
+                compact(entry.getKey(), entry.getValue());
+            } catch (Exception e) {
+                logger.error("Vector segment compaction failed for {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    void compact(String userId, UserSegments user) throws IOException {
+        Set<Long> deleted = findDeletedIds(user.segments);
+        user.lock.lock();
+        try {
+            List<VectorSegment> segments = user.segments;
+            List<VectorSegment> small = segments.stream()
+                .filter(s -> s.capacity() < maxCapacity || s.count() < s.capacity() / 2)
+                .toList();
+            List<VectorSegment> rewrite = new ArrayList<>();
+            for (VectorSegment segment : segments) {
+                boolean hasDeleted = !deleted.isEmpty() && containsAny(segment, deleted);
+                if (hasDeleted || (small.size() >= mergeMinSegments && small.contains(segment))) {
+                    rewrite.add(segment);
+                }
+            }
+            if (rewrite.isEmpty()) return;
+
+            // Copy live rows into new segments, grouped by dimension
+            Map<Integer, List<VectorSegment>> byDim = new TreeMap<>();
+            for (VectorSegment segment : rewrite) {
+                byDim.computeIfAbsent(segment.dim(), d -> new ArrayList<>()).add(segment);
+            }
+            List<VectorSegment> merged = new ArrayList<>();
+            int dropped = 0;
+            for (Map.Entry<Integer, List<VectorSegment>> group : byDim.entrySet()) {
+                int dim = group.getKey();
+                VectorSegment target = null;
+                for (VectorSegment source : group.getValue()) {
+                    for (int row = 0; row < source.count(); row++) {
+                        long id = source.id(row);
+                        if (deleted.contains(id)) {
+                            stored.remove(id);
+                            removed.remove(id);
+                            dropped++;
+                            continue;
+                        }
+                        if (target == null || target.isFull()) {
+                            if (target != null) target.force();
+                            target = newSegment(user, dim, maxCapacity);
+                            merged.add(target);
+                        }
+                        target.append(id, source.vector(row));
+                    }
+                }
+                if (target != null) target.force();
+            }
+
+            List<VectorSegment> updated = new ArrayList<>(segments);
+            updated.removeAll(rewrite);
+            // Merged segments go first so the newest (active) segment stays last
+            updated.addAll(0, merged);
+            user.segments = List.copyOf(updated);
+
+            for (VectorSegment segment : rewrite) {
+                segment.delete();
+            }
+            logger.info("Compacted {} vector segments of {} into {} ({} deleted ids dropped)",
+                rewrite.size(), userId, merged.size(), dropped);
+        } finally {
+            user.lock.unlock();
+        }
+    }
+
+    private Set<Long> findDeletedIds(List<VectorSegment> segments) {
+        List<Long> ids = new ArrayList<>();
+        for (VectorSegment segment : segments) {
+            for (int row = 0; row < segment.count(); row++) {
+                ids.add(segment.id(row));
+            }
+        }
+
+        Set<Long> deleted = new HashSet<>(ids);
+        for (int from = 0; from < ids.size(); from += CATCH_UP_PAGE_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(ids.size(), from + CATCH_UP_PAGE_SIZE));
+            jdbcTemplate.query(connection -> {
+                var statement = connection.prepareStatement("SELECT id FROM knowledge_entries WHERE id = ANY(?)");
+                statement.setArray(1, connection.createArrayOf("bigint", batch.toArray()));
+                return statement;
+            }, rs -> {
+                deleted.remove(rs.getLong(1));
+            });
+        }
+        return deleted;
+    }
+
+    private static boolean containsAny(VectorSegment segment, Set<Long> ids) {
+        for (int row = 0; row < segment.count(); row++) {
+            if (ids.contains(segment.id(row))) return true;
+        }
+        return false;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        int segments = 0;
+        long rows = 0;
+        long bytes = 0;
+        for (UserSegments user : users.values()) {
+            for (VectorSegment segment : user.segments) {
+                segments++;
+                rows += segment.count();
+                bytes += VectorSegment.fileSize(segment.dim(), segment.capacity());
+            }
+        }
+        stats.put("ready", isReady());
+        stats.put("users", users.size());
+        stats.put("segments", segments);
+        stats.put("rows", rows);
+        stats.put("removed", removed.size());
+        stats.put("mappedBytes", bytes);
+        return stats;
+    }
+
+    private UserSegments load(Path directory) throws IOException {
+        UserSegments user = new UserSegments(directory);
+        List<VectorSegment> segments = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(SegmentVectorStore::isSegmentFile).sorted().toList()) {
+                // Compacted away while still mapped on a platform that couldn't delete it then
+                if (VectorSegment.deleteIfMarked(file)) continue;
+                segments.add(VectorSegment.open(file));
+                user.nextSequence = Math.max(user.nextSequence, sequenceOf(file) + 1);
+            }
+        }
+        user.segments = List.copyOf(segments);
+        return user;
+    }
+
+    private VectorSegment newSegment(UserSegments user, int dim, int capacity) throws IOException {
+        Files.createDirectories(user.directory);
+        Path path = user.directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, user.nextSequence++, SEGMENT_SUFFIX));
+        // Build under a temporary name so a crash never leaves a half-created segment behind
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.deleteIfExists(temp);
+        VectorSegment.create(temp, dim, capacity);
+        Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE);
+        return VectorSegment.open(path);
+    }
+
+    private Path root() {
+        return Paths.get(storagePath, "vectors");
+    }
+
+    private static boolean isSegmentFile(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+    }
+
+    private static int sequenceOf(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // User ids contain characters like ':' and '+', so directory names are URL-safe base64
+    static String encodeUser(String userId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(userId.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static String decodeUser(String directoryName) {
+        return new String(Base64.getUrlDecoder().decode(directoryName), StandardCharsets.UTF_8);
+    }
+}
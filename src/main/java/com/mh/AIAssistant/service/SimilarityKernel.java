@@ -0,0 +1,25 @@
+package com.mh.AIAssistant.service;
+
+/**
+ * Inner loops of in-JVM vector scoring. Implementations only differ in how
+ * they use the CPU; results agree up to float rounding.
+ */
+interface SimilarityKernel {
+
+    /**
+     * Sum of a[i] * b[i] over the first length components
+     */
+    float dot(float[] a, float[] b, int length);
+
+    /**
+     * dot(a, b) / (|a| * |b|) in one pass; 0 when either vector is zero
+     */
+    float cosine(float[] a, float[] b, int length);
+
+    /**
+     * Sum of query[i] * (codes[i] & 0xFF), the inner loop of int8 scoring
+     */
+    float dotU8(float[] query, byte[] codes, int length);
+
+    String name();
+}
@@ -0,0 +1,67 @@
+package com.mh.AIAssistant.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Entry point for dot product, cosine and int8 scoring on primitive arrays.
+ *
+ * Uses the Vector API kernels when the JVM was started with
+ * {@code --add-modules jdk.incubator.vector} on SIMD hardware, and the scalar
+ * kernels otherwise. Set {@code -Dvector.kernels=scalar} to force the fallback.
+ */
+public final class SimilarityKernels {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimilarityKernels.class);
+
+    private static final SimilarityKernel KERNEL = select();
+
+    private SimilarityKernels() {}
+
+    public static float dot(float[] a, float[] b) {
+        return KERNEL.dot(a, b, Math.min(a.length, b.length));
+    }
+
+    public static float cosine(float[] a, float[] b) {
+        return KERNEL.cosine(a, b, Math.min(a.length, b.length));
+    }
+
+    /**
+     * Sum of query[i] * (codes[i] & 0xFF); see ScalarQuantizer.dot
+     */
+    public static float dotU8(float[] query, byte[] codes) {
+        return KERNEL.dotU8(query, codes, Math.min(query.length, codes.length));
+    }
+
+    /**
+     * Name of the active implementation, e.g. "vector-api-256" or "scalar"
+     */
+    public static String implementation() {
+        return KERNEL.name();
+    }
+
+    static float cosine(float dot, float normA, float normB) {
+        double denominator = Math.sqrt((double) normA * normB);
+        return denominator == 0.0 ? 0f : (float) (dot / denominator);
+    }
+
+    private static SimilarityKernel select() {
+        if ("scalar".equalsIgnoreCase(System.getProperty("vector.kernels"))) {
+            return new ScalarKernel();
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+            try {
+                if (VectorApiKernel.isAccelerated()) {
+                    SimilarityKernel kernel = new VectorApiKernel();
+                    logger.info("Similarity kernels: {}", kernel.name());
+                    return kernel;
+                }
+            } catch (LinkageError e) {
+                logger.warn("Vector API unavailable, using scalar kernels: {}", e.toString());
+            }
+        } else {
+            logger.info("Similarity kernels: scalar (start with --add-modules jdk.incubator.vector for SIMD)");
+        }
+        return new ScalarKernel();
+    }
+}
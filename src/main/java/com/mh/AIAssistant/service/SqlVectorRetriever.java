@@ -0,0 +1,38 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.repository.KnowledgeBaseRepository;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Cosine search computed by PostgreSQL, over the packed float32 column or, for
+ * rows not migrated yet, the legacy double precision[] column. Decoding the
+ * bytea in plpgsql is slow, so this backend is kept for comparison and small
+ * deployments rather than as the default.
+ */
+@Component
+public class SqlVectorRetriever implements VectorRetriever {
+
+    public static final String NAME = "sql";
+
+    private final KnowledgeBaseRepository repository;
+
+    public SqlVectorRetriever(KnowledgeBaseRepository repository) {
+        this.repository = repository;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public List<ScoredId> score(String userId, float[] queryEmbedding, int limit) {
+        return repository.findSimilarIds(VectorMath.toPgArray(VectorMath.normalize(queryEmbedding)), userId, limit)
+            .stream()
+            .filter(row -> row.getScore() != null)
+            .map(row -> new ScoredId(row.getId(), row.getScore()))
+            .toList();
+    }
+}
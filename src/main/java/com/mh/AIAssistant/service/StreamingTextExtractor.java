@@ -0,0 +1,21 @@
+package com.mh.AIAssistant.service;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads the text of one kind of document piece by piece (a row, a paragraph, a
+ * slide), handing each piece to the consumer as soon as it is read, so neither
+ * the whole text nor the document's object model has to be held at once
+ */
+public interface StreamingTextExtractor {
+
+    /**
+     * Lower-case file extensions this extractor reads
+     */
+    List<String> extensions();
+
+    void extract(File file, Consumer<CharSequence> out) throws IOException;
+}
@@ -0,0 +1,194 @@
+package com.mh.AIAssistant.service;
+
+import java.text.BreakIterator;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits extracted text into overlapping passages on sentence boundaries.
+ *
+ * Chunks hold whole sentences up to {@code maxChars}; each chunk starts with the
+ * trailing sentences (up to {@code overlapChars}) of the previous one so a fact
+ * that straddles a boundary is still found. Sentences longer than maxChars are
+ * cut at a line break or whitespace. Sizes are in characters (roughly 4 per
+ * embedding token).
+ *
+ * Text with page markers (PDFs, see {@link PdfTextExtractor#pageMarker(int)})
+ * gives chunks that start with the marker of the page they start on, so every
+ * chunk can be cited by page.
+ */
+public final class TextChunker {
+
+    private static final Pattern PAGE_MARKER = Pattern.compile("\\[Page (\\d+)\\]");
+
+    private final int maxChars;
+    private final int overlapChars;
+
+    public TextChunker(int maxChars, int overlapChars) {
+        if (maxChars <= 0) throw new IllegalArgumentException("maxChars must be positive");
+        this.maxChars = maxChars;
+        this.overlapChars = Math.max(0, Math.min(overlapChars, maxChars / 2));
+    }
+
+    public List<String> split(String text) {
+        if (text == null || text.isBlank()) return List.of();
+        String trimmed = text.strip();
+        if (trimmed.length() <= maxChars) return List.of(trimmed);
+
+        List<String> chunks = new ArrayList<>();
+        Assembler assembler = new Assembler(chunks::add);
+        sentences(trimmed).forEach(assembler::add);
+        assembler.finish();
+        return chunks;
+    }
+
+    /**
+     * Chunks text that arrives in pieces (e.g. spreadsheet rows), handing each chunk
+     * to the consumer as soon as it is complete
+     */
+    public Stream stream(Consumer<String> chunks) {
+        return new Stream(chunks);
+    }
+
+    /**
+     * Holds at most a few chunks' worth of text: once the pending pieces pass
+     * 4 * maxChars, everything up to the last sentence boundary (or line break)
+     * is chunked and dropped.
+     */
+    public final class Stream implements Consumer<CharSequence> {
+        private final Assembler assembler;
+        private final StringBuilder pending = new StringBuilder();
+
+        private Stream(Consumer<String> chunks) {
+            this.assembler = new Assembler(chunks);
+        }
+
+        @Override
+        public void accept(CharSequence text) {
+            pending.append(text);
+            if (pending.length() >= 4 * maxChars) {
+                int cut = lastBoundary(pending.toString());
+                sentences(pending.substring(0, cut)).forEach(assembler::add);
+                pending.delete(0, cut);
+            }
+        }
+
+        /**
+         * Chunk what is left; call once, after the last piece
+         */
+        public void finish() {
+            sentences(pending.toString()).forEach(assembler::add);
+            pending.setLength(0);
+            assembler.finish();
+        }
+
+        // The last sentence may go on in the next piece
+        private int lastBoundary(String text) {
+            BreakIterator boundaries = BreakIterator.getSentenceInstance(Locale.ROOT);
+            boundaries.setText(text);
+            boundaries.last();
+            int cut = boundaries.previous();
+            if (cut <= 0) cut = text.lastIndexOf('\n') + 1;
+            if (cut <= 0) cut = text.lastIndexOf(' ') + 1;
+            return cut > 0 ? cut : text.length();
+        }
+    }
+
+    /**
+     * Packs sentences into overlapping chunks, one sentence at a time
+     */
+    private final class Assembler {
+        private final Consumer<String> chunks;
+        private Deque<String> current = new ArrayDeque<>();
+        // Page each sentence in current starts on (0 without page markers)
+        private Deque<Integer> currentPages = new ArrayDeque<>();
+        private int currentChars;
+        // Whether current holds anything not already emitted as part of a chunk
+        private boolean fresh;
+        private int page;
+
+        Assembler(Consumer<String> chunks) {
+            this.chunks = chunks;
+        }
+
+        void add(String sentence) {
+            int sentencePage = page;
+            Matcher marker = PAGE_MARKER.matcher(sentence);
+            while (marker.find()) {
+                page = Integer.parseInt(marker.group(1));
+                if (sentence.substring(0, marker.start()).isBlank()) sentencePage = page;
+            }
+
+            if (fresh && currentChars + sentence.length() > maxChars) {
+                chunks.accept(join(current, currentPages.peekFirst()));
+
+                // Carry the tail of this chunk into the next one
+                Deque<String> overlap = new ArrayDeque<>();
+                Deque<Integer> overlapPages = new ArrayDeque<>();
+                int overlapLength = 0;
+                var pages = currentPages.descendingIterator();
+                for (var it = current.descendingIterator(); it.hasNext(); ) {
+                    String previous = it.next();
+                    int previousPage = pages.next();
+                    if (overlapLength + previous.length() > overlapChars
+                            || overlapLength + previous.length() + sentence.length() > maxChars) break;
+                    overlap.addFirst(previous);
+                    overlapPages.addFirst(previousPage);
+                    overlapLength += previous.length();
+                }
+                current = overlap;
+                currentPages = overlapPages;
+                currentChars = overlapLength;
+            }
+            current.addLast(sentence);
+            currentPages.addLast(sentencePage);
+            currentChars += sentence.length();
+            fresh = true;
+        }
+
+        void finish() {
+            if (fresh) chunks.accept(join(current, currentPages.peekFirst()));
+            fresh = false;
+        }
+    }
+
+    /**
+     * Sentences of the text (with their trailing whitespace), long ones cut to maxChars
+     */
+    List<String> sentences(String text) {
+        List<String> sentences = new ArrayList<>();
+        BreakIterator boundaries = BreakIterator.getSentenceInstance(Locale.ROOT);
+        boundaries.setText(text);
+        int start = boundaries.first();
+        for (int end = boundaries.next(); end != BreakIterator.DONE; start = end, end = boundaries.next()) {
+            String sentence = text.substring(start, end);
+            if (sentence.isBlank()) continue;
+            while (sentence.length() > maxChars) {
+                // Prefer a line break (e.g. between table rows) in the second half
+                int cut = sentence.lastIndexOf('\n', maxChars);
+                if (cut < maxChars / 2) cut = sentence.lastIndexOf(' ', maxChars);
+                if (cut <= 0) cut = maxChars;
+                sentences.add(sentence.substring(0, cut));
+                sentence = sentence.substring(cut);
+            }
+            sentences.add(sentence);
+        }
+        return sentences;
+    }
+
+    private static String join(Deque<String> sentences, int page) {
+        StringBuilder sb = new StringBuilder();
+        sentences.forEach(sb::append);
+        String chunk = sb.toString().strip();
+        if (page > 0 && !chunk.startsWith("[Page ")) {
+            chunk = PdfTextExtractor.pageMarker(page) + " " + chunk;
+        }
+        return chunk;
+    }
+}
@@ -0,0 +1,25 @@
+package com.mh.AIAssistant.service;
+
+import net.sourceforge.tess4j.TesseractException;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Text that is read piece by piece (e.g. row by row from a spreadsheet), so it
+ * can be chunked and embedded without ever being held as one String
+ */
+@FunctionalInterface
+public interface TextSource {
+
+    /**
+     * Hand every piece of the text, in order, to the consumer
+     */
+    void writeTo(Consumer<CharSequence> out) throws IOException, TesseractException;
+
+    static TextSource of(String text) {
+        return out -> {
+            if (text != null) out.accept(text);
+        };
+    }
+}
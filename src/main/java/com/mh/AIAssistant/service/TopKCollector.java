@@ -0,0 +1,45 @@
+package com.mh.AIAssistant.service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the k highest-scoring ids seen so far using a bounded min-heap
+ */
+public final class TopKCollector {
+
+    private static final Comparator<ScoredId> BY_SCORE = Comparator.comparingDouble(ScoredId::score);
+
+    private final int k;
+    private final PriorityQueue<ScoredId> heap;
+
+    public TopKCollector(int k) {
+        this.k = Math.max(k, 0);
+        this.heap = new PriorityQueue<>(Math.max(this.k, 1), BY_SCORE);
+    }
+
+    public void offer(long id, double score) {
+        if (k == 0) return;
+        if (heap.size() < k) {
+            heap.add(new ScoredId(id, score));
+        } else if (score > heap.peek().score()) {
+            heap.poll();
+            heap.add(new ScoredId(id, score));
+        }
+    }
+
+    /**
+     * Lowest score currently kept, or negative infinity while the heap is not full
+     */
+    public double threshold() {
+        return heap.size() < k ? Double.NEGATIVE_INFINITY : heap.peek().score();
+    }
+
+    public List<ScoredId> toSortedList() {
+        List<ScoredId> result = new ArrayList<>(heap);
+        result.sort(BY_SCORE.reversed());
+        return result;
+    }
+}
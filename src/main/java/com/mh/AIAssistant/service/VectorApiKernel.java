@@ -0,0 +1,97 @@
+package com.mh.AIAssistant.service;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels on jdk.incubator.vector using the platform's preferred vector width
+ * (AVX2: 8 floats, AVX-512: 16). Only loaded when the module was added with
+ * {@code --add-modules jdk.incubator.vector}; see {@link SimilarityKernels}.
+ */
+final class VectorApiKernel implements SimilarityKernel {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+
+    // One code byte per float lane; null when that shape doesn't exist (lanes * 8 < 64 bits)
+    private static final VectorSpecies<Byte> CODES = FLOATS.length() * Byte.SIZE >= 64
+        ? VectorSpecies.of(byte.class, VectorShape.forBitSize(FLOATS.length() * Byte.SIZE))
+        : null;
+
+    private final ScalarKernel tail = new ScalarKernel();
+
+    /**
+     * True when the hardware has real SIMD registers; otherwise the Vector API
+     * runs in Java fallback code that is slower than the scalar loops
+     */
+    static boolean isAccelerated() {
+        return FLOATS.length() >= 4;
+    }
+
+    @Override
+    public float dot(float[] a, float[] b, int length) {
+        FloatVector acc = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            acc = FloatVector.fromArray(FLOATS, a, i).fma(FloatVector.fromArray(FLOATS, b, i), acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float cosine(float[] a, float[] b, int length) {
+        FloatVector dot = FloatVector.zero(FLOATS);
+        FloatVector aa = FloatVector.zero(FLOATS);
+        FloatVector bb = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector va = FloatVector.fromArray(FLOATS, a, i);
+            FloatVector vb = FloatVector.fromArray(FLOATS, b, i);
+            dot = va.fma(vb, dot);
+            aa = va.fma(va, aa);
+            bb = vb.fma(vb, bb);
+        }
+        float d = dot.reduceLanes(VectorOperators.ADD);
+        float na = aa.reduceLanes(VectorOperators.ADD);
+        float nb = bb.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            d += a[i] * b[i];
+            na += a[i] * a[i];
+            nb += b[i] * b[i];
+        }
+        return SimilarityKernels.cosine(d, na, nb);
+    }
+
+    @Override
+    public float dotU8(float[] query, byte[] codes, int length) {
+        if (CODES == null) return tail.dotU8(query, codes, length);
+
+        FloatVector acc = FloatVector.zero(FLOATS);
+        int i = 0;
+        // Byte loads read exactly one code per float lane, so the float loop bound is also safe for codes
+        for (int bound = FLOATS.loopBound(length); i < bound; i += FLOATS.length()) {
+            FloatVector c = (FloatVector) ByteVector.fromArray(CODES, codes, i)
+                .convertShape(VectorOperators.ZERO_EXTEND_B2I, INTS, 0)
+                .convertShape(VectorOperators.I2F, FLOATS, 0);
+            acc = FloatVector.fromArray(FLOATS, query, i).fma(c, acc);
+        }
+        float sum = acc.reduceLanes(VectorOperators.ADD);
+        for (; i < length; i++) {
+            sum += query[i] * (codes[i] & 0xFF);
+        }
+        return sum;
+    }
+
+    @Override
+    public String name() {
+        return "vector-api-" + FLOATS.vectorBitSize();
+    }
+}
@@ -0,0 +1,56 @@
+package com.mh.AIAssistant.service;
+
+import java.util.List;
+
+/**
+ * Small helpers for working with embedding vectors as primitive float arrays
+ */
+public final class VectorMath {
+
+    private VectorMath() {}
+
+    /**
+     * Convert the boxed embedding returned by the API into a primitive array
+     */
+    public static float[] toFloatArray(List<Double> values) {
+        float[] result = new float[values.size()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = values.get(i).floatValue();
+        }
+        return result;
+    }
+
+    /**
+     * Return a unit-length copy of the vector (zero vectors are returned as-is)
+     */
+    public static float[] normalize(float[] vector) {
+        double norm = norm(vector);
+        float[] result = vector.clone();
+        if (norm == 0.0) return result;
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (float) (result[i] / norm);
+        }
+        return result;
+    }
+
+    public static double norm(float[] vector) {
+        return Math.sqrt(dot(vector, vector));
+    }
+
+    public static double dot(float[] a, float[] b) {
+        return SimilarityKernels.dot(a, b);
+    }
+
+    /**
+     * Format the vector as a PostgreSQL array literal, e.g. {0.1,0.2}
+     */
+    public static String toPgArray(float[] vector) {
+        StringBuilder sb = new StringBuilder(vector.length * 12);
+        sb.append('{');
+        for (int i = 0; i < vector.length; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(vector[i]);
+        }
+        return sb.append('}').toString();
+    }
+}
@@ -0,0 +1,125 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.dto.RetrievedEntry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * Single entry point for similarity search. Routes queries to the configured
+ * backend ({@code vector.search.backend}) and falls back to the quantized
+ * flat scan (int8 scan + exact rescoring) while that backend is not ready.
+ *
+ * Retrieval is two-phase: the backend scores and returns ids only, then
+ * metadata is loaded for those ids. Callers pick the hits they keep and
+ * call {@link #loadContent} for just those.
+ */
+@Service
+public class VectorRetrievalService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VectorRetrievalService.class);
+
+    private final Map<String, VectorRetriever> retrievers = new HashMap<>();
+    private final VectorRetriever fallbackRetriever;
+    private final IvfVectorRetriever ivfRetriever;
+    private final KnowledgeEntryHydrator hydrator;
+
+    @Value("${vector.search.backend:hnsw}")
+    private String backend;
+
+    public VectorRetrievalService(List<VectorRetriever> retrievers,
+                                  QuantizedVectorRetriever fallbackRetriever,
+                                  IvfVectorRetriever ivfRetriever,
+                                  KnowledgeEntryHydrator hydrator) {
+        for (VectorRetriever retriever : retrievers) {
+            this.retrievers.put(retriever.name(), retriever);
+        }
+        this.fallbackRetriever = fallbackRetriever;
+        this.ivfRetriever = ivfRetriever;
+        this.hydrator = hydrator;
+    }
+
+    /**
+     * Scoring phase only: ids and similarities, highest first
+     */
+    public List<ScoredId> score(String userId, float[] queryEmbedding, int limit) {
+        return activeRetriever().score(userId, queryEmbedding, limit);
+    }
+
+    /**
+     * Top matches with metadata and similarity; content is not loaded
+     */
+    public List<RetrievedEntry> findSimilar(String userId, float[] queryEmbedding, int limit) {
+        return hydrator.hydrate(score(userId, queryEmbedding, limit));
+    }
+
+    public List<RetrievedEntry> findSimilar(String userId, List<Double> queryEmbedding, int limit) {
+        return findSimilar(userId, VectorMath.toFloatArray(queryEmbedding), limit);
+    }
+
+    /**
+     * IVF search with an explicit nprobe, regardless of the configured backend.
+     * Clusters are only trained while ivf is the backend; without them this is a
+     * full quantized scan
+     */
+    public List<RetrievedEntry> findSimilar(String userId, float[] queryEmbedding, int limit, int nprobe) {
+        return hydrator.hydrate(ivfRetriever.score(userId, queryEmbedding, limit, nprobe));
+    }
+
+    /**
+     * Load content for the hits the caller decided to use
+     */
+    public List<RetrievedEntry> loadContent(List<RetrievedEntry> entries) {
+        return hydrator.loadContent(entries);
+    }
+
+    /**
+     * Notify the configured backend and the fallback of a newly persisted entry so
+     * their structures stay current; the other backends aren't built at all
+     */
+    public void onEntryStored(String userId, Long entryId, float[] embedding) {
+        for (VectorRetriever retriever : maintainedRetrievers()) {
+            try {
+                retriever.onEntryStored(userId, entryId, embedding);
+            } catch (Exception e) {
+                logger.error("Backend {} failed to index entry {}", retriever.name(), entryId, e);
+            }
+        }
+    }
+
+    /**
+     * Notify the configured backend and the fallback of deleted entries so they no
+     * longer take search slots
+     */
+    public void onEntriesRemoved(String userId, Collection<Long> entryIds) {
+        if (entryIds.isEmpty()) return;
+        for (VectorRetriever retriever : maintainedRetrievers()) {
+            try {
+                retriever.onEntriesRemoved(userId, entryIds);
+            } catch (Exception e) {
+                logger.error("Backend {} failed to remove {} entries", retriever.name(), entryIds.size(), e);
+            }
+        }
+    }
+
+    public String getActiveBackend() {
+        return activeRetriever().name();
+    }
+
+    private List<VectorRetriever> maintainedRetrievers() {
+        VectorRetriever selected = retrievers.get(backend);
+        if (selected == null || selected == fallbackRetriever) return List.of(fallbackRetriever);
+        return List.of(selected, fallbackRetriever);
+    }
+
+    private VectorRetriever activeRetriever() {
+        VectorRetriever retriever = retrievers.get(backend);
+        if (retriever == null || !retriever.isReady()) {
+            return fallbackRetriever;
+        }
+        return retriever;
+    }
+}
@@ -0,0 +1,37 @@
+package com.mh.AIAssistant.service;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A similarity search backend over a user's knowledge entries.
+ * Backends only score: they return entry ids with similarities, highest first,
+ * and leave loading metadata/content to {@link KnowledgeEntryHydrator}.
+ */
+public interface VectorRetriever {
+
+    /**
+     * Backend name used by the {@code vector.search.backend} property
+     */
+    String name();
+
+    /**
+     * Whether the backend can serve queries right now (e.g. index has been built)
+     */
+    default boolean isReady() {
+        return true;
+    }
+
+    List<ScoredId> score(String userId, float[] queryEmbedding, int limit);
+
+    /**
+     * Called after a new knowledge entry has been persisted
+     */
+    default void onEntryStored(String userId, Long entryId, float[] embedding) {}
+
+    /**
+     * Called after knowledge entries have been deleted, so backends holding vectors
+     * in memory or on disk stop returning them
+     */
+    default void onEntriesRemoved(String userId, Collection<Long> entryIds) {}
+}
@@ -0,0 +1,178 @@
+package com.mh.AIAssistant.service;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Set;
+
+/**
+ * One append-only, memory-mapped vector segment file.
+ *
+ * Layout (little-endian):
+ *   header   64 bytes: magic, version, dim, capacity, count, reserved
+ *   matrix   capacity * dim float32 values, row-major
+ *   ids      capacity int64 knowledge entry ids
+ *
+ * The file is preallocated to full capacity. A row becomes visible once
+ * {@code count} is bumped, which happens after its vector and id are written,
+ * so readers never see a half-written row. Appends must be serialized by the caller.
+ */
+public final class VectorSegment {
+
+    static final int MAGIC = 0x4B425653; // "KBVS"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 64;
+
+    private static final int COUNT_OFFSET = 16;
+
+    private final Path path;
+    private final int dim;
+    private final int capacity;
+    private final MappedByteBuffer buffer;
+    private final FloatBuffer matrix;
+    private final LongBuffer ids;
+    private volatile int count;
+
+    private VectorSegment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a vector segment: " + path);
+        }
+        this.dim = buffer.getInt(8);
+        this.capacity = buffer.getInt(12);
+        this.count = buffer.getInt(COUNT_OFFSET);
+
+        long matrixBytes = (long) capacity * dim * Float.BYTES;
+        this.matrix = buffer.slice(HEADER_BYTES, (int) matrixBytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+        this.ids = buffer.slice(HEADER_BYTES + (int) matrixBytes, capacity * Long.BYTES)
+            .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+    }
+
+    public static VectorSegment create(Path path, int dim, int capacity) throws IOException {
+        long size = fileSize(dim, capacity);
+        if (size > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment too large: " + size + " bytes");
+        }
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, dim);
+            buffer.putInt(12, capacity);
+            buffer.putInt(COUNT_OFFSET, 0);
+            return new VectorSegment(path, buffer);
+        }
+    }
+
+    public static VectorSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // The mapping stays valid after the channel is closed
+            return new VectorSegment(path, channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size()));
+        }
+    }
+
+    public static long fileSize(int dim, int capacity) {
+        return HEADER_BYTES + (long) capacity * dim * Float.BYTES + (long) capacity * Long.BYTES;
+    }
+
+    /**
+     * Append one row; returns false if the segment is full or the dimension doesn't match
+     */
+    public boolean append(long id, float[] vector) {
+        int row = count;
+        if (row >= capacity || vector.length != dim) return false;
+
+        matrix.put(row * dim, vector);
+        ids.put(row, id);
+        buffer.putInt(COUNT_OFFSET, row + 1);
+        count = row + 1;
+        return true;
+    }
+
+    /**
+     * Dot product of the query with every row, offered to the collector
+     */
+    public void scan(float[] query, TopKCollector topK) {
+        scan(query, topK, Set.of());
+    }
+
+    /**
+     * Same, leaving out the given ids
+     */
+    public void scan(float[] query, TopKCollector topK, Set<Long> skip) {
+        int rows = count;
+        // Bulk-copy each row out of the mapping so the dot product runs on plain arrays
+        float[] row = new float[dim];
+        for (int r = 0; r < rows; r++) {
+            long id = ids.get(r);
+            if (!skip.isEmpty() && skip.contains(id)) continue;
+            matrix.get(r * dim, row);
+            topK.offer(id, SimilarityKernels.dot(query, row));
+        }
+    }
+
+    public long id(int row) {
+        return ids.get(row);
+    }
+
+    public float[] vector(int row) {
+        float[] vector = new float[dim];
+        matrix.get(row * dim, vector);
+        return vector;
+    }
+
+    /**
+     * Flush written rows to disk
+     */
+    public void force() {
+        buffer.force();
+    }
+
+    /**
+     * Remove the file. The mapping is only released when the buffer is garbage
+     * collected (searches may still be scanning it), and Windows refuses to delete a
+     * mapped file; then a ".deleted" marker is left instead and the file is removed
+     * before it is mapped again, see {@link #deleteIfMarked(Path)}.
+     */
+    public void delete() throws IOException {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            Path marker = deletedMarker(path);
+            if (Files.notExists(marker)) Files.createFile(marker);
+        }
+    }
+
+    /**
+     * Delete the segment file if an earlier {@link #delete()} could only mark it;
+     * returns whether it was marked
+     */
+    public static boolean deleteIfMarked(Path path) throws IOException {
+        Path marker = deletedMarker(path);
+        if (Files.notExists(marker)) return false;
+        Files.deleteIfExists(path);
+        Files.delete(marker);
+        return true;
+    }
+
+    static Path deletedMarker(Path path) {
+        return path.resolveSibling(path.getFileName() + ".deleted");
+    }
+
+    public Path path() { return path; }
+    public int dim() { return dim; }
+    public int capacity() { return capacity; }
+    public int count() { return count; }
+    public boolean isFull() { return count >= capacity; }
+}
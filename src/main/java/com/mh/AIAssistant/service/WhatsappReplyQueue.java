@@ -0,0 +1,226 @@
+package com.mh.AIAssistant.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Out-of-band replies for the Twilio webhooks (twilio.webhook.async.enabled).
+ *
+ * The webhook acknowledges at once and queues the message here; a worker computes
+ * the reply and delivers it with WhatsappService.sendMessage, so a slow DeepSeek
+ * call can't make Twilio time out and retry (and pay for the answer twice).
+ * Retries that still arrive are dropped by MessageSid. If the reply takes longer
+ * than {@code ack-after-ms}, the ack message (if configured) is sent first.
+ *
+ * Messages from one sender are handled one at a time, in arrival order: a "2"
+ * switching to chat mode must take effect before the question sent right after it,
+ * and the replies must arrive in order. Each sender with work queued has a lane;
+ * one worker drains it while later messages from that sender wait in the lane.
+ */
+@Service
+public class WhatsappReplyQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(WhatsappReplyQueue.class);
+
+    private static final int RECENT_MESSAGE_SIDS = 10_000;
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final String ERROR_REPLY = "Sorry, I encountered an error processing your message.";
+
+    public enum Outcome { QUEUED, DUPLICATE, REJECTED }
+
+    private final WhatsappService whatsappService;
+    private final ThreadPoolExecutor workers;
+    private final int queueCapacity;
+    private final ScheduledExecutorService ackTimer;
+
+    @Value("${twilio.webhook.async.ack-message:}")
+    private String ackMessage;
+
+    @Value("${twilio.webhook.async.ack-after-ms:3000}")
+    private long ackAfterMs;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // Senders with a message being processed, and the messages queued behind it (guarded by lock)
+    private final Map<String, ArrayDeque<Runnable>> lanes = new HashMap<>();
+    private int waitingInLanes = 0;
+    private final LinkedHashMap<String, Boolean> recentMessageSids = new LinkedHashMap<>(256, 0.75f, false) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > RECENT_MESSAGE_SIDS;
+        }
+    };
+    // End-to-end latency (webhook received -> reply sent) of the latest replies
+    private final LatencyWindow latency = new LatencyWindow(LATENCY_SAMPLES);
+
+    private final AtomicLong queued = new AtomicLong();
+    private final AtomicLong duplicates = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong acks = new AtomicLong();
+
+    public WhatsappReplyQueue(WhatsappService whatsappService,
+                              @Value("${twilio.webhook.async.workers:8}") int workerThreads,
+                              @Value("${twilio.webhook.async.queue-capacity:500}") int queueCapacity) {
+        this.whatsappService = whatsappService;
+        this.queueCapacity = queueCapacity;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(workerThreads, workerThreads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable, "whatsapp-reply-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        this.ackTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "whatsapp-ack");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Queue a message whose reply goes to {@code to} once {@code reply} has computed it
+     *
+     * @param messageSid Twilio's MessageSid, used to drop retries (may be null)
+     */
+    public Outcome submit(String to, String messageSid, Callable<String> reply) {
+        long receivedNanos = System.nanoTime();
+        if (messageSid != null && !firstDelivery(messageSid)) {
+            duplicates.incrementAndGet();
+            logger.info("Dropping repeated delivery of {}", messageSid);
+            return Outcome.DUPLICATE;
+        }
+
+        Runnable task = () -> process(to, reply, receivedNanos);
+        lock.lock();
+        try {
+            ArrayDeque<Runnable> lane = lanes.get(to);
+            if (lane != null) {
+                // The sender's previous message is still in progress: run this one after it
+                if (workers.getQueue().size() + waitingInLanes >= queueCapacity) {
+                    throw new RejectedExecutionException();
+                }
+                lane.add(task);
+                waitingInLanes++;
+            } else {
+                ArrayDeque<Runnable> newLane = new ArrayDeque<>();
+                workers.execute(() -> drain(to, newLane, task));
+                lanes.put(to, newLane);
+            }
+            queued.incrementAndGet();
+            return Outcome.QUEUED;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            // Let Twilio's retry (or the user's resend) through once there is room
+            if (messageSid != null) recentMessageSids.remove(messageSid);
+            logger.warn("Reply queue full ({} waiting), rejecting message for {}",
+                workers.getQueue().size() + waitingInLanes, to);
+            return Outcome.REJECTED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Run the sender's messages until the lane is empty, then retire the lane
+     */
+    private void drain(String to, ArrayDeque<Runnable> lane, Runnable first) {
+        Runnable task = first;
+        while (task != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // Keep draining: a stuck lane would silence the sender for good
+                logger.error("Error replying to {}", to, e);
+            }
+            lock.lock();
+            try {
+                task = lane.poll();
+                if (task == null) {
+                    lanes.remove(to);
+                } else {
+                    waitingInLanes--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void process(String to, Callable<String> reply, long receivedNanos) {
+        ScheduledFuture<?> ack = ackMessage == null || ackMessage.isBlank() ? null
+            : ackTimer.schedule(() -> {
+                acks.incrementAndGet();
+                whatsappService.sendMessage(to, ackMessage);
+            }, ackAfterMs, TimeUnit.MILLISECONDS);
+
+        String text;
+        try {
+            text = reply.call();
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            logger.error("Error computing reply for {}", to, e);
+            text = ERROR_REPLY;
+        }
+
+        if (ack != null && !ack.cancel(false)) {
+            // The ack is being (or has been) sent: keep the messages in order
+            try {
+                ack.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException | CancellationException e) {
+                logger.debug("Ack to {} failed: {}", to, e.toString());
+            }
+        }
+
+        whatsappService.sendMessage(to, text);
+        completed.incrementAndGet();
+        latency.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - receivedNanos));
+    }
+
+    private boolean firstDelivery(String messageSid) {
+        lock.lock();
+        try {
+            return recentMessageSids.put(messageSid, Boolean.TRUE) == null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        lock.lock();
+        try {
+            stats.put("queueDepth", workers.getQueue().size() + waitingInLanes);
+            stats.put("activeSenders", lanes.size());
+        } finally {
+            lock.unlock();
+        }
+        stats.put("activeWorkers", workers.getActiveCount());
+        stats.put("queued", queued.get());
+        stats.put("duplicates", duplicates.get());
+        stats.put("rejected", rejected.get());
+        stats.put("completed", completed.get());
+        stats.put("failed", failed.get());
+        stats.put("acks", acks.get());
+        latency.putStats(stats, "latency");
+        return stats;
+    }
+
+    @PreDestroy
+    void shutdown() {
+        ackTimer.shutdownNow();
+        workers.shutdown();
+    }
+}
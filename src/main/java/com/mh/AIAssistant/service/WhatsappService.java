@@ -1,61 +1,90 @@
 package com.mh.AIAssistant.service;
 
+import com.mh.AIAssistant.configuration.TwilioBaseUrlHttpClient;
 import com.mh.AIAssistant.configuration.TwilioConfig;
+import com.mh.AIAssistant.dto.ChatTurn;
 import com.mh.AIAssistant.dto.DocumentInfo;
+import com.mh.AIAssistant.dto.RetrievalResult;
+import com.mh.AIAssistant.dto.StreamingChatTurn;
 import com.mh.AIAssistant.enums.UserMode;
-import com.mh.AIAssistant.model.KnowledgeEntry;
-import com.mh.AIAssistant.repository.KnowledgeBaseRepository;
 import com.twilio.Twilio;
+import com.twilio.http.TwilioRestClient;
 import com.twilio.rest.api.v2010.account.Message;
 import com.twilio.type.PhoneNumber;
 import net.sourceforge.tess4j.TesseractException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
 
 @Service
 public class WhatsappService {
 
     private static final Logger logger = LoggerFactory.getLogger(WhatsappService.class);
+    // Knowledge base context for answers: best documents above this similarity
+    private static final double CHAT_CONTEXT_SIMILARITY = 0.7;
+    private static final int CHAT_CONTEXT_DOCUMENTS = 3;
+    private static final String TIMEOUT_REPLY = "Sorry, that took too long to answer. Please try again.";
+    private static final String ERROR_REPLY = "I'm having trouble processing your request right now. Please try again.";
 
     private final TwilioConfig twilioConfig;
     private final FileStorageService fileStorageService;
     private final OcrService ocrService;
-    private final OpenAIEmbeddingService embeddingService;
     private final DeepSeekAIService deepSeekAIService;
-    private final KnowledgeBaseRepository knowledgeBaseRepository;
-    private final KnowledgeBaseRepositoryCustom knowledgeBaseRepositoryCustom;
-    private final DocumentService documentService;
+    private final DocumentIngestionService documentIngestionService;
+    private final RetrievalPipeline retrievalPipeline;
+    private final IntentClassifier intentClassifier;
+    private final OpenAIEmbeddingService embeddingService;
+    private final Scheduler blockingScheduler;
+
+    @Value("${chat.turn.timeout-ms:60000}")
+    private long turnTimeoutMs;
 
     // simple in-memory session
-    private final Map<String, UserMode> userSessions = new HashMap<>();
+    private final Map<String, UserMode> userSessions = new ConcurrentHashMap<>();
 
     // constructor injection
     public WhatsappService(
             TwilioConfig twilioConfig,
             FileStorageService fileStorageService,
             OcrService ocrService,
-            OpenAIEmbeddingService embeddingService,
             DeepSeekAIService deepSeekAIService,
-            KnowledgeBaseRepository knowledgeBaseRepository,
-            KnowledgeBaseRepositoryCustom knowledgeBaseRepositoryCustom,
-            DocumentService documentService
+            DocumentIngestionService documentIngestionService,
+            RetrievalPipeline retrievalPipeline,
+            IntentClassifier intentClassifier,
+            OpenAIEmbeddingService embeddingService,
+            Scheduler blockingScheduler
     ) {
         this.twilioConfig = twilioConfig;
         this.fileStorageService = fileStorageService;
         this.ocrService = ocrService;
-        this.embeddingService = embeddingService;
         this.deepSeekAIService = deepSeekAIService;
-        this.knowledgeBaseRepository = knowledgeBaseRepository;
-        this.knowledgeBaseRepositoryCustom = knowledgeBaseRepositoryCustom;
-        this.documentService = documentService;
+        this.documentIngestionService = documentIngestionService;
+        this.retrievalPipeline = retrievalPipeline;
+        this.intentClassifier = intentClassifier;
+        this.embeddingService = embeddingService;
+        this.blockingScheduler = blockingScheduler;
 
         Twilio.init(twilioConfig.getAccountSid(), twilioConfig.getAuthToken());
+        String apiBaseUrl = twilioConfig.getApiBaseUrl();
+        if (apiBaseUrl != null && !apiBaseUrl.isBlank()) {
+            logger.info("Sending Twilio REST calls to {}", apiBaseUrl);
+            Twilio.setRestClient(new TwilioRestClient.Builder(twilioConfig.getAccountSid(), twilioConfig.getAuthToken())
+                .httpClient(new TwilioBaseUrlHttpClient(apiBaseUrl))
+                .build());
+        }
     }
 
     /**
@@ -112,6 +141,36 @@ public class WhatsappService {
         return reply;
     }
 
+    /**
+     * Non-blocking handleIncoming (without sending via Twilio). Chat mode replies
+     * wait for DeepSeek without holding a thread; session commands and store mode
+     * (downloads, OCR, ingestion) run on the blocking scheduler.
+     */
+    public Mono<String> handleIncomingAsync(Map<String, String> params) {
+        String from = params.get("From");
+        String body = params.getOrDefault("Body", "").trim();
+
+        userSessions.putIfAbsent(from, UserMode.NONE);
+        if (userSessions.get(from) != UserMode.CHAT || "end".equalsIgnoreCase(body)) {
+            return Mono.fromCallable(() -> handleIncoming(params, false)).subscribeOn(blockingScheduler);
+        }
+
+        return Mono.fromCallable(() -> retrievalPipeline.retrieve(from, body)
+                .contextTexts(CHAT_CONTEXT_SIMILARITY, CHAT_CONTEXT_DOCUMENTS))
+            .subscribeOn(blockingScheduler)
+            .flatMap(context -> deepSeekAIService.chatWithKnowledgeAsync(from, body, context))
+            .map(WhatsappService::chatModeReply);
+    }
+
+    /**
+     * Non-blocking storeTextAndEmbed, on the blocking scheduler
+     */
+    public Mono<Void> storeTextAndEmbedAsync(String userId, String text, String filePath,
+                                            String fileName, String fileType) {
+        return Mono.<Void>fromRunnable(() -> storeTextAndEmbed(userId, text, filePath, fileName, fileType))
+            .subscribeOn(blockingScheduler);
+    }
+
     /**
      * Reusable helper for web ChatController: store plain text into docs + DB embeddings
      */
@@ -122,14 +181,7 @@ public class WhatsappService {
     public void storeTextAndEmbed(String userId, String text, String filePath, 
                                 String fileName, String fileType) {
         try {
-            List<Double> embeddingList = embeddingService.getEmbedding(text);
-            Double[] embeddingArray = embeddingList.toArray(new Double[0]);
-            
-            KnowledgeEntry entry = new KnowledgeEntry(
-                userId, text, embeddingArray, filePath, fileName, fileType
-            );
-            knowledgeBaseRepository.save(entry);
-            
+            documentIngestionService.ingest(userId, text, filePath, fileName, fileType);
             logger.info("Stored knowledge entry for user: {} with file: {}", userId, fileName);
         } catch (Exception e) {
             logger.error("Error storing text and embedding", e);
@@ -141,161 +193,180 @@ public class WhatsappService {
      * Reusable helper for web ChatController: produce AI reply using same knowledge retrieval as WA
      */
     public String chatReply(String userId, String userMessage) {
-        try {
-            // 1. Classify intent
-            String intent = deepSeekAIService.classifyIntent(userId, userMessage);
-            logger.info("Classified intent for user {}: {}", userId, intent);
-
-            if ("RETRIEVE".equals(intent)) {
-                // User wants to retrieve/find documents
-                List<DocumentInfo> documents = 
-                    documentService.findRelevantDocuments(userId, userMessage);
-                
-                if (documents.isEmpty()) {
-                    return "I couldn't find any relevant documents in your knowledge base matching that query.";
-                }
-
-                // Let AI generate a natural response with document references
-                List<String> contextTexts = documents.stream()
-                    .map(doc -> {
-                        String preview = doc.getContentPreview(300);
-                        String fileInfo = doc.isHasFile() ? 
-                            " [File: " + doc.getFileName() + "]" : "";
-                        return preview + fileInfo;
-                    })
-                    .toList();
-
-                String systemPrompt = String.format(
-                    "The user asked: '%s'\n\n" +
-                    "I found %d relevant document(s) in their knowledge base. " +
-                    "Generate a natural, helpful response that:\n" +
-                    "1. Acknowledges what they're looking for\n" +
-                    "2. Mentions how many relevant documents were found\n" +
-                    "3. Briefly describes what the documents contain\n" +
-                    "4. If files are attached, mention they can click to download them\n\n" +
-                    "Keep it conversational and helpful.",
-                    userMessage,
-                    documents.size()
-                );
-
-                return deepSeekAIService.chatWithKnowledge(userId, systemPrompt, contextTexts);
-
-            } else {
-                // CHAT mode - Answer questions using knowledge base
-                List<Double> queryEmbedding = embeddingService.generateEmbedding(userMessage);
-                if (queryEmbedding == null) {
-                    logger.warn("Failed to generate embedding, fallback to general chat");
-                    return deepSeekAIService.chat(userId, userMessage);
-                }
+        return chatTurn(userId, userMessage).reply();
+    }
 
-                List<Object[]> rawResults = knowledgeBaseRepository.findSimilarEntriesRaw(
-                        queryEmbedding.stream().map(String::valueOf).collect(Collectors.joining(",", "{", "}")),
-                        userId, 5
-                );
-
-                List<String> contextTexts = rawResults.stream()
-                    .filter(row -> {
-                        Double sim = row[5] != null ? ((Number) row[5]).doubleValue() : 0.0;
-                        return sim >= 0.7;
-                    })
-                    .map(row -> (String) row[2])
-                    .limit(3)
-                    .toList();
-
-                if (contextTexts.isEmpty()) {
-                    logger.info("No relevant context found, using general chat");
-                    return deepSeekAIService.chat(userId, userMessage);
-                }
+    /**
+     * One chat turn with its stages overlapped on virtual threads: the query
+     * embedding, the retrieval (which reuses that embedding) and the intent
+     * classification start together, so the turn takes about as long as its
+     * slowest stage rather than their sum. The reply is generated once intent and
+     * retrieval are known. The whole turn shares chat.turn.timeout-ms; work still
+     * running when the turn ends is cancelled.
+     */
+    public ChatTurn chatTurn(String userId, String userMessage) {
+        RetrievalResult retrieval = RetrievalResult.empty(userMessage);
+        try (ChatTurnScope scope = new ChatTurnScope(Duration.ofMillis(turnTimeoutMs))) {
+            Prepared turn = prepare(userId, userMessage, scope);
+            retrieval = turn.retrieval();
+            Prompt prompt = prompt(userMessage, turn);
+            String reply = prompt.fixedReply() != null
+                ? prompt.fixedReply()
+                : scope.join(scope.fork(() -> deepSeekAIService.chatWithKnowledge(userId, prompt.question(), prompt.contexts())));
+            return new ChatTurn(reply, turn.intent(), retrieval);
+
+        } catch (TimeoutException e) {
+            logger.warn("Chat turn for user {} exceeded {} ms", userId, turnTimeoutMs);
+            return new ChatTurn(TIMEOUT_REPLY, null, retrieval);
+        } catch (Exception e) {
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            logger.error("Error in chatReply for user: {}", userId, e);
+            return new ChatTurn(ERROR_REPLY, null, retrieval);
+        }
+    }
 
-                return deepSeekAIService.chatWithKnowledge(userId, userMessage, contextTexts);
-            }
+    /**
+     * Non-blocking chatTurn for the reactive request path: the query embedding and
+     * the DeepSeek calls hold no thread while in flight, and retrieval (JDBC) runs on
+     * the bounded blocking scheduler. Same stages, overlap and deadline as chatTurn.
+     */
+    public Mono<ChatTurn> chatTurnAsync(String userId, String userMessage) {
+        Mono<float[]> embedding = embeddingService.embedAsync(userMessage).cache();
+
+        Mono<RetrievalResult> retrieval = Mono.fromCallable(() -> retrievalPipeline.retrieve(userId, userMessage, embedding::block))
+            .subscribeOn(blockingScheduler);
+
+        // Classify intent (locally when confident, using the query embedding)
+        Mono<String> intent = intentClassifier.classifyAsync(userId, userMessage, embedding)
+            .map(decision -> {
+                logger.info("Classified intent for user {}: {} ({}, {})", userId, decision.intent(),
+                    decision.source(), String.format("%.2f", decision.confidence()));
+                return decision.intent();
+            });
+
+        return Mono.zip(intent, retrieval)
+            .flatMap(prepared -> {
+                Prepared turn = new Prepared(prepared.getT1(), prepared.getT2());
+                Prompt prompt = prompt(userMessage, turn);
+                Mono<String> reply = prompt.fixedReply() != null
+                    ? Mono.just(prompt.fixedReply())
+                    : deepSeekAIService.chatWithKnowledgeAsync(userId, prompt.question(), prompt.contexts());
+                return reply.map(text -> new ChatTurn(text, turn.intent(), turn.retrieval()));
+            })
+            .timeout(Duration.ofMillis(turnTimeoutMs))
+            .onErrorResume(TimeoutException.class, e -> {
+                logger.warn("Chat turn for user {} exceeded {} ms", userId, turnTimeoutMs);
+                return Mono.just(new ChatTurn(TIMEOUT_REPLY, null, RetrievalResult.empty(userMessage)));
+            })
+            .onErrorResume(e -> {
+                logger.error("Error in chatTurnAsync for user: {}", userId, e);
+                return Mono.just(new ChatTurn(ERROR_REPLY, null, RetrievalResult.empty(userMessage)));
+            });
+    }
 
+    /**
+     * Same turn with the reply streamed: intent and retrieval are resolved first
+     * (under chat.turn.timeout-ms), then the reply tokens are emitted as DeepSeek
+     * produces them. Subscribing to the tokens starts the completion request.
+     */
+    public StreamingChatTurn streamChatTurn(String userId, String userMessage) {
+        RetrievalResult retrieval = RetrievalResult.empty(userMessage);
+        try (ChatTurnScope scope = new ChatTurnScope(Duration.ofMillis(turnTimeoutMs))) {
+            Prepared turn = prepare(userId, userMessage, scope);
+            retrieval = turn.retrieval();
+            Prompt prompt = prompt(userMessage, turn);
+            Flux<String> tokens = prompt.fixedReply() != null
+                ? Flux.just(prompt.fixedReply())
+                : deepSeekAIService.streamChatWithKnowledge(userId, prompt.question(), prompt.contexts());
+            return new StreamingChatTurn(turn.intent(), retrieval, tokens);
+
+        } catch (TimeoutException e) {
+            logger.warn("Chat turn for user {} exceeded {} ms", userId, turnTimeoutMs);
+            return new StreamingChatTurn(null, retrieval, Flux.just(TIMEOUT_REPLY));
         } catch (Exception e) {
-            logger.error("Error in chatReply for user: {}", userId, e);
-            return "I'm having trouble processing your request right now. Please try again.";
+            if (e instanceof InterruptedException) Thread.currentThread().interrupt();
+            logger.error("Error in streamChatTurn for user: {}", userId, e);
+            return new StreamingChatTurn(null, retrieval, Flux.just(ERROR_REPLY));
         }
     }
 
-    public List<DocumentInfo> findRelevantDocuments(String userId, String query) {
-        try {
-            List<Double> queryEmbedding = embeddingService.generateEmbedding(query);
-            if (queryEmbedding == null || queryEmbedding.isEmpty()) {
-                logger.warn("Failed to generate embedding for query");
-                return Collections.emptyList();
-            }
+    // Intent and retrieval of a turn, computed concurrently in the scope
+    private record Prepared(String intent, RetrievalResult retrieval) {}
 
-            String embeddingStr = queryEmbedding.stream()
-                    .map(String::valueOf)
-                    .collect(Collectors.joining(",", "{", "}"));
+    // What to answer with: a fixed reply, or a completion for the question over the contexts
+    private record Prompt(String fixedReply, String question, List<String> contexts) {}
 
-            List<Object[]> rawResults = knowledgeBaseRepository.findSimilarEntriesRaw(
-                    embeddingStr, userId, 20
-            );
+    private Prepared prepare(String userId, String userMessage, ChatTurnScope scope) throws Exception {
+        Future<float[]> embedding = scope.fork(() -> embeddingService.embed(userMessage));
+        Callable<float[]> queryVector = () -> scope.join(embedding);
+        Future<RetrievalResult> retrieved = scope.fork(() -> retrievalPipeline.retrieve(userId, userMessage, queryVector));
 
-            // Use map to group documents by filename (fallback if filePath missing)
-            Map<String, DocumentInfo> uniqueDocs = new HashMap<>();
-
-            for (Object[] row : rawResults) {
-                try {
-                    Long id = ((Number) row[0]).longValue();
-                    String content = (String) row[2];
-                    Double similarity = row[5] != null ? ((Number) row[5]).doubleValue() : 0.0;
-                    String filePath = (String) row[6];
-                    String fileName = (String) row[7];
-                    String fileType = (String) row[8];
-
-                    if (similarity < 0.3)
-                        continue;
-
-                    // Normalize key (use lowercase filename or filePath)
-                    String key = (filePath != null && !filePath.isEmpty())
-                            ? filePath.trim().toLowerCase()
-                            : (fileName != null ? fileName.trim().toLowerCase() : "no_file");
-
-                    // Skip duplicates
-                    DocumentInfo existing = uniqueDocs.get(key);
-                    if (existing == null) {
-                        DocumentInfo doc = new DocumentInfo();
-                        doc.setId(id);
-                        doc.setContent(content);
-                        doc.setSimilarity(similarity);
-                        doc.setFilePath(filePath);
-                        doc.setFileName(fileName);
-                        doc.setFileType(fileType);
-                        doc.setHasFile(filePath != null && !filePath.isEmpty());
-                        uniqueDocs.put(key, doc);
-                    } else {
-                        // Merge content + take max similarity
-                        existing.setContent(existing.getContent() + "\n" + content);
-                        if (similarity > existing.getSimilarity()) {
-                            existing.setSimilarity(similarity);
-                        }
-                    }
-                } catch (Exception e) {
-                    logger.error("Error processing row", e);
-                }
+        // Classify intent (locally when confident, using the query embedding)
+        IntentClassifier.Decision decision = intentClassifier.classify(userId, userMessage, queryVector, scope);
+        logger.info("Classified intent for user {}: {} ({}, {})", userId, decision.intent(),
+            decision.source(), String.format("%.2f", decision.confidence()));
+
+        return new Prepared(decision.intent(), scope.join(retrieved));
+    }
+
+    private Prompt prompt(String userMessage, Prepared turn) {
+        if ("RETRIEVE".equals(turn.intent())) {
+            // User wants to retrieve/find documents
+            List<DocumentInfo> documents = turn.retrieval().documents();
+
+            if (documents.isEmpty()) {
+                return new Prompt("I couldn't find any relevant documents in your knowledge base matching that query.", null, null);
             }
 
-            List<DocumentInfo> result = new ArrayList<>(uniqueDocs.values());
+            // Let AI generate a natural response with document references
+            List<String> contextTexts = documents.stream()
+                .map(doc -> {
+                    String preview = doc.getContentPreview(300);
+                    String fileInfo = doc.isHasFile() ? 
+                        " [File: " + doc.getFileName() + "]" : "";
+                    return preview + fileInfo;
+                })
+                .toList();
+
+            String systemPrompt = String.format(
+                "The user asked: '%s'\n\n" +
+                "I found %d relevant document(s) in their knowledge base. " +
+                "Generate a natural, helpful response that:\n" +
+                "1. Acknowledges what they're looking for\n" +
+                "2. Mentions how many relevant documents were found\n" +
+                "3. Briefly describes what the documents contain\n" +
+                "4. If files are attached, mention they can click to download them\n\n" +
+                "Keep it conversational and helpful.",
+                userMessage,
+                documents.size()
+            );
 
-            logger.info("✅ Found {} unique documents after deduplication (raw count: {})",
-                    result.size(), rawResults.size());
+            return new Prompt(null, systemPrompt, contextTexts);
 
-            return result;
+        } else {
+            // CHAT mode - Answer questions using knowledge base:
+            // the (at most 3) best documents that match closely enough
+            List<String> contextTexts = turn.retrieval().contextTexts(CHAT_CONTEXT_SIMILARITY, CHAT_CONTEXT_DOCUMENTS);
 
-        } catch (Exception e) {
-            logger.error("Error finding relevant documents", e);
-            return Collections.emptyList();
+            if (contextTexts.isEmpty()) {
+                logger.info("No relevant context found, using general chat");
+            }
+
+            // Without contexts this is general chat (DeepSeekAIService.chat)
+            return new Prompt(null, userMessage, contextTexts);
         }
     }
 
-
     private String handleChatMode(String from, String body) {
-        List<KnowledgeEntry> entries = knowledgeBaseRepository.findByUserId(from);
-        List<String> context = entries.stream().map(KnowledgeEntry::getContent).toList();
-        
+        List<String> context = retrievalPipeline.retrieve(from, body)
+            .contextTexts(CHAT_CONTEXT_SIMILARITY, CHAT_CONTEXT_DOCUMENTS);
+
         // Pass from (user ID) for conversation history
         String aiReply = deepSeekAIService.chatWithKnowledge(from, body, context);
+        return chatModeReply(aiReply);
+    }
+
+    private static String chatModeReply(String aiReply) {
         return "🤖 AI says: " + aiReply + "\n\n(Type 'end' to finish)";
     }
 
@@ -334,6 +405,9 @@ public class WhatsappService {
                     try {
                         String extractedText = ocrService.extractText(file);
                         textToStore.append(extractedText).append("\n");
+                    } catch (OcrRejectedException e) {
+                        logger.warn("OCR busy, not storing media from {}: {}", from, e.getMessage());
+                        return "⏳ I'm reading a lot of files right now. Please send it again in a minute.";
                     } catch (TesseractException e) {
                         System.err.println("Tesseract OCR failed: " + e.getMessage());
                         textToStore.append("[OCR failed - file saved without text extraction]\n");
@@ -357,10 +431,8 @@ public class WhatsappService {
             }
     
             if (!textToStore.toString().isBlank()) {
-                // generate embedding + save
-                List<Double> embeddingList = embeddingService.generateEmbedding(textToStore.toString());
-                Double[] embeddingArray = embeddingList.toArray(new Double[0]);
-                knowledgeBaseRepository.save(new KnowledgeEntry(from, textToStore.toString(), embeddingArray));
+                // chunk, embed + save
+                documentIngestionService.ingest(from, textToStore.toString(), null, null, null);
             }
     
             return "✅ Stored successfully! Type 'end' to finish or send more text/files.";
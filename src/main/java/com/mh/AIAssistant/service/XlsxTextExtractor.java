@@ -0,0 +1,116 @@
+package com.mh.AIAssistant.service;
+
+import org.apache.poi.openxml4j.exceptions.OpenXML4JException;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
+import org.apache.poi.ss.usermodel.DataFormatter;
+import org.apache.poi.ss.util.CellReference;
+import org.apache.poi.util.XMLHelper;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.eventusermodel.XSSFSheetXMLHandler;
+import org.apache.poi.xssf.model.StylesTable;
+import org.apache.poi.xssf.usermodel.XSSFComment;
+import org.springframework.stereotype.Service;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * XLSX text without building the workbook: sheets are parsed with SAX
+ * (XSSFReader + XSSFSheetXMLHandler) and every row goes to the consumer as soon
+ * as it ends, as tab-separated cells the way Excel shows them. Empty cells keep
+ * their tab, so values stay in their columns. Formula cells give their cached
+ * result, not the formula.
+ *
+ * Only the shared-strings table and the current row are held in memory.
+ */
+@Service
+public class XlsxTextExtractor implements StreamingTextExtractor {
+
+    private final AtomicLong workbooks = new AtomicLong();
+    private final AtomicLong rows = new AtomicLong();
+
+    @Override
+    public List<String> extensions() {
+        return List.of("xlsx");
+    }
+
+    /**
+     * Hand "Sheet: name" and then each row of every sheet, in order, to out
+     */
+    @Override
+    public void extract(File file, Consumer<CharSequence> out) throws IOException {
+        try (OPCPackage pkg = OPCPackage.open(file, PackageAccess.READ)) {
+            ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(pkg, false);
+            XSSFReader reader = new XSSFReader(pkg);
+            StylesTable styles = reader.getStylesTable();
+            DataFormatter formatter = new DataFormatter();
+
+            XSSFReader.SheetIterator sheets = (XSSFReader.SheetIterator) reader.getSheetsData();
+            while (sheets.hasNext()) {
+                try (InputStream sheet = sheets.next()) {
+                    out.accept("Sheet: " + sheets.getSheetName() + "\n");
+                    XMLReader parser = XMLHelper.newXMLReader();
+                    parser.setContentHandler(new XSSFSheetXMLHandler(styles, null, strings,
+                        new RowWriter(out), formatter, false));
+                    parser.parse(new InputSource(sheet));
+                    out.accept("\n");
+                }
+            }
+            workbooks.incrementAndGet();
+        } catch (OpenXML4JException | SAXException | ParserConfigurationException e) {
+            throw new IOException("Cannot read spreadsheet " + file.getName() + ": " + e.getMessage(), e);
+        }
+    }
+
+    private final class RowWriter implements XSSFSheetXMLHandler.SheetContentsHandler {
+        private final Consumer<CharSequence> out;
+        private final StringBuilder row = new StringBuilder();
+        // Column the next cell is written to; the sheet XML leaves out empty cells
+        private int column;
+
+        RowWriter(Consumer<CharSequence> out) {
+            this.out = out;
+        }
+
+        @Override
+        public void startRow(int rowNum) {
+            row.setLength(0);
+            column = 0;
+        }
+
+        @Override
+        public void endRow(int rowNum) {
+            out.accept(row.append('\n').toString());
+            rows.incrementAndGet();
+        }
+
+        @Override
+        public void cell(String cellReference, String formattedValue, XSSFComment comment) {
+            if (cellReference != null) {
+                int col = new CellReference(cellReference).getCol();
+                for (; column < col; column++) row.append('\t');
+            }
+            row.append(formattedValue).append('\t');
+            column++;
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("workbooks", workbooks.get());
+        stats.put("rows", rows.get());
+        return stats;
+    }
+}
@@ -58,6 +58,24 @@ public class WebSocketService {
         }
     }
 
+    /**
+     * Progress of a background ingestion job, sent to the uploading user's sessions
+     */
+    public void notifyIngestionProgress(String userId, Map<String, Object> job) {
+        try {
+            Map<String, Object> notification = new HashMap<>(job);
+            notification.put("type", "ingestion_progress");
+            notification.put("timestamp", System.currentTimeMillis());
+
+            String jsonMessage = objectMapper.writeValueAsString(notification);
+
+            webSocketHandler.sendMessageToUser(userId, jsonMessage);
+        } catch (Exception e) {
+            System.err.println("Error sending ingestion progress: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+
     public void notifySystemMessage(String message) {
         try {
             Map<String, Object> notification = new HashMap<>();
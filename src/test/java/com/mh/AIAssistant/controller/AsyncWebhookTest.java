@@ -0,0 +1,139 @@
+package com.mh.AIAssistant.controller;
+
+import com.mh.AIAssistant.dto.RetrievalResult;
+import com.mh.AIAssistant.service.DeepSeekAIService;
+import com.mh.AIAssistant.service.RetrievalPipeline;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.mockito.Mockito;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * twilio.webhook.async.enabled: the webhook answers with empty TwiML right away,
+ * the reply arrives later through the Twilio REST API (here TwilioStandIn).
+ * Needs the application's database, so it only runs when SPRING_DATASOURCE_URL
+ * points at one.
+ */
+@EnabledIfEnvironmentVariable(named = "SPRING_DATASOURCE_URL", matches = ".+")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+	"twilio.webhook.async.enabled=true",
+	"twilio.webhook.async.ack-message=Typing...",
+	"twilio.webhook.async.ack-after-ms=300",
+	"intent.local.initial-train-delay-ms=600000"
+})
+// The stats assertions count the replies of the first test only
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+class AsyncWebhookTest {
+
+	private static final String USER = "whatsapp:+15550001111";
+	private static final String OTHER_USER = "whatsapp:+15550002222";
+	private static final long LLM_DELAY_MS = 1500;
+
+	private static final TwilioStandIn twilio = new TwilioStandIn();
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry registry) {
+		registry.add("twilio.api.base-url", twilio::baseUrl);
+	}
+
+	@LocalServerPort
+	private int port;
+
+	@MockitoBean
+	private DeepSeekAIService deepSeekAIService;
+
+	@MockitoBean
+	private RetrievalPipeline retrievalPipeline;
+
+	private final HttpClient client = HttpClient.newHttpClient();
+
+	@AfterAll
+	static void stopTwilio() {
+		twilio.close();
+	}
+
+	@Test
+	@Order(1)
+	void repliesOutOfBand() throws Exception {
+		Mockito.when(retrievalPipeline.retrieve(Mockito.anyString(), Mockito.anyString()))
+			.thenAnswer(call -> RetrievalResult.empty(call.getArgument(1)));
+		Mockito.when(deepSeekAIService.chatWithKnowledge(Mockito.anyString(), Mockito.anyString(), Mockito.anyList()))
+			.thenAnswer(call -> {
+				Thread.sleep(LLM_DELAY_MS);
+				return "Refunds take 5 days.";
+			});
+
+		// Fast reply: no ack
+		assertEquals("<?xml version=\"1.0\" encoding=\"UTF-8\"?><Response/>", webhook("2", "SM1"));
+		Map<String, String> activated = twilio.nextMessage(Duration.ofSeconds(10));
+		assertEquals(USER, activated.get("To"));
+		assertTrue(activated.get("Body").startsWith("🤖 Chat mode activated"));
+
+		// Slow reply: the webhook still returns at once, the ack goes out before the answer
+		long start = System.nanoTime();
+		assertTrue(webhook("how long do refunds take", "SM2").endsWith("<Response/>"));
+		assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() < LLM_DELAY_MS);
+		assertEquals("Typing...", twilio.nextMessage(Duration.ofSeconds(10)).get("Body"));
+		assertTrue(twilio.nextMessage(Duration.ofSeconds(10)).get("Body").contains("Refunds take 5 days."));
+
+		// Twilio retrying a delivery doesn't produce a second answer
+		assertTrue(webhook("how long do refunds take", "SM2").endsWith("<Response/>"));
+		assertNull(twilio.nextMessage(Duration.ofMillis(500)));
+
+		String stats = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/whatsapp/stats")).build(),
+			HttpResponse.BodyHandlers.ofString()).body();
+		assertTrue(stats.contains("\"completed\":2"), stats);
+		assertTrue(stats.contains("\"duplicates\":1"), stats);
+		assertTrue(stats.contains("\"queueDepth\":0"), stats);
+	}
+
+	@Test
+	@Order(2)
+	void backToBackMessagesFromOneSenderAreAnsweredInOrder() throws Exception {
+		Mockito.when(retrievalPipeline.retrieve(Mockito.anyString(), Mockito.anyString()))
+			.thenAnswer(call -> RetrievalResult.empty(call.getArgument(1)));
+		Mockito.when(deepSeekAIService.chatWithKnowledge(Mockito.anyString(), Mockito.anyString(), Mockito.anyList()))
+			.thenReturn("Shipping is free.");
+
+		// The question is sent without waiting for the mode switch to be answered
+		assertTrue(webhook(OTHER_USER, "2", "SM10").endsWith("<Response/>"));
+		assertTrue(webhook(OTHER_USER, "is shipping free", "SM11").endsWith("<Response/>"));
+
+		Map<String, String> first = twilio.nextMessage(Duration.ofSeconds(10));
+		Map<String, String> second = twilio.nextMessage(Duration.ofSeconds(10));
+		assertEquals(OTHER_USER, first.get("To"));
+		assertTrue(first.get("Body").startsWith("🤖 Chat mode activated"), first.get("Body"));
+		// Answered in chat mode, i.e. after the switch took effect
+		assertTrue(second.get("Body").contains("Shipping is free."), second.get("Body"));
+	}
+
+	private String webhook(String body, String messageSid) throws Exception {
+		return webhook(USER, body, messageSid);
+	}
+
+	private String webhook(String from, String body, String messageSid) throws Exception {
+		String form = "From=" + from.replace("+", "%2B") + "&Body=" + body.replace(' ', '+') + "&MessageSid=" + messageSid;
+		HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/whatsapp/incoming"))
+			.header("Content-Type", "application/x-www-form-urlencoded")
+			.POST(HttpRequest.BodyPublishers.ofString(form))
+			.build();
+		return client.send(request, HttpResponse.BodyHandlers.ofString()).body();
+	}
+}
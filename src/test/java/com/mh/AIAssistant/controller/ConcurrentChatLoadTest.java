@@ -0,0 +1,176 @@
+package com.mh.AIAssistant.controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * How many conversations one instance holds in flight, blocking vs reactive /chat.
+ * DeepSeek and OpenAI are replaced by a local stub that answers after a fixed delay
+ * and counts concurrent completions; Tomcat gets a small thread pool so the limit
+ * of the blocking mode shows. Needs the application's database, e.g.
+ *   ./mvnw test -Dtest=ConcurrentChatLoadTest -Dloadtest.conversations=400
+ * Optional: -Dloadtest.llm-delay-ms (default 2000), -Dloadtest.tomcat-threads (default 20)
+ */
+@EnabledIfSystemProperty(named = "loadtest.conversations", matches = "\\d+")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+class ConcurrentChatLoadTest {
+
+	private static final int CONVERSATIONS = Integer.getInteger("loadtest.conversations", 400);
+	private static final long LLM_DELAY_MS = Long.getLong("loadtest.llm-delay-ms", 2000);
+	private static final int TOMCAT_THREADS = Integer.getInteger("loadtest.tomcat-threads", 20);
+
+	private static final AtomicInteger inFlight = new AtomicInteger();
+	private static final AtomicInteger peakInFlight = new AtomicInteger();
+	private static final HttpServer stub = startStub();
+
+	@DynamicPropertySource
+	static void properties(DynamicPropertyRegistry registry) {
+		String url = "http://localhost:" + stub.getAddress().getPort();
+		registry.add("deepseek.api.url", () -> url);
+		registry.add("chatgpt.api.url", () -> url);
+		registry.add("server.tomcat.threads.max", () -> TOMCAT_THREADS);
+		registry.add("server.tomcat.threads.min-spare", () -> TOMCAT_THREADS);
+		registry.add("intent.local.initial-train-delay-ms", () -> 600000);
+		// Only the turns' own completion calls count
+		registry.add("intent.local.shadow-rate", () -> 0.0);
+	}
+
+	@LocalServerPort
+	private int port;
+
+	@Autowired
+	private ChatController chatController;
+
+	@AfterAll
+	static void stopStub() {
+		stub.stop(0);
+	}
+
+	@Test
+	void reactiveModeHoldsMoreConversationsThanThreads() throws Exception {
+		Result blocking = run(false);
+		Result reactive = run(true);
+
+		System.out.printf("%d conversations, LLM delay %d ms, %d Tomcat threads%n", CONVERSATIONS, LLM_DELAY_MS, TOMCAT_THREADS);
+		System.out.printf("%-9s %10s %10s %10s%n", "mode", "in flight", "total ms", "failed");
+		System.out.printf("%-9s %10d %10d %10d%n", "blocking", blocking.peakInFlight(), blocking.millis(), blocking.failed());
+		System.out.printf("%-9s %10d %10d %10d%n", "reactive", reactive.peakInFlight(), reactive.millis(), reactive.failed());
+
+		assertEquals(0, blocking.failed());
+		assertEquals(0, reactive.failed());
+		assertTrue(blocking.peakInFlight() <= TOMCAT_THREADS);
+		assertTrue(reactive.peakInFlight() > TOMCAT_THREADS);
+	}
+
+	private record Result(int peakInFlight, long millis, int failed) {}
+
+	private Result run(boolean reactiveMode) throws Exception {
+		ReflectionTestUtils.setField(chatController, "reactive", reactiveMode);
+		inFlight.set(0);
+		peakInFlight.set(0);
+
+		HttpClient client = HttpClient.newBuilder()
+			.executor(Executors.newVirtualThreadPerTaskExecutor())
+			.connectTimeout(Duration.ofSeconds(30))
+			.build();
+		String mode = reactiveMode ? "reactive" : "blocking";
+
+		long start = System.nanoTime();
+		List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+		for (int i = 0; i < CONVERSATIONS; i++) {
+			// "what is" is classified locally, so each turn makes one completion call
+			String body = "{\"message\":\"What is the capital of country " + i + "?\",\"userId\":\"load-" + mode + "-" + i + "\"}";
+			HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/chat"))
+				.header("Content-Type", "application/json")
+				.timeout(Duration.ofMinutes(5))
+				.POST(HttpRequest.BodyPublishers.ofString(body))
+				.build();
+			responses.add(client.sendAsync(request, HttpResponse.BodyHandlers.ofString()));
+		}
+
+		int failed = 0;
+		for (CompletableFuture<HttpResponse<String>> response : responses) {
+			HttpResponse<String> result = response.join();
+			if (result.statusCode() != 200 || !result.body().contains("stub answer")) failed++;
+		}
+		return new Result(peakInFlight.get(), (System.nanoTime() - start) / 1_000_000, failed);
+	}
+
+	private static HttpServer startStub() {
+		try {
+			HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 4096);
+			server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+			server.createContext("/chat/completions", ConcurrentChatLoadTest::completion);
+			server.createContext("/embeddings", ConcurrentChatLoadTest::embeddings);
+			server.start();
+			return server;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static void completion(HttpExchange exchange) throws IOException {
+		exchange.getRequestBody().readAllBytes();
+		peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+		try {
+			Thread.sleep(LLM_DELAY_MS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			inFlight.decrementAndGet();
+		}
+		respond(exchange, "{\"choices\":[{\"message\":{\"content\":\"stub answer\"}}]}");
+	}
+
+	private static void embeddings(HttpExchange exchange) throws IOException {
+		String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+		// One input per chat message in the batch
+		int inputs = Math.max(1, request.split("What is the capital", -1).length - 1);
+		StringBuilder data = new StringBuilder();
+		for (int i = 0; i < inputs; i++) {
+			if (i > 0) data.append(',');
+			data.append("{\"index\":").append(i).append(",\"embedding\":[");
+			for (int d = 0; d < 1536; d++) {
+				if (d > 0) data.append(',');
+				data.append(d == i % 1536 ? "1.0" : "0.0");
+			}
+			data.append("]}");
+		}
+		respond(exchange, "{\"data\":[" + data + "]}");
+	}
+
+	private static void respond(HttpExchange exchange, String json) throws IOException {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, body.length);
+		exchange.getResponseBody().write(body);
+		exchange.close();
+	}
+}
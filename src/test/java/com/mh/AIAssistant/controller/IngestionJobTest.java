@@ -0,0 +1,207 @@
+package com.mh.AIAssistant.controller;
+
+import com.mh.AIAssistant.repository.KnowledgeDocumentRepository;
+import com.mh.AIAssistant.service.OpenAIEmbeddingService;
+import com.mh.AIAssistant.websocket.WebSocketService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Background ingestion: uploads return a job id, workers take the job through
+ * extract, embed and index, retry failed stages and pick up jobs left behind by
+ * a dead worker. Embeddings are stubbed; needs the application's database, so it
+ * only runs when SPRING_DATASOURCE_URL points at one, e.g.
+ *   SPRING_DATASOURCE_URL=jdbc:postgresql://localhost:5432/ai_whatsapp ./mvnw test
+ */
+@EnabledIfEnvironmentVariable(named = "SPRING_DATASOURCE_URL", matches = ".+")
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+	"ingest.jobs.enabled=true",
+	"ingest.jobs.poll-interval-ms=200",
+	"ingest.jobs.backoff-ms=50",
+	// Without the content store, only the job's own stored vectors avoid a second embedding
+	"embedding.store.enabled=false",
+	"intent.local.initial-train-delay-ms=600000"
+})
+class IngestionJobTest {
+
+	private static final String USER = "ingest-test-user";
+
+	@Autowired
+	private TestRestTemplate rest;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private KnowledgeDocumentRepository documentRepository;
+
+	@MockitoBean
+	private OpenAIEmbeddingService embeddingService;
+
+	@MockitoBean
+	private WebSocketService webSocketService;
+
+	// Fail the next embeddings call once
+	private final AtomicBoolean failNextEmbedding = new AtomicBoolean();
+
+	// Every text sent to the embeddings API
+	private final List<String> embeddedTexts = new CopyOnWriteArrayList<>();
+
+	@BeforeEach
+	void stubEmbeddings() {
+		Mockito.when(embeddingService.model()).thenReturn("ingest-test-model");
+		Mockito.when(embeddingService.embedAll(Mockito.anyList())).thenAnswer(call -> {
+			if (failNextEmbedding.compareAndSet(true, false)) {
+				throw new RuntimeException("embeddings API unavailable");
+			}
+			List<String> texts = call.getArgument(0);
+			embeddedTexts.addAll(texts);
+			List<float[]> vectors = new ArrayList<>();
+			for (String text : texts) {
+				float[] vector = new float[1536];
+				vector[Math.floorMod(text.hashCode(), vector.length)] = 1f;
+				vectors.add(vector);
+			}
+			return vectors;
+		});
+	}
+
+	@Test
+	void uploadReturnsJobIdAndIsIndexedInTheBackground() throws Exception {
+		String content = "Refund policy " + System.nanoTime() + ". Refunds are paid within five working days.";
+		ResponseEntity<Map> response = upload(USER, "policy.txt", content);
+		assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+		long jobId = ((Number) response.getBody().get("jobId")).longValue();
+
+		Map<String, Object> job = awaitFinished(jobId);
+		assertEquals("DONE", job.get("status"));
+		assertEquals("INDEXED", job.get("stage"));
+		long documentId = ((Number) job.get("documentId")).longValue();
+		assertEquals(content.length(), documentRepository.findById(documentId).orElseThrow().getCharCount());
+
+		// Every stage was reported to the user's WebSocket sessions
+		List<String> progress = progress(jobId);
+		assertEquals("STORED/PENDING", progress.get(0));
+		assertTrue(progress.containsAll(List.of("STORED/RUNNING", "EXTRACTED/PENDING", "EXTRACTED/RUNNING",
+			"EMBEDDED/PENDING", "EMBEDDED/RUNNING", "INDEXED/DONE")), progress.toString());
+
+		assertEquals(HttpStatus.FORBIDDEN,
+			rest.getForEntity("/knowledge/jobs/{id}?userId={user}", Map.class, jobId, "someone-else").getStatusCode());
+	}
+
+	@Test
+	void chunksAreEmbeddedOnceAcrossStages() throws Exception {
+		String marker = "Parking rules " + System.nanoTime();
+		ResponseEntity<Map> response = upload(USER, "parking.txt", marker + ": visitors park on level 2.");
+		long jobId = ((Number) response.getBody().get("jobId")).longValue();
+
+		assertEquals("DONE", awaitFinished(jobId).get("status"));
+		assertEquals(1, embeddedTexts.stream().filter(text -> text.contains(marker)).count());
+		assertEquals(0, jdbcTemplate.queryForObject(
+			"SELECT COUNT(*) FROM ingestion_job_embeddings WHERE job_id = ?", Integer.class, jobId));
+	}
+
+	@Test
+	void failedStageIsRetried() throws Exception {
+		failNextEmbedding.set(true);
+		MultiValueMap<String, Object> form = new LinkedMultiValueMap<>();
+		form.add("userId", USER);
+		form.add("text", "Warehouse opening hours " + System.nanoTime() + ": 9am to 5pm.");
+		ResponseEntity<Map> response = rest.postForEntity("/knowledge/store", multipart(form), Map.class);
+		long jobId = ((Number) response.getBody().get("jobId")).longValue();
+
+		assertEquals("DONE", awaitFinished(jobId).get("status"));
+		assertTrue(progress(jobId).contains("EXTRACTED/PENDING:embeddings API unavailable"), progress(jobId).toString());
+	}
+
+	@Test
+	void emptyFileFailsWithoutRetrying() throws Exception {
+		ResponseEntity<Map> response = upload(USER, "empty.txt", "   ");
+		long jobId = ((Number) response.getBody().get("jobId")).longValue();
+
+		Map<String, Object> job = awaitFinished(jobId);
+		assertEquals("FAILED", job.get("status"));
+		assertEquals("STORED", job.get("stage"));
+		assertEquals(1, job.get("attempts"));
+		assertTrue(String.valueOf(job.get("error")).startsWith("No text could be extracted"));
+	}
+
+	@Test
+	void jobOfDeadWorkerIsPickedUp() throws Exception {
+		// Claimed by an instance that died ten minutes ago
+		Long jobId = jdbcTemplate.queryForObject("""
+			INSERT INTO ingestion_jobs (user_id, stage, status, text, attempts, locked_by, locked_at, created_at, updated_at)
+			VALUES (?, 'EXTRACTED', 'RUNNING', ?, 1, 'ingest-crashed', now() - interval '10 minutes', now(), now())
+			RETURNING id
+			""", Long.class, USER, "Delivery zones " + System.nanoTime() + ": north and east only.");
+
+		Map<String, Object> job = awaitFinished(jobId);
+		assertEquals("DONE", job.get("status"));
+		assertNotNull(job.get("documentId"));
+	}
+
+	private ResponseEntity<Map> upload(String userId, String fileName, String content) {
+		MultiValueMap<String, Object> form = new LinkedMultiValueMap<>();
+		form.add("userId", userId);
+		form.add("file", new ByteArrayResource(content.getBytes(StandardCharsets.UTF_8)) {
+			@Override
+			public String getFilename() {
+				return fileName;
+			}
+		});
+		return rest.postForEntity("/knowledge/store", multipart(form), Map.class);
+	}
+
+	private static HttpEntity<MultiValueMap<String, Object>> multipart(MultiValueMap<String, Object> form) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.MULTIPART_FORM_DATA);
+		return new HttpEntity<>(form, headers);
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> awaitFinished(long jobId) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 30_000;
+		while (true) {
+			Map<String, Object> job = rest.getForObject("/knowledge/jobs/{id}?userId={user}", Map.class, jobId, USER);
+			if ("DONE".equals(job.get("status")) || "FAILED".equals(job.get("status"))) return job;
+			if (System.currentTimeMillis() > deadline) fail("Job " + jobId + " not finished: " + job);
+			Thread.sleep(100);
+		}
+	}
+
+	// "STAGE/STATUS" (":error" when there is one) of the job's progress events, in order
+	@SuppressWarnings("unchecked")
+	private List<String> progress(long jobId) {
+		ArgumentCaptor<Map<String, Object>> events = ArgumentCaptor.forClass(Map.class);
+		Mockito.verify(webSocketService, Mockito.atLeastOnce()).notifyIngestionProgress(Mockito.eq(USER), events.capture());
+		return events.getAllValues().stream()
+			.filter(event -> Long.valueOf(jobId).equals(event.get("jobId")))
+			.map(event -> event.get("stage") + "/" + event.get("status") + (event.get("error") != null ? ":" + event.get("error") : ""))
+			.toList();
+	}
+}
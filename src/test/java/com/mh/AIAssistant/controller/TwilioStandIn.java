@@ -0,0 +1,75 @@
+package com.mh.AIAssistant.controller;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for the Twilio REST API: accepts Messages.json posts (point
+ * twilio.api.base-url at {@link #baseUrl()}) and records the messages sent
+ */
+class TwilioStandIn implements AutoCloseable {
+
+	private final HttpServer server;
+	private final BlockingQueue<Map<String, String>> messages = new LinkedBlockingQueue<>();
+
+	TwilioStandIn() {
+		try {
+			server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		server.createContext("/2010-04-01/Accounts/", this::createMessage);
+		server.start();
+	}
+
+	String baseUrl() {
+		return "http://localhost:" + server.getAddress().getPort();
+	}
+
+	/**
+	 * The next message sent (To, From, Body), or null if none arrives in time
+	 */
+	Map<String, String> nextMessage(Duration timeout) throws InterruptedException {
+		return messages.poll(timeout.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	int pending() {
+		return messages.size();
+	}
+
+	private void createMessage(HttpExchange exchange) throws IOException {
+		Map<String, String> form = new HashMap<>();
+		String body = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+		for (String pair : body.split("&")) {
+			int eq = pair.indexOf('=');
+			if (eq > 0) {
+				form.put(URLDecoder.decode(pair.substring(0, eq), StandardCharsets.UTF_8),
+					URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8));
+			}
+		}
+		messages.add(form);
+
+		byte[] response = ("{\"sid\":\"SM" + System.nanoTime() + "\",\"status\":\"queued\"}").getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().add("Content-Type", "application/json");
+		exchange.sendResponseHeaders(201, response.length);
+		exchange.getResponseBody().write(response);
+		exchange.close();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+	}
+}
@@ -0,0 +1,80 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingBatcherTest {
+
+	// Records each request; the embedding of a text is { length, first char }
+	private final List<List<String>> requests = new CopyOnWriteArrayList<>();
+
+	private List<float[]> embed(List<String> texts) {
+		requests.add(List.copyOf(texts));
+		return texts.stream().map(text -> new float[] { text.length(), text.isEmpty() ? 0 : text.charAt(0) }).toList();
+	}
+
+	@Test
+	void concurrentCallersShareRequests() throws Exception {
+		try (EmbeddingBatcher batcher = new EmbeddingBatcher(this::embed, 64, 100_000, 50, 2)) {
+			ExecutorService callers = Executors.newFixedThreadPool(16);
+			List<Future<float[]>> results = new ArrayList<>();
+			for (int i = 0; i < 40; i++) {
+				String text = "query " + i;
+				results.add(callers.submit(() -> batcher.submit(text).get()));
+			}
+			for (int i = 0; i < 40; i++) {
+				assertEquals(("query " + i).length(), results.get(i).get(5, TimeUnit.SECONDS)[0]);
+			}
+			callers.shutdown();
+
+			assertTrue(requests.size() < 40 / 4, "expected coalesced requests, got " + requests.size());
+			assertEquals(40, requests.stream().mapToInt(List::size).sum());
+		}
+	}
+
+	@Test
+	void batchesRespectSizeAndTokenCaps() throws Exception {
+		try (EmbeddingBatcher batcher = new EmbeddingBatcher(this::embed, 4, 100_000, 20, 1)) {
+			List<float[]> all = batcher.submitAll(List.of("a", "b", "c", "d", "e", "f", "g", "h", "i")).get(5, TimeUnit.SECONDS);
+			assertEquals(9, all.size());
+			assertEquals('i', all.get(8)[1]);
+			assertTrue(requests.stream().allMatch(request -> request.size() <= 4));
+		}
+
+		requests.clear();
+		String chunk = "x".repeat(400); // ~101 estimated tokens
+		try (EmbeddingBatcher batcher = new EmbeddingBatcher(this::embed, 100, 250, 20, 1)) {
+			batcher.submitAll(List.of(chunk, chunk + "y", chunk + "z", chunk + "w", chunk + "v")).get(5, TimeUnit.SECONDS);
+			assertTrue(requests.stream().allMatch(request -> request.size() <= 2), requests.toString());
+			assertEquals(5, requests.stream().mapToInt(List::size).sum());
+		}
+	}
+
+	@Test
+	void duplicateTextsAreSentOnceAndCallersGetOwnArrays() throws Exception {
+		try (EmbeddingBatcher batcher = new EmbeddingBatcher(this::embed, 64, 100_000, 50, 1)) {
+			CompletableFuture<float[]> first = batcher.submit("same");
+			CompletableFuture<float[]> second = batcher.submit("same");
+			float[] a = first.get(5, TimeUnit.SECONDS);
+			float[] b = second.get(5, TimeUnit.SECONDS);
+
+			assertEquals(List.of(List.of("same")), requests);
+			assertArrayEquals(a, b);
+			assertNotSame(a, b);
+		}
+	}
+
+	@Test
+	void failedRequestFailsItsCallers() {
+		try (EmbeddingBatcher batcher = new EmbeddingBatcher(texts -> { throw new IllegalStateException("rate limited"); }, 64, 100_000, 0, 1)) {
+			ExecutionException error = assertThrows(ExecutionException.class, () -> batcher.submit("q").get(5, TimeUnit.SECONDS));
+			assertEquals("rate limited", error.getCause().getMessage());
+			assertEquals(1L, batcher.getStats().get("failedRequests"));
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingCacheTest {
+
+	@TempDir
+	Path storage;
+
+	private EmbeddingCache cache(long maxBytes, boolean persist) {
+		EmbeddingCache cache = new EmbeddingCache();
+		ReflectionTestUtils.setField(cache, "enabled", true);
+		ReflectionTestUtils.setField(cache, "maxBytes", maxBytes);
+		ReflectionTestUtils.setField(cache, "persist", persist);
+		ReflectionTestUtils.setField(cache, "storagePath", storage.toString());
+		return cache;
+	}
+
+	@Test
+	void normalizedRepeatsHitTheCache() {
+		EmbeddingCache cache = cache(1 << 20, false);
+		AtomicInteger calls = new AtomicInteger();
+		Function<String, float[]> compute = text -> {
+			calls.incrementAndGet();
+			return new float[] { text.length(), 1f };
+		};
+
+		float[] first = cache.get("m", "Hello  there", compute);
+		first[0] = -1f; // callers get copies
+		float[] second = cache.get("m", " hello there\n", compute);
+
+		assertEquals(1, calls.get());
+		assertEquals(12f, second[0]);
+		cache.get("other-model", "hello there", compute);
+		assertEquals(2, calls.get());
+		assertEquals(1L, cache.getStats().get("hits"));
+		assertEquals(2L, cache.getStats().get("misses"));
+	}
+
+	@Test
+	void evictsLeastRecentlyUsedWhenOverBudget() {
+		// Room for two 100-dim entries
+		EmbeddingCache cache = cache(2 * (200 + 400), false);
+		AtomicInteger calls = new AtomicInteger();
+		Function<String, float[]> compute = text -> {
+			calls.incrementAndGet();
+			return new float[100];
+		};
+
+		cache.get("m", "a", compute);
+		cache.get("m", "b", compute);
+		cache.get("m", "a", compute); // a is now most recently used
+		cache.get("m", "c", compute); // evicts b
+		assertEquals(3, calls.get());
+
+		cache.get("m", "a", compute);
+		assertEquals(3, calls.get());
+		cache.get("m", "b", compute);
+		assertEquals(4, calls.get());
+		assertEquals(2L, cache.getStats().get("evictions"));
+	}
+
+	@Test
+	void persistedEntriesSurviveRestart() {
+		EmbeddingCache cache = cache(1 << 20, true);
+		cache.get("m", "good morning", text -> new float[] { 0.25f, -0.5f });
+		cache.save();
+
+		EmbeddingCache restarted = cache(1 << 20, true);
+		ReflectionTestUtils.invokeMethod(restarted, "load");
+		float[] loaded = restarted.get("m", "Good Morning", text -> fail("should be cached"));
+		assertArrayEquals(new float[] { 0.25f, -0.5f }, loaded);
+	}
+
+	@Test
+	void contentKeysKeepCase() {
+		assertEquals(EmbeddingCache.key("m", "Apple  results"), EmbeddingCache.key("m", "apple results"));
+		assertEquals(EmbeddingCache.contentKey("m", " Apple\nresults "), EmbeddingCache.contentKey("m", "Apple results"));
+		assertNotEquals(EmbeddingCache.contentKey("m", "Apple results"), EmbeddingCache.contentKey("m", "apple results"));
+	}
+}
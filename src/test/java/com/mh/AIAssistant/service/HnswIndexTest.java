@@ -0,0 +1,107 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTest {
+
+	private static final int DIM = 64;
+
+	@Test
+	void searchReturnsExactMatchFirst() {
+		Random random = new Random(7);
+		HnswIndex index = new HnswIndex(16, 100, new Random(1));
+		List<float[]> vectors = randomVectors(random, 500);
+		for (int i = 0; i < vectors.size(); i++) {
+			index.add(i, vectors.get(i));
+		}
+
+		List<ScoredId> hits = index.search(vectors.get(42), 5, 64);
+
+		assertEquals(5, hits.size());
+		assertEquals(42L, hits.get(0).id());
+		assertEquals(1.0, hits.get(0).score(), 1e-5);
+	}
+
+	@Test
+	void recallAgainstBruteForceIsHigh() {
+		Random random = new Random(11);
+		HnswIndex index = new HnswIndex(16, 200, new Random(3));
+		List<float[]> vectors = randomVectors(random, 2000);
+		for (int i = 0; i < vectors.size(); i++) {
+			index.add(i, vectors.get(i));
+		}
+
+		int k = 10;
+		int matched = 0;
+		List<float[]> queries = randomVectors(random, 50);
+		for (float[] query : queries) {
+			Set<Long> expected = bruteForce(vectors, query, k);
+			for (ScoredId hit : index.search(query, k, 64)) {
+				if (expected.contains(hit.id())) matched++;
+			}
+		}
+
+		double recall = (double) matched / (queries.size() * k);
+		assertTrue(recall >= 0.9, "recall@10 was " + recall);
+	}
+
+	@Test
+	void addingSameIdTwiceIsIgnored() {
+		HnswIndex index = new HnswIndex(8, 50);
+		index.add(1, new float[] {1f, 0f});
+		index.add(1, new float[] {0f, 1f});
+		assertEquals(1, index.size());
+	}
+
+	@Test
+	void removedIdsDoNotTakeTopKSlots() {
+		Random random = new Random(5);
+		HnswIndex index = new HnswIndex(16, 100, new Random(2));
+		List<float[]> vectors = randomVectors(random, 500);
+		for (int i = 0; i < vectors.size(); i++) {
+			index.add(i, vectors.get(i));
+		}
+		List<ScoredId> before = index.search(vectors.get(42), 5, 64);
+		for (ScoredId hit : before) {
+			assertTrue(index.remove(hit.id()));
+		}
+		assertFalse(index.remove(9999));
+
+		List<ScoredId> after = index.search(vectors.get(42), 5, 64);
+
+		assertEquals(5, after.size());
+		for (ScoredId hit : after) {
+			assertFalse(before.stream().anyMatch(b -> b.id() == hit.id()), "removed id returned: " + hit.id());
+		}
+		assertEquals(495, index.size());
+		assertEquals(5, index.removedCount());
+		assertFalse(index.contains(42));
+	}
+
+	private static List<float[]> randomVectors(Random random, int count) {
+		List<float[]> vectors = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			float[] v = new float[DIM];
+			for (int d = 0; d < DIM; d++) v[d] = (float) random.nextGaussian();
+			vectors.add(v);
+		}
+		return vectors;
+	}
+
+	private static Set<Long> bruteForce(List<float[]> vectors, float[] query, int k) {
+		float[] q = VectorMath.normalize(query);
+		PriorityQueue<long[]> heap = new PriorityQueue<>(Comparator.comparingDouble(a -> Double.longBitsToDouble(a[1])));
+		for (int i = 0; i < vectors.size(); i++) {
+			double score = VectorMath.dot(q, VectorMath.normalize(vectors.get(i)));
+			heap.add(new long[] {i, Double.doubleToLongBits(score)});
+			if (heap.size() > k) heap.poll();
+		}
+		Set<Long> ids = new HashSet<>();
+		for (long[] entry : heap) ids.add(entry[0]);
+		return ids;
+	}
+}
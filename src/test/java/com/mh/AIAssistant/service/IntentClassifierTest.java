@@ -0,0 +1,68 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IntentClassifierTest {
+
+	@Test
+	void rulesAgreeWithThePromptExamples() {
+		DeepSeekAIService.RETRIEVE_EXAMPLES.forEach(example ->
+			assertEquals(IntentClassifier.RETRIEVE, IntentClassifier.applyRules(example), example));
+		DeepSeekAIService.CHAT_EXAMPLES.forEach(example ->
+			assertEquals(IntentClassifier.CHAT, IntentClassifier.applyRules(example), example));
+	}
+
+	@Test
+	void ambiguousMessagesAreLeftToTheModel() {
+		// Questions about a document's content mention documents but don't ask for them
+		assertNull(IntentClassifier.applyRules("What is the total on the March invoice?"));
+		assertNull(IntentClassifier.applyRules("budget 2024"));
+		assertEquals(IntentClassifier.RETRIEVE, IntentClassifier.applyRules("Do I have any receipts from Grab?"));
+		assertEquals(IntentClassifier.CHAT, IntentClassifier.applyRules("  How   much did we spend on travel?"));
+	}
+
+	@Test
+	void modelSeparatesClustersAndReportsConfidence() {
+		Random random = new Random(3);
+		float[] retrieveCenter = unit(random, 64);
+		float[] chatCenter = unit(random, 64);
+
+		List<float[]> vectors = new ArrayList<>();
+		List<Boolean> labels = new ArrayList<>();
+		// Imbalanced like the logged decisions: mostly CHAT
+		for (int i = 0; i < 20; i++) { vectors.add(near(random, retrieveCenter)); labels.add(true); }
+		for (int i = 0; i < 200; i++) { vectors.add(near(random, chatCenter)); labels.add(false); }
+
+		IntentModel model = IntentModel.train(vectors, labels, 30, 0.5, 1e-4);
+		assertEquals(220, model.examples());
+		assertTrue(model.trainingAccuracy() > 0.95, "accuracy " + model.trainingAccuracy());
+		assertTrue(model.probability(near(random, retrieveCenter)) > 0.8);
+		assertTrue(model.probability(near(random, chatCenter)) < 0.2);
+		assertEquals(0.5, model.probability(new float[8]), 0.0);
+	}
+
+	@Test
+	void agreementBucketsFollowConfidence() {
+		assertEquals("rules", IntentClassifier.bucket(new IntentClassifier.Decision("CHAT", "rules", 0.95)));
+		assertEquals("model 0.7-0.8", IntentClassifier.bucket(new IntentClassifier.Decision("CHAT", "model", 0.74)));
+		assertEquals("model 0.9-1.0", IntentClassifier.bucket(new IntentClassifier.Decision("RETRIEVE", "model", 1.0)));
+	}
+
+	private static float[] unit(Random random, int dim) {
+		float[] vector = new float[dim];
+		for (int i = 0; i < dim; i++) vector[i] = (float) random.nextGaussian();
+		return VectorMath.normalize(vector);
+	}
+
+	private static float[] near(Random random, float[] center) {
+		float[] vector = center.clone();
+		for (int i = 0; i < vector.length; i++) vector[i] += (float) (0.08 * random.nextGaussian());
+		return VectorMath.normalize(vector);
+	}
+}
@@ -0,0 +1,52 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KMeansTest {
+
+	@Test
+	void separatesWellSeparatedGroups() {
+		Random random = new Random(3);
+		int dim = 32;
+		int groups = 4;
+		List<float[]> centers = new ArrayList<>();
+		for (int g = 0; g < groups; g++) {
+			float[] center = new float[dim];
+			center[g * 8] = 1f;
+			centers.add(center);
+		}
+
+		List<float[]> vectors = new ArrayList<>();
+		List<Integer> labels = new ArrayList<>();
+		for (int i = 0; i < 400; i++) {
+			int g = i % groups;
+			float[] v = centers.get(g).clone();
+			for (int d = 0; d < dim; d++) v[d] += (float) (random.nextGaussian() * 0.05);
+			vectors.add(VectorMath.normalize(v));
+			labels.add(g);
+		}
+
+		float[][] centroids = KMeans.train(vectors, groups, 20, new Random(1));
+		assertEquals(groups, centroids.length);
+
+		// Every group must map to one centroid, and different groups to different centroids
+		Map<Integer, Integer> clusterOfGroup = new HashMap<>();
+		for (int i = 0; i < vectors.size(); i++) {
+			int cluster = KMeans.nearest(centroids, vectors.get(i));
+			Integer previous = clusterOfGroup.putIfAbsent(labels.get(i), cluster);
+			assertTrue(previous == null || previous == cluster, "group split across clusters");
+		}
+		assertEquals(groups, new HashSet<>(clusterOfGroup.values()).size());
+	}
+
+	@Test
+	void neverReturnsMoreCentroidsThanPoints() {
+		List<float[]> vectors = List.of(new float[] { 1f, 0f }, new float[] { 0f, 1f });
+		assertEquals(2, KMeans.train(vectors, 10, 5, new Random(1)).length);
+		assertEquals(0, KMeans.train(List.of(), 10, 5, new Random(1)).length);
+	}
+}
@@ -0,0 +1,27 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexicalRetrieverTest {
+
+	@Test
+	void findsIdentifiersAndQuotedPhrases() {
+		assertEquals(List.of("INV-2024-0193"), LexicalRetriever.exactTerms("Where is invoice INV-2024-0193?"));
+		assertEquals(List.of("ERR_CONNECTION_REFUSED", "0x80070005"),
+			LexicalRetriever.exactTerms("got ERR_CONNECTION_REFUSED and 0x80070005 again"));
+		assertEquals(List.of("Jane Tan", "10423"),
+			LexicalRetriever.exactTerms("notes from \"Jane Tan\" about order 10423"));
+		assertEquals(List.of("ORA-ABC"), LexicalRetriever.exactTerms("what does ORA-ABC mean"));
+	}
+
+	@Test
+	void ignoresOrdinaryWordsAndSmallNumbers() {
+		assertTrue(LexicalRetriever.exactTerms("What did we decide about the budget in 2024?").isEmpty());
+		assertTrue(LexicalRetriever.exactTerms("send a follow-up e-mail about the PDF").isEmpty());
+		assertTrue(LexicalRetriever.exactTerms(null).isEmpty());
+	}
+}
@@ -0,0 +1,155 @@
+package com.mh.AIAssistant.service;
+
+import net.sourceforge.tess4j.ITesseract;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * OcrExecutor with stub engines: engines are never shared between threads,
+ * a full pool rejects at once, and pages are timed one by one
+ */
+class OcrExecutorTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void engineIsNeverUsedByTwoThreadsAtOnce() throws Exception {
+		AtomicInteger overlaps = new AtomicInteger();
+		List<ITesseract> created = new CopyOnWriteArrayList<>();
+		OcrExecutor executor = new OcrExecutor(4, 64, 10_000, () -> {
+			AtomicInteger inUse = new AtomicInteger();
+			ITesseract engine = stubEngine(() -> {
+				if (inUse.incrementAndGet() > 1) overlaps.incrementAndGet();
+				Thread.sleep(10);
+				inUse.decrementAndGet();
+				return "text";
+			});
+			created.add(engine);
+			return engine;
+		});
+		File image = image("page.png");
+
+		ExecutorService callers = Executors.newFixedThreadPool(32);
+		try {
+			List<Future<String>> results = new ArrayList<>();
+			for (int i = 0; i < 32; i++) {
+				results.add(callers.submit(() -> executor.ocr(image)));
+			}
+			for (Future<String> result : results) assertEquals("text", result.get());
+		} finally {
+			callers.shutdownNow();
+			executor.shutdown();
+		}
+
+		assertEquals(0, overlaps.get());
+		assertTrue(created.size() <= 4, "engines: " + created.size());
+		Map<String, Object> stats = executor.getStats();
+		assertEquals(32L, stats.get("completed"));
+		assertEquals(32L, stats.get("pages"));
+		assertEquals(0L, stats.get("rejected"));
+	}
+
+	@Test
+	void rejectsAtOnceWhenPoolAndQueueAreFull() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		OcrExecutor executor = new OcrExecutor(1, 1, 10_000, () -> stubEngine(() -> {
+			release.await();
+			return "text";
+		}));
+		File image = image("page.png");
+
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> running = callers.submit(() -> executor.ocr(image));
+			awaitStat(executor, "busy", 1);
+			Future<String> queued = callers.submit(() -> executor.ocr(image));
+			awaitStat(executor, "queueDepth", 1);
+
+			long start = System.nanoTime();
+			assertThrows(OcrRejectedException.class, () -> executor.ocr(image));
+			assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 500);
+
+			release.countDown();
+			assertEquals("text", running.get(5, TimeUnit.SECONDS));
+			assertEquals("text", queued.get(5, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			callers.shutdownNow();
+			executor.shutdown();
+		}
+
+		Map<String, Object> stats = executor.getStats();
+		assertEquals(1L, stats.get("rejected"));
+		assertEquals(2L, stats.get("completed"));
+		assertTrue((Long) stats.get("queueWaitMaxMs") > 0);
+	}
+
+	@Test
+	void multiPageImageIsRecognisedPageByPage() throws Exception {
+		AtomicInteger page = new AtomicInteger();
+		OcrExecutor executor = new OcrExecutor(1, 4, 10_000, () -> stubEngine(() -> "page " + page.incrementAndGet() + "\n"));
+		File tiff = dir.resolve("scan.tif").toFile();
+		try (ImageOutputStream out = ImageIO.createImageOutputStream(tiff)) {
+			ImageWriter writer = ImageIO.getImageWritersByFormatName("tiff").next();
+			writer.setOutput(out);
+			writer.prepareWriteSequence(null);
+			for (int i = 0; i < 3; i++) {
+				writer.writeToSequence(new IIOImage(new BufferedImage(20, 20, BufferedImage.TYPE_BYTE_GRAY), null, null), null);
+			}
+			writer.endWriteSequence();
+			writer.dispose();
+		}
+
+		try {
+			assertEquals("page 1\npage 2\npage 3", executor.ocr(tiff));
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(3L, executor.getStats().get("pages"));
+	}
+
+	private interface Recognizer {
+		String recognize() throws Exception;
+	}
+
+	private static ITesseract stubEngine(Recognizer recognizer) {
+		ITesseract engine = Mockito.mock(ITesseract.class);
+		try {
+			Mockito.when(engine.doOCR(Mockito.<List<IIOImage>>any(), Mockito.isNull())).thenAnswer(call -> recognizer.recognize());
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+		return engine;
+	}
+
+	private File image(String name) throws Exception {
+		File file = dir.resolve(name).toFile();
+		ImageIO.write(new BufferedImage(20, 20, BufferedImage.TYPE_INT_RGB), "png", file);
+		return file;
+	}
+
+	private static void awaitStat(OcrExecutor executor, String stat, int value) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5_000;
+		while (((Number) executor.getStats().get(stat)).intValue() != value) {
+			if (System.currentTimeMillis() > deadline) fail(stat + " never reached " + value);
+			Thread.sleep(5);
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.mh.AIAssistant.service;
+
+import org.apache.poi.hslf.usermodel.HSLFSlide;
+import org.apache.poi.hslf.usermodel.HSLFSlideShow;
+import org.apache.poi.hslf.usermodel.HSLFTable;
+import org.apache.poi.hslf.usermodel.HSLFTextBox;
+import org.apache.poi.sl.usermodel.Placeholder;
+import org.apache.poi.xslf.usermodel.XMLSlideShow;
+import org.apache.poi.xslf.usermodel.XSLFNotes;
+import org.apache.poi.xslf.usermodel.XSLFSlide;
+import org.apache.poi.xslf.usermodel.XSLFTable;
+import org.apache.poi.xslf.usermodel.XSLFTableRow;
+import org.apache.poi.xslf.usermodel.XSLFTextShape;
+import org.apache.poi.xwpf.model.XWPFHeaderFooterPolicy;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.apache.poi.xwpf.usermodel.XWPFTable;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * DOCX, PPTX and PPT extractors on generated files: text comes out in pieces,
+ * in document order, including tables, headers, footers and speaker notes
+ */
+class OfficeTextExtractorTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void docxIncludesHeadersTablesAndFooters() throws Exception {
+		File file = dir.resolve("report.docx").toFile();
+		try (XWPFDocument document = new XWPFDocument()) {
+			XWPFHeaderFooterPolicy policy = document.createHeaderFooterPolicy();
+			policy.createHeader(XWPFHeaderFooterPolicy.DEFAULT).createParagraph().createRun().setText("Quarterly report");
+			document.createParagraph().createRun().setText("Revenue grew.");
+			XWPFTable table = document.createTable(2, 2);
+			table.getRow(0).getCell(0).setText("Region");
+			table.getRow(0).getCell(1).setText("Revenue");
+			table.getRow(1).getCell(0).setText("North");
+			table.getRow(1).getCell(1).setText("120");
+			document.createParagraph().createRun().setText("Costs fell.");
+			policy.createFooter(XWPFHeaderFooterPolicy.DEFAULT).createParagraph().createRun().setText("Confidential");
+			save(document::write, file);
+		}
+
+		List<String> pieces = extract(new DocxTextExtractor(), file);
+
+		assertEquals("Quarterly report\nRevenue grew.\nRegion\tRevenue\t\nNorth\t120\t\nCosts fell.\nConfidential\n",
+			String.join("", pieces));
+		assertTrue(pieces.size() >= 6, "not streamed: " + pieces);
+	}
+
+	@Test
+	void pptxFollowsSlideOrderWithTablesAndNotes() throws Exception {
+		File file = dir.resolve("deck.pptx").toFile();
+		try (XMLSlideShow ppt = new XMLSlideShow()) {
+			XSLFSlide first = ppt.createSlide();
+			XSLFTextShape title = first.createTextBox();
+			title.setText("Roadmap");
+			title.setAnchor(new Rectangle2D.Double(10, 10, 300, 50));
+			XSLFTable table = first.createTable();
+			XSLFTableRow row = table.addRow();
+			row.addCell().setText("Q1");
+			row.addCell().setText("Launch");
+			XSLFNotes notes = ppt.getNotesSlide(first);
+			for (XSLFTextShape placeholder : notes.getPlaceholders()) {
+				if (placeholder.getTextType() == Placeholder.BODY) {
+					placeholder.setText("Mention the delay");
+				}
+			}
+
+			XSLFSlide second = ppt.createSlide();
+			second.createTextBox().setText("Questions?");
+			// Move the second slide first: order comes from the presentation, not the part names
+			ppt.setSlideOrder(second, 0);
+			save(ppt::write, file);
+		}
+
+		String text = String.join("", extract(new PptxTextExtractor(), file));
+
+		assertEquals("Questions?\n\nRoadmap\nQ1\tLaunch\t\nNotes:\nMention the delay\n\n", text);
+	}
+
+	@Test
+	void pptIncludesTables() throws Exception {
+		File file = dir.resolve("legacy.ppt").toFile();
+		try (HSLFSlideShow ppt = new HSLFSlideShow()) {
+			HSLFSlide slide = ppt.createSlide();
+			HSLFTextBox box = slide.createTextBox();
+			box.setText("Budget");
+			box.setAnchor(new Rectangle2D.Double(10, 10, 300, 50));
+			HSLFTable table = slide.createTable(1, 2);
+			table.getCell(0, 0).setText("Travel");
+			table.getCell(0, 1).setText("300");
+			ppt.createSlide().createTextBox().setText("Thanks");
+			save(ppt::write, file);
+		}
+
+		List<String> pieces = extract(new PptTextExtractor(), file);
+
+		assertEquals(2, pieces.size());
+		assertTrue(pieces.get(0).contains("Budget") && pieces.get(0).contains("Travel")
+			&& pieces.get(0).contains("300"), pieces.get(0));
+		assertEquals("Thanks\n\n", pieces.get(1));
+	}
+
+	private interface Writer {
+		void write(OutputStream out) throws Exception;
+	}
+
+	private static void save(Writer writer, File file) throws Exception {
+		try (OutputStream out = new FileOutputStream(file)) {
+			writer.write(out);
+		}
+	}
+
+	private static List<String> extract(StreamingTextExtractor extractor, File file) throws Exception {
+		List<String> pieces = new ArrayList<>();
+		extractor.extract(file, piece -> pieces.add(piece.toString()));
+		return pieces;
+	}
+}
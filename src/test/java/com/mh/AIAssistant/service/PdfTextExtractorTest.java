@@ -0,0 +1,130 @@
+package com.mh.AIAssistant.service;
+
+import net.sourceforge.tess4j.ITesseract;
+import net.sourceforge.tess4j.TesseractException;
+import org.apache.pdfbox.pdmodel.PDDocument;
+import org.apache.pdfbox.pdmodel.PDPage;
+import org.apache.pdfbox.pdmodel.PDPageContentStream;
+import org.apache.pdfbox.pdmodel.font.PDType1Font;
+import org.apache.pdfbox.pdmodel.graphics.image.LosslessFactory;
+import org.apache.pdfbox.pdmodel.graphics.image.PDImageXObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import javax.imageio.IIOImage;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * PdfTextExtractor on generated PDFs: pages come back in order with markers,
+ * and only image-only pages go to (stub) OCR
+ */
+class PdfTextExtractorTest {
+
+	@TempDir
+	Path dir;
+
+	private OcrExecutor ocrExecutor;
+
+	@AfterEach
+	void shutdown() {
+		if (ocrExecutor != null) ocrExecutor.shutdown();
+	}
+
+	@Test
+	void onlyScannedPagesAreOcrd() throws Exception {
+		ITesseract engine = stubEngine("scanned text");
+		PdfTextExtractor extractor = extractor(engine, 4);
+		File pdf = pdf("mixed.pdf", "First page", null, "Third page", "");
+
+		String text = extractor.extract(pdf);
+
+		assertEquals("[Page 1]\nFirst page\n\n[Page 2]\nscanned text\n\n[Page 3]\nThird page", text);
+		Mockito.verify(engine, Mockito.times(1)).doOCR(Mockito.<List<IIOImage>>any(), Mockito.isNull());
+		assertEquals(1L, extractor.getStats().get("ocrPages"));
+		assertEquals(4L, extractor.getStats().get("pages"));
+	}
+
+	@Test
+	void pageRangesAreReassembledInOrder() throws Exception {
+		PdfTextExtractor extractor = extractor(stubEngine("unused"), 3);
+		String[] pages = new String[41];
+		for (int i = 0; i < pages.length; i++) pages[i] = "Text of page " + (i + 1);
+
+		String text = extractor.extract(pdf("long.pdf", pages));
+
+		int last = -1;
+		for (int i = 1; i <= pages.length; i++) {
+			int at = text.indexOf(PdfTextExtractor.pageMarker(i) + "\nText of page " + i + "\n");
+			if (i == pages.length) at = text.indexOf(PdfTextExtractor.pageMarker(i) + "\nText of page " + i);
+			assertTrue(at > last, "page " + i + " missing or out of order");
+			last = at;
+		}
+		assertEquals(0L, extractor.getStats().get("ocrPages"));
+	}
+
+	@Test
+	void failedOcrStopsTheOtherRanges() throws Exception {
+		AtomicInteger calls = new AtomicInteger();
+		ITesseract engine = Mockito.mock(ITesseract.class);
+		Mockito.when(engine.doOCR(Mockito.<List<IIOImage>>any(), Mockito.isNull())).thenAnswer(invocation -> {
+			if (calls.incrementAndGet() == 1) throw new TesseractException("unreadable page");
+			Thread.sleep(20);
+			return "scanned text";
+		});
+		PdfTextExtractor extractor = extractor(engine, 8);
+		String[] pages = new String[32];
+
+		assertThrows(TesseractException.class, () -> extractor.extract(pdf("scanned.pdf", pages)));
+
+		// Ranges already running finish at most their current page
+		assertTrue(calls.get() < 8, calls.get() + " pages were OCR'd after the failure");
+	}
+
+	private PdfTextExtractor extractor(ITesseract engine, int pagesPerTask) {
+		ocrExecutor = new OcrExecutor(2, 16, 10_000, () -> engine);
+		return new PdfTextExtractor(ocrExecutor, 4, pagesPerTask, 72, 1, 1, 5_000);
+	}
+
+	private static ITesseract stubEngine(String text) throws Exception {
+		ITesseract engine = Mockito.mock(ITesseract.class);
+		Mockito.when(engine.doOCR(Mockito.<List<IIOImage>>any(), Mockito.isNull())).thenReturn(text);
+		return engine;
+	}
+
+	/**
+	 * One page per entry: text, an image only (null), or nothing ("")
+	 */
+	private File pdf(String name, String... pages) throws Exception {
+		File file = dir.resolve(name).toFile();
+		try (PDDocument document = new PDDocument()) {
+			for (String text : pages) {
+				PDPage page = new PDPage();
+				document.addPage(page);
+				if (text != null && text.isEmpty()) continue;
+				try (PDPageContentStream content = new PDPageContentStream(document, page)) {
+					if (text == null) {
+						PDImageXObject image = LosslessFactory.createFromImage(document,
+							new BufferedImage(40, 40, BufferedImage.TYPE_INT_RGB));
+						content.drawImage(image, 50, 50);
+					} else {
+						content.beginText();
+						content.setFont(PDType1Font.HELVETICA, 12);
+						content.newLineAtOffset(50, 700);
+						content.showText(text);
+						content.endText();
+					}
+				}
+			}
+			document.save(file);
+		}
+		return file;
+	}
+}
@@ -0,0 +1,176 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.model.EmbeddingCodec;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedVectorRetrieverTest {
+
+	private static final int K = 10;
+
+	@Test
+	void quantizationErrorIsBoundedByHalfAStep() {
+		float[] vector = VectorMath.normalize(randomVector(new Random(5), 512));
+		ScalarQuantizer.Quantized quantized = ScalarQuantizer.quantize(vector);
+		float[] restored = ScalarQuantizer.dequantize(quantized.codes(), quantized.scale(), quantized.offset());
+
+		for (int i = 0; i < vector.length; i++) {
+			assertEquals(vector[i], restored[i], quantized.scale() / 2 + 1e-6);
+		}
+		float[] query = VectorMath.normalize(randomVector(new Random(6), 512));
+		assertEquals(VectorMath.dot(query, restored),
+			ScalarQuantizer.dot(query, ScalarQuantizer.sum(query), quantized.codes(), quantized.scale(), quantized.offset()),
+			1e-4);
+	}
+
+	@Test
+	void quantizedScanWithRescoreKeepsRecall() {
+		Random random = new Random(21);
+		int dim = 256;
+		List<float[]> vectors = new ArrayList<>();
+		List<ScalarQuantizer.Quantized> codes = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			float[] vector = VectorMath.normalize(randomVector(random, dim));
+			vectors.add(vector);
+			codes.add(ScalarQuantizer.quantize(vector));
+		}
+
+		int matched = 0;
+		int queries = 50;
+		for (int q = 0; q < queries; q++) {
+			float[] query = VectorMath.normalize(randomVector(random, dim));
+			double querySum = ScalarQuantizer.sum(query);
+
+			TopKCollector exact = new TopKCollector(K);
+			TopKCollector candidates = new TopKCollector(K * 4);
+			for (int i = 0; i < vectors.size(); i++) {
+				exact.offer(i, VectorMath.dot(query, vectors.get(i)));
+				ScalarQuantizer.Quantized c = codes.get(i);
+				candidates.offer(i, ScalarQuantizer.dot(query, querySum, c.codes(), c.scale(), c.offset()));
+			}
+
+			TopKCollector rescored = new TopKCollector(K);
+			for (ScoredId candidate : candidates.toSortedList()) {
+				rescored.offer(candidate.id(), VectorMath.dot(query, vectors.get((int) candidate.id())));
+			}
+			matched += overlap(exact.toSortedList(), rescored.toSortedList());
+		}
+
+		double recall = (double) matched / (queries * K);
+		assertTrue(recall >= 0.95, "recall@10 was " + recall);
+	}
+
+	/**
+	 * Compares the quantized retriever with the exact scan over a scratch schema, e.g.
+	 *   ./mvnw test -Dtest=QuantizedVectorRetrieverTest -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/bench
+	 * Optional: -Dbenchmark.jdbc.user, -Dbenchmark.jdbc.password, -Dbenchmark.dim (default 1536),
+	 * -Dbenchmark.rows (default 20000), -Dbenchmark.runs (default 10), -Dbenchmark.multiplier (default 4)
+	 */
+	@Test
+	@EnabledIfSystemProperty(named = "benchmark.jdbc.url", matches = ".+")
+	void recallAndSpeedupAgainstExactScan() {
+		int dim = Integer.getInteger("benchmark.dim", 1536);
+		int rows = Integer.getInteger("benchmark.rows", 20000);
+		int runs = Integer.getInteger("benchmark.runs", 10);
+		String url = System.getProperty("benchmark.jdbc.url");
+
+		JdbcTemplate admin = new JdbcTemplate(dataSource(url));
+		admin.execute("CREATE SCHEMA IF NOT EXISTS kb_quantized_bench");
+		JdbcTemplate jdbc = new JdbcTemplate(dataSource(url + (url.contains("?") ? "&" : "?") + "currentSchema=kb_quantized_bench"));
+
+		try {
+			seed(jdbc, rows, dim);
+
+			ExactVectorRetriever exact = new ExactVectorRetriever(jdbc);
+			QuantizedVectorRetriever quantized = new QuantizedVectorRetriever(jdbc, exact);
+			quantized.setCandidateMultiplier(Integer.getInteger("benchmark.multiplier", 4));
+
+			Random random = new Random(99);
+			List<float[]> queries = new ArrayList<>();
+			for (int i = 0; i < runs; i++) queries.add(randomVector(random, dim));
+
+			// warm-up
+			exact.score("bench", queries.get(0), K);
+			quantized.score("bench", queries.get(0), K);
+
+			long exactNanos = 0;
+			long quantizedNanos = 0;
+			int matched = 0;
+			for (float[] query : queries) {
+				long start = System.nanoTime();
+				List<ScoredId> expected = exact.score("bench", query, K);
+				exactNanos += System.nanoTime() - start;
+
+				start = System.nanoTime();
+				List<ScoredId> actual = quantized.score("bench", query, K);
+				quantizedNanos += System.nanoTime() - start;
+
+				matched += overlap(expected, actual);
+			}
+
+			double recall = (double) matched / (runs * K);
+			System.out.printf("rows=%d dim=%d  exact: %.1f ms  quantized+rescore: %.1f ms  speedup: %.2fx  recall@%d: %.3f%n",
+				rows, dim, exactNanos / 1e6 / runs, quantizedNanos / 1e6 / runs,
+				(double) exactNanos / quantizedNanos, K, recall);
+			assertTrue(recall >= 0.9, "recall@10 was " + recall);
+		} finally {
+			admin.execute("DROP SCHEMA IF EXISTS kb_quantized_bench CASCADE");
+		}
+	}
+
+	private static void seed(JdbcTemplate jdbc, int rows, int dim) {
+		jdbc.execute("DROP TABLE IF EXISTS knowledge_entries");
+		jdbc.execute("""
+			CREATE TABLE knowledge_entries (
+			    id bigserial PRIMARY KEY,
+			    user_id text,
+			    embedding double precision[],
+			    embedding_f32 bytea,
+			    embedding_version integer,
+			    embedding_q8 bytea,
+			    embedding_q8_scale real,
+			    embedding_q8_offset real
+			)
+			""");
+
+		Random random = new Random(rows);
+		List<Object[]> batch = new ArrayList<>();
+		for (int i = 0; i < rows; i++) {
+			float[] vector = VectorMath.normalize(randomVector(random, dim));
+			ScalarQuantizer.Quantized quantized = ScalarQuantizer.quantize(vector);
+			batch.add(new Object[] { EmbeddingCodec.encode(vector), quantized.codes(), quantized.scale(), quantized.offset() });
+			if (batch.size() == 500 || i == rows - 1) {
+				jdbc.batchUpdate("""
+					INSERT INTO knowledge_entries (user_id, embedding_f32, embedding_version, embedding_q8, embedding_q8_scale, embedding_q8_offset)
+					VALUES ('bench', ?, 2, ?, ?, ?)
+					""", batch);
+				batch.clear();
+			}
+		}
+		jdbc.execute("ANALYZE knowledge_entries");
+	}
+
+	private static DriverManagerDataSource dataSource(String url) {
+		return new DriverManagerDataSource(url,
+			System.getProperty("benchmark.jdbc.user", "postgres"),
+			System.getProperty("benchmark.jdbc.password", ""));
+	}
+
+	private static int overlap(List<ScoredId> expected, List<ScoredId> actual) {
+		Set<Long> ids = actual.stream().map(ScoredId::id).collect(Collectors.toSet());
+		return (int) expected.stream().filter(hit -> ids.contains(hit.id())).count();
+	}
+
+	private static float[] randomVector(Random random, int dim) {
+		float[] v = new float[dim];
+		for (int i = 0; i < dim; i++) v[i] = (float) random.nextGaussian();
+		return v;
+	}
+}
@@ -0,0 +1,35 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReciprocalRankFusionTest {
+
+	@Test
+	void idsRankedByBothLegsComeFirst() {
+		List<ScoredId> vector = List.of(new ScoredId(1, 0.9), new ScoredId(2, 0.8), new ScoredId(3, 0.7));
+		List<ScoredId> lexical = List.of(new ScoredId(4, 5.0), new ScoredId(2, 3.0));
+
+		List<ScoredId> fused = ReciprocalRankFusion.fuse(List.of(vector, lexical), 60, 10);
+
+		// 2 is in both rankings; 1 and 4 each lead one ranking and tie
+		List<Long> ids = fused.stream().map(ScoredId::id).toList();
+		assertEquals(2L, ids.get(0));
+		assertEquals(Set.of(1L, 4L), Set.copyOf(ids.subList(1, 3)));
+		assertEquals(3L, ids.get(3));
+		assertEquals(1.0 / 62 + 1.0 / 62, fused.get(0).score(), 1e-12);
+	}
+
+	@Test
+	void limitAndEmptyLegs() {
+		List<ScoredId> vector = List.of(new ScoredId(1, 0.9), new ScoredId(2, 0.8), new ScoredId(3, 0.7));
+
+		assertEquals(List.of(1L, 2L), ReciprocalRankFusion.fuse(List.of(vector, List.of()), 60, 2)
+			.stream().map(ScoredId::id).toList());
+		assertTrue(ReciprocalRankFusion.fuse(List.of(List.of(), List.of()), 60, 5).isEmpty());
+	}
+}
@@ -0,0 +1,63 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SimilarityKernelsTest {
+
+	// Lengths around the vector width exercise both the SIMD loop and the scalar tail
+	private static final int[] LENGTHS = { 0, 1, 3, 7, 8, 15, 17, 64, 255, 1536 };
+
+	private final SimilarityKernel scalar = new ScalarKernel();
+
+	@Test
+	void kernelsMatchReferenceLoops() {
+		Random random = new Random(5);
+		for (SimilarityKernel kernel : kernels()) {
+			for (int length : LENGTHS) {
+				float[] a = randomVector(random, length);
+				float[] b = randomVector(random, length);
+				byte[] codes = ScalarQuantizer.quantize(b).codes();
+
+				double dot = 0.0, aa = 0.0, bb = 0.0, dotU8 = 0.0;
+				for (int i = 0; i < length; i++) {
+					dot += (double) a[i] * b[i];
+					aa += (double) a[i] * a[i];
+					bb += (double) b[i] * b[i];
+					dotU8 += (double) a[i] * (codes[i] & 0xFF);
+				}
+				double cosine = aa * bb == 0.0 ? 0.0 : dot / Math.sqrt(aa * bb);
+
+				String label = kernel.name() + " length " + length;
+				assertEquals(dot, kernel.dot(a, b, length), 1e-3, label);
+				assertEquals(cosine, kernel.cosine(a, b, length), 1e-5, label);
+				assertEquals(dotU8, kernel.dotU8(a, codes, length), 1e-3 * Math.max(1.0, Math.abs(dotU8)), label);
+			}
+		}
+	}
+
+	@Test
+	void facadeUsesCommonPrefixAndHandlesZeroVectors() {
+		float[] a = { 1f, 2f, 3f };
+		float[] b = { 4f, 5f };
+		assertEquals(14f, SimilarityKernels.dot(a, b), 1e-6);
+		assertEquals(0f, SimilarityKernels.cosine(new float[8], a), 0f);
+		assertEquals(1f, SimilarityKernels.cosine(a, a), 1e-6);
+	}
+
+	private SimilarityKernel[] kernels() {
+		// The Vector API kernel is only testable when the module was added to the test JVM
+		return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+			? new SimilarityKernel[] { scalar, new VectorApiKernel() }
+			: new SimilarityKernel[] { scalar };
+	}
+
+	private static float[] randomVector(Random random, int length) {
+		float[] vector = new float[length];
+		for (int i = 0; i < length; i++) vector[i] = (float) random.nextGaussian();
+		return vector;
+	}
+}
@@ -0,0 +1,74 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TextChunkerTest {
+
+	@Test
+	void shortTextIsOneChunk() {
+		assertEquals(List.of("Hello there."), new TextChunker(100, 20).split("  Hello there.\n"));
+		assertTrue(new TextChunker(100, 20).split("   ").isEmpty());
+	}
+
+	@Test
+	void chunksFollowSentencesAndOverlap() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 40; i++) {
+			text.append("Sentence number ").append(i).append(" is here. ");
+		}
+		List<String> chunks = new TextChunker(120, 30).split(text.toString());
+
+		assertTrue(chunks.size() > 1);
+		for (int i = 0; i < chunks.size(); i++) {
+			String chunk = chunks.get(i);
+			assertTrue(chunk.length() <= 120, "chunk too long: " + chunk.length());
+			assertTrue(chunk.startsWith("Sentence") && chunk.endsWith("here."), "not sentence aligned: " + chunk);
+			if (i > 0) {
+				// The last sentence of the previous chunk is repeated at the start of this one
+				String previous = chunks.get(i - 1);
+				String lastSentence = previous.substring(previous.lastIndexOf("Sentence"));
+				assertTrue(chunk.startsWith(lastSentence), "no overlap before chunk " + i);
+			}
+		}
+		assertTrue(chunks.get(0).startsWith("Sentence number 0 "));
+		assertTrue(chunks.get(chunks.size() - 1).endsWith("Sentence number 39 is here."));
+	}
+
+	@Test
+	void longSentencesAreCutAtWhitespace() {
+		String words = "word ".repeat(100).strip();
+		List<String> chunks = new TextChunker(50, 0).split(words);
+
+		assertTrue(chunks.size() >= 10);
+		for (String chunk : chunks) {
+			assertTrue(chunk.length() <= 50);
+			assertFalse(chunk.contains("wo rd"));
+		}
+		assertEquals(100, String.join(" ", chunks).split("\\s+").length);
+	}
+
+	@Test
+	void chunksStartWithTheirPageMarker() {
+		StringBuilder text = new StringBuilder();
+		for (int page = 1; page <= 3; page++) {
+			text.append("[Page ").append(page).append("]\n");
+			for (int i = 0; i < 10; i++) {
+				text.append("Page ").append(page).append(" sentence ").append(i).append(" is here. ");
+			}
+			text.append("\n\n");
+		}
+		List<String> chunks = new TextChunker(120, 30).split(text.toString());
+
+		assertTrue(chunks.size() > 3);
+		for (String chunk : chunks) {
+			assertTrue(chunk.matches("(?s)\\[Page \\d\\] ?\\s*Page \\d.*"), "no page marker: " + chunk);
+			// The marker is the page of the first sentence
+			assertEquals(chunk.charAt(6), chunk.substring(chunk.indexOf(']') + 1).strip().charAt(5), chunk);
+		}
+		assertTrue(chunks.get(chunks.size() - 1).startsWith("[Page 3]"));
+	}
+}
@@ -0,0 +1,150 @@
+package com.mh.AIAssistant.service;
+
+import com.mh.AIAssistant.configuration.KnowledgeSchemaInitializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Compares the original unnest CTE with the kb_dot function over normalized rows.
+ * Needs a scratch PostgreSQL database, e.g.
+ *   ./mvnw test -Dtest=VectorScoringBenchmarkTest -Dbenchmark.jdbc.url=jdbc:postgresql://localhost:5432/bench
+ * Optional: -Dbenchmark.jdbc.user, -Dbenchmark.jdbc.password, -Dbenchmark.dim (default 1536),
+ * -Dbenchmark.rows (default 10000,100000), -Dbenchmark.runs (default 5)
+ */
+@EnabledIfSystemProperty(named = "benchmark.jdbc.url", matches = ".+")
+class VectorScoringBenchmarkTest {
+
+	private static final String OLD_CTE = """
+		WITH query_vec AS (
+		    SELECT CAST(? AS double precision[]) as vec
+		),
+		similarities AS (
+		    SELECT
+		        k.*,
+		        (
+		            SELECT SUM(a * b) / (
+		                SQRT(SUM(a * a)) * SQRT(SUM(b * b))
+		            )
+		            FROM (
+		                SELECT
+		                    unnest(k.embedding) as a,
+		                    unnest(q.vec) as b
+		                FROM query_vec q
+		            ) dot_product
+		        ) as similarity_score
+		    FROM kb_bench_entries k
+		    CROSS JOIN query_vec q
+		    WHERE k.user_id = ?
+		)
+		SELECT id, similarity_score
+		FROM similarities
+		WHERE similarity_score IS NOT NULL
+		ORDER BY similarity_score DESC
+		LIMIT 10
+		""";
+
+	private static final String DOT_FUNCTION = """
+		WITH q AS MATERIALIZED (
+		    SELECT CAST(? AS double precision[]) AS vec
+		)
+		SELECT k.id, kb_dot(k.embedding, q.vec) AS similarity_score
+		FROM kb_bench_entries k
+		CROSS JOIN q
+		WHERE k.user_id = ?
+		ORDER BY similarity_score DESC
+		LIMIT 10
+		""";
+
+	@Test
+	void compareOldCteWithDotFunction() throws Exception {
+		int dim = Integer.getInteger("benchmark.dim", 1536);
+		int runs = Integer.getInteger("benchmark.runs", 5);
+		String[] rowCounts = System.getProperty("benchmark.rows", "10000,100000").split(",");
+
+		try (Connection connection = DriverManager.getConnection(
+				System.getProperty("benchmark.jdbc.url"),
+				System.getProperty("benchmark.jdbc.user", "postgres"),
+				System.getProperty("benchmark.jdbc.password", ""))) {
+
+			try (Statement st = connection.createStatement()) {
+				for (String function : KnowledgeSchemaInitializer.SIMILARITY_FUNCTIONS) {
+					st.execute(function);
+				}
+			}
+
+			for (String rowCount : rowCounts) {
+				int rows = Integer.parseInt(rowCount.trim());
+				seed(connection, rows, dim);
+
+				String query = VectorMath.toPgArray(VectorMath.normalize(randomVector(new Random(rows), dim)));
+				List<Long> expected = topIds(connection, OLD_CTE, query);
+				List<Long> actual = topIds(connection, DOT_FUNCTION, query);
+				assertEquals(expected, actual, "both queries should rank the same rows");
+
+				double oldMs = time(connection, OLD_CTE, query, runs);
+				double newMs = time(connection, DOT_FUNCTION, query, runs);
+				System.out.printf("rows=%d dim=%d  old CTE: %.1f ms  kb_dot: %.1f ms  speedup: %.2fx%n",
+					rows, dim, oldMs, newMs, oldMs / newMs);
+			}
+
+			try (Statement st = connection.createStatement()) {
+				st.execute("DROP TABLE IF EXISTS kb_bench_entries");
+			}
+		}
+	}
+
+	private static void seed(Connection connection, int rows, int dim) throws SQLException {
+		try (Statement st = connection.createStatement()) {
+			st.execute("DROP TABLE IF EXISTS kb_bench_entries");
+			st.execute("CREATE TABLE kb_bench_entries (id bigserial PRIMARY KEY, user_id text, embedding double precision[])");
+			// Correlate the inner generate_series with g so each row gets its own vector
+			st.execute("""
+				INSERT INTO kb_bench_entries (user_id, embedding)
+				SELECT 'bench', v.vec
+				FROM generate_series(1, %d) g
+				CROSS JOIN LATERAL (
+				    SELECT array_agg(x / norm ORDER BY i) AS vec
+				    FROM (
+				        SELECT i, x, sqrt(sum(x * x) OVER ()) AS norm
+				        FROM (SELECT i, random() - 0.5 + g * 0 AS x FROM generate_series(1, %d) i) r
+				    ) n
+				) v
+				""".formatted(rows, dim));
+			st.execute("ANALYZE kb_bench_entries");
+		}
+	}
+
+	private static List<Long> topIds(Connection connection, String sql, String query) throws SQLException {
+		List<Long> ids = new ArrayList<>();
+		try (PreparedStatement ps = connection.prepareStatement(sql)) {
+			ps.setString(1, query);
+			ps.setString(2, "bench");
+			try (ResultSet rs = ps.executeQuery()) {
+				while (rs.next()) ids.add(rs.getLong(1));
+			}
+		}
+		return ids;
+	}
+
+	private static double time(Connection connection, String sql, String query, int runs) throws SQLException {
+		topIds(connection, sql, query); // warm-up
+		long start = System.nanoTime();
+		for (int i = 0; i < runs; i++) {
+			topIds(connection, sql, query);
+		}
+		return (System.nanoTime() - start) / 1e6 / runs;
+	}
+
+	private static float[] randomVector(Random random, int dim) {
+		float[] v = new float[dim];
+		for (int i = 0; i < dim; i++) v[i] = (float) (random.nextDouble() - 0.5);
+		return v;
+	}
+}
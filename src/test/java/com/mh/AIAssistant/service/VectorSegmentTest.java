@@ -0,0 +1,80 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorSegmentTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	void appendedRowsSurviveReopen() throws Exception {
+		Path file = directory.resolve("seg-00000001.vec");
+		Random random = new Random(4);
+		float[][] vectors = new float[10][];
+
+		VectorSegment segment = VectorSegment.create(file, 16, 10);
+		for (int i = 0; i < vectors.length; i++) {
+			vectors[i] = VectorMath.normalize(randomVector(random, 16));
+			assertTrue(segment.append(100 + i, vectors[i]));
+		}
+		assertTrue(segment.isFull());
+		assertFalse(segment.append(999, vectors[0]), "full segment must reject appends");
+		segment.force();
+		assertEquals(VectorSegment.fileSize(16, 10), Files.size(file));
+
+		VectorSegment reopened = VectorSegment.open(file);
+		assertEquals(16, reopened.dim());
+		assertEquals(10, reopened.count());
+		assertEquals(107, reopened.id(7));
+		assertArrayEquals(vectors[7], reopened.vector(7));
+
+		TopKCollector topK = new TopKCollector(3);
+		reopened.scan(vectors[3], topK);
+		List<ScoredId> hits = topK.toSortedList();
+		assertEquals(103, hits.get(0).id());
+		assertEquals(1.0, hits.get(0).score(), 1e-5);
+	}
+
+	@Test
+	void rejectsVectorsOfAnotherDimension() throws Exception {
+		VectorSegment segment = VectorSegment.create(directory.resolve("seg-00000002.vec"), 8, 4);
+		assertFalse(segment.append(1, new float[4]));
+		assertEquals(0, segment.count());
+	}
+
+	@Test
+	void openRejectsForeignFiles() throws Exception {
+		Path file = directory.resolve("not-a-segment.vec");
+		Files.write(file, new byte[VectorSegment.HEADER_BYTES]);
+		assertThrows(java.io.IOException.class, () -> VectorSegment.open(file));
+	}
+
+	@Test
+	void markedSegmentsAreDeletedBeforeTheyAreMapped() throws Exception {
+		Path file = directory.resolve("seg-00000003.vec");
+		VectorSegment.create(file, 8, 4);
+		assertFalse(VectorSegment.deleteIfMarked(file));
+		assertTrue(Files.exists(file));
+
+		// What delete() leaves behind when the platform refuses to remove a mapped file
+		Files.createFile(VectorSegment.deletedMarker(file));
+		assertTrue(VectorSegment.deleteIfMarked(file));
+		assertFalse(Files.exists(file));
+		assertFalse(Files.exists(VectorSegment.deletedMarker(file)));
+	}
+
+	private static float[] randomVector(Random random, int dim) {
+		float[] v = new float[dim];
+		for (int i = 0; i < dim; i++) v[i] = (float) random.nextGaussian();
+		return v;
+	}
+}
@@ -0,0 +1,165 @@
+package com.mh.AIAssistant.service;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The blocking paths used in virtual-thread mode must not pin their carrier
+ * threads (blocking inside synchronized on Java 21), or a few slow calls would
+ * stall every other request. Checked with JFR jdk.VirtualThreadPinned events.
+ * The JDBC driver check needs a database, e.g.
+ *   ./mvnw test -Dtest=VirtualThreadPinningTest -Dpinning.jdbc.url=jdbc:postgresql://localhost:5432/ai_whatsapp
+ * Optional: -Dpinning.jdbc.user, -Dpinning.jdbc.password
+ */
+class VirtualThreadPinningTest {
+
+	private static final int TASKS = 64;
+
+	@FunctionalInterface
+	private interface Task {
+		void run() throws Exception;
+	}
+
+	@Test
+	void detectsPinning() throws Exception {
+		// synchronized no longer pins from Java 24 on
+		assumeTrue(Runtime.version().feature() < 24);
+		Object lock = new Object();
+		List<RecordedEvent> pinned = pinnedEvents(() -> {
+			synchronized (lock) {
+				Thread.sleep(5);
+			}
+		});
+		assertFalse(pinned.isEmpty());
+	}
+
+	@Test
+	void concurrencyLimitDoesNotPin() throws Exception {
+		ConcurrencyLimit limit = new ConcurrencyLimit("test", 4, 10_000);
+		assertNoPinning(() -> {
+			assertTrue(limit.tryAcquire());
+			try {
+				Thread.sleep(5);
+			} finally {
+				limit.release();
+			}
+		});
+		assertEquals(TASKS, ((Number) limit.getStats().get("acquired")).longValue());
+	}
+
+	@Test
+	void embeddingBatcherAndCacheDoNotPin() throws Exception {
+		EmbeddingCache cache = new EmbeddingCache();
+		ReflectionTestUtils.setField(cache, "enabled", true);
+		ReflectionTestUtils.setField(cache, "maxBytes", 1L << 20);
+		try (EmbeddingBatcher batcher = new EmbeddingBatcher(texts -> {
+				sleep(10);
+				return texts.stream().map(text -> new float[] { text.length(), 1f }).toList();
+			}, 16, 100_000, 2, 2)) {
+			assertNoPinning(() -> {
+				String text = "query " + Thread.currentThread().threadId() % 8;
+				float[] vector = cache.get("m", text, t -> batcher.submit(t).join());
+				assertEquals(text.length(), vector[0], 0.0);
+			});
+		}
+	}
+
+	@Test
+	void chatTurnScopeDoesNotPin() throws Exception {
+		assertNoPinning(() -> {
+			try (ChatTurnScope scope = new ChatTurnScope(Duration.ofSeconds(10))) {
+				Future<Integer> slow = scope.fork(() -> {
+					Thread.sleep(20);
+					return 1;
+				});
+				Future<Integer> fast = scope.fork(() -> 2);
+				assertEquals(3, scope.join(slow) + scope.join(fast));
+			}
+		});
+	}
+
+	@Test
+	@EnabledIfSystemProperty(named = "pinning.jdbc.url", matches = ".+")
+	void jdbcDriverDoesNotPin() throws Exception {
+		String url = System.getProperty("pinning.jdbc.url");
+		String user = System.getProperty("pinning.jdbc.user", "postgres");
+		String password = System.getProperty("pinning.jdbc.password", "");
+		assertNoPinning(() -> {
+			try (Connection connection = DriverManager.getConnection(url, user, password);
+				 PreparedStatement statement = connection.prepareStatement("SELECT pg_sleep(0.02), ?")) {
+				statement.setInt(1, 1);
+				try (ResultSet rs = statement.executeQuery()) {
+					assertTrue(rs.next());
+				}
+			}
+		});
+	}
+
+	private static void assertNoPinning(Task task) throws Exception {
+		List<RecordedEvent> pinned = pinnedEvents(task);
+		assertTrue(pinned.isEmpty(), () -> "Pinned virtual threads:\n" + describe(pinned));
+	}
+
+	// Runs the task on TASKS virtual threads at once and returns the pinning events they caused
+	private static List<RecordedEvent> pinnedEvents(Task task) throws Exception {
+		List<RecordedEvent> events = new CopyOnWriteArrayList<>();
+		try (RecordingStream recording = new RecordingStream()) {
+			recording.enable("jdk.VirtualThreadPinned").withThreshold(Duration.ZERO).withStackTrace();
+			recording.onEvent("jdk.VirtualThreadPinned", events::add);
+			recording.startAsync();
+
+			try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+				List<Future<?>> futures = new ArrayList<>();
+				for (int i = 0; i < TASKS; i++) {
+					futures.add(executor.submit(() -> {
+						task.run();
+						return null;
+					}));
+				}
+				for (Future<?> future : futures) future.get();
+			}
+			recording.stop();
+		}
+		return events;
+	}
+
+	private static String describe(List<RecordedEvent> events) {
+		StringBuilder text = new StringBuilder();
+		for (RecordedEvent event : events) {
+			text.append("pinned for ").append(event.getDuration().toMillis()).append(" ms\n");
+			if (event.getStackTrace() == null) continue;
+			for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+				text.append("  at ").append(frame.getMethod().getType().getName())
+					.append('.').append(frame.getMethod().getName()).append('\n');
+			}
+		}
+		return text.toString();
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
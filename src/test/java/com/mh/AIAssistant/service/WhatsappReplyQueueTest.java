@@ -0,0 +1,59 @@
+package com.mh.AIAssistant.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * WhatsappReplyQueue: one sender's messages are answered in order, one at a time,
+ * while other senders are served in parallel
+ */
+class WhatsappReplyQueueTest {
+
+	@Test
+	void messagesFromOneSenderRunInArrivalOrder() throws Exception {
+		List<String> sent = new CopyOnWriteArrayList<>();
+		CountDownLatch done = new CountDownLatch(3);
+		WhatsappService whatsapp = Mockito.mock(WhatsappService.class);
+		Mockito.doAnswer(call -> {
+			sent.add(call.getArgument(0) + " " + call.getArgument(1));
+			done.countDown();
+			return null;
+		}).when(whatsapp).sendMessage(Mockito.anyString(), Mockito.anyString());
+		WhatsappReplyQueue queue = new WhatsappReplyQueue(whatsapp, 8, 10);
+
+		List<String> handled = new CopyOnWriteArrayList<>();
+		try {
+			// Back to back, without waiting: the slow first message must still go first
+			assertEquals(WhatsappReplyQueue.Outcome.QUEUED, queue.submit("alice", "SM1", () -> {
+				Thread.sleep(300);
+				handled.add("mode");
+				return "Chat mode activated";
+			}));
+			assertEquals(WhatsappReplyQueue.Outcome.QUEUED, queue.submit("alice", "SM2", () -> {
+				handled.add("question after " + handled);
+				return "Answer";
+			}));
+			assertEquals(WhatsappReplyQueue.Outcome.QUEUED, queue.submit("bob", "SM3", () -> "Hi"));
+
+			assertTrue(done.await(5, TimeUnit.SECONDS));
+			assertEquals(List.of("mode", "question after [mode]"), handled);
+			assertEquals(List.of("bob Hi", "alice Chat mode activated", "alice Answer"), sent);
+			// Lanes are retired once drained
+			long deadline = System.currentTimeMillis() + 2000;
+			while (!Integer.valueOf(0).equals(queue.getStats().get("activeSenders"))
+					&& System.currentTimeMillis() < deadline) {
+				Thread.sleep(10);
+			}
+			assertEquals(0, queue.getStats().get("activeSenders"));
+		} finally {
+			queue.shutdown();
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package com.mh.AIAssistant.service;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Peak heap of streaming XLSX extraction on a generated workbook, e.g.
+ *   ./mvnw test -Dtest=XlsxMemoryBenchmarkTest -Dbenchmark.xlsx=true
+ * Optional: -Dbenchmark.xlsx.rows (default 1000000), -Dbenchmark.xlsx.dom=true to
+ * also load the workbook with XSSFWorkbook for comparison (needs a large -Xmx)
+ */
+@EnabledIfSystemProperty(named = "benchmark.xlsx", matches = "true")
+class XlsxMemoryBenchmarkTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void streamingExtractionPeakHeap() throws Exception {
+		int rows = Integer.getInteger("benchmark.xlsx.rows", 1_000_000);
+		File file = dir.resolve("generated.xlsx").toFile();
+		long start = System.nanoTime();
+		try (SXSSFWorkbook workbook = new SXSSFWorkbook(100)) {
+			workbook.setCompressTempFiles(true);
+			Sheet sheet = workbook.createSheet("Ledger");
+			for (int i = 0; i < rows; i++) {
+				Row row = sheet.createRow(i);
+				row.createCell(0).setCellValue("Account " + (i % 5000));
+				row.createCell(1).setCellValue(i * 1.25);
+				row.createCell(2).setCellValue("Invoice " + i);
+				row.createCell(3).setCellFormula("B" + (i + 1) + "*2");
+			}
+			try (OutputStream out = new FileOutputStream(file)) {
+				workbook.write(out);
+			}
+			workbook.dispose();
+		}
+		System.out.printf("generated %d rows, %.1f MB in %d ms%n", rows, file.length() / 1e6,
+			(System.nanoTime() - start) / 1_000_000);
+
+		AtomicLong lines = new AtomicLong();
+		AtomicLong chars = new AtomicLong();
+		long peak = peakHeap(() -> new XlsxTextExtractor().extract(file, piece -> {
+			lines.incrementAndGet();
+			chars.addAndGet(piece.length());
+		}));
+		System.out.printf("streaming: %d chars, peak heap %.1f MB%n", chars.get(), peak / 1e6);
+		// Sheet header, rows, blank line after the sheet
+		assertEquals(rows + 2, lines.get());
+
+		if (Boolean.getBoolean("benchmark.xlsx.dom")) {
+			long domPeak = peakHeap(() -> {
+				try (Workbook workbook = new XSSFWorkbook(file)) {
+					assertEquals(rows - 1, workbook.getSheetAt(0).getLastRowNum());
+				}
+			});
+			System.out.printf("XSSFWorkbook: peak heap %.1f MB%n", domPeak / 1e6);
+		}
+	}
+
+	private interface Run {
+		void run() throws Exception;
+	}
+
+	private static long peakHeap(Run run) throws Exception {
+		System.gc();
+		long before = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() != MemoryType.HEAP) continue;
+			pool.resetPeakUsage();
+			before += pool.getUsage().getUsed();
+		}
+		run.run();
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+		}
+		return peak - before;
+	}
+}
@@ -0,0 +1,126 @@
+package com.mh.AIAssistant.service;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * XlsxTextExtractor: rows come out one at a time, in order, with shared strings
+ * resolved and formulas replaced by their cached results
+ */
+class XlsxTextExtractorTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void rowsAreStreamedWithCachedFormulaResults() throws Exception {
+		File file = dir.resolve("budget.xlsx").toFile();
+		try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+			Sheet costs = workbook.createSheet("Costs");
+			Row header = costs.createRow(0);
+			header.createCell(0).setCellValue("Item");
+			header.createCell(1).setCellValue("Amount");
+			for (int i = 1; i <= 3; i++) {
+				Row row = costs.createRow(i);
+				row.createCell(0).setCellValue("Item");
+				row.createCell(1).setCellValue(i * 10);
+			}
+			costs.createRow(4).createCell(1).setCellFormula("SUM(B2:B4)");
+			workbook.createSheet("Notes").createRow(0).createCell(0).setCellValue("Approved");
+			workbook.getCreationHelper().createFormulaEvaluator().evaluateAll();
+			try (OutputStream out = new FileOutputStream(file)) {
+				workbook.write(out);
+			}
+		}
+
+		List<String> pieces = new ArrayList<>();
+		new XlsxTextExtractor().extract(file, piece -> pieces.add(piece.toString()));
+
+		assertEquals(List.of(
+			"Sheet: Costs\n",
+			"Item\tAmount\t\n",
+			"Item\t10\t\n",
+			"Item\t20\t\n",
+			"Item\t30\t\n",
+			"\t60\t\n",
+			"\n",
+			"Sheet: Notes\n",
+			"Approved\t\n",
+			"\n"), pieces);
+	}
+
+	@Test
+	void emptyCellsKeepTheirColumns() throws Exception {
+		File file = dir.resolve("sparse.xlsx").toFile();
+		try (XSSFWorkbook workbook = new XSSFWorkbook()) {
+			Sheet sheet = workbook.createSheet("Sparse");
+			Row header = sheet.createRow(0);
+			header.createCell(0).setCellValue("a");
+			header.createCell(1).setCellValue("b");
+			header.createCell(2).setCellValue("c");
+			Row sparse = sheet.createRow(1);
+			sparse.createCell(0).setCellValue("x");
+			sparse.createCell(2).setCellValue("z");
+			sheet.createRow(2).createCell(3).setCellValue("w");
+			try (OutputStream out = new FileOutputStream(file)) {
+				workbook.write(out);
+			}
+		}
+
+		List<String> pieces = new ArrayList<>();
+		new XlsxTextExtractor().extract(file, piece -> pieces.add(piece.toString()));
+
+		assertEquals(List.of(
+			"Sheet: Sparse\n",
+			"a\tb\tc\t\n",
+			"x\t\tz\t\n",
+			"\t\t\tw\t\n",
+			"\n"), pieces);
+	}
+
+	@Test
+	void streamedChunksMatchSplitChunks() {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 200; i++) {
+			text.append("Sentence number ").append(i).append(" is here. ");
+		}
+		TextChunker chunker = new TextChunker(120, 30);
+
+		List<String> streamed = new ArrayList<>();
+		TextChunker.Stream stream = chunker.stream(streamed::add);
+		for (int i = 0; i < text.length(); i += 37) {
+			stream.accept(text.subSequence(i, Math.min(text.length(), i + 37)));
+		}
+		stream.finish();
+
+		assertEquals(chunker.split(text.toString()), streamed);
+	}
+
+	@Test
+	void rowsWithoutSentenceBreaksAreChunkedAtLineBreaks() {
+		List<String> chunks = new ArrayList<>();
+		TextChunker.Stream stream = new TextChunker(200, 0).stream(chunks::add);
+		for (int i = 0; i < 1000; i++) {
+			stream.accept("row " + i + "\tvalue " + i + "\t\n");
+		}
+		stream.finish();
+
+		assertTrue(chunks.size() > 50);
+		for (String chunk : chunks) {
+			assertTrue(chunk.length() <= 200);
+			assertTrue(chunk.matches("(?s)row \\d+\tvalue .*value \\d+"), "row cut in two: " + chunk);
+		}
+	}
+}